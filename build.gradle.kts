@@ -233,8 +233,40 @@ if (mod.isForge) {
         dependsOn("generatePackMCMetaJson")
     }
 }
+// VolumetricRLE.VECTORIZED uses the incubating Vector API when this module is present at runtime,
+// and falls back to a scalar encoder otherwise
+val vectorModuleArgs = listOf("--add-modules", "jdk.incubator.vector")
+
+// Only the encoder using the Vector API is compiled against the incubator module, so the rest of
+// the mod does not link against it
+val vector: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+tasks.named<JavaCompile>(vector.compileJavaTaskName) {
+    options.compilerArgs.addAll(vectorModuleArgs)
+}
+
+tasks.jar {
+    from(vector.output)
+}
+
+tasks.shadowJar {
+    from(vector.output)
+}
+
+dependencies {
+    testRuntimeOnly(vector.output)
+    "jmhRuntimeOnly"(vector.output)
+}
+
 tasks.test {
     useJUnitPlatform()
+    jvmArgs(vectorModuleArgs)
+}
+
+jmh {
+    jvmArgsAppend.addAll(vectorModuleArgs)
 }
 
 tasks.named<Jar>("jmhJar") {
@@ -8,6 +8,8 @@ import io.github.leawind.gitparcel.common.api.parcel.ParcelFormatConfig;
 import io.github.leawind.gitparcel.common.api.config.ConfigItem;
 import io.github.leawind.gitparcel.gametest.utils.ChannelFlags;
 import io.github.leawind.gitparcel.gametest.utils.GameTestHelpMore;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.SharedBlockPalette;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32.ParcellaD32Format;
 import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelStorage;
 import io.github.leawind.gitparcel.common.testutils.TestUtils;
 import java.nio.file.Files;
@@ -84,73 +86,127 @@ public class GitParcelGameTest {
     }
   }
 
-  @SuppressWarnings({"unchecked", "rawtypes"})
+  /**
+   * Saves with the shared palette of a repository, then loads through the same entry point as the
+   * load commands.
+   */
+  public void testSharedPaletteSaveAndLoad(GameTestHelpMore helper) throws Exception {
+    var saver = ParcelFormatRegistry.get().getSaver(ParcellaD32Format.SPEC);
+    if (saver == null) {
+      helper.fail("No saver for format " + ParcellaD32Format.SPEC);
+      return;
+    }
+    var config = new ParcellaD32Format.Config();
+    config.usePalette.set(true);
+    config.sharedPalette.set(true);
+
+    try (var fs = Jimfs.newFileSystem()) {
+      Path repoDir = fs.getPath("/repo");
+      Path parcelDir = repoDir.resolve("parcel");
+      saveAndLoad(helper, saver, Rotation.NONE, Mirror.NONE, config, parcelDir, repoDir);
+
+      if (!Files.exists(SharedBlockPalette.getFile(repoDir))) {
+        helper.fail("Shared block palette was not written");
+      }
+      Path paletteFile =
+          parcelDir
+              .resolve("data")
+              .resolve(ParcellaD32Format.BLOCKS_DIR_NAME)
+              .resolve(ParcellaD32Format.PALETTE_FILE_NAME);
+      if (Files.exists(paletteFile)) {
+        helper.fail("Parcel has its own block palette");
+      }
+    } finally {
+      // Loaded palettes refer to the closed file system
+      SharedBlockPalette.unloadAll();
+    }
+
+    helper.succeed();
+  }
+
   private void doSaveAndLoad(
       GameTestHelpMore helper,
-      ParcelFormat.Saver<?> rawSaver,
+      ParcelFormat.Saver<?> saver,
       Rotation rotation,
       Mirror mirror,
-      @Nullable ParcelFormatConfig config)
+      @Nullable ParcelFormatConfig<?> config)
       throws Exception {
-    var saver = (ParcelFormat.Saver) rawSaver;
-
     try (var fs = Jimfs.newFileSystem()) {
-      Path tempDir = fs.getPath("/tmp");
-      Files.createDirectories(tempDir);
-
-      var box = helper.getRelativeBoundingBox();
-      int halfHeight = box.getYSpan() / 2;
-
-      var bottomBox =
-          new BoundingBox(
-              box.minX(),
-              box.minY(),
-              box.minZ(),
-              box.maxX(),
-              box.minY() + halfHeight - 1,
-              box.maxZ());
-
-      var topBox =
-          new BoundingBox(
-              box.minX(),
-              box.maxY() + 1 - halfHeight,
-              box.minZ(),
-              box.maxX(),
-              box.maxY(),
-              box.maxZ());
-
-      ParcelStorage.save(
-          saver,
-          helper.getLevel(),
-          helper.absoluteBoundingBox(bottomBox),
-          rotation,
-          mirror,
-          config,
-          tempDir,
-          true);
-
-      var loader = ParcelFormatRegistry.get().getLoader(saver.spec());
-      if (loader == null) {
-        LOGGER.info("  Skipped: no loader for format {}", saver.spec());
-        return;
-      }
-
-      ParcelStorage.load(
-          helper.getLevel(),
-          helper.absoluteBoundingBox(topBox),
-          rotation,
-          mirror,
-          tempDir,
-          false,
-          true,
-          Block.UPDATE_CLIENTS
-              | Block.UPDATE_IMMEDIATE
-              | Block.UPDATE_KNOWN_SHAPE
-              | Block.UPDATE_SKIP_ALL_SIDEEFFECTS);
-
-      helper.assertSame(bottomBox, topBox, ChannelFlags.BLOCKS);
+      Path repoDir = fs.getPath("/repo");
+      saveAndLoad(helper, saver, rotation, mirror, config, repoDir.resolve("parcel"), repoDir);
+    } finally {
+      // Loaded palettes refer to the closed file system
+      SharedBlockPalette.unloadAll();
+    }
+  }
 
-      LOGGER.info("  Passed: rotation={}, mirror={}", rotation, mirror);
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private void saveAndLoad(
+      GameTestHelpMore helper,
+      ParcelFormat.Saver<?> rawSaver,
+      Rotation rotation,
+      Mirror mirror,
+      @Nullable ParcelFormatConfig config,
+      Path parcelDir,
+      Path repoDir)
+      throws Exception {
+    var saver = (ParcelFormat.Saver) rawSaver;
+    Files.createDirectories(parcelDir);
+
+    var box = helper.getRelativeBoundingBox();
+    int halfHeight = box.getYSpan() / 2;
+
+    var bottomBox =
+        new BoundingBox(
+            box.minX(),
+            box.minY(),
+            box.minZ(),
+            box.maxX(),
+            box.minY() + halfHeight - 1,
+            box.maxZ());
+
+    var topBox =
+        new BoundingBox(
+            box.minX(),
+            box.maxY() + 1 - halfHeight,
+            box.minZ(),
+            box.maxX(),
+            box.maxY(),
+            box.maxZ());
+
+    ParcelStorage.save(
+        saver,
+        helper.getLevel(),
+        helper.absoluteBoundingBox(bottomBox),
+        rotation,
+        mirror,
+        config,
+        parcelDir,
+        repoDir,
+        true);
+
+    var loader = ParcelFormatRegistry.get().getLoader(saver.spec());
+    if (loader == null) {
+      LOGGER.info("  Skipped: no loader for format {}", saver.spec());
+      return;
     }
+
+    ParcelStorage.load(
+        helper.getLevel(),
+        helper.absoluteBoundingBox(topBox),
+        rotation,
+        mirror,
+        parcelDir,
+        repoDir,
+        false,
+        true,
+        Block.UPDATE_CLIENTS
+            | Block.UPDATE_IMMEDIATE
+            | Block.UPDATE_KNOWN_SHAPE
+            | Block.UPDATE_SKIP_ALL_SIDEEFFECTS);
+
+    helper.assertSame(bottomBox, topBox, ChannelFlags.BLOCKS);
+
+    LOGGER.info("  Passed: rotation={}, mirror={}", rotation, mirror);
   }
 }
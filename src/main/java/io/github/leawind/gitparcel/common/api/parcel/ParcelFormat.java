@@ -4,8 +4,12 @@ import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 import net.minecraft.core.Vec3i;
 import net.minecraft.world.level.Level;
@@ -96,6 +100,41 @@ public sealed interface ParcelFormat permits ParcelFormat.Impl {
         boolean ignoreEntities,
         @Nullable C config)
         throws IOException, ParcelException.UnsupportedFeature;
+
+    /**
+     * Saves the parcel without blocking the server thread on file I/O.
+     *
+     * <p>Must be called on the server thread. Implementations capture everything they need from the
+     * level before returning, then encode and write files on the given executor. The level may be
+     * modified freely as soon as this method returns.
+     *
+     * <p>The default implementation saves synchronously and returns a completed future.
+     *
+     * @param executor Executor to run encoding and file I/O on
+     * @return A future that completes when all files are written. If saving fails, it completes
+     *     exceptionally with an {@link UncheckedIOException} wrapping the {@link IOException}, or
+     *     with {@link ParcelException.UnsupportedFeature}. Dependent stages see these wrapped in
+     *     {@link CompletionException}.
+     * @see #save
+     */
+    default CompletableFuture<Void> saveAsync(
+        Level level,
+        Vec3i parcelSize,
+        Vec3i anchor,
+        ParcelTransform transform,
+        Path dataDir,
+        boolean ignoreEntities,
+        @Nullable C config,
+        Executor executor) {
+      try {
+        save(level, parcelSize, anchor, transform, dataDir, ignoreEntities, config);
+        return CompletableFuture.completedFuture(null);
+      } catch (IOException e) {
+        return CompletableFuture.failedFuture(new UncheckedIOException(e));
+      } catch (ParcelException.UnsupportedFeature e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    }
   }
 
   interface Loader<C extends ParcelFormatConfig<C>> extends Impl<C> {
@@ -124,6 +163,39 @@ public sealed interface ParcelFormat permits ParcelFormat.Impl {
         @Block.UpdateFlags int flags,
         @Nullable C config)
         throws IOException, ParcelException.CorruptedParcelException;
+
+    /**
+     * Creates a task that loads the parcel a bit at a time, see {@link ParcelLoadTask}.
+     *
+     * <p>Nothing is read or placed until the task is ticked. Parameters are the same as {@link
+     * #load}.
+     *
+     * <p>The default implementation loads the whole parcel in the first tick, ignoring the budget.
+     */
+    default ParcelLoadTask loadSliced(
+        ServerLevelAccessor level,
+        Vec3i size,
+        Vec3i anchor,
+        ParcelTransform transform,
+        Path dataDir,
+        boolean ignoreBlocks,
+        boolean ignoreEntities,
+        @Block.UpdateFlags int flags,
+        @Nullable C config) {
+      return budget -> {
+        load(
+            level,
+            size,
+            anchor,
+            transform,
+            dataDir,
+            ignoreBlocks,
+            ignoreEntities,
+            flags,
+            config);
+        return true;
+      };
+    }
   }
 
   class BaseContext {
@@ -15,6 +15,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import org.jspecify.annotations.Nullable;
 
 /**
  * Base class for parcel format configuration.
@@ -26,6 +27,8 @@ public abstract class ParcelFormatConfig<Self extends ParcelFormatConfig<Self>>
 
   protected Map<String, ConfigItem<?>> configItems = new HashMap<>();
 
+  private Environment environment = Environment.NONE;
+
   @SuppressWarnings("unchecked")
   private Self self() {
     return (Self) this;
@@ -109,11 +112,38 @@ public abstract class ParcelFormatConfig<Self extends ParcelFormatConfig<Self>>
     Files.writeString(configFile, GSON.toJson(toJson()));
   }
 
+  /**
+   * @return Where the parcel is stored, see {@link #setEnvironment}
+   */
+  public Environment getEnvironment() {
+    return environment;
+  }
+
+  /**
+   * Set by the storage layer before the config is passed to a format. Not part of the config file.
+   */
+  public Self setEnvironment(Environment environment) {
+    this.environment = environment;
+    return self();
+  }
+
   public void resetToDefault() {
     for (var item : listConfigItems()) {
       item.reset();
     }
   }
 
+  /**
+   * Where a parcel is stored, as known by the storage layer.
+   *
+   * @param repoDir Root directory of the repository containing the parcel. {@code null} if the
+   *     parcel is not in a repository.
+   * @param cacheDir Directory for files of the parcel that are only valid on this machine, and must
+   *     not be committed. {@code null} if there is none.
+   */
+  public record Environment(@Nullable Path repoDir, @Nullable Path cacheDir) {
+    public static final Environment NONE = new Environment(null, null);
+  }
+
   public static final class None extends ParcelFormatConfig<None> {}
 }
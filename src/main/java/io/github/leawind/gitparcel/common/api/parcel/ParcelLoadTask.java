@@ -0,0 +1,114 @@
+package io.github.leawind.gitparcel.common.api.parcel;
+
+import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
+import java.io.IOException;
+
+/**
+ * Loading of a parcel that can be spread over multiple server ticks.
+ *
+ * <p>The task is ticked on the server thread, each time with a fresh {@link Budget}. It should stop
+ * doing work as soon as the budget is exhausted, and resume from there on the next tick.
+ *
+ * @see ParcelFormat.Loader#loadSliced
+ */
+@FunctionalInterface
+public interface ParcelLoadTask {
+
+  /**
+   * Does as much work as the budget allows.
+   *
+   * @return {@code true} if the task is finished
+   * @throws IOException If an I/O error occurs. The task will not be ticked again.
+   * @throws ParcelException If the parcel cannot be loaded. The task will not be ticked again.
+   */
+  boolean tick(Budget budget) throws IOException, ParcelException;
+
+  /**
+   * @return Total amount of work, usually the number of blocks to place. {@code 0} if unknown yet.
+   */
+  default long totalWork() {
+    return 0;
+  }
+
+  /**
+   * @return Amount of work done so far, in the same unit as {@link #totalWork()}
+   */
+  default long completedWork() {
+    return 0;
+  }
+
+  /**
+   * Called on the server thread when the task is cancelled or failed, and will not be ticked again.
+   *
+   * <p>Blocks already placed are left in the level.
+   */
+  default void release() {}
+
+  /** How much work a task may do in a single tick. */
+  final class Budget {
+    private final long deadlineNanos;
+    private long remainingBlocks;
+    private long remainingEntities;
+    private long spawnedEntities = 0;
+
+    private Budget(long deadlineNanos, long remainingBlocks, long remainingEntities) {
+      this.deadlineNanos = deadlineNanos;
+      this.remainingBlocks = remainingBlocks;
+      this.remainingEntities = remainingEntities;
+    }
+
+    /**
+     * @param maxNanos Maximum time to spend, starting from now
+     * @param maxBlocks Maximum number of blocks to place
+     */
+    public static Budget of(long maxNanos, long maxBlocks) {
+      return of(maxNanos, maxBlocks, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxNanos Maximum time to spend, starting from now
+     * @param maxBlocks Maximum number of blocks to place
+     * @param maxEntities Maximum number of entities to spawn
+     */
+    public static Budget of(long maxNanos, long maxBlocks, long maxEntities) {
+      return new Budget(System.nanoTime() + maxNanos, maxBlocks, maxEntities);
+    }
+
+    /** A budget that is never exhausted. */
+    public static Budget unlimited() {
+      return new Budget(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    public boolean isExhausted() {
+      return remainingBlocks <= 0
+          || (deadlineNanos != Long.MAX_VALUE && System.nanoTime() >= deadlineNanos);
+    }
+
+    /**
+     * @return {@code true} if another entity may be spawned in this tick
+     */
+    public boolean canSpawnEntity() {
+      return remainingEntities > 0 && !isExhausted();
+    }
+
+    /**
+     * @param blocks Number of blocks placed
+     */
+    public void consume(long blocks) {
+      remainingBlocks -= blocks;
+    }
+
+    /** Records that an entity was spawned. */
+    public void consumeEntity() {
+      remainingEntities--;
+      spawnedEntities++;
+    }
+
+    /**
+     * @return Number of entities spawned with this budget
+     */
+    public long spawnedEntities() {
+      return spawnedEntities;
+    }
+  }
+}
@@ -13,6 +13,7 @@ import io.github.leawind.gitparcel.common.api.parcel.ParcelTransform;
 import io.github.leawind.gitparcel.common.api.permission.ParcelPermissions;
 import io.github.leawind.gitparcel.common.api.permission.PermissionConfig;
 import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelStorage;
+import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelWorkers;
 import io.github.leawind.gitparcel.common.minecraft.logic.world.GitParcelLevelSavedData;
 import io.github.leawind.gitparcel.server.minecraft.logic.storage.StorageUtils;
 import io.github.leawind.gitparcel.server.minecraft.logic.storage.WorldStorageManager;
@@ -21,6 +22,7 @@ import java.nio.file.Path;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.UUIDUtil;
 import net.minecraft.core.Vec3i;
@@ -234,21 +236,69 @@ public final class Parcel {
    * @throws NullPointerException if this parcel is manually created and levelSavedData is not set
    */
   public Path getParcelDirectory() throws NullPointerException {
+    if (location == null) {
+      return getRepoDirectory().resolve("parcel");
+    } else {
+      return location.getParcelPath();
+    }
+  }
+
+  /**
+   * @return Root directory of the repository containing this parcel
+   * @throws NullPointerException if this parcel is manually created and levelSavedData is not set
+   */
+  public Path getRepoDirectory() throws NullPointerException {
     if (location == null) {
       // TODO move default path resolve logic else where
       var server = (Objects.requireNonNull(getLevel())).getServer();
-      var repoPath =
-          StorageUtils.worldStorage(server).getInternalParcelsDir().resolve(uuid.toString());
-      return repoPath.resolve("parcel");
+      return StorageUtils.worldStorage(server).getInternalParcelsDir().resolve(uuid.toString());
     } else {
-      return location.getParcelPath();
+      return location.repo();
     }
   }
 
-  @SuppressWarnings("unchecked")
   public <C extends ParcelFormatConfig<C>> void save(boolean ignoreEntities)
       throws IOException, ParcelException {
+    C config = resolveFormatConfig();
+    ParcelStorage.save(
+        getLevel(),
+        transform,
+        meta,
+        config,
+        getParcelDirectory(),
+        getRepoDirectory(),
+        ignoreEntities);
+  }
+
+  /**
+   * Saves this parcel, doing encoding and file I/O on {@link ParcelWorkers#io()}.
+   *
+   * <p>Must be called on the server thread.
+   *
+   * @see ParcelStorage#saveAsync
+   */
+  public <C extends ParcelFormatConfig<C>> CompletableFuture<Void> saveAsync(
+      boolean ignoreEntities) {
+    C config;
+    try {
+      config = resolveFormatConfig();
+    } catch (ParcelException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return ParcelStorage.saveAsync(
+        getLevel(),
+        transform,
+        meta,
+        config,
+        getParcelDirectory(),
+        getRepoDirectory(),
+        ignoreEntities,
+        ParcelWorkers.io());
+  }
 
+  @SuppressWarnings("unchecked")
+  private <C extends ParcelFormatConfig<C>> @Nullable C resolveFormatConfig()
+      throws ParcelException.UnsupportedFormat {
     C config = null;
     if (formatConfig != null) {
       ParcelFormat.Saver<C> format = (ParcelFormat.Saver<C>) meta.getFormatSaver();
@@ -262,8 +312,7 @@ public final class Parcel {
         config.setFromJson(formatConfig.getAsJsonObject());
       }
     }
-
-    ParcelStorage.save(getLevel(), transform, meta, config, getParcelDirectory(), ignoreEntities);
+    return config;
   }
 
   /** Should be called when this parcel is updated. */
@@ -0,0 +1,25 @@
+package io.github.leawind.gitparcel.common.minecraft.bridge.mixin;
+
+import io.github.leawind.gitparcel.server.minecraft.bridge.GameServerApi;
+import java.util.function.BooleanSupplier;
+import net.minecraft.server.MinecraftServer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@SuppressWarnings("unused")
+@Mixin(MinecraftServer.class)
+public class MixinMinecraftServer {
+  @Inject(method = "tickServer", at = @At("TAIL"))
+  private void fireServerTickEvent(BooleanSupplier haveTime, CallbackInfo ci) {
+    GameServerApi.ON_SERVER_TICK.emit(
+        new GameServerApi.ServerTickEvent((MinecraftServer) (Object) this));
+  }
+
+  @Inject(method = "stopServer", at = @At("HEAD"))
+  private void fireServerStoppingEvent(CallbackInfo ci) {
+    GameServerApi.ON_SERVER_STOPPING.emit(
+        new GameServerApi.ServerStoppingEvent((MinecraftServer) (Object) this));
+  }
+}
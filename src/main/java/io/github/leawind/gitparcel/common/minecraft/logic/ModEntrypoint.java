@@ -15,6 +15,7 @@ import io.github.leawind.gitparcel.common.minecraft.logic.commands.arguments.Par
 import io.github.leawind.gitparcel.common.minecraft.logic.commands.arguments.ParcelFormatArgument;
 import io.github.leawind.gitparcel.common.minecraft.logic.network.protocol.parcelformat.UpdateParcelFormatSpecS2CPayload;
 import io.github.leawind.gitparcel.common.minecraft.logic.network.protocol.parcels.UpdateParcelsS2CPayload;
+import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelLoadScheduler;
 import io.github.leawind.gitparcel.common.minecraft.logic.world.GitParcelLevelSavedData;
 import io.github.leawind.gitparcel.common.platform.api.Services;
 import io.github.leawind.gitparcel.server.minecraft.bridge.GameServerApi;
@@ -76,6 +77,9 @@ public final class ModEntrypoint {
           var payload = UpdateParcelsS2CPayload.fullSync(parcels);
           player.connection.send(new ClientboundCustomPayloadPacket(payload));
         });
+
+    GameServerApi.ON_SERVER_TICK.on(e -> ParcelLoadScheduler.tick(e.server()));
+    GameServerApi.ON_SERVER_STOPPING.on(e -> ParcelLoadScheduler.onServerStopping(e.server()));
   }
 
   public static void registerCommands(
@@ -4,22 +4,28 @@ import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelFormat;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelFormatConfig;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelTransform;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockSource;
+import io.github.leawind.gitparcel.common.utils.numbase.HexUtils;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.IntStream;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Vec3i;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
 import org.jspecify.annotations.Nullable;
 
 public class MvpFormat implements ParcelFormat.Saver<ParcelFormatConfig.None> {
@@ -45,10 +51,27 @@ public class MvpFormat implements ParcelFormat.Saver<ParcelFormatConfig.None> {
       throw new ParcelException.UnsupportedFeature(spec(), Feature.ROTATE, Feature.MIRROR);
     }
 
+    write(BlockSource.of(level), transform.getTranslatedOrigin(), parcelSize, dataDir);
+  }
+
+  /**
+   * Writes palette, subparcel files and block entities of the given box.
+   *
+   * <p>The box is read twice: once as a whole to build the palette, then one subparcel at a time
+   * to write its file and collect its block entities. Only the palette and the blocks of one
+   * subparcel are kept in memory, whatever the size of the box.
+   *
+   * <p>The output is the same as scanning the box in {@code x, y, z} order: palette IDs are
+   * assigned in order of first occurrence, and for each palette ID the first block entity is kept.
+   *
+   * @param origin Minimum corner of the box in world space
+   */
+  static void write(BlockSource source, BlockPos origin, Vec3i parcelSize, Path dataDir)
+      throws IOException {
     int sizeX = parcelSize.getX();
     int sizeY = parcelSize.getY();
     int sizeZ = parcelSize.getZ();
-    BlockPos origin = transform.getTranslatedOrigin();
+    boolean empty = sizeX <= 0 || sizeY <= 0 || sizeZ <= 0;
 
     Files.createDirectories(dataDir);
 
@@ -58,35 +81,52 @@ public class MvpFormat implements ParcelFormat.Saver<ParcelFormatConfig.None> {
     Path nbtDir = blocksDir.resolve("nbt");
     Path subParcelsDir = blocksDir.resolve("subparcels");
 
-    // Create palette to map block states to IDs
-    Map<BlockState, Integer> palette = new HashMap<>();
+    // The first scan index of every palette entry. Blocks are visited in no particular order, so
+    // entries are sorted into scan order afterwards.
+    var palette = new Reference2IntOpenHashMap<BlockState>();
+    palette.defaultReturnValue(-1);
     List<BlockState> paletteList = new ArrayList<>();
-    int nextPaletteId = 0;
-
-    // First pass: collect all unique block states and build palette
-    for (int x = 0; x < sizeX; x++) {
-      for (int y = 0; y < sizeY; y++) {
-        for (int z = 0; z < sizeZ; z++) {
-          BlockPos pos = origin.offset(x, y, z);
-          BlockState blockState = level.getBlockState(pos);
-
-          if (!palette.containsKey(blockState)) {
-            palette.put(blockState, nextPaletteId);
-            paletteList.add(blockState);
-            nextPaletteId++;
-          }
-        }
-      }
+    LongArrayList firstIndices = new LongArrayList();
+
+    if (!empty) {
+      BoundingBox box =
+          BoundingBox.fromCorners(origin, origin.offset(sizeX - 1, sizeY - 1, sizeZ - 1));
+      source.forEachBlockState(
+          box,
+          (x, y, z, blockState) -> {
+            long index =
+                scanIndex(x - origin.getX(), y - origin.getY(), z - origin.getZ(), parcelSize);
+            int id = palette.getInt(blockState);
+            if (id == -1) {
+              palette.put(blockState, paletteList.size());
+              paletteList.add(blockState);
+              firstIndices.add(index);
+            } else if (index < firstIndices.getLong(id)) {
+              firstIndices.set(id, index);
+            }
+          });
+    }
+
+    // Renumber palette entries by first occurrence
+    int paletteSize = paletteList.size();
+    int[] order = IntStream.range(0, paletteSize).toArray();
+    IntArrays.quickSort(
+        order, (a, b) -> Long.compare(firstIndices.getLong(a), firstIndices.getLong(b)));
+    int[] remap = new int[paletteSize];
+    String[] hexIds = new String[paletteSize];
+    for (int i = 0; i < paletteSize; i++) {
+      remap[order[i]] = i;
+      hexIds[i] = Integer.toHexString(i);
     }
 
     // Write palette to file
     Files.createDirectories(paletteFile.getParent());
     try (BufferedWriter writer = Files.newBufferedWriter(paletteFile, StandardCharsets.UTF_8)) {
-      for (int i = 0; i < paletteList.size(); i++) {
-        BlockState blockState = paletteList.get(i);
+      for (int i = 0; i < paletteSize; i++) {
+        BlockState blockState = paletteList.get(order[i]);
         String blockStateString =
             BuiltInRegistries.BLOCK.wrapAsHolder(blockState.getBlock()).getRegisteredName();
-        writer.write(Integer.toHexString(i) + "=" + blockStateString);
+        writer.write(hexIds[i] + "=" + blockStateString);
         writer.newLine();
       }
     }
@@ -98,10 +138,10 @@ public class MvpFormat implements ParcelFormat.Saver<ParcelFormatConfig.None> {
     int subParcelCountX = (sizeX + subSize - 1) / subSize;
     int subParcelCountY = (sizeY + subSize - 1) / subSize;
     int subParcelCountZ = (sizeZ + subSize - 1) / subSize;
-    int totalSubParcels = subParcelCountX * subParcelCountY * subParcelCountZ;
+    long totalSubParcels = (long) subParcelCountX * subParcelCountY * subParcelCountZ;
 
     // Calculate the number of digits needed for indexing
-    int maxIndex = totalSubParcels - 1;
+    long maxIndex = totalSubParcels - 1;
     int totalDigitsNeeded =
         (maxIndex == 0) ? 1 : (int) Math.ceil(Math.log(maxIndex + 1) / Math.log(16));
     // Ensure the number of digits is even
@@ -109,6 +149,14 @@ public class MvpFormat implements ParcelFormat.Saver<ParcelFormatConfig.None> {
       totalDigitsNeeded++;
     }
 
+    // Palette ID (before renumbering) of every block in the current sub-parcel, in x, y, z order
+    int[] subParcelIds = new int[subSize * subSize * subSize];
+
+    // First block entity in scan order of each palette ID
+    Int2ObjectOpenHashMap<CompoundTag> firstBlockEntities = new Int2ObjectOpenHashMap<>();
+    Int2LongOpenHashMap firstBlockEntityIndices = new Int2LongOpenHashMap();
+    firstBlockEntityIndices.defaultReturnValue(Long.MAX_VALUE);
+
     for (int sx = 0; sx < subParcelCountX; sx++) {
       for (int sy = 0; sy < subParcelCountY; sy++) {
         for (int sz = 0; sz < subParcelCountZ; sz++) {
@@ -121,16 +169,15 @@ public class MvpFormat implements ParcelFormat.Saver<ParcelFormatConfig.None> {
           int endZ = Math.min(startZ + subSize, sizeZ);
 
           // Calculate one-dimensional index
-          int currentIndex = sx * subParcelCountY * subParcelCountZ + sy * subParcelCountZ + sz;
+          long currentIndex = ((long) sx * subParcelCountY + sy) * subParcelCountZ + sz;
 
-          // Convert to hex string with leading zeros to ensure consistent length
-          String hexIndex = String.format("%0" + totalDigitsNeeded + "X", currentIndex);
+          // Hex string with leading zeros to ensure consistent length
+          String hexIndex = toPaddedHex(currentIndex, totalDigitsNeeded);
 
           // Create hierarchical path: split the hex string every 2 characters
           Path subParcelPath = subParcelsDir;
           for (int i = 0; i < hexIndex.length() - 2; i += 2) {
-            String segment = hexIndex.substring(i, Math.min(i + 2, hexIndex.length()));
-            subParcelPath = subParcelPath.resolve(segment);
+            subParcelPath = subParcelPath.resolve(hexIndex.substring(i, i + 2));
           }
 
           // Create sub-parcel file with hex index as filename
@@ -139,53 +186,91 @@ public class MvpFormat implements ParcelFormat.Saver<ParcelFormatConfig.None> {
           // Create parent directories if they don't exist
           Files.createDirectories(subParcelFile.getParent());
 
+          BlockPos subOrigin = origin.offset(startX, startY, startZ);
+          BoundingBox subBox =
+              BoundingBox.fromCorners(subOrigin, origin.offset(endX - 1, endY - 1, endZ - 1));
+          source.forEachBlockState(
+              subBox,
+              (x, y, z, blockState) ->
+                  subParcelIds[subParcelIndex(x, y, z, subOrigin, subSize)] =
+                      palette.getInt(blockState));
+
           try (BufferedWriter writer =
               Files.newBufferedWriter(subParcelFile, StandardCharsets.UTF_8)) {
             // Write block palette indices for this sub-parcel
-            for (int x = startX; x < endX; x++) {
-              for (int y = startY; y < endY; y++) {
-                for (int z = startZ; z < endZ; z++) {
-                  BlockPos pos = origin.offset(x, y, z);
-                  BlockState blockState = level.getBlockState(pos);
-                  int paletteId = palette.get(blockState);
-                  writer.write(Integer.toHexString(paletteId));
+            for (int x = subOrigin.getX(); x <= subBox.maxX(); x++) {
+              for (int y = subOrigin.getY(); y <= subBox.maxY(); y++) {
+                for (int z = subOrigin.getZ(); z <= subBox.maxZ(); z++) {
+                  int id = subParcelIds[subParcelIndex(x, y, z, subOrigin, subSize)];
+                  writer.write(hexIds[remap[id]]);
                   writer.newLine();
                 }
               }
             }
           }
+
+          // Only the first block entity in scan order is kept for each palette ID
+          source.forEachBlockEntity(
+              subBox,
+              (pos, tag) -> {
+                int local = subParcelIndex(pos.getX(), pos.getY(), pos.getZ(), subOrigin, subSize);
+                int paletteId = remap[subParcelIds[local]];
+                long index =
+                    scanIndex(
+                        pos.getX() - origin.getX(),
+                        pos.getY() - origin.getY(),
+                        pos.getZ() - origin.getZ(),
+                        parcelSize);
+                if (index < firstBlockEntityIndices.get(paletteId)) {
+                  firstBlockEntityIndices.put(paletteId, index);
+                  firstBlockEntities.put(paletteId, tag);
+                }
+              });
         }
       }
     }
 
     Files.createDirectories(nbtDir);
     // Handle block entities - save them as individual SNBT files in nbt directory
-    for (int x = 0; x < sizeX; x++) {
-      for (int y = 0; y < sizeY; y++) {
-        for (int z = 0; z < sizeZ; z++) {
-          BlockPos pos = origin.offset(x, y, z);
-          BlockEntity blockEntity = level.getBlockEntity(pos);
-          if (blockEntity != null) {
-            // Find the corresponding block state to get its palette ID
-            BlockState blockState = level.getBlockState(pos);
-            int paletteId = palette.get(blockState);
-
-            // Save block entity NBT data
-            CompoundTag tag = blockEntity.saveWithFullMetadata(level.registryAccess());
-            Path nbtFile = nbtDir.resolve(paletteId + ".snbt");
-
-            // Only write if the file doesn't exist to avoid overwriting
-            if (!Files.exists(nbtFile)) {
-              try (BufferedWriter writer =
-                  Files.newBufferedWriter(nbtFile, StandardCharsets.UTF_8)) {
-                // Convert tag to SNBT (String NBT) format
-                String snbt = tag.toString();
-                writer.write(snbt);
-              }
-            }
-          }
+    for (var entry : firstBlockEntities.int2ObjectEntrySet()) {
+      Path nbtFile = nbtDir.resolve(entry.getIntKey() + ".snbt");
+
+      // Only write if the file doesn't exist to avoid overwriting
+      if (!Files.exists(nbtFile)) {
+        try (BufferedWriter writer = Files.newBufferedWriter(nbtFile, StandardCharsets.UTF_8)) {
+          // Convert tag to SNBT (String NBT) format
+          writer.write(entry.getValue().toString());
         }
       }
     }
   }
+
+  /**
+   * @return Index of the local position when scanning the parcel in {@code x, y, z} order
+   */
+  private static long scanIndex(int x, int y, int z, Vec3i parcelSize) {
+    return ((long) x * parcelSize.getY() + y) * parcelSize.getZ() + z;
+  }
+
+  /**
+   * @return Index of the position in world space inside the sub-parcel, in {@code x, y, z} order
+   */
+  private static int subParcelIndex(int x, int y, int z, BlockPos subOrigin, int subSize) {
+    int localX = x - subOrigin.getX();
+    int localY = y - subOrigin.getY();
+    int localZ = z - subOrigin.getZ();
+    return (localX * subSize + localY) * subSize + localZ;
+  }
+
+  /**
+   * @return Uppercase hexadecimal of the value, padded with zeros to the given number of digits
+   */
+  static String toPaddedHex(long value, int digits) {
+    char[] chars = new char[Math.max(digits, 16 - Long.numberOfLeadingZeros(value) / 4)];
+    for (int i = chars.length - 1; i >= 0; i--) {
+      chars[i] = HexUtils.UPPERS[(int) (value & 0xF)];
+      value >>>= 4;
+    }
+    return new String(chars);
+  }
 }
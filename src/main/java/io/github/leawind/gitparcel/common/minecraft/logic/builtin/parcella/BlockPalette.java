@@ -3,7 +3,7 @@ package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
 import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelStorage;
-import io.github.leawind.gitparcel.common.utils.IntIdPalette;
+import io.github.leawind.gitparcel.common.utils.DenseIntIdPalette;
 import io.github.leawind.gitparcel.common.utils.anno.VersionSensitive;
 import io.github.leawind.gitparcel.common.utils.numbase.HexUtils;
 import io.github.leawind.inventory.just.Result;
@@ -11,11 +11,17 @@ import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.IntPredicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import net.minecraft.commands.arguments.blocks.BlockStateParser;
@@ -26,6 +32,8 @@ import org.jspecify.annotations.Nullable;
 /**
  * Block palette containing block states
  *
+ * <p>Block states are canonical, so they are compared by reference.
+ *
  * <p>Example:
  *
  * <pre>
@@ -33,17 +41,68 @@ import org.jspecify.annotations.Nullable;
  *     1=minecraft:stone
  * </pre>
  */
-public class BlockPalette extends IntIdPalette<BlockState> {
+public class BlockPalette extends DenseIntIdPalette<BlockState> {
 
   protected final IntSet visited = new IntOpenHashSet();
 
+  /** Cache of {@link #getStatesById()}, cleared whenever a mapping changes. */
+  private volatile @Nullable BlockState @Nullable [] statesById = null;
+
   public BlockPalette() {
-    super();
+    super(0, Integer.MAX_VALUE, true);
   }
 
   @Override
   public void onAfterInserted(int id, @Nullable BlockState data) {
     visited.add(id);
+    statesById = null;
+  }
+
+  @Override
+  protected void onAfterRemoved(int id, @Nullable BlockState data) {
+    statesById = null;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    statesById = null;
+  }
+
+  /**
+   * Returns block states indexed by palette ID, with {@code null} for IDs that are not in use.
+   *
+   * <p>IDs at or above the length of the array must be looked up with {@link #get(int)}, see {@link
+   * #get(BlockState[], int)}. The array is cached until this palette changes, and must not be
+   * modified. It is safe to call this from several threads, as long as modifications of the palette
+   * synchronize on it.
+   */
+  public @Nullable BlockState[] getStatesById() {
+    var states = statesById;
+    if (states == null) {
+      synchronized (this) {
+        states = statesById;
+        if (states == null) {
+          int length = size() == 0 ? 0 : Math.min(maxId() + 1, MAX_DENSE_ID);
+          states = new BlockState[Math.max(length, 0)];
+          for (int id : byId.keySet()) {
+            if (id >= 0 && id < states.length) {
+              states[id] = get(id);
+            }
+          }
+          statesById = states;
+        }
+      }
+    }
+    return states;
+  }
+
+  /**
+   * Same as {@link #get(int)}, but reads from an array returned by {@link #getStatesById()} when
+   * possible.
+   */
+  public @Nullable BlockState get(@Nullable BlockState[] statesById, int id) {
+    return id >= 0 && id < statesById.length ? statesById[id] : get(id);
   }
 
   /** Clears all visited blocks. */
@@ -87,10 +146,116 @@ public class BlockPalette extends IntIdPalette<BlockState> {
   }
 
   /**
+   * Appends entries with IDs at or above {@code fromId} to the specified file, leaving the lines
+   * already in it untouched.
+   *
+   * @param paletteFile the path to the palette file. It will be created if it does not exist.
+   * @return one more than the highest ID appended, or {@code fromId} if nothing was appended
+   * @throws IOException if an I/O error occurs while saving the palette
+   */
+  public int saveAppending(Path paletteFile, int fromId) throws IOException {
+    return saveAppending(paletteFile, fromId, id -> false);
+  }
+
+  /**
+   * Same as {@link #saveAppending(Path, int)}, but skips IDs that are already in the file.
+   *
+   * @param inFile Whether an ID is already in the file
+   */
+  public int saveAppending(Path paletteFile, int fromId, IntPredicate inFile) throws IOException {
+    var sb = new StringBuilder();
+    int nextId = fromId;
+    for (var entry : byId.tailMap(fromId).int2ObjectEntrySet()) {
+      int id = entry.getIntKey();
+      if (!isIdInUse(id) || inFile.test(id)) {
+        continue;
+      }
+
+      sb.append(HexUtils.toHexUpperCase(id));
+      sb.append('=');
+      sb.append(stringifyBlockState(entry.getValue()));
+      sb.append('\n');
+      nextId = id + 1;
+    }
+
+    if (sb.isEmpty()) {
+      return nextId;
+    }
+
+    Files.createDirectories(paletteFile.getParent());
+    try (var channel =
+        FileChannel.open(
+            paletteFile,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      long size = channel.size();
+      if (size > 0) {
+        // The file may have been edited by hand
+        var last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        if (last.get(0) != '\n') {
+          sb.insert(0, '\n');
+        }
+      }
+      var bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(sb));
+      while (bytes.hasRemaining()) {
+        size += channel.write(bytes, size);
+      }
+    }
+    return nextId;
+  }
+
+  /**
+   * Adds the entries of another palette that are not in this one, keeping their IDs. Nothing is
+   * added if the palettes conflict.
+   *
+   * @throws InvalidPaletteException If an ID maps to different block states in the two palettes, or
+   *     a block state has different IDs
+   */
+  public void merge(BlockPalette other) throws InvalidPaletteException {
+    for (var entry : other.byId.int2ObjectEntrySet()) {
+      int id = entry.getIntKey();
+      BlockState blockState = entry.getValue();
+      if (byId.containsKey(id) && !Objects.equals(byId.get(id), blockState)) {
+        throw new InvalidPaletteException(
+            String.format(
+                "ID %s is %s, but %s in the other palette",
+                HexUtils.toHexUpperCase(id), byId.get(id), blockState));
+      }
+      if (blockState != null) {
+        int ownId = getId(blockState);
+        if (ownId != VOID_ID && ownId != id) {
+          throw new InvalidPaletteException(
+              String.format(
+                  "%s has ID %s, but %s in the other palette",
+                  blockState, HexUtils.toHexUpperCase(ownId), HexUtils.toHexUpperCase(id)));
+        }
+      }
+    }
+
+    for (var entry : other.byId.int2ObjectEntrySet()) {
+      if (!byId.containsKey(entry.getIntKey())) {
+        insert(entry.getIntKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Cached through {@link BlockStateStringCache#INSTANCE}.
+   *
    * @see BlockStateParser#parseForBlock
    */
-  @VersionSensitive
   public static String stringifyBlockState(BlockState blockState) {
+    return BlockStateStringCache.INSTANCE.stringify(
+        blockState, BlockPalette::stringifyBlockStateUncached);
+  }
+
+  /**
+   * @see BlockStateParser#parseForBlock
+   */
+  @VersionSensitive
+  public static String stringifyBlockStateUncached(BlockState blockState) {
     var sb = new StringBuilder();
     sb.append(BuiltInRegistries.BLOCK.wrapAsHolder(blockState.getBlock()).getRegisteredName());
     var values = blockState.getValues().toList();
@@ -105,7 +270,13 @@ public class BlockPalette extends IntIdPalette<BlockState> {
     return sb.toString();
   }
 
+  /** Cached through {@link BlockStateStringCache#INSTANCE}. */
   public static Result<BlockState, String> parseBlockState(String blockStateString) {
+    return BlockStateStringCache.INSTANCE.parse(
+        blockStateString, BlockPalette::parseBlockStateUncached);
+  }
+
+  public static Result<BlockState, String> parseBlockStateUncached(String blockStateString) {
     try {
       var blockState =
           BlockStateParser.parseForBlock(BuiltInRegistries.BLOCK, blockStateString, false)
@@ -0,0 +1,64 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ServerLevelAccessor;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * Write access to block states in world space.
+ *
+ * <p>Loaders place blocks through this interface. Block entities at replaced positions are
+ * discarded, so that block entity data can be applied to fresh block entities afterwards.
+ *
+ * <p>Changes may be buffered until {@link #flush()} is called. All methods must be called on the
+ * thread that owns the level.
+ */
+public interface BlockSink {
+
+  /**
+   * Replaces the block at the given position.
+   *
+   * @param x X in world space
+   * @param y Y in world space
+   * @param z Z in world space
+   */
+  void setBlock(int x, int y, int z, BlockState state);
+
+  /** Fills a cuboid in world space, bounds are inclusive. */
+  default void fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState state) {
+    for (int y = minY; y <= maxY; y++) {
+      for (int x = minX; x <= maxX; x++) {
+        for (int z = minZ; z <= maxZ; z++) {
+          setBlock(x, y, z, state);
+        }
+      }
+    }
+  }
+
+  /** Applies buffered changes: lighting, block entities and client updates. */
+  default void flush() {}
+
+  /**
+   * Creates a block sink for the given level.
+   *
+   * <p>If the level is a {@link ServerLevel} and the flags skip neighbor and shape updates, blocks
+   * are written directly into chunk sections, see {@link SectionBlockWriter}. Otherwise each block
+   * goes through {@link ServerLevelAccessor#setBlock}.
+   *
+   * @param flags Block update flags
+   */
+  static BlockSink of(ServerLevelAccessor level, @Block.UpdateFlags int flags) {
+    if (level instanceof ServerLevel serverLevel && SectionBlockWriter.isSupported(flags)) {
+      return new SectionBlockWriter(serverLevel, flags);
+    }
+
+    var pos = new BlockPos.MutableBlockPos();
+    return (x, y, z, state) -> {
+      pos.set(x, y, z);
+      level.setBlock(pos, state, flags);
+      level.getChunk(pos).removeBlockEntity(pos);
+    };
+  }
+}
@@ -0,0 +1,217 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.function.BiConsumer;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Immutable copy of the blocks inside a bounding box.
+ *
+ * <p>Capturing copies the paletted block state container of every chunk section touched by the box,
+ * and the full data of every block entity inside the box. This is a single pass over the chunks
+ * and must run on the server thread. After that, the snapshot can be read from any thread.
+ */
+public final class BlockSnapshot implements BlockSource {
+  private static final BlockState VOID_AIR = Blocks.VOID_AIR.defaultBlockState();
+
+  /** Section position (as long) to block states of that section. */
+  private final Long2ObjectOpenHashMap<PalettedContainer<BlockState>> sections;
+
+  /**
+   * Chunk position (as section position with Y 0, as long) to block position (as long) to full
+   * block entity data.
+   */
+  private final Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<CompoundTag>> blockEntities;
+
+  private BlockSnapshot(
+      Long2ObjectOpenHashMap<PalettedContainer<BlockState>> sections,
+      Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<CompoundTag>> blockEntities) {
+    this.sections = sections;
+    this.blockEntities = blockEntities;
+  }
+
+  /**
+   * Captures the blocks inside the given bounding box.
+   *
+   * <p>Must be called on the thread that owns the level. Chunks that are not loaded will be loaded.
+   *
+   * @param level Level to capture from
+   * @param box Bounding box in world space
+   * @return The captured snapshot
+   */
+  public static BlockSnapshot capture(Level level, BoundingBox box) {
+    int minSectionX = SectionPos.blockToSectionCoord(box.minX());
+    int maxSectionX = SectionPos.blockToSectionCoord(box.maxX());
+    int minSectionZ = SectionPos.blockToSectionCoord(box.minZ());
+    int maxSectionZ = SectionPos.blockToSectionCoord(box.maxZ());
+    int minSectionY =
+        Math.max(SectionPos.blockToSectionCoord(box.minY()), level.getMinSectionY());
+    int maxSectionY =
+        Math.min(SectionPos.blockToSectionCoord(box.maxY()), level.getMaxSectionY());
+
+    var sections = new Long2ObjectOpenHashMap<PalettedContainer<BlockState>>();
+    var blockEntities = new Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<CompoundTag>>();
+
+    for (int sectionX = minSectionX; sectionX <= maxSectionX; sectionX++) {
+      for (int sectionZ = minSectionZ; sectionZ <= maxSectionZ; sectionZ++) {
+        LevelChunk chunk = level.getChunk(sectionX, sectionZ);
+
+        for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+          var section = chunk.getSection(level.getSectionIndexFromSectionY(sectionY));
+          sections.put(
+              SectionPos.asLong(sectionX, sectionY, sectionZ), section.getStates().copy());
+        }
+
+        var chunkBlockEntities = new Long2ObjectOpenHashMap<CompoundTag>();
+        for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
+          BlockPos pos = blockEntity.getBlockPos();
+          if (box.isInside(pos)) {
+            chunkBlockEntities.put(
+                pos.asLong(), blockEntity.saveWithFullMetadata(level.registryAccess()));
+          }
+        }
+        if (!chunkBlockEntities.isEmpty()) {
+          blockEntities.put(SectionPos.asLong(sectionX, 0, sectionZ), chunkBlockEntities);
+        }
+      }
+    }
+
+    return new BlockSnapshot(sections, blockEntities);
+  }
+
+  @Override
+  public BlockState getBlockState(BlockPos worldPos) {
+    int x = worldPos.getX();
+    int y = worldPos.getY();
+    int z = worldPos.getZ();
+
+    var states =
+        sections.get(
+            SectionPos.asLong(
+                SectionPos.blockToSectionCoord(x),
+                SectionPos.blockToSectionCoord(y),
+                SectionPos.blockToSectionCoord(z)));
+    if (states == null) {
+      return VOID_AIR;
+    }
+    return states.get(
+        SectionPos.sectionRelative(x),
+        SectionPos.sectionRelative(y),
+        SectionPos.sectionRelative(z));
+  }
+
+  @Override
+  public @Nullable CompoundTag getBlockEntityData(BlockPos worldPos) {
+    var chunkBlockEntities =
+        blockEntities.get(
+            SectionPos.asLong(
+                SectionPos.blockToSectionCoord(worldPos.getX()),
+                0,
+                SectionPos.blockToSectionCoord(worldPos.getZ())));
+    return chunkBlockEntities == null ? null : chunkBlockEntities.get(worldPos.asLong());
+  }
+
+  @Override
+  public void forEachBlockState(BoundingBox worldBox, BlockStateVisitor visitor) {
+    forEachBlockState(
+        worldBox,
+        (sectionX, sectionY, sectionZ) ->
+            sections.get(SectionPos.asLong(sectionX, sectionY, sectionZ)),
+        visitor);
+  }
+
+  @Override
+  public void forEachBlockEntity(BoundingBox worldBox, BiConsumer<BlockPos, CompoundTag> visitor) {
+    int maxChunkX = SectionPos.blockToSectionCoord(worldBox.maxX());
+    int maxChunkZ = SectionPos.blockToSectionCoord(worldBox.maxZ());
+    for (int chunkX = SectionPos.blockToSectionCoord(worldBox.minX());
+        chunkX <= maxChunkX;
+        chunkX++) {
+      for (int chunkZ = SectionPos.blockToSectionCoord(worldBox.minZ());
+          chunkZ <= maxChunkZ;
+          chunkZ++) {
+        var chunkBlockEntities = blockEntities.get(SectionPos.asLong(chunkX, 0, chunkZ));
+        if (chunkBlockEntities == null) {
+          continue;
+        }
+        for (var entry : chunkBlockEntities.long2ObjectEntrySet()) {
+          BlockPos pos = BlockPos.of(entry.getLongKey());
+          if (worldBox.isInside(pos)) {
+            visitor.accept(pos, entry.getValue());
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
+  @FunctionalInterface
+  interface SectionLookup {
+    /**
+     * @return Block states of the section, or {@code null} if the section does not exist
+     */
+    @Nullable PalettedContainer<BlockState> get(int sectionX, int sectionY, int sectionZ);
+  }
+
+  /**
+   * Visits block states inside a box section by section, in the native order of the paletted
+   * containers. Positions in missing sections are visited as void air.
+   */
+  static void forEachBlockState(
+      BoundingBox worldBox, SectionLookup lookup, BlockSource.BlockStateVisitor visitor) {
+    int minSectionX = SectionPos.blockToSectionCoord(worldBox.minX());
+    int maxSectionX = SectionPos.blockToSectionCoord(worldBox.maxX());
+    int minSectionY = SectionPos.blockToSectionCoord(worldBox.minY());
+    int maxSectionY = SectionPos.blockToSectionCoord(worldBox.maxY());
+    int minSectionZ = SectionPos.blockToSectionCoord(worldBox.minZ());
+    int maxSectionZ = SectionPos.blockToSectionCoord(worldBox.maxZ());
+
+    for (int sectionX = minSectionX; sectionX <= maxSectionX; sectionX++) {
+      int x0 = Math.max(worldBox.minX(), SectionPos.sectionToBlockCoord(sectionX));
+      int x1 = Math.min(worldBox.maxX(), SectionPos.sectionToBlockCoord(sectionX, 15));
+
+      for (int sectionZ = minSectionZ; sectionZ <= maxSectionZ; sectionZ++) {
+        int z0 = Math.max(worldBox.minZ(), SectionPos.sectionToBlockCoord(sectionZ));
+        int z1 = Math.min(worldBox.maxZ(), SectionPos.sectionToBlockCoord(sectionZ, 15));
+
+        for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+          int y0 = Math.max(worldBox.minY(), SectionPos.sectionToBlockCoord(sectionY));
+          int y1 = Math.min(worldBox.maxY(), SectionPos.sectionToBlockCoord(sectionY, 15));
+
+          var states = lookup.get(sectionX, sectionY, sectionZ);
+          // Paletted containers are indexed by Y, then Z, then X
+          for (int y = y0; y <= y1; y++) {
+            for (int z = z0; z <= z1; z++) {
+              for (int x = x0; x <= x1; x++) {
+                visitor.visit(
+                    x,
+                    y,
+                    z,
+                    states == null
+                        ? VOID_AIR
+                        : states.get(
+                            SectionPos.sectionRelative(x),
+                            SectionPos.sectionRelative(y),
+                            SectionPos.sectionRelative(z)));
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+}
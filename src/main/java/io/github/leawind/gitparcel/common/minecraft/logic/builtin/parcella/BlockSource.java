@@ -0,0 +1,154 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import java.util.function.BiConsumer;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Read-only access to block states and block entity data in world space.
+ *
+ * <p>Savers read blocks through this interface, so the same encoding code can run against the live
+ * level on the server thread, or against a {@link BlockSnapshot} on a background thread.
+ */
+public interface BlockSource {
+
+  /**
+   * @param worldPos Position in world space
+   * @return Block state at the given position
+   */
+  BlockState getBlockState(BlockPos worldPos);
+
+  /**
+   * @param worldPos Position in world space
+   * @return Full block entity data at the given position, or {@code null} if there is no block
+   *     entity
+   * @see BlockEntity#saveWithFullMetadata
+   */
+  @Nullable CompoundTag getBlockEntityData(BlockPos worldPos);
+
+  @FunctionalInterface
+  interface BlockStateVisitor {
+    /**
+     * @param x X in world space
+     * @param y Y in world space
+     * @param z Z in world space
+     */
+    void visit(int x, int y, int z, BlockState blockState);
+  }
+
+  /**
+   * Visits every block state inside the given box, in no particular order.
+   *
+   * <p>The default implementation calls {@link #getBlockState} for each position.
+   *
+   * @param worldBox Bounding box in world space
+   */
+  default void forEachBlockState(BoundingBox worldBox, BlockStateVisitor visitor) {
+    var pos = new BlockPos.MutableBlockPos();
+    for (int y = worldBox.minY(); y <= worldBox.maxY(); y++) {
+      for (int z = worldBox.minZ(); z <= worldBox.maxZ(); z++) {
+        for (int x = worldBox.minX(); x <= worldBox.maxX(); x++) {
+          visitor.visit(x, y, z, getBlockState(pos.set(x, y, z)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Visits full data of every block entity inside the given box, in no particular order.
+   *
+   * <p>The default implementation calls {@link #getBlockEntityData} for each position.
+   *
+   * @param worldBox Bounding box in world space
+   * @param visitor Receives an immutable position in world space and the block entity data
+   */
+  default void forEachBlockEntity(BoundingBox worldBox, BiConsumer<BlockPos, CompoundTag> visitor) {
+    var pos = new BlockPos.MutableBlockPos();
+    for (int y = worldBox.minY(); y <= worldBox.maxY(); y++) {
+      for (int z = worldBox.minZ(); z <= worldBox.maxZ(); z++) {
+        for (int x = worldBox.minX(); x <= worldBox.maxX(); x++) {
+          CompoundTag data = getBlockEntityData(pos.set(x, y, z));
+          if (data != null) {
+            visitor.accept(pos.immutable(), data);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Whether this source may be read from threads other than the server thread.
+   *
+   * @return {@code true} if the underlying data is immutable
+   */
+  default boolean isThreadSafe() {
+    return false;
+  }
+
+  /**
+   * Creates a block source that reads directly from the given level.
+   *
+   * <p>Bulk reads go through chunk sections and the block entity map of each chunk. The returned
+   * source must only be used on the thread that owns the level.
+   */
+  static BlockSource of(Level level) {
+    return new BlockSource() {
+      @Override
+      public BlockState getBlockState(BlockPos worldPos) {
+        return level.getBlockState(worldPos);
+      }
+
+      @Override
+      public @Nullable CompoundTag getBlockEntityData(BlockPos worldPos) {
+        BlockEntity blockEntity = level.getBlockEntity(worldPos);
+        if (blockEntity == null) {
+          return null;
+        }
+        return blockEntity.saveWithFullMetadata(level.registryAccess());
+      }
+
+      @Override
+      public void forEachBlockState(BoundingBox worldBox, BlockStateVisitor visitor) {
+        BlockSnapshot.forEachBlockState(
+            worldBox,
+            (sectionX, sectionY, sectionZ) -> {
+              if (sectionY < level.getMinSectionY() || sectionY > level.getMaxSectionY()) {
+                return null;
+              }
+              return level
+                  .getChunk(sectionX, sectionZ)
+                  .getSection(level.getSectionIndexFromSectionY(sectionY))
+                  .getStates();
+            },
+            visitor);
+      }
+
+      @Override
+      public void forEachBlockEntity(
+          BoundingBox worldBox, BiConsumer<BlockPos, CompoundTag> visitor) {
+        int maxChunkX = SectionPos.blockToSectionCoord(worldBox.maxX());
+        int maxChunkZ = SectionPos.blockToSectionCoord(worldBox.maxZ());
+        for (int chunkX = SectionPos.blockToSectionCoord(worldBox.minX());
+            chunkX <= maxChunkX;
+            chunkX++) {
+          for (int chunkZ = SectionPos.blockToSectionCoord(worldBox.minZ());
+              chunkZ <= maxChunkZ;
+              chunkZ++) {
+            for (var blockEntity : level.getChunk(chunkX, chunkZ).getBlockEntities().values()) {
+              BlockPos pos = blockEntity.getBlockPos();
+              if (worldBox.isInside(pos)) {
+                visitor.accept(pos, blockEntity.saveWithFullMetadata(level.registryAccess()));
+              }
+            }
+          }
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,104 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import io.github.leawind.inventory.just.Result;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * Bounded, thread safe cache of block state strings in both directions, shared by all loads and
+ * saves.
+ *
+ * <p>A parcel usually contains a few hundred distinct block states, but their strings are parsed
+ * once per palette line, and once per block in {@link SubparcelFormat#FLAT} files without a
+ * palette.
+ *
+ * <p>Failed parses are cached as well. When a direction reaches {@link #MAX_ENTRIES}, it is cleared
+ * before the next insertion.
+ *
+ * @see BlockPalette#parseBlockState
+ * @see BlockPalette#stringifyBlockState
+ */
+public final class BlockStateStringCache {
+  /** Maximum number of entries of each direction */
+  public static final int MAX_ENTRIES = 16384;
+
+  public static final BlockStateStringCache INSTANCE = new BlockStateStringCache();
+
+  public record Stats(long parseHits, long parseMisses, long stringifyHits, long stringifyMisses) {
+    @Override
+    public String toString() {
+      return String.format(
+          "parse: %d hits, %d misses; stringify: %d hits, %d misses",
+          parseHits, parseMisses, stringifyHits, stringifyMisses);
+    }
+  }
+
+  private final Map<String, Result<BlockState, String>> parsed = new ConcurrentHashMap<>();
+  private final Map<BlockState, String> stringified = new ConcurrentHashMap<>();
+
+  private final LongAdder parseHits = new LongAdder();
+  private final LongAdder parseMisses = new LongAdder();
+  private final LongAdder stringifyHits = new LongAdder();
+  private final LongAdder stringifyMisses = new LongAdder();
+
+  BlockStateStringCache() {}
+
+  /**
+   * @param parser Called on a miss
+   */
+  public Result<BlockState, String> parse(
+      String blockStateString, Function<String, Result<BlockState, String>> parser) {
+    var result = parsed.get(blockStateString);
+    if (result != null) {
+      parseHits.increment();
+      return result;
+    }
+    parseMisses.increment();
+    result = parser.apply(blockStateString);
+    putBounded(parsed, blockStateString, result);
+    return result;
+  }
+
+  /**
+   * The string is also cached as parsing to the given block state.
+   *
+   * @param stringifier Called on a miss
+   */
+  public String stringify(BlockState blockState, Function<BlockState, String> stringifier) {
+    var string = stringified.get(blockState);
+    if (string != null) {
+      stringifyHits.increment();
+      return string;
+    }
+    stringifyMisses.increment();
+    string = stringifier.apply(blockState);
+    putBounded(stringified, blockState, string);
+    putBounded(parsed, string, Result.ok(blockState));
+    return string;
+  }
+
+  private static <K, V> void putBounded(Map<K, V> map, K key, V value) {
+    if (map.size() >= MAX_ENTRIES) {
+      map.clear();
+    }
+    map.put(key, value);
+  }
+
+  public Stats getStats() {
+    return new Stats(
+        parseHits.sum(), parseMisses.sum(), stringifyHits.sum(), stringifyMisses.sum());
+  }
+
+  /** Removes all entries and resets the counters. */
+  public void clear() {
+    parsed.clear();
+    stringified.clear();
+    parseHits.reset();
+    parseMisses.reset();
+    stringifyHits.reset();
+    stringifyMisses.reset();
+  }
+}
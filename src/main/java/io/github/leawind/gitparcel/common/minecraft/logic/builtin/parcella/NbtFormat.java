@@ -1,21 +1,28 @@
 package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
 
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import io.github.leawind.gitparcel.common.utils.GrowableByteBuffer;
 import io.github.leawind.inventory.just.Result;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.nio.file.StandardOpenOption;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.NbtIo;
-import net.minecraft.nbt.SnbtPrinterTagVisitor;
 import net.minecraft.nbt.Tag;
-import net.minecraft.nbt.TagParser;
 
 public enum NbtFormat {
   BINARY(".nbt"),
   TEXT(".snbt");
 
+  private static final ThreadLocal<GrowableByteBuffer> BUFFERS = GrowableByteBuffer.perThread(4096);
+  private static final ThreadLocal<StringBuilder> TEXT_BUILDERS =
+      ThreadLocal.withInitial(StringBuilder::new);
+
   private final String suffix;
 
   public String getSuffix() {
@@ -27,27 +34,60 @@ public enum NbtFormat {
   }
 
   public void write(Path path, CompoundTag tag, boolean format) throws IOException {
+    var out = BUFFERS.get().clear();
+    encode(tag, format, out);
+    out.writeTo(path);
+  }
+
+  /**
+   * Puts the content of a file written by {@link #write(Path, CompoundTag, boolean)} into the
+   * buffer.
+   */
+  public void encode(CompoundTag tag, boolean format, GrowableByteBuffer out) throws IOException {
     switch (this) {
-      case BINARY:
-        NbtIo.write(tag, path);
-        break;
-      case TEXT:
-        Files.writeString(path, format ? formatSnbt(tag) : tag.toString());
-        break;
+      case BINARY -> NbtIo.write(tag, new DataOutputStream(out.outputStream()));
+      case TEXT -> {
+        var text = TEXT_BUILDERS.get();
+        text.setLength(0);
+        if (format) {
+          SnbtWriter.write(tag, text);
+        } else {
+          text.append(tag);
+        }
+        out.putUtf8(text);
+      }
     }
   }
 
-  /** Format a NBT tag as pretty-printed SNBT with tab indentation. */
+  /**
+   * Format a NBT tag as pretty-printed SNBT with tab indentation.
+   *
+   * @see SnbtWriter
+   */
   public static String formatSnbt(Tag tag) {
-    var visitor = new SnbtPrinterTagVisitor("\t", 0, new ArrayList<>());
-    return visitor.visit(tag);
+    return SnbtWriter.toString(tag);
   }
 
   public Result<CompoundTag, String> read(Path path) {
-    return switch (this) {
-      case BINARY -> readBinary(path);
-      case TEXT -> readText(path);
-    };
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return read(BUFFERS.get().readFrom(channel));
+    } catch (IOException e) {
+      return Result.err(e.getMessage());
+    }
+  }
+
+  /**
+   * @param data Content of a file written by {@link #write(Path, CompoundTag, boolean)}
+   */
+  public Result<CompoundTag, String> read(ByteBuffer data) {
+    try {
+      return switch (this) {
+        case BINARY -> Result.ok(NbtIo.read(new DataInputStream(new ByteBufferInputStream(data))));
+        case TEXT -> Result.ok(SnbtReader.readCompound(data));
+      };
+    } catch (IOException | CommandSyntaxException e) {
+      return Result.err(e.getMessage());
+    }
   }
 
   NbtFormat(String suffix) {
@@ -55,18 +95,37 @@ public enum NbtFormat {
   }
 
   public static Result<CompoundTag, String> readBinary(Path path) {
-    try {
-      return Result.ok(NbtIo.read(path));
-    } catch (IOException e) {
-      return Result.err(e.getMessage());
-    }
+    return BINARY.read(path);
   }
 
   public static Result<CompoundTag, String> readText(Path path) {
-    try {
-      return Result.ok(TagParser.parseCompoundFully(Files.readString(path)));
-    } catch (IOException | CommandSyntaxException e) {
-      return Result.err(e.getMessage());
+    return TEXT.read(path);
+  }
+
+  /** Reads the remaining bytes of a buffer, without copying them onto the heap first. */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer.duplicate();
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, n);
+      return n;
     }
   }
 }
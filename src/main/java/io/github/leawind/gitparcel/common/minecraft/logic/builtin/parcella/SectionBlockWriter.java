@@ -0,0 +1,237 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.shorts.ShortOpenHashSet;
+import java.util.Map;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.network.protocol.game.ClientboundSectionBlocksUpdatePacket;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.lighting.LightEngine;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Writes block states directly into chunk sections, bypassing {@link ServerLevel#setBlock}.
+ *
+ * <p>Per block, only the section's paletted container, block counts and heightmaps are updated. A
+ * light check is queued only for blocks whose light properties actually change, and points of
+ * interest are only updated for blocks that actually change.
+ *
+ * <p>Per section, on {@link #flush()}: the light engine is told if the section became empty or
+ * non-empty, the chunk is marked unsaved, and a single section update packet is sent to players
+ * tracking the chunk. Block entities are created for placed blocks that need one.
+ *
+ * <p>Neighbor updates, shape updates and block placement side effects are never performed, so this
+ * is only equivalent to {@code setBlock} for flags accepted by {@link #isSupported}.
+ */
+public final class SectionBlockWriter implements BlockSink {
+  private final ServerLevel level;
+  private final boolean updateClients;
+
+  /** Section position (as long) to sections touched since the last flush. */
+  private final Long2ObjectOpenHashMap<DirtySection> sections = new Long2ObjectOpenHashMap<>();
+
+  /** Positions (as long) of placed blocks that need a block entity. */
+  private final LongArrayList blockEntityPositions = new LongArrayList();
+
+  private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+  private @Nullable DirtySection lastSection = null;
+  private long lastSectionKey;
+
+  public SectionBlockWriter(ServerLevel level, @Block.UpdateFlags int flags) {
+    this.level = level;
+    this.updateClients = (flags & Block.UPDATE_CLIENTS) != 0;
+  }
+
+  /**
+   * @return Whether placing blocks with the given flags skips everything this writer skips
+   */
+  public static boolean isSupported(@Block.UpdateFlags int flags) {
+    return (flags & Block.UPDATE_NEIGHBORS) == 0
+        && (flags & Block.UPDATE_KNOWN_SHAPE) != 0
+        && (flags & Block.UPDATE_SKIP_ALL_SIDEEFFECTS) == Block.UPDATE_SKIP_ALL_SIDEEFFECTS;
+  }
+
+  private static final class DirtySection {
+    private final SectionPos sectionPos;
+    private final LevelChunk chunk;
+    private final LevelChunkSection section;
+    private final Heightmap[] heightmaps;
+    private final boolean wasEmpty;
+
+    /** Changed positions, packed with {@link SectionPos#sectionRelativePos} */
+    private final ShortOpenHashSet changed = new ShortOpenHashSet();
+
+    private DirtySection(SectionPos sectionPos, LevelChunk chunk, LevelChunkSection section) {
+      this.sectionPos = sectionPos;
+      this.chunk = chunk;
+      this.section = section;
+      this.heightmaps =
+          chunk.getHeightmaps().stream().map(Map.Entry::getValue).toArray(Heightmap[]::new);
+      this.wasEmpty = section.hasOnlyAir();
+    }
+  }
+
+  @Override
+  public void setBlock(int x, int y, int z, BlockState state) {
+    var dirty =
+        getSection(
+            SectionPos.blockToSectionCoord(x),
+            SectionPos.blockToSectionCoord(y),
+            SectionPos.blockToSectionCoord(z));
+    if (dirty != null) {
+      set(dirty, x, y, z, state, true);
+    }
+  }
+
+  @Override
+  public void fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState state) {
+    int minSectionY = Math.max(SectionPos.blockToSectionCoord(minY), level.getMinSectionY());
+    int maxSectionY = Math.min(SectionPos.blockToSectionCoord(maxY), level.getMaxSectionY());
+
+    for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+      int y0 = Math.max(minY, SectionPos.sectionToBlockCoord(sectionY));
+      int y1 = Math.min(maxY, SectionPos.sectionToBlockCoord(sectionY, 15));
+
+      for (int sectionX = SectionPos.blockToSectionCoord(minX);
+          sectionX <= SectionPos.blockToSectionCoord(maxX);
+          sectionX++) {
+        int x0 = Math.max(minX, SectionPos.sectionToBlockCoord(sectionX));
+        int x1 = Math.min(maxX, SectionPos.sectionToBlockCoord(sectionX, 15));
+
+        for (int sectionZ = SectionPos.blockToSectionCoord(minZ);
+            sectionZ <= SectionPos.blockToSectionCoord(maxZ);
+            sectionZ++) {
+          int z0 = Math.max(minZ, SectionPos.sectionToBlockCoord(sectionZ));
+          int z1 = Math.min(maxZ, SectionPos.sectionToBlockCoord(sectionZ, 15));
+
+          var dirty = getSection(sectionX, sectionY, sectionZ);
+          if (dirty == null) {
+            continue;
+          }
+          // Locked once for the whole box, instead of once per block
+          dirty.section.acquire();
+          try {
+            for (int y = y0; y <= y1; y++) {
+              for (int x = x0; x <= x1; x++) {
+                for (int z = z0; z <= z1; z++) {
+                  set(dirty, x, y, z, state, false);
+                }
+              }
+            }
+          } finally {
+            dirty.section.release();
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public void flush() {
+    var chunkSource = level.getChunkSource();
+    var lightEngine = chunkSource.getLightEngine();
+
+    for (var dirty : sections.values()) {
+      boolean empty = dirty.section.hasOnlyAir();
+      if (empty != dirty.wasEmpty) {
+        lightEngine.updateSectionStatus(dirty.sectionPos, empty);
+        chunkSource.onSectionEmptinessChanged(
+            dirty.sectionPos.x(), dirty.sectionPos.y(), dirty.sectionPos.z(), empty);
+      }
+
+      if (dirty.changed.isEmpty()) {
+        continue;
+      }
+      dirty.chunk.markUnsaved();
+
+      if (updateClients) {
+        var players = chunkSource.chunkMap.getPlayers(dirty.chunk.getPos(), false);
+        if (!players.isEmpty()) {
+          var packet =
+              new ClientboundSectionBlocksUpdatePacket(
+                  dirty.sectionPos, dirty.changed, dirty.section);
+          for (ServerPlayer player : players) {
+            player.connection.send(packet);
+          }
+        }
+      }
+    }
+    sections.clear();
+    lastSection = null;
+
+    for (int i = 0; i < blockEntityPositions.size(); i++) {
+      pos.set(blockEntityPositions.getLong(i));
+      // Creates the block entity
+      if (level.getBlockEntity(pos) != null && updateClients) {
+        // Block entity data is sent when the chunk holder broadcasts changes
+        chunkSource.blockChanged(pos);
+      }
+    }
+    blockEntityPositions.clear();
+  }
+
+  private @Nullable DirtySection getSection(int sectionX, int sectionY, int sectionZ) {
+    long key = SectionPos.asLong(sectionX, sectionY, sectionZ);
+    if (lastSection != null && lastSectionKey == key) {
+      return lastSection;
+    }
+
+    var dirty = sections.get(key);
+    if (dirty == null) {
+      if (sectionY < level.getMinSectionY() || sectionY > level.getMaxSectionY()) {
+        return null;
+      }
+      LevelChunk chunk = level.getChunk(sectionX, sectionZ);
+      var section = chunk.getSection(level.getSectionIndexFromSectionY(sectionY));
+      dirty = new DirtySection(SectionPos.of(sectionX, sectionY, sectionZ), chunk, section);
+      sections.put(key, dirty);
+    }
+
+    lastSection = dirty;
+    lastSectionKey = key;
+    return dirty;
+  }
+
+  /**
+   * @param useLocks Whether to lock the paletted container of the section. If false, the caller
+   *     must hold the lock, see {@link LevelChunkSection#acquire}
+   */
+  private void set(DirtySection dirty, int x, int y, int z, BlockState state, boolean useLocks) {
+    int localX = SectionPos.sectionRelative(x);
+    int localY = SectionPos.sectionRelative(y);
+    int localZ = SectionPos.sectionRelative(z);
+    pos.set(x, y, z);
+
+    BlockState oldState = dirty.section.setBlockState(localX, localY, localZ, state, useLocks);
+
+    if (oldState.hasBlockEntity()) {
+      dirty.chunk.removeBlockEntity(pos);
+    }
+    if (state.hasBlockEntity()) {
+      blockEntityPositions.add(pos.asLong());
+    }
+    if (oldState == state) {
+      return;
+    }
+
+    dirty.changed.add(SectionPos.sectionRelativePos(pos));
+    for (var heightmap : dirty.heightmaps) {
+      heightmap.update(localX, y, localZ, state);
+    }
+    level.onBlockStateChange(pos, oldState, state);
+
+    if (LightEngine.hasDifferentLightProperties(oldState, state)) {
+      dirty.chunk.getSkyLightSources().update(dirty.chunk, localX, y, localZ);
+      level.getChunkSource().getLightEngine().checkBlock(pos);
+    }
+  }
+}
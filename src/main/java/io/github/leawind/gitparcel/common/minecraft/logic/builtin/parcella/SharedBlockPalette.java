@@ -0,0 +1,209 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * Block palette shared by all parcels of a repository, stored in {@value #FILE_NAME} at the root
+ * directory of the repository.
+ *
+ * <p>Each file is loaded once and kept in memory, and is loaded again only if it changed on disk,
+ * e.g. after a pull. Entries are never removed, and new entries are appended to the end of the
+ * file, so existing lines never change.
+ *
+ * <p>This is safe to use from several loads and saves at once. Use {@link #collect} instead of
+ * collecting into {@link #palette()} directly, mutations synchronize on the palette. A save that
+ * assigns IDs runs between {@link #beginSave} and {@link #endSave}, so saves of the same file never
+ * overlap.
+ */
+public final class SharedBlockPalette {
+  public static final String FILE_NAME = "block_palette.txt";
+
+  private static final Map<Path, SharedBlockPalette> LOADED = new ConcurrentHashMap<>();
+
+  /** Held by a save from before IDs are assigned until the file is appended, by file */
+  private static final Map<Path, ReentrantLock> SAVE_LOCKS = new ConcurrentHashMap<>();
+
+  private final Path file;
+  private final BlockPalette palette;
+
+  /** IDs below this are already in the file */
+  private int nextUnsavedId;
+
+  /** Stamp of the file when it was last loaded or saved */
+  private long fileStamp;
+
+  private SharedBlockPalette(Path file, BlockPalette palette, long fileStamp) {
+    this.file = file;
+    this.palette = palette;
+    this.fileStamp = fileStamp;
+    nextUnsavedId = palette.size() == 0 ? 0 : palette.maxId() + 1;
+    // New IDs must come after all IDs in the file, even if lines were reordered
+    palette.lastId = nextUnsavedId - 1;
+  }
+
+  public Path file() {
+    return file;
+  }
+
+  public BlockPalette palette() {
+    return palette;
+  }
+
+  /**
+   * @param repoDir Root directory of a repository
+   * @return Path to the shared palette file of the repository, which may not exist yet
+   */
+  public static Path getFile(Path repoDir) {
+    return repoDir.resolve(FILE_NAME);
+  }
+
+  /**
+   * Returns the shared palette of the given file, loading it if it is not loaded yet or has
+   * changed on disk. A missing file gives an empty palette.
+   *
+   * @throws IOException If an I/O error occurs
+   * @throws BlockPalette.InvalidPaletteException If the file is malformed
+   */
+  public static SharedBlockPalette get(Path file)
+      throws IOException, BlockPalette.InvalidPaletteException {
+    Path key = file.toAbsolutePath().normalize();
+
+    var loaded = LOADED.get(key);
+    if (loaded != null && loaded.isUpToDate()) {
+      return loaded;
+    }
+
+    synchronized (LOADED) {
+      loaded = LOADED.get(key);
+      if (loaded != null && loaded.isUpToDate()) {
+        return loaded;
+      }
+
+      long stamp = getFileStamp(key);
+      var palette = stamp == -1 ? new BlockPalette() : BlockPalette.load(key);
+      loaded = new SharedBlockPalette(key, palette, stamp);
+      LOADED.put(key, loaded);
+      return loaded;
+    }
+  }
+
+  /** Forgets all loaded palettes. They are loaded again from disk on next use. */
+  public static void unloadAll() {
+    LOADED.clear();
+  }
+
+  /**
+   * @return Number of palettes currently in memory
+   */
+  public static int loadedCount() {
+    return LOADED.size();
+  }
+
+  private boolean isUpToDate() throws IOException {
+    synchronized (palette) {
+      return fileStamp == getFileStamp(file);
+    }
+  }
+
+  /**
+   * @see BlockPalette#collect
+   */
+  public int collect(BlockState blockState) {
+    synchronized (palette) {
+      return palette.collect(blockState);
+    }
+  }
+
+  /**
+   * Starts a save that assigns IDs from this palette, waiting for other saves of the same file to
+   * end.
+   *
+   * <p>The file is read again and merged first if it changed on disk, so IDs assigned afterwards
+   * agree with the file. Must be followed by {@link #endSave}, after {@link #save}.
+   *
+   * @throws IOException If an I/O error occurs, or the file conflicts with the collected entries.
+   *     The save is not started then.
+   */
+  public void beginSave() throws IOException {
+    var lock = getSaveLock();
+    lock.lock();
+    try {
+      save();
+    } catch (IOException | RuntimeException e) {
+      lock.unlock();
+      throw e;
+    }
+  }
+
+  /** Ends a save started by {@link #beginSave}. */
+  public void endSave() {
+    getSaveLock().unlock();
+  }
+
+  private ReentrantLock getSaveLock() {
+    return SAVE_LOCKS.computeIfAbsent(file, k -> new ReentrantLock());
+  }
+
+  /**
+   * Appends entries collected since the last load or save to the file.
+   *
+   * <p>If the file changed on disk since then, e.g. after a pull or a save from another server, it
+   * is read again and merged into the palette first, and all entries missing from the file are
+   * appended. If the file uses an ID of a collected entry for another block state, nothing is
+   * written, since subparcels saved with that ID would refer to the wrong block state.
+   *
+   * @throws IOException If an I/O error occurs, or the file conflicts with the collected entries
+   */
+  public void save() throws IOException {
+    synchronized (palette) {
+      long stamp = getFileStamp(file);
+      if (stamp == fileStamp) {
+        int next = palette.saveAppending(file, nextUnsavedId);
+        if (next != nextUnsavedId) {
+          nextUnsavedId = next;
+          fileStamp = getFileStamp(file);
+        }
+        return;
+      }
+
+      var onDisk = new BlockPalette();
+      if (stamp != -1) {
+        try {
+          onDisk = BlockPalette.load(file);
+          palette.merge(onDisk);
+        } catch (BlockPalette.InvalidPaletteException e) {
+          throw new IOException(
+              "Shared block palette " + file + " changed on disk: " + e.getMessage(), e);
+        }
+      }
+
+      // Also entries that were saved before, if the file no longer has them
+      palette.saveAppending(file, 0, onDisk::isIdInUse);
+      nextUnsavedId = palette.size() == 0 ? 0 : palette.maxId() + 1;
+      // New IDs must come after all IDs in the file
+      palette.lastId = Math.max(palette.lastId, nextUnsavedId - 1);
+      fileStamp = getFileStamp(file);
+    }
+  }
+
+  /**
+   * @return Stamp of the size and modification time of the file, or {@code -1} if it does not
+   *     exist
+   */
+  private static long getFileStamp(Path file) throws IOException {
+    try {
+      var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      return attributes.size() * 31 + attributes.lastModifiedTime().toMillis();
+    } catch (NoSuchFileException e) {
+      return -1;
+    }
+  }
+}
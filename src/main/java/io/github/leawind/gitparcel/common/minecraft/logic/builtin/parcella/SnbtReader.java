@@ -0,0 +1,476 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import net.minecraft.nbt.ByteArrayTag;
+import net.minecraft.nbt.ByteTag;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.DoubleTag;
+import net.minecraft.nbt.FloatTag;
+import net.minecraft.nbt.IntArrayTag;
+import net.minecraft.nbt.IntTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.LongArrayTag;
+import net.minecraft.nbt.LongTag;
+import net.minecraft.nbt.ShortTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.TagParser;
+
+/**
+ * Reads SNBT directly from UTF-8 bytes, without going through the SNBT grammar of {@link
+ * TagParser}.
+ *
+ * <p>Only the forms written by {@link SnbtWriter} and {@link Tag#toString()} are understood:
+ * quoted strings, numbers with their type suffix, typed arrays, lists and compounds. Anything else,
+ * such as unquoted strings, booleans or escape sequences other than quotes and backslashes, makes
+ * the whole input fall back to {@link TagParser}, so this reads everything {@link TagParser} does
+ * and gives the same result.
+ */
+public final class SnbtReader {
+  /** Same as the limit of {@link TagParser} */
+  private static final int MAX_DEPTH = 512;
+
+  /** Thrown when the input uses a form this reader does not understand */
+  private static final class UnsupportedSnbtException extends RuntimeException {
+    UnsupportedSnbtException() {
+      super(null, null, false, false);
+    }
+  }
+
+  private static final UnsupportedSnbtException UNSUPPORTED = new UnsupportedSnbtException();
+
+  private final ByteBuffer in;
+  private final int end;
+  private int pos;
+  private int depth;
+
+  /** Bytes of the string being read */
+  private byte[] scratch = new byte[64];
+
+  private SnbtReader(ByteBuffer in) {
+    this.in = in;
+    this.pos = in.position();
+    this.end = in.limit();
+  }
+
+  /**
+   * Reads the remaining bytes of the buffer as a compound tag. The position of the buffer is not
+   * changed.
+   *
+   * @throws CommandSyntaxException If the input is not valid SNBT
+   */
+  public static CompoundTag readCompound(ByteBuffer in) throws CommandSyntaxException {
+    try {
+      var reader = new SnbtReader(in);
+      reader.skipWhitespace();
+      if (reader.peek() != '{') {
+        throw UNSUPPORTED;
+      }
+      CompoundTag tag = reader.readCompound();
+      reader.skipWhitespace();
+      if (reader.pos != reader.end) {
+        throw UNSUPPORTED;
+      }
+      return tag;
+    } catch (UnsupportedSnbtException e) {
+      return TagParser.parseCompoundFully(StandardCharsets.UTF_8.decode(in.duplicate()).toString());
+    }
+  }
+
+  /**
+   * @see #readCompound(ByteBuffer)
+   */
+  public static CompoundTag readCompound(String snbt) throws CommandSyntaxException {
+    return readCompound(ByteBuffer.wrap(snbt.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * @return The next byte, or {@code -1} at the end
+   */
+  private int peek() {
+    return pos < end ? in.get(pos) & 0xFF : -1;
+  }
+
+  private void expect(char c) {
+    if (peek() != c) {
+      throw UNSUPPORTED;
+    }
+    pos++;
+  }
+
+  private void skipWhitespace() {
+    while (pos < end) {
+      byte b = in.get(pos);
+      if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+        return;
+      }
+      pos++;
+    }
+  }
+
+  private Tag readValue() {
+    int c = peek();
+    return switch (c) {
+      case '{' -> readCompound();
+      case '[' -> readListOrArray();
+      case '"', '\'' -> StringTag.valueOf(readQuoted());
+      default -> {
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          yield readNumber();
+        }
+        throw UNSUPPORTED;
+      }
+    };
+  }
+
+  private CompoundTag readCompound() {
+    expect('{');
+    enter();
+    var tag = new CompoundTag();
+    skipWhitespace();
+    if (peek() == '}') {
+      pos++;
+      depth--;
+      return tag;
+    }
+
+    while (true) {
+      String key = readKey();
+      skipWhitespace();
+      expect(':');
+      skipWhitespace();
+      Tag value = readValue();
+      if (tag.put(key, value) != null) {
+        // Duplicate keys are left to TagParser
+        throw UNSUPPORTED;
+      }
+      skipWhitespace();
+      int c = peek();
+      pos++;
+      if (c == '}') {
+        depth--;
+        return tag;
+      }
+      if (c != ',') {
+        throw UNSUPPORTED;
+      }
+      skipWhitespace();
+    }
+  }
+
+  private String readKey() {
+    int c = peek();
+    if (c == '"' || c == '\'') {
+      return readQuoted();
+    }
+
+    int start = pos;
+    while (pos < end && isSimpleKeyChar(in.get(pos))) {
+      pos++;
+    }
+    if (pos == start) {
+      throw UNSUPPORTED;
+    }
+    byte[] bytes = new byte[pos - start];
+    in.get(start, bytes);
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+
+  private static boolean isSimpleKeyChar(byte b) {
+    return (b >= 'a' && b <= 'z')
+        || (b >= 'A' && b <= 'Z')
+        || (b >= '0' && b <= '9')
+        || b == '_'
+        || b == '-'
+        || b == '.'
+        || b == '+';
+  }
+
+  private String readQuoted() {
+    byte quote = in.get(pos++);
+    int length = 0;
+    while (true) {
+      if (pos >= end) {
+        throw UNSUPPORTED;
+      }
+      byte b = in.get(pos++);
+      if (b == quote) {
+        break;
+      }
+      if (b == '\\') {
+        b = pos < end ? in.get(pos++) : 0;
+        if (b != '\\' && b != quote) {
+          throw UNSUPPORTED;
+        }
+      } else if (b >= 0 && b < 0x20) {
+        throw UNSUPPORTED;
+      }
+      if (length == scratch.length) {
+        scratch = Arrays.copyOf(scratch, length * 2);
+      }
+      scratch[length++] = b;
+    }
+    return new String(scratch, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private Tag readListOrArray() {
+    expect('[');
+    if (pos + 1 < end && in.get(pos + 1) == ';') {
+      byte type = in.get(pos);
+      pos += 2;
+      return switch (type) {
+        case 'B' -> readByteArray();
+        case 'I' -> readIntArray();
+        case 'L' -> readLongArray();
+        default -> throw UNSUPPORTED;
+      };
+    }
+
+    enter();
+    var list = new ListTag();
+    skipWhitespace();
+    if (peek() == ']') {
+      pos++;
+      depth--;
+      return list;
+    }
+
+    while (true) {
+      Tag element = readValue();
+      // Lists of mixed types are left to TagParser
+      if (!list.isEmpty() && list.get(0).getId() != element.getId()) {
+        throw UNSUPPORTED;
+      }
+      list.add(element);
+      skipWhitespace();
+      int c = peek();
+      pos++;
+      if (c == ']') {
+        depth--;
+        return list;
+      }
+      if (c != ',') {
+        throw UNSUPPORTED;
+      }
+      skipWhitespace();
+    }
+  }
+
+  /**
+   * @return Whether the array continues after the separator following an element
+   */
+  private boolean arraySeparator() {
+    skipWhitespace();
+    int c = peek();
+    pos++;
+    if (c == ']') {
+      return false;
+    }
+    if (c != ',') {
+      throw UNSUPPORTED;
+    }
+    skipWhitespace();
+    return true;
+  }
+
+  /**
+   * @return Whether the array is empty, consuming the closing bracket if so
+   */
+  private boolean emptyArray() {
+    skipWhitespace();
+    if (peek() == ']') {
+      pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private ByteArrayTag readByteArray() {
+    var values = new ByteArrayList();
+    if (!emptyArray()) {
+      do {
+        long value = readInteger();
+        if (!consumeSuffix('b', 'B') || value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+          throw UNSUPPORTED;
+        }
+        values.add((byte) value);
+      } while (arraySeparator());
+    }
+    return new ByteArrayTag(values.toByteArray());
+  }
+
+  private IntArrayTag readIntArray() {
+    var values = new IntArrayList();
+    if (!emptyArray()) {
+      do {
+        long value = readInteger();
+        if (!isTerminator(peek()) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+          throw UNSUPPORTED;
+        }
+        values.add((int) value);
+      } while (arraySeparator());
+    }
+    return new IntArrayTag(values.toIntArray());
+  }
+
+  private LongArrayTag readLongArray() {
+    var values = new LongArrayList();
+    if (!emptyArray()) {
+      do {
+        long value = readInteger();
+        if (!consumeSuffix('l', 'L')) {
+          throw UNSUPPORTED;
+        }
+        values.add(value);
+      } while (arraySeparator());
+    }
+    return new LongArrayTag(values.toLongArray());
+  }
+
+  /**
+   * Reads an optional minus sign and decimal digits without leading zeros.
+   *
+   * @return Value of the digits
+   */
+  private long readInteger() {
+    boolean negative = peek() == '-';
+    if (negative) {
+      pos++;
+    }
+
+    int start = pos;
+    long value = 0;
+    while (pos < end) {
+      byte b = in.get(pos);
+      if (b < '0' || b > '9') {
+        break;
+      }
+      // Accumulate negatively, so Long.MIN_VALUE fits
+      if (value < (Long.MIN_VALUE + (b - '0')) / 10) {
+        throw UNSUPPORTED;
+      }
+      value = value * 10 - (b - '0');
+      pos++;
+    }
+
+    int digits = pos - start;
+    if (digits == 0 || (digits > 1 && in.get(start) == '0')) {
+      throw UNSUPPORTED;
+    }
+    if (!negative) {
+      if (value == Long.MIN_VALUE) {
+        throw UNSUPPORTED;
+      }
+      value = -value;
+    }
+    return value;
+  }
+
+  /**
+   * @return Whether the next byte is one of the given suffixes and is followed by a terminator
+   */
+  private boolean consumeSuffix(char lower, char upper) {
+    int c = peek();
+    if (c != lower && c != upper) {
+      return false;
+    }
+    pos++;
+    return isTerminator(peek());
+  }
+
+  private static boolean isTerminator(int c) {
+    return c == -1 || c == ',' || c == ']' || c == '}' || c == ' ' || c == '\t' || c == '\n'
+        || c == '\r';
+  }
+
+  private Tag readNumber() {
+    int start = pos;
+    long integer = readInteger();
+
+    int c = peek();
+    boolean decimal = false;
+    if (c == '.') {
+      pos++;
+      skipDigits();
+      decimal = true;
+      c = peek();
+    }
+    if (c == 'e' || c == 'E') {
+      pos++;
+      if (peek() == '-' || peek() == '+') {
+        pos++;
+      }
+      skipDigits();
+      decimal = true;
+      c = peek();
+    }
+    int numberEnd = pos;
+
+    if (c == 'f' || c == 'F' || c == 'd' || c == 'D') {
+      pos++;
+      if (!isTerminator(peek())) {
+        throw UNSUPPORTED;
+      }
+      byte[] bytes = new byte[numberEnd - start];
+      in.get(start, bytes);
+      String text = new String(bytes, StandardCharsets.ISO_8859_1);
+      return c == 'f' || c == 'F'
+          ? FloatTag.valueOf(Float.parseFloat(text))
+          : DoubleTag.valueOf(Double.parseDouble(text));
+    }
+
+    // Numbers without suffix and a fraction are doubles, left to TagParser
+    if (decimal) {
+      throw UNSUPPORTED;
+    }
+    if (isTerminator(c)) {
+      if (integer < Integer.MIN_VALUE || integer > Integer.MAX_VALUE) {
+        throw UNSUPPORTED;
+      }
+      return IntTag.valueOf((int) integer);
+    }
+
+    pos++;
+    if (!isTerminator(peek())) {
+      throw UNSUPPORTED;
+    }
+    return switch (c) {
+      case 'b', 'B' -> {
+        if (integer < Byte.MIN_VALUE || integer > Byte.MAX_VALUE) {
+          throw UNSUPPORTED;
+        }
+        yield ByteTag.valueOf((byte) integer);
+      }
+      case 's', 'S' -> {
+        if (integer < Short.MIN_VALUE || integer > Short.MAX_VALUE) {
+          throw UNSUPPORTED;
+        }
+        yield ShortTag.valueOf((short) integer);
+      }
+      case 'l', 'L' -> LongTag.valueOf(integer);
+      default -> throw UNSUPPORTED;
+    };
+  }
+
+  private void skipDigits() {
+    int start = pos;
+    while (pos < end && in.get(pos) >= '0' && in.get(pos) <= '9') {
+      pos++;
+    }
+    if (pos == start) {
+      throw UNSUPPORTED;
+    }
+  }
+
+  private void enter() {
+    if (++depth > MAX_DEPTH) {
+      throw UNSUPPORTED;
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import io.github.leawind.gitparcel.common.utils.anno.VersionSensitive;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import net.minecraft.nbt.ByteArrayTag;
+import net.minecraft.nbt.ByteTag;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.DoubleTag;
+import net.minecraft.nbt.FloatTag;
+import net.minecraft.nbt.IntArrayTag;
+import net.minecraft.nbt.IntTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.LongArrayTag;
+import net.minecraft.nbt.LongTag;
+import net.minecraft.nbt.ShortTag;
+import net.minecraft.nbt.SnbtPrinterTagVisitor;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Writes pretty-printed SNBT into a single {@link StringBuilder}.
+ *
+ * <p>The output is the same as {@link SnbtPrinterTagVisitor} with tab indentation: keys are
+ * sorted, one entry per line. The visitor builds a string for every nested tag and copies it into
+ * its parent, this writes every character once.
+ */
+@VersionSensitive("copies key order, paths and quoting of SnbtPrinterTagVisitor, since mc26.1")
+public final class SnbtWriter {
+  /** Keys written first, by path. Same as {@link SnbtPrinterTagVisitor}. */
+  private static final Map<String, List<String>> KEY_ORDER =
+      Map.of(
+          "{}",
+          List.of("DataVersion", "author", "size", "data", "entities", "palette", "palettes"),
+          "{}.data.[].{}",
+          List.of("pos", "state", "nbt"),
+          "{}.entities.[].{}",
+          List.of("blockPos", "pos"));
+
+  /** Paths written on a single line. Same as {@link SnbtPrinterTagVisitor}. */
+  private static final Set<String> NO_INDENTATION =
+      Set.of("{}.size.[]", "{}.data.[].{}", "{}.palette.[].{}", "{}.entities.[].{}");
+
+  /** Paths of {@link #KEY_ORDER} and {@link #NO_INDENTATION} have at most this many elements */
+  private static final int MAX_SPECIAL_PATH_LENGTH = 4;
+
+  private static final Pattern SIMPLE_KEY = Pattern.compile("[A-Za-z0-9._+-]+");
+
+  private final StringBuilder out;
+  private final List<String> path = new ArrayList<>();
+
+  private SnbtWriter(StringBuilder out) {
+    this.out = out;
+  }
+
+  /** Appends the tag as pretty-printed SNBT with tab indentation. */
+  public static void write(Tag tag, StringBuilder out) {
+    new SnbtWriter(out).write(tag, 0, "\t");
+  }
+
+  /**
+   * @return The tag as pretty-printed SNBT with tab indentation
+   */
+  public static String toString(Tag tag) {
+    var out = new StringBuilder();
+    write(tag, out);
+    return out.toString();
+  }
+
+  private void write(Tag tag, int depth, String indent) {
+    switch (tag) {
+      case CompoundTag compound -> writeCompound(compound, depth, indent);
+      case ListTag list -> writeList(list, depth, indent);
+      case StringTag string -> writeString(string.value());
+      case ByteTag b -> out.append(b.value()).append('b');
+      case ShortTag s -> out.append(s.value()).append('s');
+      case IntTag i -> out.append(i.value());
+      case LongTag l -> out.append(l.value()).append('L');
+      case FloatTag f -> out.append(f.value()).append('f');
+      case DoubleTag d -> out.append(d.value()).append('d');
+      case ByteArrayTag array -> {
+        out.append("[B;");
+        byte[] data = array.getAsByteArray();
+        for (int i = 0; i < data.length; i++) {
+          out.append(' ').append(data[i]).append('B');
+          if (i != data.length - 1) {
+            out.append(',');
+          }
+        }
+        out.append(']');
+      }
+      case IntArrayTag array -> {
+        out.append("[I;");
+        int[] data = array.getAsIntArray();
+        for (int i = 0; i < data.length; i++) {
+          out.append(' ').append(data[i]);
+          if (i != data.length - 1) {
+            out.append(',');
+          }
+        }
+        out.append(']');
+      }
+      case LongArrayTag array -> {
+        out.append("[L;");
+        long[] data = array.getAsLongArray();
+        for (int i = 0; i < data.length; i++) {
+          out.append(' ').append(data[i]).append('L');
+          if (i != data.length - 1) {
+            out.append(',');
+          }
+        }
+        out.append(']');
+      }
+      default -> out.append(new SnbtPrinterTagVisitor(indent, depth, path).visit(tag));
+    }
+  }
+
+  private void writeCompound(CompoundTag tag, int depth, String indent) {
+    if (tag.isEmpty()) {
+      out.append("{}");
+      return;
+    }
+
+    out.append('{');
+    path.add("{}");
+    String pathString = pathString();
+    if (pathString != null && NO_INDENTATION.contains(pathString)) {
+      indent = "";
+    }
+    if (!indent.isEmpty()) {
+      out.append('\n');
+    }
+
+    String[] keys = sortedKeys(tag, pathString);
+    for (int i = 0; i < keys.length; i++) {
+      String key = keys[i];
+      path.add(key);
+      indent(indent, depth + 1);
+      if (SIMPLE_KEY.matcher(key).matches()) {
+        out.append(key);
+      } else {
+        writeString(key);
+      }
+      out.append(": ");
+      write(tag.get(key), depth + 1, indent);
+      path.removeLast();
+      if (i != keys.length - 1) {
+        out.append(',').append(indent.isEmpty() ? ' ' : '\n');
+      }
+    }
+
+    if (!indent.isEmpty()) {
+      out.append('\n');
+      indent(indent, depth);
+    }
+    out.append('}');
+    path.removeLast();
+  }
+
+  private void writeList(ListTag tag, int depth, String indent) {
+    if (tag.isEmpty()) {
+      out.append("[]");
+      return;
+    }
+
+    out.append('[');
+    path.add("[]");
+    String pathString = pathString();
+    if (pathString != null && NO_INDENTATION.contains(pathString)) {
+      indent = "";
+    }
+    if (!indent.isEmpty()) {
+      out.append('\n');
+    }
+
+    int size = tag.size();
+    for (int i = 0; i < size; i++) {
+      indent(indent, depth + 1);
+      write(tag.get(i), depth + 1, indent);
+      if (i != size - 1) {
+        out.append(',').append(indent.isEmpty() ? ' ' : '\n');
+      }
+    }
+
+    if (!indent.isEmpty()) {
+      out.append('\n');
+      indent(indent, depth);
+    }
+    out.append(']');
+    path.removeLast();
+  }
+
+  private String[] sortedKeys(CompoundTag tag, @Nullable String pathString) {
+    String[] keys = tag.keySet().toArray(String[]::new);
+    Arrays.sort(keys);
+
+    var order = pathString == null ? null : KEY_ORDER.get(pathString);
+    if (order == null) {
+      return keys;
+    }
+
+    // Keys in the given order first, then the others sorted
+    String[] ordered = new String[keys.length];
+    int n = 0;
+    for (String key : order) {
+      if (tag.contains(key)) {
+        ordered[n++] = key;
+      }
+    }
+    for (String key : keys) {
+      if (!order.contains(key)) {
+        ordered[n++] = key;
+      }
+    }
+    return ordered;
+  }
+
+  /**
+   * @return The current path joined by dots, or {@code null} if it is too long to have special
+   *     formatting
+   */
+  private @Nullable String pathString() {
+    return path.size() > MAX_SPECIAL_PATH_LENGTH ? null : String.join(".", path);
+  }
+
+  private void indent(String indent, int depth) {
+    if (!indent.isEmpty()) {
+      for (int i = 0; i < depth; i++) {
+        out.append(indent);
+      }
+    }
+  }
+
+  /** Appends the string quoted, same as {@link StringTag#quoteAndEscape}. */
+  private void writeString(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x20 || c >= 0x7F || c == '"' || c == '\'' || c == '\\') {
+        out.append(StringTag.quoteAndEscape(value));
+        return;
+      }
+    }
+    out.append('"').append(value).append('"');
+  }
+}
@@ -9,4 +9,27 @@ public enum SubparcelFormat {
   FLAT,
   /** Run-length encoding 3D */
   RLE3D,
+  /**
+   * Binary run-length encoding 3D
+   *
+   * <p>Same runs as {@link #RLE3D}, with varint values and packed run extents. Smaller and faster
+   * to read and write, but not diffable.
+   *
+   * <p>Layout:
+   *
+   * <ol>
+   *   <li>Magic bytes, version byte, flags byte
+   *   <li>If values are not palette ids: varint count, then each block state as varint length and
+   *       UTF-8 string
+   *   <li>Varint run count, then for each run:
+   *       <ul>
+   *         <li>Varint {@code (minX | minY << 6 | minZ << 12) << 1 | hasExtent}
+   *         <li>If {@code hasExtent}: varint {@code dx | dy << 6 | dz << 12}, where {@code dx = maxX
+   *             - minX}
+   *         <li>Varint value
+   *       </ul>
+   *   <li>If checksum flag is set: CRC32 of all preceding bytes
+   * </ol>
+   */
+  BINARY,
 }
@@ -1,35 +1,26 @@
 package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d16;
 
-import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelFormat;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockPalette;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32.ParcellaD32Format;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32.ParcellaD32Loader;
 import io.github.leawind.gitparcel.common.utils.numbase.HexUtils;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import net.minecraft.util.ProblemReporter;
 import net.minecraft.world.level.block.state.BlockState;
 
 public class ParcellaD16Loader extends ParcellaD32Loader
     implements ParcellaD16Format, ParcelFormat.Loader<ParcellaD32Format.Config> {
   @Override
-  protected void loadBlocks(Context ctx, ProblemReporter problemReporter)
-      throws IOException, ParcelException.CorruptedParcelException {
-
-    if (!Files.exists(ctx.blocksDir)) {
-      throw new ParcelException.CorruptedParcelException(
-          "Blocks directory not found: " + ctx.blocksDir);
-    }
-
-    loadSubparcels(ctx, 16, problemReporter);
+  protected int getGridSize() {
+    return 16;
   }
 
   @Override
   protected void loadSubparcelBlockStatesRLE3D(
       Context ctx,
-      byte[] bytes,
+      ByteBuffer data,
       BlockStateLoader blockStateLoader,
       ProblemReporter problemReporter) {
 
@@ -42,8 +33,11 @@ public class ParcellaD16Loader extends ParcellaD32Loader
     boolean skipThisLine = false;
     byte sepChar = 0; // 0 = not seen yet, '~' = palette ID, '=' = inline block state
 
+    var paletteStates = ctx.blockPalette == null ? null : ctx.blockPalette.getStatesById();
+
     for_each_byte:
-    for (byte b : bytes) {
+    for (int i = data.position(), end = data.limit(); i < end; i++) {
+      byte b = data.get(i);
       if (skipThisLine && b == '\n') {
         skipThisLine = false;
         continue;
@@ -109,18 +103,12 @@ public class ParcellaD16Loader extends ParcellaD32Loader
                   if (paletteId == -1) {
                     break to_report_invalid_line;
                   }
-                  for (int y = y0; y <= y1; y++) {
-                    for (int x = x0; x <= x1; x++) {
-                      for (int z = z0; z <= z1; z++) {
-                        BlockState blockState = ctx.blockPalette.get(paletteId);
-                        if (blockState == null) {
-                          problemReporter.report(
-                              () -> String.format("Unknown block palette id %d", paletteId));
-                          continue;
-                        }
-                        blockStateLoader.load(x, y, z, blockState);
-                      }
-                    }
+                  BlockState blockState = ctx.blockPalette.get(paletteStates, paletteId);
+                  if (blockState == null) {
+                    problemReporter.report(
+                        () -> String.format("Unknown block palette id %d", paletteId));
+                  } else {
+                    blockStateLoader.loadRun(x0, y0, z0, x1, y1, z1, blockState);
                   }
                 }
                 case '=' -> {
@@ -137,13 +125,7 @@ public class ParcellaD16Loader extends ParcellaD32Loader
                   }
                   BlockState blockState = parseResult.unwrap();
 
-                  for (int y = y0; y <= y1; y++) {
-                    for (int x = x0; x <= x1; x++) {
-                      for (int z = z0; z <= z1; z++) {
-                        blockStateLoader.load(x, y, z, blockState);
-                      }
-                    }
-                  }
+                  blockStateLoader.loadRun(x0, y0, z0, x1, y1, z1, blockState);
                 }
               }
 
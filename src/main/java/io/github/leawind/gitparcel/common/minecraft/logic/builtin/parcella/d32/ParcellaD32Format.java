@@ -7,24 +7,66 @@ import io.github.leawind.gitparcel.common.api.config.ConfigItemBuilder;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelFormat;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelFormatConfig;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.NbtFormat;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.SharedBlockPalette;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.SubparcelFormat;
+import io.github.leawind.gitparcel.common.utils.algorithms.VolumetricRLE;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.List;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.IntArrayTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
 import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
 
 public interface ParcellaD32Format extends ParcelFormat.Impl<ParcellaD32Format.Config> {
   String BLOCKS_DIR_NAME = "blocks";
   String ENTITIES_DIR_NAME = "entities";
   String PALETTE_FILE_NAME = "palette.txt";
+  /** {@link SubparcelHashIndex} in the local cache dir of the parcel */
+  String SUBPARCEL_HASHES_FILE_NAME = "hashes.txt";
   String SUBPARCELS_DIR_NAME = "subparcels";
+  String SUBPARCEL_PACK_FILE_NAME = "subparcels.pack";
+  /** Suffix of block state files in text formats, see {@link #getBlockStateSuffix} */
   String SUBPARCEL_BLOCK_STATE_SUFFIX = ".txt";
+
+  /** Suffix of block state files in {@link SubparcelFormat#BINARY} */
+  String SUBPARCEL_BINARY_BLOCK_STATE_SUFFIX = ".bin";
+
   String SUBPARCEL_BLOCK_ENTITY_SUFFIX = ".be.snbt";
 
+  /** Key of the list of entities in an entity file of {@link Config#packEntities} */
+  String PACKED_ENTITIES_KEY = "entries";
+
+  /**
+   * First bytes of a subparcel file in {@link SubparcelFormat#BINARY}. The first byte is not valid
+   * in text formats.
+   */
+  byte[] BINARY_SUBPARCEL_MAGIC = {(byte) 0x89, 'P', 'C', 'B'};
+
+  int BINARY_SUBPARCEL_VERSION = 1;
+
+  /** Values are palette ids. Otherwise they are indices into the block state table of the file. */
+  int BINARY_SUBPARCEL_FLAG_PALETTE = 1;
+
+  /** The file ends with a CRC32 of all preceding bytes, big-endian. */
+  int BINARY_SUBPARCEL_FLAG_CHECKSUM = 1 << 1;
+
   Spec SPEC = new Spec("parcella_d32", 0);
 
+  /**
+   * @return Suffix of block state files in the given subparcel format
+   */
+  static String getBlockStateSuffix(SubparcelFormat format) {
+    return format == SubparcelFormat.BINARY
+        ? SUBPARCEL_BINARY_BLOCK_STATE_SUFFIX
+        : SUBPARCEL_BLOCK_STATE_SUFFIX;
+  }
+
   @Override
   default Spec spec() {
     return SPEC;
@@ -61,6 +103,27 @@ public interface ParcellaD32Format extends ParcelFormat.Impl<ParcellaD32Format.C
     public ConfigItem<SubparcelFormat> subparcelFormat =
         ConfigItemBuilder.ofEnum("subparcelFormat", SubparcelFormat.RLE3D).storeLocally().build();
 
+    /**
+     * How runs are found for {@link SubparcelFormat#RLE3D} and {@link SubparcelFormat#BINARY}. Any
+     * strategy can be loaded, they only differ in encoding speed and the number of runs.
+     */
+    public ConfigItem<VolumetricRLE.Strategy> rleStrategy =
+        ConfigItemBuilder.ofEnum("rleStrategy", VolumetricRLE.Strategy.POOLED)
+            .storeLocally()
+            .build();
+
+    /** Whether to append a checksum to subparcel files in {@link SubparcelFormat#BINARY}. */
+    public ConfigItem<Boolean> subparcelChecksum =
+        ConfigItemBuilder.ofBoolean("subparcelChecksum").defaultValue(true).storeLocally().build();
+
+    /**
+     * Whether to map large subparcel files into memory when loading, instead of reading them into a
+     * buffer. On some platforms, mapped files cannot be overwritten until the mapping is garbage
+     * collected, so this is disabled by default.
+     */
+    public ConfigItem<Boolean> mapSubparcelFiles =
+        ConfigItemBuilder.ofBoolean("mapSubparcelFiles").defaultValue(false).storeLocally().build();
+
     /**
      * Whether to use a block palette. When enabled, block states are stored in a shared palette
      * file and referenced by short IDs. When disabled, full block state strings are written inline
@@ -69,11 +132,52 @@ public interface ParcellaD32Format extends ParcelFormat.Impl<ParcellaD32Format.C
     public ConfigItem<Boolean> usePalette =
         ConfigItemBuilder.ofBoolean("usePalette").defaultValue(true).storeLocally().build();
 
+    /**
+     * Whether to use the {@link SharedBlockPalette} of the repository containing the parcel,
+     * instead of a palette file of the parcel. Only takes effect if {@link #usePalette} is enabled.
+     * If the parcel is not in a repository, the palette file of the parcel is used.
+     */
+    public ConfigItem<Boolean> sharedPalette =
+        ConfigItemBuilder.ofBoolean("sharedPalette").defaultValue(false).storeLocally().build();
+
+    /**
+     * Whether to skip writing subparcels whose content did not change since the last save, see
+     * {@link SubparcelHashIndex}. The index is kept in the local cache dir of the parcel, not in
+     * the parcel itself. Parcels without a cache dir always write all subparcels.
+     */
+    public ConfigItem<Boolean> skipUnchangedSubparcels =
+        ConfigItemBuilder.ofBoolean("skipUnchangedSubparcels")
+            .defaultValue(true)
+            .storeLocally()
+            .build();
+
+    /**
+     * Whether to store all subparcels of the parcel in a single {@link SubparcelPack}, instead of
+     * one or two files per subparcel in a directory tree. Loading reads whichever layout exists.
+     */
+    public ConfigItem<Boolean> packSubparcels =
+        ConfigItemBuilder.ofBoolean("packSubparcels").defaultValue(false).storeLocally().build();
+
+    /**
+     * Whether to store all entities of one type in a single file, sorted by position, instead of
+     * one file per entity. Files are only rewritten if their content changed. Loading reads either
+     * layout.
+     */
+    public ConfigItem<Boolean> packEntities =
+        ConfigItemBuilder.ofBoolean("packEntities").defaultValue(false).storeLocally().build();
+
     public Config() {
       register(blockEntityDataFormat);
       register(entityDataFormat);
       register(subparcelFormat);
+      register(rleStrategy);
+      register(subparcelChecksum);
+      register(mapSubparcelFiles);
       register(usePalette);
+      register(sharedPalette);
+      register(skipUnchangedSubparcels);
+      register(packSubparcels);
+      register(packEntities);
     }
   }
 
@@ -118,5 +222,46 @@ public interface ParcellaD32Format extends ParcelFormat.Impl<ParcellaD32Format.C
                             .fieldOf("blockEntities")
                             .forGetter(BlockEntities::blockEntities))
                     .apply(inst, BlockEntities::new));
+
+    /** Encodes the same tag as {@link #CODEC} with {@link NbtOps}, without the codec machinery. */
+    public CompoundTag toTag() {
+      var list = new ListTag();
+      for (var entry : blockEntities) {
+        var entryTag = new CompoundTag();
+        entryTag.put("pos", new IntArrayTag(new int[] {entry.x(), entry.y(), entry.z()}));
+        entryTag.put("data", entry.data());
+        list.add(entryTag);
+      }
+      var tag = new CompoundTag();
+      tag.put("blockEntities", list);
+      return tag;
+    }
+
+    /**
+     * Decodes a tag the same as {@link #CODEC} with {@link NbtOps}. Tags in the form written by
+     * {@link #toTag()} are read directly, others go through the codec.
+     *
+     * @return Block entities, or {@code null} if the tag is invalid
+     */
+    public static @Nullable BlockEntities fromTag(CompoundTag tag) {
+      if (tag.get("blockEntities") instanceof ListTag list) {
+        var entries = new ArrayList<BlockEntityEntry>(list.size());
+        for (Tag element : list) {
+          if (!(element instanceof CompoundTag entryTag
+              && entryTag.get("pos") instanceof IntArrayTag posTag
+              && posTag.size() == 3
+              && entryTag.get("data") instanceof CompoundTag data)) {
+            entries = null;
+            break;
+          }
+          int[] pos = posTag.getAsIntArray();
+          entries.add(new BlockEntityEntry(new BlockPos(pos[0], pos[1], pos[2]), data));
+        }
+        if (entries != null) {
+          return new BlockEntities(entries);
+        }
+      }
+      return CODEC.parse(NbtOps.INSTANCE, tag).result().orElse(null);
+    }
   }
 }
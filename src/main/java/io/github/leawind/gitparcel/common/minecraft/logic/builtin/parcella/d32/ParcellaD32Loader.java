@@ -3,27 +3,46 @@ package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32;
 import com.mojang.logging.LogUtils;
 import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelFormat;
+import io.github.leawind.gitparcel.common.api.parcel.ParcelLoadTask;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelTransform;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockPalette;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockSink;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.SharedBlockPalette;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.Subparcel;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.SubparcelFormat;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils.ParcellaUtils;
-import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils.RadixTreePathGenerator;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils.ZOrder3D;
+import io.github.leawind.gitparcel.common.utils.GrowableByteBuffer;
 import io.github.leawind.gitparcel.common.utils.numbase.Base32Utils;
 import io.github.leawind.gitparcel.common.utils.numbase.HexUtils;
+import io.github.leawind.gitparcel.common.utils.numbase.VarIntUtils;
 import io.github.leawind.inventory.just.Result;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.core.Vec3i;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.DoubleTag;
 import net.minecraft.nbt.ListTag;
-import net.minecraft.nbt.NbtOps;
-import net.minecraft.resources.Identifier;
+import net.minecraft.nbt.Tag;
 import net.minecraft.util.ProblemReporter;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EntityProcessor;
@@ -32,6 +51,7 @@ import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.level.ServerLevelAccessor;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
 import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
 import net.minecraft.world.level.storage.TagValueInput;
 import net.minecraft.world.phys.Vec3;
@@ -42,14 +62,25 @@ public class ParcellaD32Loader
     implements ParcellaD32Format, ParcelFormat.Loader<ParcellaD32Format.Config> {
   private static final Logger LOGGER = LogUtils.getLogger();
 
+  /** Smaller files are cheaper to read than to map, even when mapping is enabled. */
+  protected static final int MAP_SUBPARCEL_FILE_THRESHOLD = 64 * 1024;
+
+  /** Subparcel files are read into these buffers, one per loading thread, and reused. */
+  private static final ThreadLocal<GrowableByteBuffer> READ_BUFFERS =
+      GrowableByteBuffer.perThread(64 * 1024);
+
   public static final class Context extends LoadContext<Config> {
     public final Path blocksDir;
     public final Path blocksPaletteFile;
     public final Path subparcelsDir;
+    public final Path subparcelPackFile;
     public final Path entitiesDir;
 
     public @Nullable BlockPalette blockPalette = null;
 
+    /** If not {@code null}, subparcels are read from this pack instead of separate files */
+    public @Nullable SubparcelPack subparcelPack = null;
+
     public Context(
         ServerLevelAccessor level,
         Vec3i parcelSize,
@@ -73,6 +104,7 @@ public class ParcellaD32Loader
       blocksDir = dataDir.resolve(BLOCKS_DIR_NAME);
       blocksPaletteFile = blocksDir.resolve(PALETTE_FILE_NAME);
       subparcelsDir = blocksDir.resolve(SUBPARCELS_DIR_NAME);
+      subparcelPackFile = blocksDir.resolve(SUBPARCEL_PACK_FILE_NAME);
       entitiesDir = dataDir.resolve(ENTITIES_DIR_NAME);
     }
   }
@@ -105,98 +137,545 @@ public class ParcellaD32Loader
             level, size, transform, anchor, dataDir, ignoreBlocks, ignoreEntities, flags, config);
 
     try (var problemReporter = new ProblemReporter.ScopedCollector(LOGGER)) {
+      // Entity files are parsed while blocks are placed
+      var entities = ignoreEntities ? null : decodeEntitiesAsync(ctx);
+
       if (!ignoreBlocks) {
         loadBlocks(ctx, problemReporter);
       }
 
-      if (!ignoreEntities) {
-        loadEntities(ctx, problemReporter);
+      if (entities != null) {
+        spawnEntities(ctx, joinEntities(entities), problemReporter);
       }
     }
   }
 
+  /**
+   * Loads the parcel over multiple ticks, placing blocks chunk by chunk.
+   *
+   * @see ParcellaSlicedLoad
+   */
+  @Override
+  public ParcelLoadTask loadSliced(
+      ServerLevelAccessor level,
+      Vec3i size,
+      Vec3i anchor,
+      ParcelTransform transform,
+      Path dataDir,
+      boolean ignoreBlocks,
+      boolean ignoreEntities,
+      @Block.UpdateFlags int flags,
+      @Nullable Config config) {
+    Context ctx =
+        new Context(
+            level, size, transform, anchor, dataDir, ignoreBlocks, ignoreEntities, flags, config);
+    return new ParcellaSlicedLoad(this, ctx);
+  }
+
+  /**
+   * @return Grid size of sub-parcels
+   */
+  protected int getGridSize() {
+    return 32;
+  }
+
   protected void loadBlocks(Context ctx, ProblemReporter problemReporter)
       throws IOException, ParcelException.CorruptedParcelException {
+    loadSubparcels(ctx, getGridSize(), problemReporter);
+  }
 
-    if (!Files.exists(ctx.blocksDir)) {
-      throw new ParcelException.CorruptedParcelException(
-          "Blocks directory not found: " + ctx.blocksDir);
+  /**
+   * Loads all subparcels.
+   *
+   * <p>Placement happens on the calling thread, in subparcel order, as soon as each subparcel is
+   * decoded.
+   *
+   * @see #decodeSubparcelsAsync
+   */
+  protected void loadSubparcels(Context ctx, int gridSize, ProblemReporter problemReporter)
+      throws IOException, ParcelException.CorruptedParcelException {
+    var blockSink = BlockSink.of(ctx.level, ctx.flags);
+    for (var future : decodeSubparcelsAsync(ctx, gridSize)) {
+      placeSubparcel(ctx, future.join(), blockSink, problemReporter);
     }
-
-    loadSubparcels(ctx, 32, problemReporter);
+    blockSink.flush();
   }
 
-  protected void loadSubparcels(Context ctx, int gridSize, ProblemReporter problemReporter)
+  /**
+   * Loads the palette file of the parcel, or the shared palette of its repository if enabled and
+   * the parcel has no palette file of its own.
+   *
+   * @throws IOException If an I/O error occurs
+   * @throws ParcelException.CorruptedParcelException If the palette is missing or malformed
+   */
+  protected BlockPalette loadBlockPalette(Context ctx)
       throws IOException, ParcelException.CorruptedParcelException {
+    if (ctx.config.sharedPalette.get() && !Files.exists(ctx.blocksPaletteFile)) {
+      Path repoDir = ctx.config.getEnvironment().repoDir();
+      if (repoDir == null) {
+        throw new ParcelException.CorruptedParcelException(
+            "Parcel uses a shared block palette but is not in a repository: " + ctx.dataDir);
+      }
+      Path file = SharedBlockPalette.getFile(repoDir);
+      if (!Files.exists(file)) {
+        throw new ParcelException.CorruptedParcelException(
+            "Shared block palette not found: " + file);
+      }
+      return SharedBlockPalette.get(file).palette();
+    }
+    return BlockPalette.load(ctx.blocksPaletteFile);
+  }
+
+  /**
+   * Loads the palette, then starts reading and parsing every subparcel file on the common {@link
+   * ForkJoinPool}.
+   *
+   * @return One future per subparcel, in subparcel order
+   */
+  protected List<CompletableFuture<DecodedSubparcel>> decodeSubparcelsAsync(
+      Context ctx, int gridSize) throws IOException, ParcelException.CorruptedParcelException {
+
+    if (!Files.exists(ctx.blocksDir)) {
+      throw new ParcelException.CorruptedParcelException(
+          "Blocks directory not found: " + ctx.blocksDir);
+    }
 
-    if (!Files.exists(ctx.subparcelsDir)) {
+    boolean packed = Files.exists(ctx.subparcelPackFile);
+    if (!packed && !Files.exists(ctx.subparcelsDir)) {
       throw new ParcelException.CorruptedParcelException(
           "Subparcels directory not found: " + ctx.subparcelsDir);
     }
 
     if (ctx.config.usePalette.get()) {
-      ctx.blockPalette = BlockPalette.load(ctx.blocksPaletteFile);
+      ctx.blockPalette = loadBlockPalette(ctx);
+    }
+
+    @Nullable SubparcelPack pack = null;
+    @Nullable SubparcelFileIndex files = null;
+    if (packed) {
+      pack = SubparcelPack.open(ctx.subparcelPackFile);
+      ctx.subparcelPack = pack;
+    } else {
+      // One walk instead of building and probing two paths per subparcel
+      files = SubparcelFileIndex.scan(ctx.subparcelsDir);
     }
 
     // Split the parcel into subparcels
+    List<DecodedSubparcel> subparcels = new ArrayList<>();
     BlockPos anchorPos = new BlockPos(ctx.anchor);
     for (var localSubparcel : ParcellaUtils.subdivideParcel(ctx.parcelSize, anchorPos, gridSize)) {
       Vec3i coord = localSubparcel.getCoord(gridSize, anchorPos);
       long index = ZOrder3D.coordToIndexSigned(coord);
-      Path blockStateFile =
-          RadixTreePathGenerator.toPath(ctx.subparcelsDir, index, SUBPARCEL_BLOCK_STATE_SUFFIX);
-      if (Files.exists(blockStateFile)) {
-        // TODO if file not exist
-        loadBlockStates(ctx, blockStateFile, localSubparcel, problemReporter);
+      if (pack != null) {
+        subparcels.add(new DecodedSubparcel(localSubparcel, index, pack));
+      } else {
+        subparcels.add(
+            new DecodedSubparcel(
+                localSubparcel,
+                index,
+                Objects.requireNonNull(files).getBlockStateFile(index),
+                files.getBlockEntityFile(index)));
       }
+    }
 
-      Path blockEntityFile =
-          RadixTreePathGenerator.toPath(ctx.subparcelsDir, index, SUBPARCEL_BLOCK_ENTITY_SUFFIX);
-      if (Files.exists(blockEntityFile)) {
-        loadBlockEntities(ctx, blockEntityFile, localSubparcel, problemReporter);
+    Runnable onDecoded = () -> {};
+    if (pack != null) {
+      // Futures may be cancelled while their task is still reading, so count the tasks themselves
+      var openPack = pack;
+      var remaining = new AtomicInteger(subparcels.size());
+      onDecoded =
+          () -> {
+            if (remaining.decrementAndGet() == 0) {
+              closeSubparcelPack(openPack);
+            }
+          };
+      if (subparcels.isEmpty()) {
+        closeSubparcelPack(openPack);
       }
     }
+
+    List<CompletableFuture<DecodedSubparcel>> futures = new ArrayList<>(subparcels.size());
+    for (var decoded : subparcels) {
+      futures.add(decodeSubparcelAsync(ctx, decoded, onDecoded));
+    }
+    return futures;
+  }
+
+  /**
+   * Decodes a subparcel on the common {@link ForkJoinPool}.
+   *
+   * <p>Unlike {@link CompletableFuture#supplyAsync}, the task runs even if the future is cancelled
+   * before it starts, and only skips decoding. So {@code onFinished} is called exactly once, after
+   * the task no longer reads any file.
+   */
+  private CompletableFuture<DecodedSubparcel> decodeSubparcelAsync(
+      Context ctx, DecodedSubparcel decoded, Runnable onFinished) {
+    var future = new CompletableFuture<DecodedSubparcel>();
+    ForkJoinPool.commonPool()
+        .execute(
+            () -> {
+              try {
+                if (!future.isDone()) {
+                  future.complete(decodeSubparcel(ctx, decoded));
+                }
+              } catch (Throwable e) {
+                future.completeExceptionally(e);
+              } finally {
+                onFinished.run();
+              }
+            });
+    return future;
+  }
+
+  private static void closeSubparcelPack(SubparcelPack pack) {
+    try {
+      pack.close();
+    } catch (IOException e) {
+      LOGGER.warn("Error closing subparcel pack {}: {}", pack.file(), e.getMessage());
+    }
   }
 
   protected interface BlockStateLoader {
     void load(int localX, int localY, int localZ, BlockState localBlockState);
+
+    /** Loads a cuboid of identical block states, min and max coordinates are inclusive. */
+    default void loadRun(
+        int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState localBlockState) {
+      for (int y = minY; y <= maxY; y++) {
+        for (int x = minX; x <= maxX; x++) {
+          for (int z = minZ; z <= maxZ; z++) {
+            load(x, y, z, localBlockState);
+          }
+        }
+      }
+    }
   }
 
-  protected void loadBlockStates(
-      Context ctx, Path blockStateFile, Subparcel localSubparcel, ProblemReporter problemReporter) {
-    try {
-      byte[] bytes = Files.readAllBytes(blockStateFile);
-      SubparcelFormat subparcelFormat = detectSubparcelFormat(bytes);
-      var localPos = new BlockPos.MutableBlockPos();
-
-      BlockStateLoader blockStateLoader =
-          (localX, localY, localZ, localBlockState) -> {
-            BlockState worldBlockState = ctx.transform.apply(localBlockState);
-            localPos.set(
-                localSubparcel.originX + localX,
-                localSubparcel.originY + localY,
-                localSubparcel.originZ + localZ);
-            BlockPos worldPos = ctx.transform.apply(localPos);
-
-            ctx.level.setBlock(worldPos, worldBlockState, ctx.flags);
-            ctx.level.getChunk(worldPos).removeBlockEntity(worldPos);
-          };
+  /**
+   * Parsed content of one subparcel, waiting to be placed into the level.
+   *
+   * <p>Block states are buffered as cuboid runs in local space. Problems found while decoding are
+   * collected here and reported when the subparcel is placed, since problem reporters are not
+   * thread safe.
+   */
+  protected static final class DecodedSubparcel implements BlockStateLoader {
+    private static final int RUN_STRIDE = 7;
+
+    public final Subparcel subparcel;
+
+    /** Z-order index of the subparcel */
+    public final long index;
+
+    /** {@code null} if the subparcel has no block state file, or is packed */
+    public final @Nullable Path blockStateFile;
+
+    /** {@code null} if the subparcel has no block entity file, or is packed */
+    public final @Nullable Path blockEntityFile;
+
+    /** If not {@code null}, the subparcel is read from this pack instead of separate files */
+    public final @Nullable SubparcelPack pack;
+
+    /** Local block states referenced by runs */
+    private final List<BlockState> states = new ArrayList<>();
+
+    private final Reference2IntOpenHashMap<BlockState> stateIndices =
+        new Reference2IntOpenHashMap<>();
+
+    /** {@code minX, minY, minZ, maxX, maxY, maxZ, stateIndex} of each run */
+    private int[] runs = new int[RUN_STRIDE * 64];
+
+    private int runCount = 0;
+
+    public @Nullable BlockEntities blockEntities = null;
+
+    public final ProblemReporter.Collector problems = new ProblemReporter.Collector();
+
+    public DecodedSubparcel(
+        Subparcel subparcel,
+        long index,
+        @Nullable Path blockStateFile,
+        @Nullable Path blockEntityFile) {
+      this(subparcel, index, blockStateFile, blockEntityFile, null);
+    }
+
+    public DecodedSubparcel(Subparcel subparcel, long index, SubparcelPack pack) {
+      this(subparcel, index, null, null, pack);
+    }
+
+    private DecodedSubparcel(
+        Subparcel subparcel,
+        long index,
+        @Nullable Path blockStateFile,
+        @Nullable Path blockEntityFile,
+        @Nullable SubparcelPack pack) {
+      this.subparcel = subparcel;
+      this.index = index;
+      this.blockStateFile = blockStateFile;
+      this.blockEntityFile = blockEntityFile;
+      this.pack = pack;
+      stateIndices.defaultReturnValue(-1);
+    }
+
+    /**
+     * File the block entities were read from, used in problem reports.
+     *
+     * @return The pack file if packed, otherwise {@link #blockEntityFile}
+     */
+    public @Nullable Path getBlockEntitySource() {
+      return pack != null ? pack.file() : blockEntityFile;
+    }
+
+    @Override
+    public void load(int localX, int localY, int localZ, BlockState localBlockState) {
+      loadRun(localX, localY, localZ, localX, localY, localZ, localBlockState);
+    }
+
+    @Override
+    public void loadRun(
+        int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState localBlockState) {
+      int stateIndex = stateIndices.getInt(localBlockState);
+      if (stateIndex == -1) {
+        stateIndex = states.size();
+        states.add(localBlockState);
+        stateIndices.put(localBlockState, stateIndex);
+      }
+
+      int offset = runCount * RUN_STRIDE;
+      if (offset + RUN_STRIDE > runs.length) {
+        runs = Arrays.copyOf(runs, runs.length * 2);
+      }
+      runs[offset] = minX;
+      runs[offset + 1] = minY;
+      runs[offset + 2] = minZ;
+      runs[offset + 3] = maxX;
+      runs[offset + 4] = maxY;
+      runs[offset + 5] = maxZ;
+      runs[offset + 6] = stateIndex;
+      runCount++;
+    }
+
+    /** Replays all buffered runs, in the order they were loaded. */
+    public void forEachRun(BlockStateLoader loader) {
+      for (int i = 0; i < runCount; i++) {
+        int offset = i * RUN_STRIDE;
+        loader.loadRun(
+            runs[offset],
+            runs[offset + 1],
+            runs[offset + 2],
+            runs[offset + 3],
+            runs[offset + 4],
+            runs[offset + 5],
+            states.get(runs[offset + 6]));
+      }
+    }
+  }
+
+  /**
+   * Reads and parses the files of a subparcel without touching the level.
+   *
+   * <p>May run on any thread.
+   *
+   * @return The given decoded subparcel
+   */
+  protected DecodedSubparcel decodeSubparcel(Context ctx, DecodedSubparcel decoded) {
+    if (decoded.pack != null) {
+      decodePackedSubparcel(ctx, decoded.pack, decoded);
+      return decoded;
+    }
+
+    if (decoded.blockStateFile != null) {
+      // TODO if file not exist
+      loadBlockStates(ctx, decoded.blockStateFile, decoded.subparcel, decoded, decoded.problems);
+    }
+
+    if (decoded.blockEntityFile != null) {
+      decoded.blockEntities = readBlockEntities(ctx, decoded.blockEntityFile, decoded.problems);
+    }
+    return decoded;
+  }
 
-      switch (subparcelFormat) {
-        case RLE3D -> loadSubparcelBlockStatesRLE3D(ctx, bytes, blockStateLoader, problemReporter);
-        case FLAT ->
-            loadSubparcelBlockStatesFLAT(
-                ctx, localSubparcel, bytes, blockStateLoader, problemReporter);
+  /**
+   * Reads and parses the entries of a subparcel in a pack without touching the level.
+   *
+   * <p>May run on any thread.
+   */
+  protected void decodePackedSubparcel(Context ctx, SubparcelPack pack, DecodedSubparcel decoded) {
+    var blockStates = pack.get(SubparcelPack.Kind.BLOCK_STATES, decoded.index);
+    if (blockStates != null) {
+      try {
+        ByteBuffer data = pack.read(blockStates, READ_BUFFERS.get());
+        loadBlockStates(ctx, data, decoded.subparcel, decoded, decoded.problems);
+      } catch (IOException e) {
+        decoded.problems.report(
+            () -> "Error reading subparcel " + decoded.index + " from " + pack.file() + ": " + e);
       }
+    }
+
+    var blockEntities = pack.get(SubparcelPack.Kind.BLOCK_ENTITIES, decoded.index);
+    if (blockEntities != null) {
+      try {
+        ByteBuffer data = pack.read(blockEntities, READ_BUFFERS.get());
+        decoded.blockEntities =
+            parseBlockEntities(
+                ctx.config.blockEntityDataFormat.get().read(data), pack.file(), decoded.problems);
+      } catch (IOException e) {
+        decoded.problems.report(
+            () ->
+                "Error reading block entities of subparcel "
+                    + decoded.index
+                    + " from "
+                    + pack.file()
+                    + ": "
+                    + e);
+      }
+    }
+  }
+
+  /**
+   * Places a decoded subparcel into the level.
+   *
+   * <p>Must run on the thread that owns the level.
+   *
+   * @param blockSink Receives block states in world space. Not flushed by this method.
+   */
+  protected void placeSubparcel(
+      Context ctx, DecodedSubparcel decoded, BlockSink blockSink, ProblemReporter problemReporter) {
+    var localSubparcel = decoded.subparcel;
+
+    decoded.forEachRun(
+        new BlockStateLoader() {
+          @Override
+          public void load(int localX, int localY, int localZ, BlockState localBlockState) {
+            loadRun(localX, localY, localZ, localX, localY, localZ, localBlockState);
+          }
+
+          @Override
+          public void loadRun(
+              int minX,
+              int minY,
+              int minZ,
+              int maxX,
+              int maxY,
+              int maxZ,
+              BlockState localBlockState) {
+            BoundingBox box =
+                getRunWorldBox(ctx, localSubparcel, minX, minY, minZ, maxX, maxY, maxZ);
+            blockSink.fill(
+                box.minX(),
+                box.minY(),
+                box.minZ(),
+                box.maxX(),
+                box.maxY(),
+                box.maxZ(),
+                ctx.transform.apply(localBlockState));
+          }
+        });
+
+    Path blockEntitySource = decoded.getBlockEntitySource();
+    if (decoded.blockEntities != null && blockEntitySource != null) {
+      placeBlockEntities(
+          ctx, blockEntitySource, localSubparcel, decoded.blockEntities, problemReporter);
+    }
+
+    if (!decoded.problems.isEmpty()) {
+      problemReporter.report(decoded.problems::getTreeReport);
+    }
+  }
+
+  /**
+   * Transforms a run in subparcel local space to world space. Mirror and rotation map a cuboid to a
+   * cuboid.
+   *
+   * @return Bounding box of the run in world space
+   */
+  protected BoundingBox getRunWorldBox(
+      Context ctx,
+      Subparcel localSubparcel,
+      int minX,
+      int minY,
+      int minZ,
+      int maxX,
+      int maxY,
+      int maxZ) {
+    return BoundingBox.fromCorners(
+        ctx.transform.apply(
+            new BlockPos(
+                localSubparcel.originX + minX,
+                localSubparcel.originY + minY,
+                localSubparcel.originZ + minZ)),
+        ctx.transform.apply(
+            new BlockPos(
+                localSubparcel.originX + maxX,
+                localSubparcel.originY + maxY,
+                localSubparcel.originZ + maxZ)));
+  }
 
+  /**
+   * Reads block states of a subparcel file and passes them to the given loader.
+   *
+   * @param blockStateLoader Receives block states in local space
+   */
+  protected void loadBlockStates(
+      Context ctx,
+      Path blockStateFile,
+      Subparcel localSubparcel,
+      BlockStateLoader blockStateLoader,
+      ProblemReporter problemReporter) {
+    try {
+      ByteBuffer data = readBlockStateFile(ctx, blockStateFile);
+      loadBlockStates(ctx, data, localSubparcel, blockStateLoader, problemReporter);
     } catch (IOException e) {
       problemReporter.report(() -> "Error reading subparcel block state file: " + blockStateFile);
     }
   }
 
+  /**
+   * Parses the content of a subparcel block state file and passes block states to the given
+   * loader.
+   *
+   * @param blockStateLoader Receives block states in local space
+   */
+  protected void loadBlockStates(
+      Context ctx,
+      ByteBuffer data,
+      Subparcel localSubparcel,
+      BlockStateLoader blockStateLoader,
+      ProblemReporter problemReporter) {
+    SubparcelFormat subparcelFormat = detectSubparcelFormat(data);
+
+    switch (subparcelFormat) {
+      case RLE3D -> loadSubparcelBlockStatesRLE3D(ctx, data, blockStateLoader, problemReporter);
+      case BINARY -> loadSubparcelBlockStatesBINARY(ctx, data, blockStateLoader, problemReporter);
+      case FLAT ->
+          loadSubparcelBlockStatesFLAT(
+              ctx, localSubparcel, data, blockStateLoader, problemReporter);
+    }
+  }
+
+  /**
+   * Reads the content of a subparcel block state file without copying it onto the heap.
+   *
+   * <p>Files are read into a direct buffer owned by the current thread, or mapped into memory if
+   * {@link Config#mapSubparcelFiles} is enabled and the file is at least {@link
+   * #MAP_SUBPARCEL_FILE_THRESHOLD} bytes.
+   *
+   * @return Content of the file. If it was read into the buffer of the current thread, it is only
+   *     valid until the next call on the same thread.
+   * @throws IOException If an I/O error occurs
+   */
+  protected ByteBuffer readBlockStateFile(Context ctx, Path blockStateFile) throws IOException {
+    try (var channel = FileChannel.open(blockStateFile, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (ctx.config.mapSubparcelFiles.get() && size >= MAP_SUBPARCEL_FILE_THRESHOLD) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      return READ_BUFFERS.get().readFrom(channel);
+    }
+  }
+
   protected void loadSubparcelBlockStatesRLE3D(
       Context ctx,
-      byte[] bytes,
+      ByteBuffer data,
       BlockStateLoader blockStateLoader,
       ProblemReporter problemReporter) {
 
@@ -210,8 +689,11 @@ public class ParcellaD32Loader
     boolean skipThisLine = false;
     byte sepChar = 0; // 0 = not seen yet, '~' = palette ID, '=' = inline block state
 
+    var paletteStates = ctx.blockPalette == null ? null : ctx.blockPalette.getStatesById();
+
     for_each_byte:
-    for (byte b : bytes) {
+    for (int i = data.position(), end = data.limit(); i < end; i++) {
+      byte b = data.get(i);
       if (skipThisLine && b == '\n') {
         skipThisLine = false;
         continue;
@@ -281,18 +763,12 @@ public class ParcellaD32Loader
                   if (paletteId == -1) {
                     break to_report_invalid_line;
                   }
-                  for (int y = y0; y <= y1; y++) {
-                    for (int x = x0; x <= x1; x++) {
-                      for (int z = z0; z <= z1; z++) {
-                        BlockState blockState = ctx.blockPalette.get(paletteId);
-                        if (blockState == null) {
-                          problemReporter.report(
-                              () -> String.format("Unknown block palette id %d", paletteId));
-                          continue;
-                        }
-                        blockStateLoader.load(x, y, z, blockState);
-                      }
-                    }
+                  BlockState blockState = ctx.blockPalette.get(paletteStates, paletteId);
+                  if (blockState == null) {
+                    problemReporter.report(
+                        () -> String.format("Unknown block palette id %d", paletteId));
+                  } else {
+                    blockStateLoader.loadRun(x0, y0, z0, x1, y1, z1, blockState);
                   }
                 }
                 case '=' -> {
@@ -311,13 +787,7 @@ public class ParcellaD32Loader
                   }
                   BlockState blockState = parseResult.unwrap();
 
-                  for (int y = y0; y <= y1; y++) {
-                    for (int x = x0; x <= x1; x++) {
-                      for (int z = z0; z <= z1; z++) {
-                        blockStateLoader.load(x, y, z, blockState);
-                      }
-                    }
-                  }
+                  blockStateLoader.loadRun(x0, y0, z0, x1, y1, z1, blockState);
                 }
               }
 
@@ -344,7 +814,7 @@ public class ParcellaD32Loader
   protected void loadSubparcelBlockStatesFLAT(
       Context ctx,
       Subparcel localSubparcel,
-      byte[] bytes,
+      ByteBuffer data,
       BlockStateLoader blockStateLoader,
       ProblemReporter problemReporter) {
     int sizeX = localSubparcel.sizeX;
@@ -355,8 +825,10 @@ public class ParcellaD32Loader
     byte buffLen = 0;
 
     boolean usePalette = ctx.blockPalette != null;
+    var paletteStates = usePalette ? ctx.blockPalette.getStatesById() : null;
     int blockIndex = 0;
-    for (byte b : bytes) {
+    for (int i = data.position(), end = data.limit(); i < end; i++) {
+      byte b = data.get(i);
       switch (b) {
         case '\n' -> {
           int x = blockIndex / (sizeY * sizeZ);
@@ -365,7 +837,7 @@ public class ParcellaD32Loader
 
           if (usePalette) {
             var paletteId = HexUtils.parsePositive(buff, 0, buffLen);
-            BlockState blockState = ctx.blockPalette.get(paletteId);
+            BlockState blockState = ctx.blockPalette.get(paletteStates, paletteId);
             if (blockState == null) {
               problemReporter.report(() -> String.format("Unknown block palette id %d", paletteId));
               continue;
@@ -393,13 +865,133 @@ public class ParcellaD32Loader
     }
   }
 
+  /**
+   * @see SubparcelFormat#BINARY
+   * @see ParcellaD32Saver#encodeSubparcelBINARY
+   */
+  protected void loadSubparcelBlockStatesBINARY(
+      Context ctx,
+      ByteBuffer data,
+      BlockStateLoader blockStateLoader,
+      ProblemReporter problemReporter) {
+    try {
+      var buffer = data.slice();
+      buffer.position(BINARY_SUBPARCEL_MAGIC.length);
+
+      int version = buffer.get() & 0xFF;
+      if (version != BINARY_SUBPARCEL_VERSION) {
+        problemReporter.report(() -> "Unsupported binary subparcel version: " + version);
+        return;
+      }
+
+      int flags = buffer.get() & 0xFF;
+
+      if ((flags & BINARY_SUBPARCEL_FLAG_CHECKSUM) != 0) {
+        int checksumOffset = buffer.limit() - Integer.BYTES;
+        if (checksumOffset < buffer.position()) {
+          problemReporter.report(() -> "Binary subparcel is truncated");
+          return;
+        }
+        var crc = new CRC32();
+        crc.update(buffer.slice(0, checksumOffset));
+        if ((int) crc.getValue() != buffer.getInt(checksumOffset)) {
+          problemReporter.report(() -> "Binary subparcel checksum mismatch");
+          return;
+        }
+        buffer.limit(checksumOffset);
+      }
+
+      // Block states referenced by values, or null if values are palette ids
+      @Nullable List<@Nullable BlockState> states = null;
+      @Nullable BlockState[] paletteStates = null;
+      if ((flags & BINARY_SUBPARCEL_FLAG_PALETTE) != 0) {
+        if (ctx.blockPalette == null) {
+          problemReporter.report(() -> "Palette IDs found but no palette is loaded");
+          return;
+        }
+        paletteStates = ctx.blockPalette.getStatesById();
+      } else {
+        int stateCount = VarIntUtils.read(buffer);
+        states = new ArrayList<>(Math.min(stateCount, buffer.remaining()));
+        for (int i = 0; i < stateCount; i++) {
+          int length = VarIntUtils.read(buffer);
+          if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+          }
+          String stateStr =
+              StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), length)).toString();
+          buffer.position(buffer.position() + length);
+
+          switch (BlockPalette.parseBlockState(stateStr)) {
+            case Result.Ok(BlockState blockState) -> states.add(blockState);
+            case Result.Err(String msg) -> {
+              problemReporter.report(
+                  () -> String.format("Failed to parse block state '%s': %s", stateStr, msg));
+              states.add(null);
+            }
+          }
+        }
+      }
+
+      int runCount = VarIntUtils.read(buffer);
+      for (int i = 0; i < runCount; i++) {
+        int packed = VarIntUtils.read(buffer);
+        int min = packed >>> 1;
+        int x0 = min & 0x3F;
+        int y0 = (min >>> 6) & 0x3F;
+        int z0 = (min >>> 12) & 0x3F;
+        int x1 = x0;
+        int y1 = y0;
+        int z1 = z0;
+        if ((packed & 1) != 0) {
+          int extent = VarIntUtils.read(buffer);
+          x1 += extent & 0x3F;
+          y1 += (extent >>> 6) & 0x3F;
+          z1 += (extent >>> 12) & 0x3F;
+        }
+
+        int value = VarIntUtils.read(buffer);
+        BlockState blockState;
+        if (states == null) {
+          blockState = ctx.blockPalette.get(paletteStates, value);
+        } else {
+          blockState = value < states.size() ? states.get(value) : null;
+        }
+
+        if (blockState == null) {
+          problemReporter.report(() -> String.format("Unknown block state value %d", value));
+          continue;
+        }
+        blockStateLoader.loadRun(x0, y0, z0, x1, y1, z1, blockState);
+      }
+
+      if (buffer.hasRemaining()) {
+        problemReporter.report(
+            () -> String.format("Binary subparcel has %d trailing bytes", buffer.remaining()));
+      }
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      problemReporter.report(() -> "Binary subparcel is truncated or invalid: " + e);
+    }
+  }
+
   /** Note: If the file is invalid, the returned value is undefined. */
-  protected static SubparcelFormat detectSubparcelFormat(byte[] bytes) {
+  protected static SubparcelFormat detectSubparcelFormat(ByteBuffer data) {
+    var bytes = data.slice();
+    int length = bytes.remaining();
+    if (length >= BINARY_SUBPARCEL_MAGIC.length
+        && bytes
+            .slice(0, BINARY_SUBPARCEL_MAGIC.length)
+            .equals(ByteBuffer.wrap(BINARY_SUBPARCEL_MAGIC))) {
+      return SubparcelFormat.BINARY;
+    }
+
     do {
-      if (bytes.length < 8) {
+      if (length < 8) {
         break;
       }
-      if (bytes[3] == '=' || bytes[6] == '=' || bytes[3] == '~' || bytes[6] == '~') {
+      byte b3 = bytes.get(3);
+      byte b6 = bytes.get(6);
+      if (b3 == '=' || b6 == '=' || b3 == '~' || b6 == '~') {
         return SubparcelFormat.RLE3D;
       }
     } while (false);
@@ -407,144 +999,279 @@ public class ParcellaD32Loader
     return SubparcelFormat.FLAT;
   }
 
-  protected void loadBlockEntities(
+  /**
+   * Reads and parses a block entity file, without touching the level.
+   *
+   * @return Parsed block entities, or {@code null} if the file is invalid
+   */
+  protected @Nullable BlockEntities readBlockEntities(
+      Context ctx, Path blockEntityFile, ProblemReporter problemReporter) {
+    return parseBlockEntities(
+        ctx.config.blockEntityDataFormat.get().read(blockEntityFile),
+        blockEntityFile,
+        problemReporter);
+  }
+
+  /**
+   * @param source File the tag was read from, for problem reports
+   * @return Parsed block entities, or {@code null} if the tag is invalid
+   */
+  protected @Nullable BlockEntities parseBlockEntities(
+      Result<CompoundTag, String> read, Path source, ProblemReporter problemReporter) {
+    return switch (read) {
+      case Result.Err(String err) -> {
+        problemReporter.report(() -> "Invalid file: " + source + " " + err);
+        yield null;
+      }
+      case Result.Ok(CompoundTag tag) -> {
+        var blockEntities = BlockEntities.fromTag(tag);
+        if (blockEntities == null) {
+          problemReporter.report(() -> "Invalid block entities tag in " + source);
+        }
+        yield blockEntities;
+      }
+    };
+  }
+
+  /** Applies block entity data to block entities that already exist in the level. */
+  protected void placeBlockEntities(
       Context ctx,
       Path blockEntityFile,
       Subparcel localSubparcel,
+      BlockEntities blockEntities,
       ProblemReporter problemReporter) {
+    for (var entry : blockEntities.blockEntities()) {
+      BlockPos worldPos =
+          getBlockEntityWorldPos(ctx, blockEntityFile, localSubparcel, entry, problemReporter);
+      if (worldPos != null) {
+        placeBlockEntity(ctx, worldPos, entry.data(), problemReporter);
+      }
+    }
+  }
 
-    BlockEntities blockEntities =
-        switch (ctx.config.blockEntityDataFormat.get().read(blockEntityFile)) {
-          case Result.Err(String err) -> {
-            problemReporter.report(() -> "Invalid file: " + blockEntityFile + " " + err);
-            yield null;
-          }
-          case Result.Ok(CompoundTag tag) -> {
-            var parseResult = BlockEntities.CODEC.parse(NbtOps.INSTANCE, tag);
-            if (parseResult.isError()) {
-              problemReporter.report(() -> "Invalid block entities tag in " + blockEntityFile);
-              yield null;
-            }
-            yield parseResult.getOrThrow();
-          }
-        };
-
-    if (blockEntities == null) {
-      return;
+  /**
+   * @return World position of the block entity entry, or {@code null} if it is out of the
+   *     subparcel
+   */
+  protected @Nullable BlockPos getBlockEntityWorldPos(
+      Context ctx,
+      Path blockEntityFile,
+      Subparcel localSubparcel,
+      BlockEntityEntry entry,
+      ProblemReporter problemReporter) {
+    var localPos = entry.pos();
+    int lx = localPos.getX();
+    int ly = localPos.getY();
+    int lz = localPos.getZ();
+
+    // Check coordinates are within subparcel range
+    if (lx < 0
+        || lx >= localSubparcel.sizeX
+        || ly < 0
+        || ly >= localSubparcel.sizeY
+        || lz < 0
+        || lz >= localSubparcel.sizeZ) {
+      problemReporter.report(
+          () ->
+              String.format(
+                  "Block entity entry at (%d, %d, %d) is out of subparcel range in %s",
+                  lx, ly, lz, blockEntityFile));
+      return null;
     }
 
-    var list = blockEntities.blockEntities();
+    return ctx.transform.apply(
+        new BlockPos(
+            localSubparcel.originX + lx, localSubparcel.originY + ly, localSubparcel.originZ + lz));
+  }
 
-    for (var entry : list) {
-      var localPos = entry.pos();
-      int lx = localPos.getX();
-      int ly = localPos.getY();
-      int lz = localPos.getZ();
+  /** Applies block entity data to the block entity at the given position, if there is one. */
+  protected void placeBlockEntity(
+      Context ctx, BlockPos worldPos, CompoundTag data, ProblemReporter problemReporter) {
+    var blockEntity = ctx.level.getBlockEntity(worldPos);
+    if (blockEntity != null) {
+      blockEntity.loadWithComponents(
+          TagValueInput.create(problemReporter, ctx.level.registryAccess(), data));
+    }
+  }
 
-      // Check coordinates are within subparcel range
-      if (lx < 0
-          || lx >= localSubparcel.sizeX
-          || ly < 0
-          || ly >= localSubparcel.sizeY
-          || lz < 0
-          || lz >= localSubparcel.sizeZ) {
-        problemReporter.report(
-            () ->
-                String.format(
-                    "Block entity entry at (%d, %d, %d) is out of subparcel range in %s",
-                    lx, ly, lz, blockEntityFile));
-        continue;
-      }
+  /**
+   * Reads and parses every entity file on the common {@link ForkJoinPool}.
+   *
+   * @see #joinEntities
+   */
+  protected CompletableFuture<DecodedEntities> decodeEntitiesAsync(Context ctx) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return decodeEntities(ctx);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        },
+        ForkJoinPool.commonPool());
+  }
 
-      var worldPos =
-          ctx.transform.apply(
-              new BlockPos(
-                  localSubparcel.originX + lx,
-                  localSubparcel.originY + ly,
-                  localSubparcel.originZ + lz));
-
-      var blockEntity = ctx.level.getBlockEntity(worldPos);
-      if (blockEntity != null) {
-        blockEntity.loadWithComponents(
-            TagValueInput.create(problemReporter, ctx.level.registryAccess(), entry.data()));
+  /**
+   * Waits for {@link #decodeEntitiesAsync}.
+   *
+   * @throws IOException If the entities directory could not be listed
+   */
+  protected static DecodedEntities joinEntities(CompletableFuture<DecodedEntities> future)
+      throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException io) {
+        throw io.getCause();
       }
+      throw e;
+    }
+  }
+
+  /**
+   * Entities read from the entity files of a parcel, waiting to be spawned.
+   *
+   * <p>Problems found while decoding are collected here and reported when the entities are spawned,
+   * since problem reporters are not thread safe.
+   */
+  protected static final class DecodedEntities {
+    public final List<DecodedEntity> entities = new ArrayList<>();
+    public final ProblemReporter.Collector problems = new ProblemReporter.Collector();
+  }
+
+  /**
+   * An entity in world space, waiting to be spawned.
+   *
+   * @param nbt Entity data, with {@code Pos} already set to the world position
+   * @param source File the entity was read from, for problem reports
+   */
+  protected record DecodedEntity(CompoundTag nbt, Vec3 worldPos, Path source) {
+    public int chunkX() {
+      return SectionPos.posToSectionCoord(worldPos.x);
+    }
+
+    public int chunkZ() {
+      return SectionPos.posToSectionCoord(worldPos.z);
     }
   }
 
-  protected void loadEntities(Context ctx, ProblemReporter problemReporter) throws IOException {
+  /**
+   * Reads and parses every entity file in the entities directory. Does not touch the level, so it
+   * may run on any thread.
+   */
+  protected DecodedEntities decodeEntities(Context ctx) throws IOException {
+    var decoded = new DecodedEntities();
     if (!Files.exists(ctx.entitiesDir)) {
+      return decoded;
+    }
+
+    String suffix = ctx.config.entityDataFormat.get().getSuffix();
+    List<Path> files;
+    try (var paths =
+        Files.find(
+            ctx.entitiesDir,
+            Integer.MAX_VALUE,
+            (path, attributes) ->
+                attributes.isRegularFile() && path.getFileName().toString().endsWith(suffix))) {
+      files = paths.sorted().toList();
+    }
+
+    for (Path file : files) {
+      decodeEntityFile(ctx, file, decoded);
+    }
+    return decoded;
+  }
+
+  /**
+   * Reads a file holding either one entity, or all entities of one type under {@value
+   * #PACKED_ENTITIES_KEY}.
+   *
+   * @see ParcellaD32Saver#writeEntities
+   * @see ParcellaD32Saver#writePackedEntities
+   */
+  protected void decodeEntityFile(Context ctx, Path path, DecodedEntities decoded) {
+    var parseResult = ctx.config.entityDataFormat.get().read(path);
+    if (parseResult.isErr()) {
+      decoded.problems.report(
+          () -> "Failed to read entity file: " + path + " " + parseResult.unwrapErr());
       return;
     }
 
-    try (var stream = Files.list(ctx.entitiesDir)) {
-      for (var namespaceDir : stream.toList()) {
-        var entityNamespace = namespaceDir.getFileName().toString();
-        try (var stream2 =
-            Files.list(namespaceDir)
-                .filter(path -> path.endsWith(ctx.config.entityDataFormat.get().getSuffix()))) {
-          for (var entityFile : stream2.toList()) {
-            var entityKeyPath = entityFile.getFileName().toString();
-            loadEntity(
-                ctx,
-                Identifier.fromNamespaceAndPath(entityNamespace, entityKeyPath),
-                entityFile,
-                problemReporter);
-          }
+    CompoundTag tag = parseResult.unwrap();
+    if (tag.get(PACKED_ENTITIES_KEY) instanceof ListTag list) {
+      for (Tag element : list) {
+        if (element instanceof CompoundTag wrapperTag) {
+          decodeEntity(ctx, wrapperTag, path, decoded);
+        } else {
+          decoded.problems.report(() -> "Invalid entity in " + path + ": " + element);
         }
       }
+    } else {
+      decodeEntity(ctx, tag, path, decoded);
     }
   }
 
   /**
-   * @see ParcellaD32Saver#saveEntities
+   * @param wrapperTag Entity tag written by {@link ParcellaD32Saver#getEntityNbt}
+   * @param path File the tag was read from, for problem reports
    */
-  protected void loadEntity(
-      Context ctx, Identifier identifier, Path path, ProblemReporter problemReporter) {
-    try {
-      var parseResult = ctx.config.entityDataFormat.get().read(path);
-      if (parseResult.isErr()) {
-        problemReporter.report(
-            () -> "Failed to read entity file: " + path + " " + parseResult.unwrapErr());
-        return;
-      }
+  protected void decodeEntity(
+      Context ctx, CompoundTag wrapperTag, Path path, DecodedEntities decoded) {
+    var entityNbt = wrapperTag.getCompound("nbt").orElse(null);
+    if (entityNbt == null) {
+      decoded.problems.report(() -> "Missing 'nbt' field in entity data from " + path);
+      return;
+    }
 
-      CompoundTag wrapperTag = parseResult.unwrap();
+    var localPosList = wrapperTag.getList("pos").orElse(null);
+    if (localPosList == null) {
+      decoded.problems.report(() -> "Missing 'pos' field in entity data from " + path);
+      return;
+    }
 
-      CompoundTag entityNbt =
-          wrapperTag
-              .getCompound("nbt")
-              .orElseThrow(() -> new IllegalStateException("Missing 'nbt' field in entity data"));
+    Vec3 localPos =
+        new Vec3(
+            localPosList.getDouble(0).orElse(0.0),
+            localPosList.getDouble(1).orElse(0.0),
+            localPosList.getDouble(2).orElse(0.0));
 
-      ListTag localPosList =
-          wrapperTag
-              .getList("pos")
-              .orElseThrow(() -> new IllegalStateException("Missing 'pos' field in entity data"));
+    // Transform position from local space to world space
+    Vec3 worldPos = ctx.transform.apply(localPos);
 
-      Vec3 localPos =
-          new Vec3(
-              localPosList.getDouble(0).orElse(0.0),
-              localPosList.getDouble(1).orElse(0.0),
-              localPosList.getDouble(2).orElse(0.0));
+    // Override position in entity NBT
+    ListTag worldPosList = new ListTag();
+    worldPosList.add(DoubleTag.valueOf(worldPos.x));
+    worldPosList.add(DoubleTag.valueOf(worldPos.y));
+    worldPosList.add(DoubleTag.valueOf(worldPos.z));
+    entityNbt.put("Pos", worldPosList);
 
-      // Transform position from local space to world space
-      Vec3 worldPos = ctx.transform.apply(localPos);
+    decoded.entities.add(new DecodedEntity(entityNbt, worldPos, path));
+  }
 
-      // Override position in entity NBT
-      ListTag worldPosList = new ListTag();
-      worldPosList.add(DoubleTag.valueOf(worldPos.x));
-      worldPosList.add(DoubleTag.valueOf(worldPos.y));
-      worldPosList.add(DoubleTag.valueOf(worldPos.z));
-      entityNbt.put("Pos", worldPosList);
+  /** Spawns all decoded entities at once, and reports problems found while decoding them. */
+  protected void spawnEntities(
+      Context ctx, DecodedEntities decoded, ProblemReporter problemReporter) {
+    if (!decoded.problems.isEmpty()) {
+      problemReporter.report(decoded.problems::getTreeReport);
+    }
+    for (var entity : decoded.entities) {
+      spawnEntity(ctx, entity, problemReporter);
+    }
+  }
 
+  /** Creates the entity and adds it to the level. Must be called on the server thread. */
+  protected void spawnEntity(Context ctx, DecodedEntity decoded, ProblemReporter problemReporter) {
+    try {
       Entity entity =
           EntityType.loadEntityRecursive(
-              entityNbt, ctx.level.getLevel(), EntitySpawnReason.LOAD, EntityProcessor.NOP);
+              decoded.nbt(), ctx.level.getLevel(), EntitySpawnReason.LOAD, EntityProcessor.NOP);
       if (entity != null) {
         ctx.level.addFreshEntity(entity);
       }
     } catch (Exception e) {
-      LOGGER.error("Error loading entity from {}: {}", path, e.getMessage(), e);
-      problemReporter.report(() -> "Error loading entity from " + path + ": " + e.getMessage());
+      LOGGER.error("Error loading entity from {}: {}", decoded.source(), e.getMessage(), e);
+      problemReporter.report(
+          () -> "Error loading entity from " + decoded.source() + ": " + e.getMessage());
     }
   }
 }
@@ -4,25 +4,38 @@ import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelFormat;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelTransform;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockPalette;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockSnapshot;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockSource;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.NbtFormat;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.SharedBlockPalette;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.Subparcel;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.SubparcelFormat;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils.ParcellaUtils;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils.RadixTreePathGenerator;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils.ZOrder3D;
 import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelStorage;
+import io.github.leawind.gitparcel.common.utils.GrowableByteBuffer;
+import io.github.leawind.gitparcel.common.utils.algorithms.PackedRuns;
 import io.github.leawind.gitparcel.common.utils.algorithms.VolumetricRLE;
 import io.github.leawind.gitparcel.common.utils.numbase.Base32Utils;
 import io.github.leawind.gitparcel.common.utils.numbase.HexUtils;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.IdentityHashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Vec3i;
 import net.minecraft.core.registries.BuiltInRegistries;
@@ -30,15 +43,14 @@ import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.DoubleTag;
 import net.minecraft.nbt.IntTag;
 import net.minecraft.nbt.ListTag;
-import net.minecraft.nbt.NbtOps;
 import net.minecraft.resources.Identifier;
 import net.minecraft.util.ProblemReporter;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.decoration.painting.Painting;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
 import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
 import net.minecraft.world.level.storage.TagValueOutput;
 import net.minecraft.world.phys.AABB;
@@ -48,13 +60,54 @@ import org.jspecify.annotations.Nullable;
 public class ParcellaD32Saver
     implements ParcellaD32Format, ParcelFormat.Saver<ParcellaD32Format.Config> {
 
+  /** Block state files are built in these buffers, one per saving thread, and reused. */
+  private static final ThreadLocal<GrowableByteBuffer> BUFFERS =
+      GrowableByteBuffer.perThread(64 * 1024);
+
+  /** Block entity files are built in these buffers, one per saving thread, and reused. */
+  private static final ThreadLocal<GrowableByteBuffer> BLOCK_ENTITY_BUFFERS =
+      GrowableByteBuffer.perThread(16 * 1024);
+
+  /**
+   * Orders entity tags of {@link #getEntityNbt} by position (y, x, z), then by UUID, so the order
+   * does not depend on the order the level returns entities in.
+   */
+  protected static final Comparator<CompoundTag> ENTITY_COMPARATOR =
+      Comparator.comparingDouble((CompoundTag tag) -> getEntityPos(tag, 1))
+          .thenComparingDouble(tag -> getEntityPos(tag, 0))
+          .thenComparingDouble(tag -> getEntityPos(tag, 2))
+          .thenComparing(
+              tag -> tag.getCompoundOrEmpty("nbt").getIntArray("UUID").orElse(new int[0]),
+              Arrays::compare);
+
   public static final class Context extends SaveContext<Config> {
     public final Path blocksDir;
     public final Path blocksPaletteFile;
+
+    /**
+     * Hash index of the last save, in the local cache dir of the parcel, so it is never committed.
+     * {@code null} if the parcel has no cache dir, then all subparcels are written.
+     */
+    public final @Nullable Path subparcelHashesFile;
+
+    public final Path subparcelsDir;
+    public final Path subparcelPackFile;
     public final Path entitiesDir;
 
     public @Nullable BlockPalette blockPalette = null;
 
+    /** If not {@code null}, {@link #blockPalette} is the palette of this shared palette */
+    public @Nullable SharedBlockPalette sharedBlockPalette = null;
+
+    /** If not {@code null}, subparcels are written into this pack instead of separate files */
+    public SubparcelPack.@Nullable Writer subparcelPack = null;
+
+    /** Hashes of subparcels written by the last save, or {@code null} to write all subparcels */
+    public @Nullable SubparcelHashIndex previousHashes = null;
+
+    /** Where block states and block entities are read from. Defaults to the live level. */
+    public BlockSource blocks;
+
     public Context(
         Level level,
         Vec3i parcelSize,
@@ -66,10 +119,30 @@ public class ParcellaD32Saver
       super(level, parcelSize, transform, anchor, dataDir, ignoreEntities, config);
       blocksDir = dataDir.resolve(BLOCKS_DIR_NAME);
       blocksPaletteFile = blocksDir.resolve(PALETTE_FILE_NAME);
+      Path cacheDir = config.getEnvironment().cacheDir();
+      subparcelHashesFile = cacheDir == null ? null : cacheDir.resolve(SUBPARCEL_HASHES_FILE_NAME);
+      subparcelsDir = blocksDir.resolve(SUBPARCELS_DIR_NAME);
+      subparcelPackFile = blocksDir.resolve(SUBPARCEL_PACK_FILE_NAME);
       entitiesDir = dataDir.resolve(ENTITIES_DIR_NAME);
+      blocks = BlockSource.of(level);
+    }
+
+    /**
+     * @return Bounding box of the parcel in world space
+     */
+    public BoundingBox getWorldBoundingBox() {
+      var max = new BlockPos(parcelSize.getX() - 1, parcelSize.getY() - 1, parcelSize.getZ() - 1);
+      return BoundingBox.fromCorners(transform.apply(BlockPos.ZERO), transform.apply(max));
     }
   }
 
+  /**
+   * @return Grid size of sub-parcels
+   */
+  protected int getGridSize() {
+    return 32;
+  }
+
   @Override
   public void save(
       Level level,
@@ -87,17 +160,118 @@ public class ParcellaD32Saver
     var ctx = new Context(level, parcelSize, anchor, transform, dataDir, ignoreEntities, config);
 
     try (var problemReporter = new ProblemReporter.ScopedCollector(ParcelStorage.LOGGER)) {
-      saveBlocks(ctx, 32);
+      saveBlocks(ctx, getGridSize());
 
       if (!ignoreEntities) {
-        saveEntities(ctx, problemReporter);
+        writeEntities(ctx, collectEntities(ctx, problemReporter));
       }
     }
   }
 
+  @Override
+  public CompletableFuture<Void> saveAsync(
+      Level level,
+      Vec3i parcelSize,
+      Vec3i anchor,
+      ParcelTransform transform,
+      Path dataDir,
+      boolean ignoreEntities,
+      @Nullable Config config,
+      Executor executor) {
+    if (config == null) {
+      config = new Config();
+    }
+
+    var ctx = new Context(level, parcelSize, anchor, transform, dataDir, ignoreEntities, config);
+
+    // Everything read from the level is captured here, on the server thread
+    ctx.blocks = BlockSnapshot.capture(level, ctx.getWorldBoundingBox());
+
+    final @Nullable Map<Identifier, List<CompoundTag>> entities;
+    if (ignoreEntities) {
+      entities = null;
+    } else {
+      try (var problemReporter = new ProblemReporter.ScopedCollector(ParcelStorage.LOGGER)) {
+        entities = collectEntities(ctx, problemReporter);
+      }
+    }
+
+    return CompletableFuture.runAsync(
+        () -> {
+          try {
+            saveBlocks(ctx, getGridSize());
+
+            if (entities != null) {
+              writeEntities(ctx, entities);
+            }
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        },
+        executor);
+  }
+
+  /**
+   * Block data of one subparcel, read from the block source and waiting to be written.
+   *
+   * <p>Block states are first recorded as local ids, in the order they are encountered. Local ids
+   * are then mapped to palette ids by {@link #assignPaletteIds}, which always runs sequentially in
+   * subparcel order. This keeps palette ids identical between sequential and parallel saves.
+   */
+  protected static final class EncodedSubparcel {
+    public final Subparcel subparcel;
+
+    /** Z-order index of the subparcel */
+    public final long index;
+
+    public final Path blockStateFile;
+    public final Path blockEntityFile;
+
+    /** Local id to block state in local space */
+    public final List<BlockState> localStates = new ArrayList<>();
+
+    public final List<BlockEntityEntry> blockEntities = new ArrayList<>();
+
+    /** Packed runs of local ids, set when the subparcel format is {@link SubparcelFormat#RLE3D} */
+    public @Nullable PackedRuns runs = null;
+
+    /**
+     * Local id of each block in X, Y, Z order, set when the subparcel format is {@link
+     * SubparcelFormat#FLAT}
+     */
+    public int @Nullable [] flatIds = null;
+
+    /** Local id to palette id, or {@code null} if palette is not used */
+    public int @Nullable [] paletteIds = null;
+
+    /**
+     * Block state file of this subparcel in another subparcel format, deleted once the block state
+     * file is written
+     */
+    public @Nullable Path staleBlockStateFile = null;
+
+    /** Whether the block entity file may exist. If not, it is not deleted when there are none. */
+    public boolean blockEntityFileMayExist = true;
+
+    /** Set once the files of this subparcel are written or found to be up to date */
+    public SubparcelHashIndex.@Nullable Entry hashEntry = null;
+
+    public EncodedSubparcel(
+        Subparcel subparcel, long index, Path blockStateFile, Path blockEntityFile) {
+      this.subparcel = subparcel;
+      this.index = index;
+      this.blockStateFile = blockStateFile;
+      this.blockEntityFile = blockEntityFile;
+    }
+  }
+
   /**
    * Save blocks in parcella format.
    *
+   * <p>If the block source of the context is thread safe, subparcels are read, encoded and written
+   * in parallel on the common {@link java.util.concurrent.ForkJoinPool}. The output is the same
+   * either way.
+   *
    * @param gridSize Grid size of sub-parcels.
    * @param ctx Context
    * @throws IOException If an I/O error occurs
@@ -107,48 +281,186 @@ public class ParcellaD32Saver
     Files.createDirectories(ctx.blocksDir);
 
     if (ctx.config.usePalette.get()) {
-      ctx.blockPalette = loadBlockPaletteIfExistElseCreate(ctx);
+      if (ctx.config.sharedPalette.get()) {
+        ctx.sharedBlockPalette = findSharedBlockPalette(ctx);
+      }
+      ctx.blockPalette =
+          ctx.sharedBlockPalette != null
+              ? ctx.sharedBlockPalette.palette()
+              : loadBlockPaletteIfExistElseCreate(ctx);
+    }
+
+    // Written into the parcel by older versions, where it would be committed
+    Files.deleteIfExists(ctx.blocksDir.resolve(SUBPARCEL_HASHES_FILE_NAME));
+
+    Path hashesFile = ctx.config.skipUnchangedSubparcels.get() ? ctx.subparcelHashesFile : null;
+    if (hashesFile != null) {
+      ctx.previousHashes = SubparcelHashIndex.load(hashesFile);
     }
 
-    Path subParcelsDir = ctx.blocksDir.resolve(SUBPARCELS_DIR_NAME);
-    Files.createDirectories(subParcelsDir);
+    var shared = ctx.sharedBlockPalette;
+    if (shared != null) {
+      // Merges changes on disk before any ID is assigned, and keeps other saves of the same file
+      // from assigning IDs until the file is appended
+      shared.beginSave();
+    }
+    List<EncodedSubparcel> subparcels;
+    try {
+      subparcels = writeAllSubparcels(ctx, gridSize);
 
+      if (shared != null) {
+        shared.save();
+        // Would be stale after this save
+        Files.deleteIfExists(ctx.blocksPaletteFile);
+      } else if (ctx.blockPalette != null) {
+        ctx.blockPalette.save(ctx.blocksPaletteFile);
+      }
+    } finally {
+      if (shared != null) {
+        shared.endSave();
+      }
+    }
+
+    if (hashesFile != null) {
+      var hashes = new SubparcelHashIndex();
+      for (var subparcel : subparcels) {
+        hashes.put(subparcel.index, Objects.requireNonNull(subparcel.hashEntry));
+      }
+      Files.createDirectories(hashesFile.getParent());
+      hashes.save(hashesFile);
+    } else if (ctx.subparcelHashesFile != null) {
+      // Would be stale after this save
+      Files.deleteIfExists(ctx.subparcelHashesFile);
+    }
+  }
+
+  /**
+   * Writes all subparcels into a pack or into separate files, as configured, and deletes the other
+   * layout.
+   *
+   * @return All subparcels, in subparcel order
+   * @throws IOException If an I/O error occurs
+   */
+  protected List<EncodedSubparcel> writeAllSubparcels(Context ctx, int gridSize)
+      throws IOException {
+    List<EncodedSubparcel> subparcels;
+    if (ctx.config.packSubparcels.get()) {
+      var pack = SubparcelPack.Writer.open(ctx.subparcelPackFile);
+      ctx.subparcelPack = pack;
+      try {
+        subparcels = writeSubparcels(ctx, gridSize, null);
+        pack.finish();
+      } finally {
+        pack.close();
+      }
+      // Would be stale after this save
+      deleteRecursively(ctx.subparcelsDir);
+    } else {
+      Files.createDirectories(ctx.subparcelsDir);
+      // One walk instead of probing directories and block entity files per subparcel
+      subparcels = writeSubparcels(ctx, gridSize, SubparcelFileIndex.scan(ctx.subparcelsDir));
+      // Would be stale after this save
+      Files.deleteIfExists(ctx.subparcelPackFile);
+    }
+    return subparcels;
+  }
+
+  /**
+   * Reads, encodes and writes all subparcels, either into {@link Context#subparcelPack} if set, or
+   * into files under {@link Context#subparcelsDir}.
+   *
+   * @param files Existing files under the subparcels directory, {@code null} if writing a pack
+   * @return All subparcels, in subparcel order
+   * @throws IOException If an I/O error occurs
+   */
+  protected List<EncodedSubparcel> writeSubparcels(
+      Context ctx, int gridSize, @Nullable SubparcelFileIndex files) throws IOException {
     // Split the parcel into subparcels
+    List<EncodedSubparcel> subparcels = new ArrayList<>();
     BlockPos anchorPos = new BlockPos(ctx.anchor);
+    String blockStateSuffix = getBlockStateSuffix(ctx.config.subparcelFormat.get());
     for (var localSubparcel : ParcellaUtils.subdivideParcel(ctx.parcelSize, anchorPos, gridSize)) {
       Vec3i coord = localSubparcel.getCoord(gridSize, anchorPos);
 
       long index = ZOrder3D.coordToIndexSigned(coord);
 
+      if (files == null) {
+        subparcels.add(
+            new EncodedSubparcel(
+                localSubparcel, index, ctx.subparcelPackFile, ctx.subparcelPackFile));
+        continue;
+      }
+
       Path blockStateFile =
-          RadixTreePathGenerator.toPath(subParcelsDir, index, SUBPARCEL_BLOCK_STATE_SUFFIX);
+          RadixTreePathGenerator.toPath(ctx.subparcelsDir, index, blockStateSuffix);
       Path blockEntityFile =
-          RadixTreePathGenerator.toPath(subParcelsDir, index, SUBPARCEL_BLOCK_ENTITY_SUFFIX);
-      Files.createDirectories(blockStateFile.getParent());
-
-      BlockEntities blockEntities = new BlockEntities(new ArrayList<>());
+          RadixTreePathGenerator.toPath(ctx.subparcelsDir, index, SUBPARCEL_BLOCK_ENTITY_SUFFIX);
+      Path dir = blockStateFile.getParent();
+      if (!files.hasDirectory(dir)) {
+        Files.createDirectories(dir);
+        files.addDirectory(dir);
+      }
 
-      switch (ctx.config.subparcelFormat.get()) {
-        case FLAT ->
-            writeSubparcelFLAT(ctx, blockStateFile, localSubparcel, blockEntities.blockEntities());
-        case RLE3D ->
-            writeSubparcelRLE3D(ctx, blockStateFile, localSubparcel, blockEntities.blockEntities());
+      var encoded = new EncodedSubparcel(localSubparcel, index, blockStateFile, blockEntityFile);
+      encoded.blockEntityFileMayExist = files.getBlockEntityFile(index) != null;
+      Path existingBlockStateFile = files.getBlockStateFile(index);
+      if (existingBlockStateFile != null && !existingBlockStateFile.equals(blockStateFile)) {
+        encoded.staleBlockStateFile = existingBlockStateFile;
       }
+      subparcels.add(encoded);
+    }
 
-      if (blockEntities.blockEntities().isEmpty()) {
-        Files.deleteIfExists(blockEntityFile);
-      } else {
-        blockEntities.blockEntities().sort(BlockEntityEntry.COMPARATOR);
+    if (ctx.blocks.isThreadSafe() && subparcels.size() > 1) {
+      subparcels.parallelStream().forEach(subparcel -> readSubparcel(ctx, subparcel));
+
+      for (var subparcel : subparcels) {
+        assignPaletteIds(ctx, subparcel);
+      }
 
-        CompoundTag tag =
-            (CompoundTag)
-                BlockEntities.CODEC.encodeStart(NbtOps.INSTANCE, blockEntities).getOrThrow();
-        ctx.config.blockEntityDataFormat.get().write(blockEntityFile, tag);
+      try {
+        subparcels.parallelStream()
+            .forEach(
+                subparcel -> {
+                  try {
+                    writeSubparcel(ctx, subparcel);
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    } else {
+      for (var subparcel : subparcels) {
+        readSubparcel(ctx, subparcel);
+        assignPaletteIds(ctx, subparcel);
+        writeSubparcel(ctx, subparcel);
       }
     }
+    return subparcels;
+  }
 
-    if (ctx.blockPalette != null) {
-      ctx.blockPalette.save(ctx.blocksPaletteFile);
+  /**
+   * @return Shared palette of the repository containing the parcel, or {@code null} if the parcel
+   *     is not in a repository or the shared palette cannot be loaded
+   */
+  protected @Nullable SharedBlockPalette findSharedBlockPalette(Context ctx) {
+    Path repoDir = ctx.config.getEnvironment().repoDir();
+    if (repoDir == null) {
+      ParcelStorage.LOGGER.warn(
+          "Parcel {} is not in a repository, using its own block palette", ctx.dataDir);
+      return null;
+    }
+    Path file = SharedBlockPalette.getFile(repoDir);
+    try {
+      return SharedBlockPalette.get(file);
+    } catch (Exception e) {
+      ParcelStorage.LOGGER.error(
+          "Error loading shared block palette {}, using the block palette of the parcel: {}",
+          file,
+          e.getMessage(),
+          e);
+      return null;
     }
   }
 
@@ -165,138 +477,410 @@ public class ParcellaD32Saver
     }
   }
 
-  protected void writeSubparcelRLE3D(
-      Context ctx, Path file, Subparcel subparcel, List<BlockEntityEntry> blockEntities)
-      throws IOException {
-    var sb = new StringBuilder(8192);
-    char[] base32Chars = Base32Utils.CHARS;
-
-    var level = ctx.level;
+  /**
+   * Reads block states and block entities of a subparcel from the block source, and encodes block
+   * states as local ids.
+   *
+   * <p>Block states are read in bulk, in whatever order the block source prefers, into a grid in
+   * local space. Local ids are then assigned in Y, X, Z order, so they do not depend on the
+   * transform or the block source.
+   *
+   * <p>Does not touch the palette, so it can run concurrently for different subparcels.
+   */
+  protected void readSubparcel(Context ctx, EncodedSubparcel encoded) {
+    var subparcel = encoded.subparcel;
     var transform = ctx.transform;
-    boolean usePalette = ctx.config.usePalette.get();
+    var localStates = encoded.localStates;
+
+    final int sizeX = subparcel.sizeX;
+    final int sizeY = subparcel.sizeY;
+    final int sizeZ = subparcel.sizeZ;
+
+    // Local position of each world position is an affine function of it, as an index into the
+    // grid in Y, X, Z order
+    BlockPos localMin = new BlockPos(subparcel.originX, subparcel.originY, subparcel.originZ);
+    BlockPos localMax = localMin.offset(sizeX - 1, sizeY - 1, sizeZ - 1);
+    BoundingBox worldBox =
+        BoundingBox.fromCorners(transform.apply(localMin), transform.apply(localMax));
+    BlockPos worldMin = new BlockPos(worldBox.minX(), worldBox.minY(), worldBox.minZ());
+    BlockPos base = transform.applyInverted(worldMin).subtract(localMin);
+    BlockPos stepX = transform.applyInverted(worldMin.east()).subtract(localMin).subtract(base);
+    BlockPos stepY = transform.applyInverted(worldMin.above()).subtract(localMin).subtract(base);
+    BlockPos stepZ = transform.applyInverted(worldMin.south()).subtract(localMin).subtract(base);
+
+    final int sizeXZ = sizeX * sizeZ;
+    final int baseIndex = base.getY() * sizeXZ + base.getX() * sizeZ + base.getZ();
+    final int strideX = stepX.getY() * sizeXZ + stepX.getX() * sizeZ + stepX.getZ();
+    final int strideY = stepY.getY() * sizeXZ + stepY.getX() * sizeZ + stepY.getZ();
+    final int strideZ = stepZ.getY() * sizeXZ + stepZ.getX() * sizeZ + stepZ.getZ();
+    final int worldMinX = worldMin.getX();
+    final int worldMinY = worldMin.getY();
+    final int worldMinZ = worldMin.getZ();
+
+    // Block states in world space, indexed in Y, X, Z order of local space
+    BlockState[] worldStates = new BlockState[sizeY * sizeXZ];
+    ctx.blocks.forEachBlockState(
+        worldBox,
+        (x, y, z, blockState) ->
+            worldStates[
+                    baseIndex
+                        + (x - worldMinX) * strideX
+                        + (y - worldMinY) * strideY
+                        + (z - worldMinZ) * strideZ] =
+                blockState);
+
+    ctx.blocks.forEachBlockEntity(
+        worldBox,
+        (worldPos, nbt) ->
+            encoded.blockEntities.add(
+                new BlockEntityEntry(transform.applyInverted(worldPos).subtract(localMin), nbt)));
+
+    // Block states are inverse transformed once per distinct state
+    var stateToLocalId = new Reference2IntOpenHashMap<BlockState>();
+    stateToLocalId.defaultReturnValue(-1);
+
+    VolumetricRLE.ValueGetter getter =
+        new VolumetricRLE.ValueGetter() {
+          private @Nullable BlockState lastState = null;
+          private int lastId = -1;
+
+          @Override
+          public int get(int x, int y, int z) {
+            // blockState: world space
+            BlockState blockState = worldStates[y * sizeXZ + x * sizeZ + z];
+            if (blockState == lastState) {
+              return lastId;
+            }
+
+            int id = stateToLocalId.getInt(blockState);
+            if (id == -1) {
+              id = localStates.size();
+              // local space
+              localStates.add(transform.applyInverted(blockState));
+              stateToLocalId.put(blockState, id);
+            }
+            lastState = blockState;
+            lastId = id;
+            return id;
+          }
+        };
+
+    switch (ctx.config.subparcelFormat.get()) {
+      case FLAT -> {
+        int[] ids = new int[sizeX * sizeY * sizeZ];
+        int i = 0;
+        for (int x = 0; x < sizeX; x++) {
+          for (int y = 0; y < sizeY; y++) {
+            for (int z = 0; z < sizeZ; z++) {
+              ids[i++] = getter.get(x, y, z);
+            }
+          }
+        }
+        encoded.flatIds = ids;
+      }
+      case RLE3D, BINARY ->
+          encoded.runs = ctx.config.rleStrategy.get().encodePacked(sizeX, sizeY, sizeZ, getter);
+    }
+  }
+
+  /**
+   * Maps local ids of a subparcel to palette ids, collecting new block states into the palette.
+   *
+   * <p>Must be called in subparcel order, one subparcel at a time.
+   */
+  protected void assignPaletteIds(Context ctx, EncodedSubparcel encoded) {
     var palette = ctx.blockPalette;
+    if (palette == null) {
+      return;
+    }
 
-    // When no palette, use a temporary identity map for VolumetricRLE int IDs
-    var stateToTempId = new IdentityHashMap<BlockState, Integer>();
-    var tempIdToState = new ArrayList<BlockState>();
-
-    var runs =
-        VolumetricRLE.IMPL.encode(
-            subparcel.sizeX,
-            subparcel.sizeY,
-            subparcel.sizeZ,
-            (x, y, z) -> {
-              BlockPos pos =
-                  new BlockPos(x + subparcel.originX, y + subparcel.originY, z + subparcel.originZ);
-              pos = transform.apply(pos);
-              // pos: world space
-
-              BlockState blockState = level.getBlockState(pos);
-              // blockState: world space
-              blockState = transform.applyInverted(blockState);
-              // blockState: local space
-
-              BlockEntity blockEntity = level.getBlockEntity(pos);
-              if (blockEntity != null) {
-                CompoundTag nbt = blockEntity.saveWithFullMetadata(level.registryAccess());
-                blockEntities.add(new BlockEntityEntry(new BlockPos(x, y, z), nbt));
-              }
-
-              if (usePalette) {
-                return palette.collect(blockState);
-              }
-              return stateToTempId.computeIfAbsent(
-                  blockState,
-                  k -> {
-                    int id = tempIdToState.size();
-                    tempIdToState.add(k);
-                    return id;
-                  });
-            });
-
-    for (var run : runs) {
-      sb.append(base32Chars[run.minX()])
-          .append(base32Chars[run.minY()])
-          .append(base32Chars[run.minZ()]);
-      int maxX = run.maxX();
-      int maxY = run.maxY();
-      int maxZ = run.maxZ();
-
-      if (run.minX() != maxX || run.minY() != maxY || run.minZ() != maxZ) {
-        sb.append(base32Chars[maxX]).append(base32Chars[maxY]).append(base32Chars[maxZ]);
+    var shared = ctx.sharedBlockPalette;
+    int[] paletteIds = new int[encoded.localStates.size()];
+    for (int i = 0; i < paletteIds.length; i++) {
+      var blockState = encoded.localStates.get(i);
+      paletteIds[i] = shared != null ? shared.collect(blockState) : palette.collect(blockState);
+    }
+    encoded.paletteIds = paletteIds;
+  }
+
+  /**
+   * Writes block state file and block entity file of an encoded subparcel, unless they are up to
+   * date according to {@link Context#previousHashes}.
+   *
+   * <p>Both files are encoded into buffers first, and the content hash is taken over the encoded
+   * bytes, so any change to the files is detected.
+   */
+  protected void writeSubparcel(Context ctx, EncodedSubparcel encoded) throws IOException {
+    try {
+      var blockStates = BUFFERS.get().clear();
+      encodeSubparcel(ctx, encoded, blockStates);
+
+      GrowableByteBuffer blockEntities = null;
+      if (!encoded.blockEntities.isEmpty()) {
+        blockEntities = BLOCK_ENTITY_BUFFERS.get().clear();
+        var tag = encodeBlockEntities(new BlockEntities(encoded.blockEntities));
+        ctx.config.blockEntityDataFormat.get().encode(tag, true, blockEntities);
       }
 
-      sb.append(usePalette ? '~' : '=');
-      if (usePalette) {
-        sb.append(HexUtils.toHexUpperCase(run.value()));
+      if (ctx.previousHashes != null) {
+        long contentHash = computeContentHash(ctx, blockStates, blockEntities);
+        var previous = ctx.previousHashes.get(encoded.index);
+        if (previous != null
+            && previous.contentHash() == contentHash
+            && previous.fileStamp() == getFileStamp(ctx, encoded)) {
+          encoded.hashEntry = previous;
+          if (ctx.subparcelPack != null) {
+            ctx.subparcelPack.keep(encoded.index);
+          }
+          return;
+        }
+
+        writeSubparcelFiles(ctx, encoded, blockStates, blockEntities);
+        encoded.hashEntry = new SubparcelHashIndex.Entry(contentHash, getFileStamp(ctx, encoded));
       } else {
-        sb.append(BlockPalette.stringifyBlockState(tempIdToState.get(run.value())));
+        writeSubparcelFiles(ctx, encoded, blockStates, blockEntities);
       }
-      sb.append('\n');
+    } finally {
+      // Written subparcels are no longer needed, let them be collected early
+      encoded.runs = null;
+      encoded.flatIds = null;
+    }
+  }
+
+  private static long getFileStamp(Context ctx, EncodedSubparcel encoded) throws IOException {
+    var pack = ctx.subparcelPack;
+    if (pack == null) {
+      return SubparcelHashIndex.getFileStamp(encoded.blockStateFile, encoded.blockEntityFile);
     }
+    // Length and checksum of the entries, which stay the same when the pack is compacted
+    long stamp = 0;
+    for (var kind : SubparcelPack.Kind.values()) {
+      var entry = pack.get(kind, encoded.index);
+      stamp =
+          SubparcelHashIndex.mix(
+              stamp,
+              entry == null ? -1 : (long) entry.length() << 32 | (entry.crc32() & 0xFFFFFFFFL));
+    }
+    return stamp;
+  }
+
+  /**
+   * Hashes everything that affects the files of a subparcel: the file formats and the encoded
+   * content of both files.
+   *
+   * @param blockStates Encoded block state file
+   * @param blockEntities Encoded block entity file, or {@code null} if there are no block entities
+   */
+  protected long computeContentHash(
+      Context ctx, GrowableByteBuffer blockStates, @Nullable GrowableByteBuffer blockEntities) {
+    var config = ctx.config;
+    long h = SubparcelHashIndex.mix(0, config.subparcelFormat.get().ordinal());
+    h = SubparcelHashIndex.mix(h, config.blockEntityDataFormat.get().ordinal());
+    h = SubparcelHashIndex.hashBytes(h, blockStates.view());
+    h =
+        blockEntities == null
+            ? SubparcelHashIndex.mix(h, -1)
+            : SubparcelHashIndex.hashBytes(h, blockEntities.view());
+    return h;
+  }
 
-    Files.writeString(file, sb, StandardCharsets.UTF_8);
+  /**
+   * Puts the content of the block state file of a subparcel into the buffer.
+   *
+   * <p>Must be called after {@link #assignPaletteIds}.
+   */
+  protected void encodeSubparcel(Context ctx, EncodedSubparcel encoded, GrowableByteBuffer out) {
+    switch (ctx.config.subparcelFormat.get()) {
+      case FLAT -> encodeSubparcelFLAT(encoded, out);
+      case RLE3D -> encodeSubparcelRLE3D(encoded, out);
+      case BINARY -> encodeSubparcelBINARY(encoded, ctx.config.subparcelChecksum.get(), out);
+    }
   }
 
-  protected void writeSubparcelFLAT(
-      Context ctx, Path path, Subparcel subparcel, List<BlockEntityEntry> blockEntities)
+  /**
+   * Writes the encoded files of a subparcel, either into {@link Context#subparcelPack} if set, or
+   * as separate files. The previous block entity file or entry is dropped if there are no block
+   * entities.
+   *
+   * @param blockEntities Encoded block entity file, or {@code null} if there are no block entities
+   */
+  protected void writeSubparcelFiles(
+      Context ctx,
+      EncodedSubparcel encoded,
+      GrowableByteBuffer blockStates,
+      @Nullable GrowableByteBuffer blockEntities)
       throws IOException {
-    StringBuilder sb = new StringBuilder(8192);
+    var pack = ctx.subparcelPack;
+    if (pack != null) {
+      pack.put(SubparcelPack.Kind.BLOCK_STATES, encoded.index, blockStates.view());
+      if (blockEntities != null) {
+        pack.put(SubparcelPack.Kind.BLOCK_ENTITIES, encoded.index, blockEntities.view());
+      }
+      return;
+    }
 
-    int originX = subparcel.originX;
-    int originY = subparcel.originY;
-    int originZ = subparcel.originZ;
-    int sizeX = subparcel.sizeX;
-    int sizeY = subparcel.sizeY;
-    int sizeZ = subparcel.sizeZ;
+    blockStates.writeTo(encoded.blockStateFile);
+    if (encoded.staleBlockStateFile != null) {
+      Files.deleteIfExists(encoded.staleBlockStateFile);
+    }
+    if (blockEntities != null) {
+      blockEntities.writeTo(encoded.blockEntityFile);
+    } else if (encoded.blockEntityFileMayExist) {
+      Files.deleteIfExists(encoded.blockEntityFile);
+    }
+  }
 
-    var level = ctx.level;
-    var palette = ctx.blockPalette;
-    boolean usePalette = ctx.config.usePalette.get();
-
-    for (int i = 0, x = 0; i < sizeX; i++, x++) {
-      for (int j = 0, y = 0; j < sizeY; j++, y++) {
-        for (int k = 0, z = 0; k < sizeZ; k++, z++) {
-          BlockPos pos = new BlockPos(x + originX, y + originY, z + originZ);
-          pos = ctx.transform.apply(pos);
-
-          BlockState blockState = level.getBlockState(pos);
-          // blockState: world space
-          blockState = ctx.transform.applyInverted(blockState);
-          // blockState: local space
-
-          BlockEntity blockEntity = level.getBlockEntity(pos);
-          if (blockEntity != null) {
-            CompoundTag nbt = blockEntity.saveWithFullMetadata(level.registryAccess());
-            blockEntities.add(new BlockEntityEntry(new BlockPos(x, y, z), nbt));
-          }
+  /** Sorts the block entities and encodes them as written to block entity files. */
+  private static CompoundTag encodeBlockEntities(BlockEntities blockEntities) {
+    blockEntities.blockEntities().sort(BlockEntityEntry.COMPARATOR);
+    return blockEntities.toTag();
+  }
 
-          if (usePalette) {
-            sb.append(HexUtils.toHexUpperCase(palette.collect(blockState)));
-          } else {
-            sb.append(BlockPalette.stringifyBlockState(blockState));
-          }
-          sb.append('\n');
-        }
+  /**
+   * @param out Buffer to write the encoded subparcel to
+   * @see SubparcelFormat#RLE3D
+   */
+  protected void encodeSubparcelRLE3D(EncodedSubparcel encoded, GrowableByteBuffer out) {
+    int[] paletteIds = encoded.paletteIds;
+    byte[][] stateBytes = paletteIds == null ? stringifyLocalStates(encoded) : null;
+
+    var cursor = Objects.requireNonNull(encoded.runs).cursor();
+    while (cursor.next()) {
+      putRunCoords(out, cursor.packed());
+
+      if (stateBytes == null) {
+        putHexUpperCase(out.putAscii('~'), paletteIds[cursor.value()]);
+      } else {
+        out.putAscii('=').put(stateBytes[cursor.value()]);
+      }
+      out.putAscii('\n');
+    }
+  }
+
+  /**
+   * @param checksum Whether to append a CRC32 checksum
+   * @param out Buffer to write the encoded subparcel to
+   * @see SubparcelFormat#BINARY
+   */
+  protected void encodeSubparcelBINARY(
+      EncodedSubparcel encoded, boolean checksum, GrowableByteBuffer out) {
+    int[] paletteIds = encoded.paletteIds;
+    var runs = Objects.requireNonNull(encoded.runs);
+
+    out.put(BINARY_SUBPARCEL_MAGIC).put((byte) BINARY_SUBPARCEL_VERSION);
+
+    int flags = 0;
+    if (paletteIds != null) {
+      flags |= BINARY_SUBPARCEL_FLAG_PALETTE;
+    }
+    if (checksum) {
+      flags |= BINARY_SUBPARCEL_FLAG_CHECKSUM;
+    }
+    out.put((byte) flags);
+
+    if (paletteIds == null) {
+      byte[][] stateBytes = stringifyLocalStates(encoded);
+      out.putVarInt(stateBytes.length);
+      for (byte[] bytes : stateBytes) {
+        out.putVarInt(bytes.length).put(bytes);
+      }
+    }
+
+    out.putVarInt(runs.size());
+    var cursor = runs.cursor();
+    while (cursor.next()) {
+      int minX = cursor.minX();
+      int minY = cursor.minY();
+      int minZ = cursor.minZ();
+      int min = minX | minY << 6 | minZ << 12;
+      if (cursor.isSingleBlock()) {
+        out.putVarInt(min << 1);
+      } else {
+        int extent =
+            (cursor.maxX() - minX) | (cursor.maxY() - minY) << 6 | (cursor.maxZ() - minZ) << 12;
+        out.putVarInt(min << 1 | 1).putVarInt(extent);
       }
+      out.putVarInt(paletteIds != null ? paletteIds[cursor.value()] : cursor.value());
     }
 
-    Files.writeString(path, sb, StandardCharsets.UTF_8);
+    if (checksum) {
+      out.putInt(out.crc32());
+    }
   }
 
   /**
-   * @see ParcellaD32Loader#loadEntity
+   * Puts the min coordinate of a run, and the max coordinate if the run has more than one block.
+   *
+   * @param run Packed run, see {@link PackedRuns}
    */
-  protected void saveEntities(Context ctx, ProblemReporter problemReporter) throws IOException {
-    // Delete all existing entity files
-    if (Files.exists(ctx.entitiesDir)) {
-      try (var paths = Files.walk(ctx.entitiesDir)) {
-        for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
-          Files.delete(path);
-        }
+  protected void putRunCoords(GrowableByteBuffer out, long run) {
+    char[] base32Chars = Base32Utils.CHARS;
+
+    out.putAscii(base32Chars[PackedRuns.minX(run)])
+        .putAscii(base32Chars[PackedRuns.minY(run)])
+        .putAscii(base32Chars[PackedRuns.minZ(run)]);
+
+    if (!PackedRuns.isSingleBlock(run)) {
+      out.putAscii(base32Chars[PackedRuns.maxX(run)])
+          .putAscii(base32Chars[PackedRuns.maxY(run)])
+          .putAscii(base32Chars[PackedRuns.maxZ(run)]);
+    }
+  }
+
+  /**
+   * @param out Buffer to write the encoded subparcel to
+   * @see SubparcelFormat#FLAT
+   */
+  protected void encodeSubparcelFLAT(EncodedSubparcel encoded, GrowableByteBuffer out) {
+    int[] paletteIds = encoded.paletteIds;
+    byte[][] stateBytes = paletteIds == null ? stringifyLocalStates(encoded) : null;
+
+    for (int id : Objects.requireNonNull(encoded.flatIds)) {
+      if (stateBytes == null) {
+        putHexUpperCase(out, paletteIds[id]);
+      } else {
+        out.put(stateBytes[id]);
       }
+      out.putAscii('\n');
+    }
+  }
+
+  /**
+   * @return Local id to UTF-8 encoded block state string
+   * @see BlockPalette#stringifyBlockState
+   */
+  private static byte[][] stringifyLocalStates(EncodedSubparcel encoded) {
+    var localStates = encoded.localStates;
+    byte[][] stateBytes = new byte[localStates.size()][];
+    for (int i = 0; i < stateBytes.length; i++) {
+      stateBytes[i] =
+          BlockPalette.stringifyBlockState(localStates.get(i)).getBytes(StandardCharsets.UTF_8);
+    }
+    return stateBytes;
+  }
+
+  /**
+   * Puts a non-negative integer in uppercase hex without leading zeros.
+   *
+   * @see HexUtils#toHexUpperCase(int)
+   */
+  private static void putHexUpperCase(GrowableByteBuffer out, int value) {
+    int shift = value == 0 ? 0 : (31 - Integer.numberOfLeadingZeros(value)) & ~3;
+    for (; shift >= 0; shift -= 4) {
+      out.putAscii(HexUtils.UPPERS[(value >>> shift) & 0xF]);
     }
+  }
 
+  /**
+   * Collects the NBT of all non-player entities inside the parcel, grouped by entity type.
+   *
+   * <p>Reads from the level, so it must run on the server thread.
+   *
+   * @return Entity type key to entity NBT tags, in the order the entities were found
+   * @see #getEntityNbt
+   */
+  protected Map<Identifier, List<CompoundTag>> collectEntities(
+      Context ctx, ProblemReporter problemReporter) {
     var origin = ctx.transform.getTranslatedOrigin();
     var worldSize = ctx.transform.applyToSize(ctx.parcelSize);
 
@@ -312,30 +896,113 @@ public class ParcellaD32Saver
     List<Entity> entities =
         ctx.level.getEntities((Entity) null, aabb, entity -> !(entity instanceof Player));
 
-    NbtFormat nbtFormat = ctx.config.entityDataFormat.get();
-
-    Map<Identifier, List<Entity>> byType = new LinkedHashMap<>();
+    Map<Identifier, List<CompoundTag>> byType = new LinkedHashMap<>();
     for (Entity entity : entities) {
       var key = BuiltInRegistries.ENTITY_TYPE.getKey(entity.getType());
-      byType.computeIfAbsent(key, k -> new ArrayList<>()).add(entity);
+      byType
+          .computeIfAbsent(key, k -> new ArrayList<>())
+          .add(getEntityNbt(ctx, problemReporter, entity));
     }
+    return byType;
+  }
+
+  /**
+   * Replaces the entity files of the parcel with the given entities.
+   *
+   * @param entities Entity NBT tags grouped by entity type, see {@link #collectEntities}
+   * @see ParcellaD32Loader#decodeEntity
+   */
+  protected void writeEntities(Context ctx, Map<Identifier, List<CompoundTag>> entities)
+      throws IOException {
+    if (ctx.config.packEntities.get()) {
+      writePackedEntities(ctx, entities);
+      return;
+    }
+
+    // Delete all existing entity files
+    deleteRecursively(ctx.entitiesDir);
+
+    NbtFormat nbtFormat = ctx.config.entityDataFormat.get();
 
-    for (Map.Entry<Identifier, List<Entity>> entry : byType.entrySet()) {
+    for (Map.Entry<Identifier, List<CompoundTag>> entry : entities.entrySet()) {
       var key = entry.getKey();
       Path dir = ctx.entitiesDir.resolve(key.getNamespace()).resolve(key.getPath());
       Files.createDirectories(dir);
 
       int index = 0;
-      for (Entity entity : entry.getValue()) {
-        nbtFormat.write(
-            dir.resolve(index + nbtFormat.getSuffix()),
-            getEntityNbt(ctx, problemReporter, entity),
-            true);
+      for (CompoundTag tag : entry.getValue()) {
+        nbtFormat.write(dir.resolve(index + nbtFormat.getSuffix()), tag, true);
         index++;
       }
     }
   }
 
+  /**
+   * Writes one file per entity type, holding all entities of that type sorted by {@link
+   * #ENTITY_COMPARATOR}. Files whose content did not change are not written, and all other files
+   * in the entities directory are deleted.
+   *
+   * @param entities Entity NBT tags grouped by entity type, see {@link #collectEntities}
+   * @see ParcellaD32Loader#decodeEntityFile
+   */
+  protected void writePackedEntities(Context ctx, Map<Identifier, List<CompoundTag>> entities)
+      throws IOException {
+    NbtFormat nbtFormat = ctx.config.entityDataFormat.get();
+    Set<Path> files = new HashSet<>();
+
+    for (Map.Entry<Identifier, List<CompoundTag>> entry : entities.entrySet()) {
+      var key = entry.getKey();
+      Path file =
+          ctx.entitiesDir
+              .resolve(key.getNamespace())
+              .resolve(key.getPath() + nbtFormat.getSuffix());
+
+      var sorted = new ArrayList<>(entry.getValue());
+      sorted.sort(ENTITY_COMPARATOR);
+      var list = new ListTag();
+      for (CompoundTag tag : sorted) {
+        list.add(tag);
+      }
+      var tag = new CompoundTag();
+      tag.put(PACKED_ENTITIES_KEY, list);
+
+      var out = BUFFERS.get().clear();
+      nbtFormat.encode(tag, true, out);
+      Files.createDirectories(file.getParent());
+      out.writeToIfChanged(file);
+      files.add(file);
+    }
+
+    deleteOtherEntityFiles(ctx, files);
+  }
+
+  /** Deletes everything in the entities directory except the given files. */
+  private static void deleteOtherEntityFiles(Context ctx, Set<Path> keep) throws IOException {
+    if (!Files.exists(ctx.entitiesDir)) {
+      return;
+    }
+    try (var paths = Files.walk(ctx.entitiesDir)) {
+      // Children come before their parent directory
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        if (keep.contains(path) || path.equals(ctx.entitiesDir)) {
+          continue;
+        }
+        if (Files.isDirectory(path)) {
+          try (var children = Files.list(path)) {
+            if (children.findAny().isPresent()) {
+              continue;
+            }
+          }
+        }
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static double getEntityPos(CompoundTag tag, int axis) {
+    return tag.getListOrEmpty("pos").getDouble(axis).orElse(0.0);
+  }
+
   /**
    * Get the NBT tag of an entity, with position relative to the parcel origin.
    *
@@ -383,4 +1050,15 @@ public class ParcellaD32Saver
     tag.put("nbt", output.buildResult().copy());
     return tag;
   }
+
+  /** Deletes a file or a directory with everything in it, if it exists. */
+  protected static void deleteRecursively(Path path) throws IOException {
+    if (Files.exists(path)) {
+      try (var paths = Files.walk(path)) {
+        for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(p);
+        }
+      }
+    }
+  }
 }
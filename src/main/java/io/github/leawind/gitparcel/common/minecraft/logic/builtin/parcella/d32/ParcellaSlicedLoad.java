@@ -0,0 +1,425 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32;
+
+import com.mojang.logging.LogUtils;
+import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
+import io.github.leawind.gitparcel.common.api.parcel.ParcelLoadTask;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockSink;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.util.ProblemReporter;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+
+/**
+ * Loads a Parcella parcel over multiple ticks.
+ *
+ * <ol>
+ *   <li>Subparcels are decoded on worker threads. Ticks return immediately until all of them are
+ *       done.
+ *   <li>Decoded runs are transformed to world space and split by chunk. Chunks are placed one after
+ *       another, each chunk is finished before moving on to the next one.
+ *   <li>Entities, parsed on a worker thread while blocks are placed, are grouped by chunk and
+ *       spawned a limited number per tick. A chunk that is not loaded is loaded before its entities
+ *       are spawned.
+ * </ol>
+ *
+ * <p>Entities are spawned after all blocks are placed, so they never fall through a floor that is
+ * not placed yet.
+ */
+final class ParcellaSlicedLoad implements ParcelLoadTask {
+  private static final Logger LOGGER = LogUtils.getLogger();
+
+  private enum Phase {
+    DECODE,
+    PLACE,
+    ENTITIES,
+    DONE,
+  }
+
+  private final ParcellaD32Loader loader;
+  private final ParcellaD32Loader.Context ctx;
+  private final ProblemReporter.ScopedCollector problemReporter =
+      new ProblemReporter.ScopedCollector(LOGGER);
+
+  private Phase phase = Phase.DECODE;
+  private @Nullable List<CompletableFuture<ParcellaD32Loader.DecodedSubparcel>> decoding = null;
+
+  private final List<ChunkWork> chunks = new ArrayList<>();
+  private final Long2ObjectOpenHashMap<ChunkWork> chunkMap = new Long2ObjectOpenHashMap<>();
+  private int chunkIndex = 0;
+
+  private long totalBlocks = 0;
+  private long placedBlocks = 0;
+
+  private @Nullable CompletableFuture<ParcellaD32Loader.DecodedEntities> decodingEntities = null;
+
+  /** {@code null} until entities are decoded */
+  private @Nullable ArrayDeque<EntityChunk> entityChunks = null;
+
+  private long totalEntities = 0;
+  private long spawnedEntities = 0;
+
+  ParcellaSlicedLoad(ParcellaD32Loader loader, ParcellaD32Loader.Context ctx) {
+    this.loader = loader;
+    this.ctx = ctx;
+    if (ctx.ignoreBlocks) {
+      phase = Phase.ENTITIES;
+    }
+  }
+
+  @Override
+  public boolean tick(Budget budget) throws IOException, ParcelException {
+    if (!ctx.ignoreEntities && decodingEntities == null && entityChunks == null) {
+      decodingEntities = loader.decodeEntitiesAsync(ctx);
+    }
+
+    if (phase == Phase.DECODE) {
+      if (decoding == null) {
+        decoding = loader.decodeSubparcelsAsync(ctx, loader.getGridSize());
+      }
+      for (var future : decoding) {
+        if (!future.isDone()) {
+          return false;
+        }
+      }
+      for (var future : decoding) {
+        addSubparcel(future.join());
+      }
+      decoding = null;
+      chunkMap.clear();
+      chunks.sort(Comparator.comparingInt(ChunkWork::z).thenComparingInt(ChunkWork::x));
+      phase = Phase.PLACE;
+    }
+
+    if (phase == Phase.PLACE) {
+      var blockSink = BlockSink.of(ctx.level, ctx.flags);
+      try {
+        while (chunkIndex < chunks.size()) {
+          if (!chunks.get(chunkIndex).place(budget, blockSink)) {
+            return false;
+          }
+          chunks.set(chunkIndex, null);
+          chunkIndex++;
+        }
+      } finally {
+        blockSink.flush();
+      }
+      phase = Phase.ENTITIES;
+    }
+
+    if (phase == Phase.ENTITIES) {
+      if (!ctx.ignoreEntities && !spawnEntities(budget)) {
+        return false;
+      }
+      phase = Phase.DONE;
+      problemReporter.close();
+    }
+
+    return true;
+  }
+
+  /**
+   * @return Number of blocks and entities, entities are counted once they are decoded
+   */
+  @Override
+  public long totalWork() {
+    return totalBlocks + totalEntities;
+  }
+
+  @Override
+  public long completedWork() {
+    return placedBlocks + spawnedEntities;
+  }
+
+  @Override
+  public void release() {
+    if (decoding != null) {
+      decoding.forEach(future -> future.cancel(false));
+      decoding = null;
+    }
+    if (decodingEntities != null) {
+      decodingEntities.cancel(false);
+      decodingEntities = null;
+    }
+    chunks.clear();
+    chunkMap.clear();
+    entityChunks = null;
+    problemReporter.close();
+  }
+
+  /**
+   * Spawns entities, chunk by chunk, until the budget is exhausted.
+   *
+   * @return {@code true} if all entities are spawned
+   */
+  private boolean spawnEntities(Budget budget) throws IOException {
+    if (entityChunks == null) {
+      if (decodingEntities == null || !decodingEntities.isDone()) {
+        return false;
+      }
+      var decoded = ParcellaD32Loader.joinEntities(decodingEntities);
+      decodingEntities = null;
+      addEntities(decoded);
+    }
+
+    while (!entityChunks.isEmpty()) {
+      var chunk = entityChunks.pollFirst();
+      if (!ctx.level.hasChunk(chunk.x, chunk.z)) {
+        // Nothing else requests the chunk, so waiting for it to be loaded could take forever
+        ctx.level.getChunk(chunk.x, chunk.z);
+      }
+
+      while (chunk.next < chunk.entities.size()) {
+        if (!budget.canSpawnEntity()) {
+          entityChunks.addFirst(chunk);
+          return false;
+        }
+        loader.spawnEntity(ctx, chunk.entities.get(chunk.next++), problemReporter);
+        budget.consumeEntity();
+        spawnedEntities++;
+      }
+    }
+    return entityChunks.isEmpty();
+  }
+
+  /** Groups decoded entities by chunk, in the same order as chunks are placed. */
+  private void addEntities(ParcellaD32Loader.DecodedEntities decoded) {
+    if (!decoded.problems.isEmpty()) {
+      problemReporter.report(decoded.problems::getTreeReport);
+    }
+
+    var byChunk = new Long2ObjectOpenHashMap<EntityChunk>();
+    for (var entity : decoded.entities) {
+      int chunkX = entity.chunkX();
+      int chunkZ = entity.chunkZ();
+      byChunk
+          .computeIfAbsent(
+              SectionPos.asLong(chunkX, 0, chunkZ), key -> new EntityChunk(chunkX, chunkZ))
+          .entities
+          .add(entity);
+    }
+
+    var sorted = new ArrayList<>(byChunk.values());
+    sorted.sort(Comparator.comparingInt(EntityChunk::z).thenComparingInt(EntityChunk::x));
+    entityChunks = new ArrayDeque<>(sorted);
+    totalEntities = decoded.entities.size();
+  }
+
+  /** Transforms runs and block entities of a decoded subparcel to world space, split by chunk. */
+  private void addSubparcel(ParcellaD32Loader.DecodedSubparcel decoded) {
+    var subparcel = decoded.subparcel;
+
+    decoded.forEachRun(
+        new ParcellaD32Loader.BlockStateLoader() {
+          @Override
+          public void load(int localX, int localY, int localZ, BlockState localBlockState) {
+            loadRun(localX, localY, localZ, localX, localY, localZ, localBlockState);
+          }
+
+          @Override
+          public void loadRun(
+              int minX,
+              int minY,
+              int minZ,
+              int maxX,
+              int maxY,
+              int maxZ,
+              BlockState localBlockState) {
+            BoundingBox box =
+                loader.getRunWorldBox(ctx, subparcel, minX, minY, minZ, maxX, maxY, maxZ);
+            BlockState worldBlockState = ctx.transform.apply(localBlockState);
+
+            int minChunkX = SectionPos.blockToSectionCoord(box.minX());
+            int maxChunkX = SectionPos.blockToSectionCoord(box.maxX());
+            int minChunkZ = SectionPos.blockToSectionCoord(box.minZ());
+            int maxChunkZ = SectionPos.blockToSectionCoord(box.maxZ());
+
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+              for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                var chunk = getOrCreateChunk(chunkX, chunkZ);
+                int chunkMinX = SectionPos.sectionToBlockCoord(chunkX);
+                int chunkMinZ = SectionPos.sectionToBlockCoord(chunkZ);
+                chunk.addCuboid(
+                    Math.max(box.minX(), chunkMinX),
+                    box.minY(),
+                    Math.max(box.minZ(), chunkMinZ),
+                    Math.min(box.maxX(), chunkMinX + 15),
+                    box.maxY(),
+                    Math.min(box.maxZ(), chunkMinZ + 15),
+                    worldBlockState);
+              }
+            }
+          }
+        });
+
+    Path blockEntitySource = decoded.getBlockEntitySource();
+    if (decoded.blockEntities != null && blockEntitySource != null) {
+      for (var entry : decoded.blockEntities.blockEntities()) {
+        BlockPos worldPos =
+            loader.getBlockEntityWorldPos(
+                ctx, blockEntitySource, subparcel, entry, problemReporter);
+        if (worldPos != null) {
+          getOrCreateChunk(
+                  SectionPos.blockToSectionCoord(worldPos.getX()),
+                  SectionPos.blockToSectionCoord(worldPos.getZ()))
+              .blockEntities
+              .add(new PendingBlockEntity(worldPos, entry.data()));
+        }
+      }
+    }
+
+    if (!decoded.problems.isEmpty()) {
+      problemReporter.report(decoded.problems::getTreeReport);
+    }
+  }
+
+  private ChunkWork getOrCreateChunk(int chunkX, int chunkZ) {
+    return chunkMap.computeIfAbsent(
+        SectionPos.asLong(chunkX, 0, chunkZ),
+        key -> {
+          var chunk = new ChunkWork(chunkX, chunkZ);
+          chunks.add(chunk);
+          return chunk;
+        });
+  }
+
+  private record PendingBlockEntity(BlockPos worldPos, CompoundTag data) {}
+
+  /** Decoded entities whose position is in a single chunk. */
+  private static final class EntityChunk {
+    private final int x;
+    private final int z;
+
+    private final List<ParcellaD32Loader.DecodedEntity> entities = new ArrayList<>();
+
+    /** Index of the next entity to spawn */
+    private int next = 0;
+
+    private EntityChunk(int x, int z) {
+      this.x = x;
+      this.z = z;
+    }
+
+    private int x() {
+      return x;
+    }
+
+    private int z() {
+      return z;
+    }
+  }
+
+  /** Blocks and block entities to place in a single chunk, in world space. */
+  private final class ChunkWork {
+    private static final int CUBOID_STRIDE = 6;
+
+    private final int x;
+    private final int z;
+
+    /** {@code minX, minY, minZ, maxX, maxY, maxZ} of each cuboid */
+    private int[] cuboids = new int[CUBOID_STRIDE * 16];
+
+    private final List<BlockState> states = new ArrayList<>();
+    private final List<PendingBlockEntity> blockEntities = new ArrayList<>();
+
+    private int cuboidIndex = 0;
+    private boolean resuming = false;
+    private int cursorX;
+    private int cursorY;
+    private int cursorZ;
+
+    private ChunkWork(int x, int z) {
+      this.x = x;
+      this.z = z;
+    }
+
+    private int x() {
+      return x;
+    }
+
+    private int z() {
+      return z;
+    }
+
+    private void addCuboid(
+        int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState state) {
+      int offset = states.size() * CUBOID_STRIDE;
+      if (offset + CUBOID_STRIDE > cuboids.length) {
+        cuboids = Arrays.copyOf(cuboids, cuboids.length * 2);
+      }
+      cuboids[offset] = minX;
+      cuboids[offset + 1] = minY;
+      cuboids[offset + 2] = minZ;
+      cuboids[offset + 3] = maxX;
+      cuboids[offset + 4] = maxY;
+      cuboids[offset + 5] = maxZ;
+      states.add(state);
+
+      totalBlocks += (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+    }
+
+    /**
+     * Places blocks of this chunk until the budget is exhausted, then applies block entity data.
+     *
+     * @return {@code true} if the whole chunk is placed
+     */
+    private boolean place(Budget budget, BlockSink blockSink) {
+      while (cuboidIndex < states.size()) {
+        int offset = cuboidIndex * CUBOID_STRIDE;
+        int minX = cuboids[offset];
+        int minY = cuboids[offset + 1];
+        int minZ = cuboids[offset + 2];
+        int maxX = cuboids[offset + 3];
+        int maxY = cuboids[offset + 4];
+        int maxZ = cuboids[offset + 5];
+        BlockState state = states.get(cuboidIndex);
+
+        if (!resuming) {
+          cursorX = minX;
+          cursorY = minY;
+          cursorZ = minZ;
+          resuming = true;
+        }
+
+        while (cursorY <= maxY) {
+          while (cursorX <= maxX) {
+            while (cursorZ <= maxZ) {
+              if (budget.isExhausted()) {
+                return false;
+              }
+              blockSink.setBlock(cursorX, cursorY, cursorZ, state);
+              budget.consume(1);
+              placedBlocks++;
+              cursorZ++;
+            }
+            cursorZ = minZ;
+            cursorX++;
+          }
+          cursorX = minX;
+          cursorY++;
+        }
+
+        resuming = false;
+        cuboidIndex++;
+      }
+
+      for (var blockEntity : blockEntities) {
+        loader.placeBlockEntity(ctx, blockEntity.worldPos(), blockEntity.data(), problemReporter);
+      }
+      blockEntities.clear();
+      return true;
+    }
+  }
+}
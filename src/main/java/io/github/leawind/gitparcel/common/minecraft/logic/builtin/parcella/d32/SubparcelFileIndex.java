@@ -0,0 +1,157 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32;
+
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils.RadixTreePathGenerator;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Files and directories that exist under a subparcels directory, found by a single walk of the
+ * directory.
+ *
+ * <p>Answers which subparcels have a block state file or a block entity file from memory, so
+ * loading and saving do not build the path of every subparcel and probe it on disk. Paths returned
+ * by this index are equal to those built by {@link RadixTreePathGenerator#toPath}.
+ *
+ * <p>The walk only lists directories and never reads file attributes. Names are classified by
+ * their form alone: {@code XX} is a directory, {@code XX} followed by a suffix is a file, where
+ * {@code XX} is an upper case hex byte. Other entries are ignored.
+ *
+ * <p>This is a snapshot. It is not updated when files are created or deleted afterward, except
+ * through {@link #addDirectory}.
+ */
+public final class SubparcelFileIndex {
+  /** Deepest possible directory, for indices with all 8 bytes used */
+  private static final int MAX_DEPTH = Long.BYTES - 1;
+
+  private final Long2ObjectOpenHashMap<Path> blockStateFiles = new Long2ObjectOpenHashMap<>();
+  private final Long2ObjectOpenHashMap<Path> blockEntityFiles = new Long2ObjectOpenHashMap<>();
+  private final Set<Path> directories = new HashSet<>();
+
+  private SubparcelFileIndex() {}
+
+  /**
+   * @return Block state file of the subparcel, or {@code null} if it did not exist
+   */
+  public @Nullable Path getBlockStateFile(long index) {
+    return blockStateFiles.get(index);
+  }
+
+  /**
+   * @return Block entity file of the subparcel, or {@code null} if it did not exist
+   */
+  public @Nullable Path getBlockEntityFile(long index) {
+    return blockEntityFiles.get(index);
+  }
+
+  public int blockStateFileCount() {
+    return blockStateFiles.size();
+  }
+
+  public int blockEntityFileCount() {
+    return blockEntityFiles.size();
+  }
+
+  public boolean hasDirectory(Path dir) {
+    return directories.contains(dir);
+  }
+
+  /** Records that the given directory exists, e.g. after creating it. */
+  public void addDirectory(Path dir) {
+    directories.add(dir);
+  }
+
+  /**
+   * Walks the given subparcels directory.
+   *
+   * @return Index of the directory, or an empty index if it does not exist
+   * @throws IOException If an I/O error occurs
+   */
+  public static SubparcelFileIndex scan(Path subparcelsDir) throws IOException {
+    var index = new SubparcelFileIndex();
+    try {
+      index.scan(subparcelsDir, 0, 0);
+    } catch (NoSuchFileException | NotDirectoryException e) {
+      return new SubparcelFileIndex();
+    }
+    return index;
+  }
+
+  /**
+   * @param prefix Low bytes of the subparcel index given by the parent directories
+   * @param depth Number of parent directories below the subparcels directory
+   */
+  private void scan(Path dir, long prefix, int depth) throws IOException {
+    directories.add(dir);
+    int shift = depth * 8;
+
+    try (var stream = Files.newDirectoryStream(dir)) {
+      for (Path entry : stream) {
+        String name = entry.getFileName().toString();
+        int b = parseHexByte(name);
+        if (b == -1) {
+          continue;
+        }
+
+        if (name.length() == 2) {
+          if (depth < MAX_DEPTH) {
+            try {
+              scan(entry, prefix | (long) b << shift, depth + 1);
+            } catch (NotDirectoryException e) {
+              // A file without suffix, ignore it
+            }
+          }
+          continue;
+        }
+
+        // The last byte is never 0 below the root, see RadixTreePathGenerator
+        if (depth > 0 && b == 0) {
+          continue;
+        }
+        long index = prefix | (long) b << shift;
+        String suffix = name.substring(2);
+        if (suffix.equals(ParcellaD32Format.SUBPARCEL_BLOCK_STATE_SUFFIX)
+            || suffix.equals(ParcellaD32Format.SUBPARCEL_BINARY_BLOCK_STATE_SUFFIX)) {
+          blockStateFiles.put(index, entry);
+        } else if (suffix.equals(ParcellaD32Format.SUBPARCEL_BLOCK_ENTITY_SUFFIX)) {
+          blockEntityFiles.put(index, entry);
+        }
+      }
+    } catch (DirectoryIteratorException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * @return Value of the upper case hex byte at the start of the name, or {@code -1} if there is
+   *     none
+   */
+  private static int parseHexByte(String name) {
+    if (name.length() < 2) {
+      return -1;
+    }
+    int high = hexDigit(name.charAt(0));
+    int low = hexDigit(name.charAt(1));
+    if (high == -1 || low == -1) {
+      return -1;
+    }
+    return high << 4 | low;
+  }
+
+  private static int hexDigit(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,153 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32;
+
+import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelStorage;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Content hashes of the subparcels written by the last save, keyed by subparcel index.
+ *
+ * <p>Each entry also records a stamp of the files of the subparcel, taken right after they were
+ * written. A subparcel can be skipped only if both its content hash and the stamp of its files are
+ * unchanged, so files modified outside the saver are always rewritten.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ *     0=5E3A01C7D2B4F809,C41D7730E9AB5F12
+ *     7=0B9D44E1A7C35F26,2F86B0D3C15E947A
+ * </pre>
+ */
+public final class SubparcelHashIndex {
+  public record Entry(long contentHash, long fileStamp) {}
+
+  private final Long2ObjectOpenHashMap<Entry> entries = new Long2ObjectOpenHashMap<>();
+
+  public @Nullable Entry get(long index) {
+    return entries.get(index);
+  }
+
+  public void put(long index, Entry entry) {
+    entries.put(index, entry);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Loads an index from the given file.
+   *
+   * @return Loaded index, or an empty index if the file does not exist or is invalid
+   */
+  public static SubparcelHashIndex load(Path file) {
+    var index = new SubparcelHashIndex();
+    if (!Files.exists(file)) {
+      return index;
+    }
+
+    try {
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        int eq = line.indexOf('=');
+        int comma = line.indexOf(',', eq + 1);
+        if (eq == -1 || comma == -1) {
+          throw new NumberFormatException("Invalid line: " + line);
+        }
+        index.put(
+            Long.parseUnsignedLong(line, 0, eq, 16),
+            new Entry(
+                Long.parseUnsignedLong(line, eq + 1, comma, 16),
+                Long.parseUnsignedLong(line, comma + 1, line.length(), 16)));
+      }
+    } catch (IOException | NumberFormatException e) {
+      ParcelStorage.LOGGER.warn("Ignoring invalid subparcel hash index {}: {}", file, e.toString());
+      return new SubparcelHashIndex();
+    }
+    return index;
+  }
+
+  /**
+   * Saves this index to the given file, sorted by subparcel index.
+   *
+   * @throws IOException If an I/O error occurs
+   */
+  public void save(Path file) throws IOException {
+    long[] keys = entries.keySet().toLongArray();
+    Arrays.sort(keys);
+
+    var sb = new StringBuilder(keys.length * 36);
+    for (long key : keys) {
+      Entry entry = entries.get(key);
+      sb.append(Long.toHexString(key).toUpperCase())
+          .append('=')
+          .append(toFixedHex(entry.contentHash()))
+          .append(',')
+          .append(toFixedHex(entry.fileStamp()))
+          .append('\n');
+    }
+    Files.writeString(file, sb, StandardCharsets.UTF_8);
+  }
+
+  private static String toFixedHex(long value) {
+    return String.format("%016X", value);
+  }
+
+  /**
+   * Stamp of the size and modification time of the given files. Missing files are included too, so
+   * creating or deleting a file changes the stamp.
+   *
+   * @throws IOException If an I/O error occurs
+   */
+  public static long getFileStamp(Path... files) throws IOException {
+    long stamp = 0;
+    for (Path file : files) {
+      long size;
+      long modified;
+      try {
+        var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        size = attributes.size();
+        modified = attributes.lastModifiedTime().toMillis();
+      } catch (NoSuchFileException e) {
+        size = -1;
+        modified = -1;
+      }
+      stamp = mix(mix(stamp, size), modified);
+    }
+    return stamp;
+  }
+
+  /**
+   * Mixes the length and content of the remaining bytes into a 64-bit hash, without consuming them.
+   *
+   * <p>The content is hashed with both CRC32C and CRC32. Their polynomials are coprime, so together
+   * they act as a 64-bit CRC: any two inputs of the same length that differ in at most 64
+   * consecutive bits have different hashes.
+   */
+  public static long hashBytes(long hash, ByteBuffer bytes) {
+    var crc32c = new CRC32C();
+    crc32c.update(bytes.duplicate());
+    var crc32 = new CRC32();
+    crc32.update(bytes.duplicate());
+    hash = mix(hash, bytes.remaining());
+    return mix(hash, crc32c.getValue() << 32 | crc32.getValue());
+  }
+
+  /** Mixes a value into a 64-bit hash. The result is stable across runs. */
+  public static long mix(long hash, long value) {
+    long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 29);
+  }
+}
@@ -0,0 +1,420 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32;
+
+import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils.RadixTreePathGenerator;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils.ZOrder3D;
+import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelStorage;
+import io.github.leawind.gitparcel.common.utils.GrowableByteBuffer;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * All subparcel files of a parcel in a single file, as an alternative to the directory tree of
+ * {@link RadixTreePathGenerator}.
+ *
+ * <p>Layout, all numbers big-endian:
+ *
+ * <pre>
+ *     header:  magic (4 bytes), version (int), table offset (long)
+ *     blobs:   content of subparcel files, in no particular order
+ *     table:   entry count (int), then for each entry:
+ *              subparcel index (long), kind (byte), offset (long), length (int), CRC32 (int)
+ * </pre>
+ *
+ * <p>Entries are keyed by the {@link ZOrder3D} index of the subparcel and sorted by it, and each
+ * blob is read with a single positional read, so subparcels can be read in any order and from any
+ * thread.
+ *
+ * <p>Saving appends new blobs and a new table to the end of the file, and points the header to the
+ * new table last. Blobs of unchanged subparcels are kept where they are. An interrupted save
+ * leaves the previous table in effect. Space taken by replaced blobs and tables is reclaimed by
+ * rewriting the whole file once it exceeds the space in use, see {@link Writer#finish}.
+ */
+public final class SubparcelPack implements Closeable {
+  public static final byte[] MAGIC = {(byte) 0x89, 'P', 'C', 'K'};
+  public static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 4 + Integer.BYTES + Long.BYTES;
+  private static final int ENTRY_SIZE = Long.BYTES + 1 + Long.BYTES + Integer.BYTES * 2;
+
+  /** Unused space is reclaimed only if there is at least this much */
+  private static final long MIN_GARBAGE_TO_COMPACT = 1024 * 1024;
+
+  /** What a blob contains */
+  public enum Kind {
+    /** Content of a block state file */
+    BLOCK_STATES,
+    /** Content of a block entity file */
+    BLOCK_ENTITIES;
+
+    private static final Kind[] VALUES = values();
+  }
+
+  public record Entry(long offset, int length, int crc32) {}
+
+  public static class InvalidPackException extends ParcelException.CorruptedParcelException {
+    public InvalidPackException(String message) {
+      super(message);
+    }
+  }
+
+  private final Path file;
+  private final FileChannel channel;
+  private final Map<Kind, Long2ObjectOpenHashMap<Entry>> entries;
+
+  private SubparcelPack(
+      Path file, FileChannel channel, Map<Kind, Long2ObjectOpenHashMap<Entry>> entries) {
+    this.file = file;
+    this.channel = channel;
+    this.entries = entries;
+  }
+
+  public Path file() {
+    return file;
+  }
+
+  /**
+   * @return Entry of the given subparcel, or {@code null} if it has none of this kind
+   */
+  public @Nullable Entry get(Kind kind, long index) {
+    return entries.get(kind).get(index);
+  }
+
+  public int size(Kind kind) {
+    return entries.get(kind).size();
+  }
+
+  /**
+   * Reads the blob of an entry and checks its CRC32.
+   *
+   * <p>May be called from any thread.
+   *
+   * @param buffer Buffer to read into
+   * @return Content of the blob, only valid until the buffer is modified
+   * @throws IOException If an I/O error occurs, or the checksum does not match
+   */
+  public ByteBuffer read(Entry entry, GrowableByteBuffer buffer) throws IOException {
+    var data = buffer.readFrom(channel, entry.offset(), entry.length());
+    if (crc32(data) != entry.crc32()) {
+      throw new IOException("Checksum mismatch at offset " + entry.offset() + " in " + file);
+    }
+    return data;
+  }
+
+  /**
+   * Opens a pack for reading. It must be closed after use.
+   *
+   * @throws IOException If an I/O error occurs
+   * @throws InvalidPackException If the file is not a valid pack
+   */
+  public static SubparcelPack open(Path file) throws IOException, InvalidPackException {
+    var channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      return new SubparcelPack(file, channel, readTable(file, channel));
+    } catch (IOException | InvalidPackException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private static Map<Kind, Long2ObjectOpenHashMap<Entry>> createEntryMaps() {
+    Map<Kind, Long2ObjectOpenHashMap<Entry>> entries = new EnumMap<>(Kind.class);
+    for (var kind : Kind.VALUES) {
+      entries.put(kind, new Long2ObjectOpenHashMap<>());
+    }
+    return entries;
+  }
+
+  private static Map<Kind, Long2ObjectOpenHashMap<Entry>> readTable(Path file, FileChannel channel)
+      throws IOException, InvalidPackException {
+    long size = channel.size();
+    if (size < HEADER_SIZE) {
+      throw new InvalidPackException("Subparcel pack too short: " + file);
+    }
+    var header = readFully(channel, 0, HEADER_SIZE);
+    byte[] magic = new byte[MAGIC.length];
+    header.get(magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new InvalidPackException("Not a subparcel pack: " + file);
+    }
+    int version = header.getInt();
+    if (version != VERSION) {
+      throw new InvalidPackException("Unsupported subparcel pack version " + version + ": " + file);
+    }
+
+    var entries = createEntryMaps();
+    long tableOffset = header.getLong();
+    if (tableOffset == 0) {
+      // Created, but never finished
+      return entries;
+    }
+    if (tableOffset < HEADER_SIZE || tableOffset > size - Integer.BYTES) {
+      throw new InvalidPackException("Invalid table offset " + tableOffset + ": " + file);
+    }
+
+    int count = readFully(channel, tableOffset, Integer.BYTES).getInt();
+    if (count < 0 || (long) count * ENTRY_SIZE > size - tableOffset - Integer.BYTES) {
+      throw new InvalidPackException("Invalid entry count " + count + ": " + file);
+    }
+
+    var table = readFully(channel, tableOffset + Integer.BYTES, count * ENTRY_SIZE);
+    for (int i = 0; i < count; i++) {
+      long index = table.getLong();
+      int kind = table.get();
+      long offset = table.getLong();
+      int length = table.getInt();
+      int crc32 = table.getInt();
+      if (kind < 0 || kind >= Kind.VALUES.length) {
+        throw new InvalidPackException("Invalid entry kind " + kind + ": " + file);
+      }
+      if (offset < HEADER_SIZE || length < 0 || offset + length > size) {
+        throw new InvalidPackException("Invalid entry at offset " + offset + ": " + file);
+      }
+      entries.get(Kind.VALUES[kind]).put(index, new Entry(offset, length, crc32));
+    }
+    return entries;
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, long position, int length)
+      throws IOException {
+    var buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+      }
+    }
+    return buffer.flip();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer data, long position)
+      throws IOException {
+    while (data.hasRemaining()) {
+      channel.write(data, position + data.position());
+    }
+  }
+
+  private static int crc32(ByteBuffer data) {
+    var crc = new CRC32();
+    crc.update(data.duplicate());
+    return (int) crc.getValue();
+  }
+
+  private static ByteBuffer createHeader(long tableOffset) {
+    return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).putInt(VERSION).putLong(tableOffset).flip();
+  }
+
+  /**
+   * Writes a new version of a pack, starting from the entries of the existing pack.
+   *
+   * <p>Entries that are neither {@linkplain #keep kept} nor {@linkplain #put replaced} are dropped
+   * when {@linkplain #finish finished}. Safe to use from several threads.
+   */
+  public static final class Writer implements Closeable {
+    private final Path file;
+    private final FileChannel channel;
+
+    /** Entries of the existing pack */
+    private final Map<Kind, Long2ObjectOpenHashMap<Entry>> previous;
+
+    /** Entries of the new pack */
+    private final Map<Kind, Long2ObjectOpenHashMap<Entry>> current = createEntryMaps();
+
+    /** Where the next blob is written */
+    private long end;
+
+    private Writer(
+        Path file,
+        FileChannel channel,
+        Map<Kind, Long2ObjectOpenHashMap<Entry>> previous,
+        long end) {
+      this.file = file;
+      this.channel = channel;
+      this.previous = previous;
+      this.end = end;
+    }
+
+    /**
+     * Opens a pack for writing, creating it if it does not exist. An invalid pack is replaced.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public static Writer open(Path file) throws IOException {
+      var channel =
+          FileChannel.open(
+              file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        if (channel.size() > 0) {
+          try {
+            return new Writer(file, channel, readTable(file, channel), channel.size());
+          } catch (InvalidPackException e) {
+            ParcelStorage.LOGGER.warn("Replacing invalid subparcel pack: {}", e.getMessage());
+          }
+        }
+        channel.truncate(0);
+        writeFully(channel, createHeader(0), 0);
+        return new Writer(file, channel, createEntryMaps(), HEADER_SIZE);
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    /**
+     * @return Entry of the given subparcel in the new pack, or in the existing pack if it was not
+     *     kept or replaced yet
+     */
+    public synchronized @Nullable Entry get(Kind kind, long index) {
+      var entry = current.get(kind).get(index);
+      return entry != null ? entry : previous.get(kind).get(index);
+    }
+
+    /** Keeps all entries of the given subparcel from the existing pack. */
+    public synchronized void keep(long index) {
+      for (var kind : Kind.VALUES) {
+        var entry = previous.get(kind).get(index);
+        if (entry != null) {
+          current.get(kind).putIfAbsent(index, entry);
+        }
+      }
+    }
+
+    /**
+     * Appends a blob to the pack, replacing the entry of the given subparcel.
+     *
+     * @param data Content of the blob, from its position to its limit
+     * @throws IOException If an I/O error occurs
+     */
+    public void put(Kind kind, long index, ByteBuffer data) throws IOException {
+      int length = data.remaining();
+      int crc32 = crc32(data);
+      long offset;
+      synchronized (this) {
+        offset = end;
+        end += length;
+      }
+      // Positional writes to distinct ranges may run concurrently
+      writeFully(channel, data.duplicate(), offset);
+      synchronized (this) {
+        current.get(kind).put(index, new Entry(offset, length, crc32));
+      }
+    }
+
+    /**
+     * Writes the table of the new pack and makes it take effect, then closes this writer.
+     *
+     * <p>If more than half of the file would be unused, and at least {@link
+     * #MIN_GARBAGE_TO_COMPACT} bytes, the file is rewritten with only the entries in use.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public synchronized void finish() throws IOException {
+      try {
+        var sorted = sortedEntries();
+        long used = HEADER_SIZE + Integer.BYTES + (long) sorted.size() * ENTRY_SIZE;
+        for (var e : sorted) {
+          used += e.entry().length();
+        }
+        long garbage = end - used;
+        if (garbage >= MIN_GARBAGE_TO_COMPACT && garbage > used) {
+          compact(sorted);
+          return;
+        }
+
+        long tableOffset = end;
+        writeFully(channel, createTable(sorted, null), tableOffset);
+        channel.force(false);
+        writeFully(channel, createHeader(tableOffset), 0);
+        channel.force(false);
+      } finally {
+        channel.close();
+      }
+    }
+
+    /** Copies entries in use into a new file, which then replaces the pack. */
+    private void compact(List<IndexedEntry> sorted) throws IOException {
+      Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+      try (var out =
+          FileChannel.open(
+              tmp,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE)) {
+        long[] offsets = new long[sorted.size()];
+        long position = HEADER_SIZE;
+        for (int i = 0; i < sorted.size(); i++) {
+          var entry = sorted.get(i).entry();
+          offsets[i] = position;
+          out.position(position);
+          long copied = 0;
+          while (copied < entry.length()) {
+            copied += channel.transferTo(entry.offset() + copied, entry.length() - copied, out);
+          }
+          position += entry.length();
+        }
+        writeFully(out, createTable(sorted, offsets), position);
+        writeFully(out, createHeader(position), 0);
+        out.force(false);
+      }
+      channel.close();
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private record IndexedEntry(long index, Kind kind, Entry entry) {}
+
+    private List<IndexedEntry> sortedEntries() {
+      List<IndexedEntry> sorted = new ArrayList<>();
+      for (var kind : Kind.VALUES) {
+        for (var e : current.get(kind).long2ObjectEntrySet()) {
+          sorted.add(new IndexedEntry(e.getLongKey(), kind, e.getValue()));
+        }
+      }
+      sorted.sort(
+          Comparator.comparingLong(IndexedEntry::index).thenComparing(IndexedEntry::kind));
+      return sorted;
+    }
+
+    /**
+     * @param offsets New offsets of the entries, or {@code null} to keep their offsets
+     */
+    private static ByteBuffer createTable(List<IndexedEntry> sorted, long @Nullable [] offsets) {
+      var table = ByteBuffer.allocate(Integer.BYTES + sorted.size() * ENTRY_SIZE);
+      table.putInt(sorted.size());
+      for (int i = 0; i < sorted.size(); i++) {
+        var e = sorted.get(i);
+        table
+            .putLong(e.index())
+            .put((byte) e.kind().ordinal())
+            .putLong(offsets != null ? offsets[i] : e.entry().offset())
+            .putInt(e.entry().length())
+            .putInt(e.entry().crc32());
+      }
+      return table.flip();
+    }
+
+    /** Closes without making any change take effect. */
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
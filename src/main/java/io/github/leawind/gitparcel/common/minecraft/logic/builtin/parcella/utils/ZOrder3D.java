@@ -1,8 +1,5 @@
 package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils;
 
-import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
-import java.util.Map;
-import net.minecraft.core.BlockPos;
 import net.minecraft.core.Vec3i;
 import org.joml.Vector3i;
 
@@ -72,24 +69,65 @@ public final class ZOrder3D {
         (int) compact1By2(index >> 2));
   }
 
+  /**
+   * Same as {@link #indexToCoord(long)}, but writes the coordinates to {@code out} instead of
+   * allocating.
+   *
+   * @param index the 1D Z-Order index to decode
+   * @param out receives x, y and z at indices 0, 1 and 2
+   */
+  public static void indexToCoord(long index, int[] out) {
+    out[0] = (int) compact1By2(index);
+    out[1] = (int) compact1By2(index >> 1);
+    out[2] = (int) compact1By2(index >> 2);
+  }
+
   /**
    * Converts a signed 1D Z-Order index back to 3D coordinates that may include negative values.
    * This method handles coordinates in all 8 octants by using a sign/magnitude representation.
    *
    * @param index the 1D Z-Order index to decode (includes sign information)
-   * @return the corresponding 3D coordinate as a Vector3i that may contain negative values
+   * @return the corresponding 3D coordinate as a new Vector3i that may contain negative values
    */
   public static Vector3i indexToCoordSigned(long index) {
-    if (index < CACHE_SIZE) {
-      return INDEX_TO_COORD_CACHE[(int) index];
-    }
-    return indexToCoordSignedImpl(index);
+    int[] coord = new int[3];
+    indexToCoordSigned(index, coord);
+    return new Vector3i(coord[0], coord[1], coord[2]);
   }
 
-  /** Internal implementation of indexToCoordSigned without caching. */
-  private static Vector3i indexToCoordSignedImpl(long index) {
-    var x = SIGN_OFFSET[(int) (index % 8)];
-    return indexToCoord(index / 8).mul(x[0]).add(x[1]);
+  /**
+   * Same as {@link #indexToCoordSigned(long)}, but writes the coordinates to {@code out} instead of
+   * allocating.
+   *
+   * @param index the 1D Z-Order index to decode (includes sign information)
+   * @param out receives x, y and z at indices 0, 1 and 2
+   */
+  public static void indexToCoordSigned(long index, int[] out) {
+    int k = (int) index & 0b111;
+    long magnitude = index >>> 3;
+    int x = (int) compact1By2(magnitude);
+    int y = (int) compact1By2(magnitude >> 1);
+    int z = (int) compact1By2(magnitude >> 2);
+    out[0] = (k & 0b100) != 0 ? ~x : x;
+    out[1] = (k & 0b010) != 0 ? ~y : y;
+    out[2] = (k & 0b001) != 0 ? ~z : z;
+  }
+
+  /**
+   * Decodes many signed indices at once.
+   *
+   * @param indices signed 1D Z-Order indices
+   * @param out receives x, y and z of {@code indices[i]} at {@code 3 * i}, {@code 3 * i + 1} and
+   *     {@code 3 * i + 2}. Must have a length of at least {@code 3 * indices.length}.
+   */
+  public static void indexToCoordSigned(long[] indices, int[] out) {
+    int[] coord = new int[3];
+    for (int i = 0; i < indices.length; i++) {
+      indexToCoordSigned(indices[i], coord);
+      out[3 * i] = coord[0];
+      out[3 * i + 1] = coord[1];
+      out[3 * i + 2] = coord[2];
+    }
   }
 
   /**
@@ -124,28 +162,74 @@ public final class ZOrder3D {
    * @return the corresponding 1D Z-Order index with sign information encoded
    */
   public static long coordToIndexSigned(int x, int y, int z) {
-    var cached = COORD_TO_INDEX_CACHE.get(hash(x, y, z));
-    if (cached != null) {
-      return cached;
+    return signedTermX(x) | signedTermY(y) | signedTermZ(z);
+  }
+
+  /**
+   * Encodes every coordinate of a grid at once. Since each axis contributes its own bits to the
+   * index, each coordinate value is only spread once.
+   *
+   * <p>Indices are written with X as the outermost and Z as the innermost loop, the same order as
+   * {@link ParcellaUtils#subdivideParcel}.
+   *
+   * @param minX the smallest X coordinate of the grid (may be negative)
+   * @param minY the smallest Y coordinate of the grid (may be negative)
+   * @param minZ the smallest Z coordinate of the grid (may be negative)
+   * @param sizeX number of X coordinates
+   * @param sizeY number of Y coordinates
+   * @param sizeZ number of Z coordinates
+   * @param out receives signed indices. Must have a length of at least {@code sizeX * sizeY *
+   *     sizeZ}.
+   */
+  public static void coordToIndexSigned(
+      int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ, long[] out) {
+    long[] termsY = new long[sizeY];
+    for (int y = 0; y < sizeY; y++) {
+      termsY[y] = signedTermY(minY + y);
+    }
+    long[] termsZ = new long[sizeZ];
+    for (int z = 0; z < sizeZ; z++) {
+      termsZ[z] = signedTermZ(minZ + z);
+    }
+
+    int i = 0;
+    for (int x = 0; x < sizeX; x++) {
+      long termX = signedTermX(minX + x);
+      for (int y = 0; y < sizeY; y++) {
+        long termXY = termX | termsY[y];
+        for (int z = 0; z < sizeZ; z++) {
+          out[i++] = termXY | termsZ[z];
+        }
+      }
     }
-    return coordToIndexSignedImpl(x, y, z);
   }
 
-  /** Internal implementation of coordToIndexSigned without caching. */
-  private static long coordToIndexSignedImpl(int x, int y, int z) {
-    int cx = (x >= 0) ? x : (-x - 1);
-    int cy = (y >= 0) ? y : (-y - 1);
-    int cz = (z >= 0) ? z : (-z - 1);
+  // Bits that each axis contributes to a signed index
+
+  private static long signedTermX(int x) {
+    return x >= 0 ? part1By2(x) << 3 : part1By2(~x) << 3 | 0b100;
+  }
 
-    int k = 0;
-    if (x < 0) k |= 0b100;
-    if (y < 0) k |= 0b010;
-    if (z < 0) k |= 0b001;
+  private static long signedTermY(int y) {
+    return y >= 0 ? part1By2(y) << 4 : part1By2(~y) << 4 | 0b010;
+  }
 
-    return (coordToIndex(cx, cy, cz) << 3) | k;
+  private static long signedTermZ(int z) {
+    return z >= 0 ? part1By2(z) << 5 : part1By2(~z) << 5 | 0b001;
   }
 
+  /**
+   * Spreads the lowest 21 bits of the value so that there are two zero bits between each of them,
+   * using a table of 7 bit chunks.
+   */
   private static long part1By2(long i) {
+    return PART_1_BY_2[(int) i & 0x7F]
+        | PART_1_BY_2[(int) (i >>> 7) & 0x7F] << 21
+        | PART_1_BY_2[(int) (i >>> 14) & 0x7F] << 42;
+  }
+
+  /** Spreads the lowest 21 bits with magic numbers, used to build the table. */
+  private static long part1By2Magic(long i) {
     i &= 0x00000000001fffffL;
     i = (i ^ (i << 32)) & 0x1f00000000ffffL;
     i = (i ^ (i << 16)) & 0x1f0000ff0000ffL;
@@ -165,42 +249,12 @@ public final class ZOrder3D {
     return i;
   }
 
-  private static final Vector3i[][] SIGN_OFFSET =
-      new Vector3i[][] {
-        new Vector3i[] {new Vector3i(1, 1, 1), new Vector3i(0, 0, 0)},
-        new Vector3i[] {new Vector3i(1, 1, -1), new Vector3i(0, 0, -1)},
-        new Vector3i[] {new Vector3i(1, -1, 1), new Vector3i(0, -1, 0)},
-        new Vector3i[] {new Vector3i(1, -1, -1), new Vector3i(0, -1, -1)},
-        new Vector3i[] {new Vector3i(-1, 1, 1), new Vector3i(-1, 0, 0)},
-        new Vector3i[] {new Vector3i(-1, 1, -1), new Vector3i(-1, 0, -1)},
-        new Vector3i[] {new Vector3i(-1, -1, 1), new Vector3i(-1, -1, 0)},
-        new Vector3i[] {new Vector3i(-1, -1, -1), new Vector3i(-1, -1, -1)},
-      };
-
-  private static long hash(int x, int y, int z) {
-    final long PACKED_X_MASK = (1L << BlockPos.PACKED_HORIZONTAL_LENGTH) - 1L;
-    final long PACKED_Y_MASK = (1L << BlockPos.PACKED_Y_LENGTH) - 1L;
-    final long PACKED_Z_MASK = (1L << BlockPos.PACKED_HORIZONTAL_LENGTH) - 1L;
-    final int Z_OFFSET = BlockPos.PACKED_Y_LENGTH;
-    final int X_OFFSET = BlockPos.PACKED_Y_LENGTH + BlockPos.PACKED_HORIZONTAL_LENGTH;
-
-    return ((long) x & PACKED_X_MASK) << X_OFFSET
-        | ((long) y & PACKED_Y_MASK)
-        | ((long) z & PACKED_Z_MASK) << Z_OFFSET;
-  }
-
-  private static final int CACHE_SIZE = 512;
-  private static final Map<Long, Long> COORD_TO_INDEX_CACHE;
-  private static final Vector3i[] INDEX_TO_COORD_CACHE;
+  /** {@link #part1By2Magic} of every 7 bit value */
+  private static final long[] PART_1_BY_2 = new long[1 << 7];
 
   static {
-    COORD_TO_INDEX_CACHE = new Long2LongOpenHashMap(CACHE_SIZE);
-    INDEX_TO_COORD_CACHE = new Vector3i[CACHE_SIZE];
-    for (int i = 0; i < CACHE_SIZE; i++) {
-      var coord = indexToCoordSignedImpl(i);
-      INDEX_TO_COORD_CACHE[i] = coord;
-      BlockPos.ZERO.asLong();
-      COORD_TO_INDEX_CACHE.put(hash(coord.x, coord.y, coord.z), (long) i);
+    for (int i = 0; i < PART_1_BY_2.length; i++) {
+      PART_1_BY_2[i] = part1By2Magic(i);
     }
   }
 }
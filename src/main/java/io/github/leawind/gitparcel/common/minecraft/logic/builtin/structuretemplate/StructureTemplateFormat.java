@@ -4,31 +4,67 @@ import com.google.common.collect.ImmutableList;
 import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelFormat;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelFormatConfig;
+import io.github.leawind.gitparcel.common.api.parcel.ParcelLoadTask;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelTransform;
 import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelStorage;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Vec3i;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.DoubleTag;
+import net.minecraft.nbt.IntTag;
+import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.NbtAccounter;
 import net.minecraft.nbt.NbtAccounterException;
 import net.minecraft.nbt.NbtIo;
+import net.minecraft.util.ProblemReporter;
 import net.minecraft.util.RandomSource;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.decoration.painting.Painting;
+import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.ServerLevelAccessor;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.levelgen.structure.templatesystem.StructurePlaceSettings;
 import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
+import net.minecraft.world.level.storage.TagValueOutput;
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
 import org.jspecify.annotations.Nullable;
 
+/**
+ * Stores a parcel as vanilla structure template files.
+ *
+ * <p>Parcels that fit into a structure block, at most {@value #REGION_SIZE} blocks along each axis,
+ * are saved as a single {@value #NBT_FILE_NAME}. Larger parcels are split into regions of that
+ * size, each saved as a template in {@value #REGIONS_DIR_NAME}, named by its grid coordinates. An
+ * entity belongs to the region containing its position.
+ */
 public class StructureTemplateFormat
     implements ParcelFormat.Saver<ParcelFormatConfig.None>,
         ParcelFormat.Loader<ParcelFormatConfig.None> {
-  String NBT_FILE_NAME = "structure.nbt";
+  static final String NBT_FILE_NAME = "structure.nbt";
+  static final String REGIONS_DIR_NAME = "regions";
+
+  /** Suffix of files and directories being written, before they replace the previous ones */
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /** Suffix of the previous files and directories while they are being replaced */
+  private static final String BACKUP_SUFFIX = ".old";
+
+  /** Maximum size of a structure block along each axis */
+  static final int REGION_SIZE = 48;
 
   private static final Spec SPEC = new Spec("structure_template", 0);
 
@@ -51,19 +87,386 @@ public class StructureTemplateFormat
       throw new ParcelException.UnsupportedFeature(spec(), Feature.ROTATE, Feature.MIRROR);
     }
 
-    StructureTemplate template = new StructureTemplate();
-    template.fillFromWorld(
-        level, transform.getTranslatedOrigin(), parcelSize, true, ImmutableList.of());
-    CompoundTag tag = template.save(new CompoundTag());
+    capture(level, parcelSize, transform, dataDir, ignoreEntities).save();
+  }
 
-    Files.createDirectories(dataDir);
-    Path structureFile = dataDir.resolve(NBT_FILE_NAME);
-    try (OutputStream outputStream = Files.newOutputStream(structureFile)) {
-      NbtIo.writeCompressed(tag, outputStream);
+  /**
+   * Captures templates on the calling thread, then saves them in one task on the executor. Files
+   * are serialized and compressed in parallel on the common {@link
+   * java.util.concurrent.ForkJoinPool}, and only replace the previous ones once all are written.
+   *
+   * <p>{@link StructureTemplate#fillFromWorld} already copies block states, block entity data and
+   * entity data, so the captured templates do not reference the level any more.
+   */
+  @Override
+  public CompletableFuture<Void> saveAsync(
+      Level level,
+      Vec3i parcelSize,
+      Vec3i anchor,
+      ParcelTransform transform,
+      Path dataDir,
+      boolean ignoreEntities,
+      ParcelFormatConfig.@Nullable None config,
+      Executor executor) {
+    if (transform.hasOrientation()) {
+      return CompletableFuture.failedFuture(
+          new ParcelException.UnsupportedFeature(spec(), Feature.ROTATE, Feature.MIRROR));
+    }
+
+    var capture = capture(level, parcelSize, transform, dataDir, ignoreEntities);
+
+    return CompletableFuture.runAsync(
+        () -> {
+          try {
+            capture.save();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        },
+        executor);
+  }
+
+  /**
+   * A captured template and the file it is written to.
+   *
+   * @param entities Entities to write instead of the ones captured by the template, or {@code
+   *     null} to keep them
+   */
+  private record TemplateFile(Path file, StructureTemplate template, @Nullable ListTag entities) {
+    void write() throws IOException {
+      CompoundTag tag = template.save(new CompoundTag());
+      if (entities != null) {
+        tag.put("entities", entities);
+      }
+      try (OutputStream outputStream = Files.newOutputStream(file)) {
+        NbtIo.writeCompressed(tag, outputStream);
+      }
+    }
+  }
+
+  /**
+   * Templates captured from the level, written to temporary files first. The files of the parcel
+   * are only replaced by {@link #commit}, so a failed save leaves the previous save intact.
+   */
+  private static final class Capture {
+    private final Path dataDir;
+    private final boolean split;
+    private final List<TemplateFile> files;
+
+    private Capture(Path dataDir, boolean split, List<TemplateFile> files) {
+      this.dataDir = dataDir;
+      this.split = split;
+      this.files = files;
+    }
+
+    /**
+     * Writes all files in parallel, then replaces the files of the parcel with them. Temporary
+     * files are deleted if this fails.
+     */
+    void save() throws IOException {
+      try {
+        prepare();
+        files.parallelStream()
+            .forEach(
+                file -> {
+                  try {
+                    file.write();
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                });
+        commit();
+      } catch (UncheckedIOException e) {
+        discardQuietly();
+        throw e.getCause();
+      } catch (IOException | RuntimeException e) {
+        discardQuietly();
+        throw e;
+      }
+    }
+
+    /** Removes leftovers of an interrupted save, and creates the directory to write files into. */
+    void prepare() throws IOException {
+      recoverInterruptedCommit(dataDir);
+      discard();
+      Files.createDirectories(split ? getTempRegionsDir(dataDir) : dataDir);
+    }
+
+    /**
+     * Replaces the files of the parcel with the written ones, and removes the other layout.
+     *
+     * <p>The previous files are moved aside first and only deleted once the new ones are in place,
+     * so there is always a complete copy of the parcel on disk. See {@link
+     * #recoverInterruptedCommit}.
+     */
+    void commit() throws IOException {
+      Path nbtFile = dataDir.resolve(NBT_FILE_NAME);
+      Path regionsDir = dataDir.resolve(REGIONS_DIR_NAME);
+      Path nbtBackup = getBackup(nbtFile);
+      Path regionsBackup = getBackup(regionsDir);
+
+      if (Files.exists(nbtFile)) {
+        Files.move(nbtFile, nbtBackup, StandardCopyOption.ATOMIC_MOVE);
+      }
+      if (Files.exists(regionsDir)) {
+        Files.move(regionsDir, regionsBackup, StandardCopyOption.ATOMIC_MOVE);
+      }
+
+      try {
+        if (split) {
+          Files.move(getTempRegionsDir(dataDir), regionsDir, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+          Files.move(getTempNbtFile(dataDir), nbtFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+      } catch (IOException e) {
+        recoverInterruptedCommit(dataDir);
+        throw e;
+      }
+
+      Files.deleteIfExists(nbtBackup);
+      deleteRecursively(regionsBackup);
+    }
+
+    /** Deletes the written temporary files. */
+    void discard() throws IOException {
+      Files.deleteIfExists(getTempNbtFile(dataDir));
+      deleteRecursively(getTempRegionsDir(dataDir));
+    }
+
+    void discardQuietly() {
+      try {
+        discard();
+      } catch (IOException e) {
+        ParcelStorage.LOGGER.warn("Failed to delete temporary files in {}", dataDir, e);
+      }
+    }
+  }
+
+  /**
+   * Finishes a {@link Capture#commit} that was interrupted, e.g. by a crash.
+   *
+   * <p>If the parcel has no files, the commit stopped after moving the previous files aside, and
+   * they are moved back. Otherwise the new files are in place, and the previous ones are deleted.
+   */
+  static void recoverInterruptedCommit(Path dataDir) throws IOException {
+    Path nbtFile = dataDir.resolve(NBT_FILE_NAME);
+    Path regionsDir = dataDir.resolve(REGIONS_DIR_NAME);
+    Path nbtBackup = getBackup(nbtFile);
+    Path regionsBackup = getBackup(regionsDir);
+
+    if (!Files.exists(nbtFile) && !Files.exists(regionsDir)) {
+      if (Files.exists(nbtBackup)) {
+        Files.move(nbtBackup, nbtFile, StandardCopyOption.ATOMIC_MOVE);
+      }
+      if (Files.exists(regionsBackup)) {
+        Files.move(regionsBackup, regionsDir, StandardCopyOption.ATOMIC_MOVE);
+      }
+    } else {
+      Files.deleteIfExists(nbtBackup);
+      deleteRecursively(regionsBackup);
+    }
+  }
+
+  private static Path getBackup(Path path) {
+    return path.resolveSibling(path.getFileName() + BACKUP_SUFFIX);
+  }
+
+  private static Path getTempNbtFile(Path dataDir) {
+    return dataDir.resolve(NBT_FILE_NAME + TEMP_SUFFIX);
+  }
+
+  private static Path getTempRegionsDir(Path dataDir) {
+    return dataDir.resolve(REGIONS_DIR_NAME + TEMP_SUFFIX);
+  }
+
+  /**
+   * Captures the parcel as templates. Does not touch any file.
+   *
+   * @return Templates to write into temporary files
+   */
+  private static Capture capture(
+      Level level,
+      Vec3i parcelSize,
+      ParcelTransform transform,
+      Path dataDir,
+      boolean ignoreEntities) {
+    BlockPos origin = transform.getTranslatedOrigin();
+
+    if (!isSplit(parcelSize)) {
+      var template = new StructureTemplate();
+      template.fillFromWorld(level, origin, parcelSize, !ignoreEntities, ImmutableList.of());
+      return new Capture(
+          dataDir, false, List.of(new TemplateFile(getTempNbtFile(dataDir), template, null)));
+    }
+
+    Path tempRegionsDir = getTempRegionsDir(dataDir);
+
+    Vec3i counts = regionCounts(parcelSize);
+    var entities = new ListTag[counts.getX() * counts.getY() * counts.getZ()];
+    for (int i = 0; i < entities.length; i++) {
+      entities[i] = new ListTag();
+    }
+    if (!ignoreEntities) {
+      captureEntities(level, parcelSize, origin, counts, entities);
+    }
+
+    List<TemplateFile> files = new ArrayList<>(entities.length);
+    for (int x = 0; x < counts.getX(); x++) {
+      for (int y = 0; y < counts.getY(); y++) {
+        for (int z = 0; z < counts.getZ(); z++) {
+          var offset = new Vec3i(x * REGION_SIZE, y * REGION_SIZE, z * REGION_SIZE);
+          var size =
+              new Vec3i(
+                  Math.min(REGION_SIZE, parcelSize.getX() - offset.getX()),
+                  Math.min(REGION_SIZE, parcelSize.getY() - offset.getY()),
+                  Math.min(REGION_SIZE, parcelSize.getZ() - offset.getZ()));
+          var template = new StructureTemplate();
+          template.fillFromWorld(level, origin.offset(offset), size, false, ImmutableList.of());
+          files.add(
+              new TemplateFile(
+                  tempRegionsDir.resolve(regionFileName(x, y, z)),
+                  template,
+                  entities[regionIndex(counts, x, y, z)]));
+        }
+      }
+    }
+    return new Capture(dataDir, true, files);
+  }
+
+  /**
+   * Captures entities the same as {@link StructureTemplate#fillFromWorld}, each relative to the
+   * region containing its position.
+   */
+  private static void captureEntities(
+      Level level, Vec3i parcelSize, BlockPos origin, Vec3i counts, ListTag[] entities) {
+    var aabb =
+        new AABB(
+            origin.getX(),
+            origin.getY(),
+            origin.getZ(),
+            origin.getX() + parcelSize.getX(),
+            origin.getY() + parcelSize.getY(),
+            origin.getZ() + parcelSize.getZ());
+    try (var problemReporter = new ProblemReporter.ScopedCollector(ParcelStorage.LOGGER)) {
+      for (Entity entity :
+          level.getEntities((Entity) null, aabb, entity -> !(entity instanceof Player))) {
+        Vec3 pos = entity.position().subtract(origin.getX(), origin.getY(), origin.getZ());
+        BlockPos blockPos =
+            (entity instanceof Painting painting
+                    ? painting.getPos()
+                    : BlockPos.containing(entity.position()))
+                .subtract(origin);
+
+        int x = Math.clamp((int) Math.floor(pos.x) / REGION_SIZE, 0, counts.getX() - 1);
+        int y = Math.clamp((int) Math.floor(pos.y) / REGION_SIZE, 0, counts.getY() - 1);
+        int z = Math.clamp((int) Math.floor(pos.z) / REGION_SIZE, 0, counts.getZ() - 1);
+        var regionOffset = new Vec3i(x * REGION_SIZE, y * REGION_SIZE, z * REGION_SIZE);
+
+        var output = TagValueOutput.createWithContext(problemReporter, entity.registryAccess());
+        entity.save(output);
+
+        var tag = new CompoundTag();
+        tag.put(
+            "pos",
+            newDoubleList(
+                pos.x - regionOffset.getX(),
+                pos.y - regionOffset.getY(),
+                pos.z - regionOffset.getZ()));
+        tag.put(
+            "blockPos",
+            newIntList(
+                blockPos.getX() - regionOffset.getX(),
+                blockPos.getY() - regionOffset.getY(),
+                blockPos.getZ() - regionOffset.getZ()));
+        tag.put("nbt", output.buildResult().copy());
+        entities[regionIndex(counts, x, y, z)].add(tag);
+      }
+    }
+  }
+
+  private static ListTag newDoubleList(double... values) {
+    var list = new ListTag();
+    for (double value : values) {
+      list.add(DoubleTag.valueOf(value));
+    }
+    return list;
+  }
+
+  private static ListTag newIntList(int... values) {
+    var list = new ListTag();
+    for (int value : values) {
+      list.add(IntTag.valueOf(value));
+    }
+    return list;
+  }
+
+  /**
+   * @return {@code true} if the parcel is saved as regions
+   */
+  static boolean isSplit(Vec3i parcelSize) {
+    return parcelSize.getX() > REGION_SIZE
+        || parcelSize.getY() > REGION_SIZE
+        || parcelSize.getZ() > REGION_SIZE;
+  }
+
+  /**
+   * @return Number of regions along each axis
+   */
+  static Vec3i regionCounts(Vec3i parcelSize) {
+    return new Vec3i(
+        Math.ceilDiv(parcelSize.getX(), REGION_SIZE),
+        Math.ceilDiv(parcelSize.getY(), REGION_SIZE),
+        Math.ceilDiv(parcelSize.getZ(), REGION_SIZE));
+  }
+
+  private static int regionIndex(Vec3i counts, int x, int y, int z) {
+    return (x * counts.getY() + y) * counts.getZ() + z;
+  }
+
+  static String regionFileName(int x, int y, int z) {
+    return x + "." + y + "." + z + ".nbt";
+  }
+
+  /**
+   * @return Template files of the parcel and their offsets, in placement order
+   */
+  static List<StructureTemplateSlicedLoad.Region> regions(Path dataDir, Vec3i parcelSize) {
+    Path regionsDir = dataDir.resolve(REGIONS_DIR_NAME);
+    if (!Files.isDirectory(regionsDir)) {
+      return List.of(
+          new StructureTemplateSlicedLoad.Region(Vec3i.ZERO, dataDir.resolve(NBT_FILE_NAME)));
+    }
+
+    // Bottom up, so that blocks resting on others are placed after them
+    Vec3i counts = regionCounts(parcelSize);
+    List<StructureTemplateSlicedLoad.Region> regions = new ArrayList<>();
+    for (int y = 0; y < counts.getY(); y++) {
+      for (int x = 0; x < counts.getX(); x++) {
+        for (int z = 0; z < counts.getZ(); z++) {
+          regions.add(
+              new StructureTemplateSlicedLoad.Region(
+                  new Vec3i(x * REGION_SIZE, y * REGION_SIZE, z * REGION_SIZE),
+                  regionsDir.resolve(regionFileName(x, y, z))));
+        }
+      }
+    }
+    return regions;
+  }
+
+  private static void deleteRecursively(Path path) throws IOException {
+    if (Files.exists(path)) {
+      try (var paths = Files.walk(path)) {
+        for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(p);
+        }
+      }
     }
   }
 
   /**
+   * Places a single file parcel with {@link StructureTemplate#placeInWorld}. A parcel saved as
+   * regions is read with {@link StructureTemplateReader} and placed region by region.
+   *
    * @param ignoreBlocks This parameter is ignored, it always loads blocks
    */
   @Override
@@ -80,6 +483,13 @@ public class StructureTemplateFormat
       throws IOException, ParcelException.CorruptedParcelException {
     ParcelStorage.LOGGER.info(
         "Loading structure template with size {} and transform {}", size, transform);
+    recoverInterruptedCommit(dataDir);
+
+    if (Files.isDirectory(dataDir.resolve(REGIONS_DIR_NAME))) {
+      var regions = regions(dataDir, size);
+      new StructureTemplateSlicedLoad(level, transform, regions, ignoreEntities, flags).run();
+      return;
+    }
 
     Path structureFile = dataDir.resolve(NBT_FILE_NAME);
 
@@ -103,7 +513,7 @@ public class StructureTemplateFormat
 
     StructurePlaceSettings settings =
         new StructurePlaceSettings()
-            .setIgnoreEntities(!ignoreEntities)
+            .setIgnoreEntities(ignoreEntities)
             .setKnownShape(isStrict)
             .setMirror(transform.mirror())
             .setRotation(transform.rotation());
@@ -111,4 +521,31 @@ public class StructureTemplateFormat
     template.placeInWorld(
         level, pivotPos, pivotPos, settings, RandomSource.create(pivotPos.asLong()), flags);
   }
+
+  /**
+   * Loads the parcel over multiple ticks, reading template files with {@link
+   * StructureTemplateReader} instead of building the whole tag tree.
+   *
+   * @param ignoreBlocks This parameter is ignored, it always loads blocks
+   * @see StructureTemplateSlicedLoad
+   */
+  @Override
+  public ParcelLoadTask loadSliced(
+      ServerLevelAccessor level,
+      Vec3i size,
+      Vec3i anchor,
+      ParcelTransform transform,
+      Path dataDir,
+      boolean ignoreBlocks,
+      boolean ignoreEntities,
+      @Block.UpdateFlags int flags,
+      ParcelFormatConfig.@Nullable None config) {
+    try {
+      recoverInterruptedCommit(dataDir);
+    } catch (IOException e) {
+      ParcelStorage.LOGGER.warn("Failed to recover interrupted save in {}", dataDir, e);
+    }
+    return new StructureTemplateSlicedLoad(
+        level, transform, regions(dataDir, size), ignoreEntities, flags);
+  }
 }
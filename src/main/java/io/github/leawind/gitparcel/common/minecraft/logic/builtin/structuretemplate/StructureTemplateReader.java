@@ -0,0 +1,168 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.structuretemplate;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import net.minecraft.core.Vec3i;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.TagTypes;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
+
+/**
+ * Reads a compressed structure template file without building the whole tag tree.
+ *
+ * <p>{@link NbtIo#readCompressed} creates a {@link CompoundTag} with a nested list for every block
+ * of the template. This reads the {@code blocks} list one entry at a time into a flat array, so
+ * only the palette, block entity data and entities are kept as tags.
+ *
+ * @see StructureTemplate#save
+ */
+final class StructureTemplateReader {
+  private StructureTemplateReader() {}
+
+  /** {@code x, y, z, state} of each block in {@link Content#blocks} */
+  static final int BLOCK_STRIDE = 4;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Content of a structure template file, in the local space of the template. */
+  static final class Content {
+    Vec3i size = Vec3i.ZERO;
+
+    /** Block state tags, the first palette if the template has several */
+    List<CompoundTag> palette = List.of();
+
+    /** {@code x, y, z} and palette index of each block, in file order */
+    final IntArrayList blocks = new IntArrayList();
+
+    /** Block entity data by block index */
+    final Int2ObjectOpenHashMap<CompoundTag> blockEntities = new Int2ObjectOpenHashMap<>();
+
+    /** Entity tags with {@code pos}, {@code blockPos} and {@code nbt} */
+    final List<CompoundTag> entities = new ArrayList<>();
+
+    int blockCount() {
+      return blocks.size() / BLOCK_STRIDE;
+    }
+  }
+
+  static Content read(Path file) throws IOException {
+    try (var in =
+        new DataInputStream(
+            new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE), BUFFER_SIZE))) {
+      return read(in);
+    }
+  }
+
+  /**
+   * @param in Uncompressed named root tag, as written by {@link NbtIo#write(CompoundTag,
+   *     java.io.DataOutput)}
+   */
+  static Content read(DataInput in) throws IOException {
+    var accounter = NbtAccounter.unlimitedHeap();
+    if (in.readByte() != Tag.TAG_COMPOUND) {
+      throw new IOException("Root tag must be a compound");
+    }
+    in.readUTF();
+
+    var content = new Content();
+    List<CompoundTag> palette = null;
+    List<CompoundTag> firstOfPalettes = null;
+
+    byte type;
+    while ((type = in.readByte()) != Tag.TAG_END) {
+      String key = in.readUTF();
+      if (type == Tag.TAG_LIST && key.equals("blocks")) {
+        readBlocks(in, accounter, content);
+      } else if (type == Tag.TAG_LIST && key.equals("entities")) {
+        readCompounds(in, accounter, content.entities);
+      } else if (type == Tag.TAG_LIST && key.equals("palette")) {
+        palette = new ArrayList<>();
+        readCompounds(in, accounter, palette);
+      } else if (type == Tag.TAG_LIST && key.equals("palettes")) {
+        // Only the first palette is used, like placing a template without a random source
+        var palettes = (ListTag) TagTypes.getType(type).load(in, accounter);
+        firstOfPalettes = new ArrayList<>();
+        for (Tag element : palettes.getListOrEmpty(0)) {
+          if (element instanceof CompoundTag state) {
+            firstOfPalettes.add(state);
+          }
+        }
+      } else if (type == Tag.TAG_LIST && key.equals("size")) {
+        var size = (ListTag) TagTypes.getType(type).load(in, accounter);
+        content.size =
+            new Vec3i(
+                size.getInt(0).orElse(0), size.getInt(1).orElse(0), size.getInt(2).orElse(0));
+      } else {
+        TagTypes.getType(type).skip(in, accounter);
+      }
+    }
+
+    if (firstOfPalettes != null) {
+      content.palette = firstOfPalettes;
+    } else if (palette != null) {
+      content.palette = palette;
+    }
+    return content;
+  }
+
+  private static void readBlocks(DataInput in, NbtAccounter accounter, Content content)
+      throws IOException {
+    byte elementType = in.readByte();
+    int length = in.readInt();
+    if (elementType != Tag.TAG_COMPOUND) {
+      skipElements(in, accounter, elementType, length);
+      return;
+    }
+
+    content.blocks.ensureCapacity(length * BLOCK_STRIDE);
+    for (int i = 0; i < length; i++) {
+      CompoundTag block = CompoundTag.TYPE.load(in, accounter);
+      ListTag pos = block.getListOrEmpty("pos");
+      content.blocks.add(pos.getInt(0).orElse(0));
+      content.blocks.add(pos.getInt(1).orElse(0));
+      content.blocks.add(pos.getInt(2).orElse(0));
+      content.blocks.add(block.getIntOr("state", 0));
+
+      var nbt = block.getCompound("nbt");
+      if (nbt.isPresent()) {
+        content.blockEntities.put(content.blockCount() - 1, nbt.get());
+      }
+    }
+  }
+
+  private static void readCompounds(DataInput in, NbtAccounter accounter, List<CompoundTag> out)
+      throws IOException {
+    byte elementType = in.readByte();
+    int length = in.readInt();
+    if (elementType != Tag.TAG_COMPOUND) {
+      skipElements(in, accounter, elementType, length);
+      return;
+    }
+
+    for (int i = 0; i < length; i++) {
+      out.add(CompoundTag.TYPE.load(in, accounter));
+    }
+  }
+
+  private static void skipElements(DataInput in, NbtAccounter accounter, byte type, int length)
+      throws IOException {
+    var tagType = TagTypes.getType(type);
+    for (int i = 0; i < length; i++) {
+      tagType.skip(in, accounter);
+    }
+  }
+}
@@ -0,0 +1,335 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.structuretemplate;
+
+import io.github.leawind.gitparcel.common.api.parcel.ParcelLoadTask;
+import io.github.leawind.gitparcel.common.api.parcel.ParcelTransform;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockSink;
+import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelStorage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.HolderGetter;
+import net.minecraft.core.Vec3i;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.DoubleTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.util.ProblemReporter;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityProcessor;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.level.ServerLevelAccessor;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplate;
+import net.minecraft.world.level.storage.TagValueInput;
+import net.minecraft.world.phys.Vec3;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Loads a structure template parcel over multiple ticks.
+ *
+ * <ol>
+ *   <li>Template files, one per region, are read with {@link StructureTemplateReader} on worker
+ *       threads. Ticks return immediately until all of them are done.
+ *   <li>Blocks are placed region by region, in file order, until the block budget is exhausted.
+ *   <li>Entities are spawned after all blocks, a limited number per tick.
+ * </ol>
+ *
+ * <p>Unlike {@link StructureTemplate#placeInWorld}, no structure processors are applied and blocks
+ * are not waterlogged by existing fluids.
+ */
+final class StructureTemplateSlicedLoad implements ParcelLoadTask {
+
+  private enum Phase {
+    DECODE,
+    PLACE,
+    ENTITIES,
+    DONE,
+  }
+
+  /**
+   * A template file and where it goes in the parcel.
+   *
+   * @param offset Position of the template origin in the local space of the parcel
+   */
+  record Region(Vec3i offset, Path file) {}
+
+  private final ServerLevelAccessor level;
+  private final ParcelTransform transform;
+  private final boolean ignoreEntities;
+  private final @Block.UpdateFlags int flags;
+  private final List<Region> regions;
+  private final ProblemReporter.ScopedCollector problemReporter =
+      new ProblemReporter.ScopedCollector(ParcelStorage.LOGGER);
+
+  private Phase phase = Phase.DECODE;
+  private @Nullable List<CompletableFuture<DecodedRegion>> decoding = null;
+  private final List<DecodedRegion> decoded = new ArrayList<>();
+  private int regionIndex = 0;
+
+  private long totalWork = 0;
+  private long completedWork = 0;
+
+  StructureTemplateSlicedLoad(
+      ServerLevelAccessor level,
+      ParcelTransform transform,
+      List<Region> regions,
+      boolean ignoreEntities,
+      @Block.UpdateFlags int flags) {
+    this.level = level;
+    this.transform = transform;
+    this.regions = regions;
+    this.ignoreEntities = ignoreEntities;
+    this.flags = flags;
+  }
+
+  /** Loads everything at once, blocking until all files are read. */
+  void run() throws IOException {
+    startDecoding();
+    for (var future : decoding) {
+      future.handle((result, e) -> null).join();
+    }
+    tick(Budget.unlimited());
+  }
+
+  @Override
+  public boolean tick(Budget budget) throws IOException {
+    if (phase == Phase.DECODE) {
+      if (decoding == null) {
+        startDecoding();
+      }
+      for (var future : decoding) {
+        if (!future.isDone()) {
+          return false;
+        }
+      }
+      for (var future : decoding) {
+        var region = join(future);
+        decoded.add(region);
+        totalWork += region.content.blockCount();
+        if (!ignoreEntities) {
+          totalWork += region.content.entities.size();
+        }
+      }
+      decoding = null;
+      phase = Phase.PLACE;
+    }
+
+    if (phase == Phase.PLACE) {
+      var blockSink = BlockSink.of(level, flags);
+      try {
+        while (regionIndex < decoded.size()) {
+          if (!decoded.get(regionIndex).place(budget, blockSink)) {
+            return false;
+          }
+          regionIndex++;
+        }
+      } finally {
+        blockSink.flush();
+      }
+      regionIndex = 0;
+      phase = Phase.ENTITIES;
+    }
+
+    if (phase == Phase.ENTITIES) {
+      if (!ignoreEntities) {
+        while (regionIndex < decoded.size()) {
+          if (!decoded.get(regionIndex).spawnEntities(budget)) {
+            return false;
+          }
+          regionIndex++;
+        }
+      }
+      decoded.clear();
+      phase = Phase.DONE;
+      problemReporter.close();
+    }
+
+    return true;
+  }
+
+  @Override
+  public long totalWork() {
+    return totalWork;
+  }
+
+  @Override
+  public long completedWork() {
+    return completedWork;
+  }
+
+  @Override
+  public void release() {
+    if (decoding != null) {
+      decoding.forEach(future -> future.cancel(false));
+      decoding = null;
+    }
+    decoded.clear();
+    problemReporter.close();
+  }
+
+  private void startDecoding() {
+    HolderGetter<Block> blocks = level.registryAccess().lookupOrThrow(Registries.BLOCK);
+    decoding = new ArrayList<>(regions.size());
+    for (var region : regions) {
+      decoding.add(
+          CompletableFuture.supplyAsync(
+              () -> {
+                try {
+                  var content = StructureTemplateReader.read(region.file);
+                  return new DecodedRegion(region, content, blocks);
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              },
+              ForkJoinPool.commonPool()));
+    }
+  }
+
+  private static DecodedRegion join(CompletableFuture<DecodedRegion> future) throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException io) {
+        throw io.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /** A template file read into memory, with its palette already transformed to world space. */
+  private final class DecodedRegion {
+    private final Region region;
+    private final StructureTemplateReader.Content content;
+    private final BlockState[] palette;
+
+    /** Index of the next block to place */
+    private int nextBlock = 0;
+
+    /** Index of the next entity to spawn */
+    private int nextEntity = 0;
+
+    private DecodedRegion(
+        Region region, StructureTemplateReader.Content content, HolderGetter<Block> blocks) {
+      this.region = region;
+      this.content = content;
+      palette = new BlockState[content.palette.size()];
+      for (int i = 0; i < palette.length; i++) {
+        palette[i] = transform.apply(NbtUtils.readBlockState(blocks, content.palette.get(i)));
+      }
+    }
+
+    /**
+     * Places blocks until the budget is exhausted.
+     *
+     * @return {@code true} if all blocks of the region are placed
+     */
+    private boolean place(Budget budget, BlockSink blockSink) {
+      var pos = new BlockPos.MutableBlockPos();
+      int count = content.blockCount();
+      while (nextBlock < count) {
+        if (budget.isExhausted()) {
+          return false;
+        }
+        int offset = nextBlock * StructureTemplateReader.BLOCK_STRIDE;
+        int state = content.blocks.getInt(offset + 3);
+        if (state >= 0 && state < palette.length) {
+          pos.set(
+              region.offset.getX() + content.blocks.getInt(offset),
+              region.offset.getY() + content.blocks.getInt(offset + 1),
+              region.offset.getZ() + content.blocks.getInt(offset + 2));
+          BlockPos worldPos = transform.apply(pos);
+          blockSink.setBlock(worldPos.getX(), worldPos.getY(), worldPos.getZ(), palette[state]);
+
+          CompoundTag data = content.blockEntities.remove(nextBlock);
+          if (data != null) {
+            var blockEntity = level.getBlockEntity(worldPos);
+            if (blockEntity != null) {
+              blockEntity.loadWithComponents(
+                  TagValueInput.create(problemReporter, level.registryAccess(), data));
+            }
+          }
+        } else {
+          int invalid = state;
+          problemReporter.report(() -> "Invalid palette index " + invalid + " in " + region.file);
+        }
+        budget.consume(1);
+        completedWork++;
+        nextBlock++;
+      }
+      return true;
+    }
+
+    /**
+     * Spawns entities until the budget is exhausted.
+     *
+     * @return {@code true} if all entities of the region are spawned
+     */
+    private boolean spawnEntities(Budget budget) {
+      while (nextEntity < content.entities.size()) {
+        if (!budget.canSpawnEntity()) {
+          return false;
+        }
+        spawnEntity(content.entities.get(nextEntity));
+        budget.consumeEntity();
+        completedWork++;
+        nextEntity++;
+      }
+      return true;
+    }
+
+    /**
+     * @param entry Entity tag written by {@link StructureTemplate#save}
+     * @see StructureTemplate#placeInWorld
+     */
+    private void spawnEntity(CompoundTag entry) {
+      var nbt = entry.getCompound("nbt").orElse(null);
+      var localPos = entry.getList("pos").orElse(null);
+      if (nbt == null || localPos == null) {
+        problemReporter.report(() -> "Invalid entity in " + region.file + ": " + entry);
+        return;
+      }
+
+      Vec3 worldPos =
+          transform.apply(
+              new Vec3(
+                  region.offset.getX() + localPos.getDouble(0).orElse(0.0),
+                  region.offset.getY() + localPos.getDouble(1).orElse(0.0),
+                  region.offset.getZ() + localPos.getDouble(2).orElse(0.0)));
+
+      ListTag worldPosList = new ListTag();
+      worldPosList.add(DoubleTag.valueOf(worldPos.x));
+      worldPosList.add(DoubleTag.valueOf(worldPos.y));
+      worldPosList.add(DoubleTag.valueOf(worldPos.z));
+      nbt.put("Pos", worldPosList);
+      // Same as vanilla, so that the template can be placed more than once
+      nbt.remove("UUID");
+
+      try {
+        Entity entity =
+            EntityType.loadEntityRecursive(
+                nbt, level.getLevel(), EntitySpawnReason.STRUCTURE, EntityProcessor.NOP);
+        if (entity != null) {
+          float yRot = entity.rotate(transform.rotation());
+          yRot += entity.mirror(transform.mirror()) - entity.getYRot();
+          entity.snapTo(worldPos.x, worldPos.y, worldPos.z, yRot, entity.getXRot());
+          entity.setYBodyRot(yRot);
+          entity.setYHeadRot(yRot);
+          level.addFreshEntityWithPassengers(entity);
+        }
+      } catch (Exception e) {
+        ParcelStorage.LOGGER.error("Error loading entity from {}", region.file, e);
+        problemReporter.report(
+            () -> "Error loading entity from " + region.file + ": " + e.getMessage());
+      }
+    }
+  }
+}
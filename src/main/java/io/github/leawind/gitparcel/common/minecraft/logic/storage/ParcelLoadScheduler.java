@@ -0,0 +1,240 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.storage;
+
+import io.github.leawind.gitparcel.common.api.parcel.ParcelLoadTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+
+/**
+ * Runs {@link ParcelLoadTask}s on the server thread, a bounded amount of work per tick.
+ *
+ * <p>Tasks run in submission order. All tasks share the same budget per tick, so a later task only
+ * makes progress when earlier tasks are waiting or finished.
+ *
+ * <p>All methods must be called on the server thread.
+ */
+public final class ParcelLoadScheduler {
+  private ParcelLoadScheduler() {}
+
+  public static final long DEFAULT_MILLIS_PER_TICK = 10;
+  public static final long DEFAULT_BLOCKS_PER_TICK = 32768;
+  public static final long DEFAULT_ENTITIES_PER_TICK = 256;
+
+  private static long millisPerTick = DEFAULT_MILLIS_PER_TICK;
+  private static long blocksPerTick = DEFAULT_BLOCKS_PER_TICK;
+  private static long entitiesPerTick = DEFAULT_ENTITIES_PER_TICK;
+
+  /** Entities spawned by all tasks in the last tick */
+  private static long lastTickEntities = 0;
+
+  /** Most entities spawned by all tasks in a single tick, since the server started */
+  private static long peakTickEntities = 0;
+
+  private static final List<Entry> ENTRIES = new ArrayList<>();
+  private static int nextId = 1;
+
+  public static final class Entry {
+    private final int id;
+    private final String description;
+    private final ServerLevel level;
+    private final ParcelLoadTask task;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    private Entry(int id, String description, ServerLevel level, ParcelLoadTask task) {
+      this.id = id;
+      this.description = description;
+      this.level = level;
+      this.task = task;
+    }
+
+    public int id() {
+      return id;
+    }
+
+    public String description() {
+      return description;
+    }
+
+    public ServerLevel level() {
+      return level;
+    }
+
+    public long totalWork() {
+      return task.totalWork();
+    }
+
+    public long completedWork() {
+      return task.completedWork();
+    }
+
+    /**
+     * @return Progress in {@code [0, 1]}, or {@code 0} if the total work is unknown yet
+     */
+    public double progress() {
+      long total = task.totalWork();
+      return total <= 0 ? 0 : Math.min(1, (double) task.completedWork() / total);
+    }
+
+    /**
+     * A future that completes on the server thread when the task finishes. It completes
+     * exceptionally if the task fails, or is cancelled with {@link #cancel(int)}.
+     */
+    public CompletableFuture<Void> future() {
+      return future;
+    }
+  }
+
+  /**
+   * @param description Human readable description, shown in task list
+   * @return The scheduled entry
+   */
+  public static Entry submit(ServerLevel level, String description, ParcelLoadTask task) {
+    var entry = new Entry(nextId++, description, level, task);
+    ENTRIES.add(entry);
+    return entry;
+  }
+
+  /**
+   * @return Snapshot of scheduled tasks, in execution order
+   */
+  public static List<Entry> entries() {
+    return List.copyOf(ENTRIES);
+  }
+
+  /**
+   * Cancels a task. Blocks already placed are kept.
+   *
+   * @return {@code true} if the task was found and cancelled
+   */
+  public static boolean cancel(int id) {
+    for (var it = ENTRIES.iterator(); it.hasNext(); ) {
+      var entry = it.next();
+      if (entry.id == id) {
+        it.remove();
+        entry.task.release();
+        entry.future.cancel(false);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return Number of cancelled tasks
+   */
+  public static int cancelAll() {
+    var entries = List.copyOf(ENTRIES);
+    ENTRIES.clear();
+    for (var entry : entries) {
+      entry.task.release();
+      entry.future.cancel(false);
+    }
+    return entries.size();
+  }
+
+  public static long millisPerTick() {
+    return millisPerTick;
+  }
+
+  public static long blocksPerTick() {
+    return blocksPerTick;
+  }
+
+  public static long entitiesPerTick() {
+    return entitiesPerTick;
+  }
+
+  /**
+   * @return Number of entities spawned by all tasks in the last tick
+   */
+  public static long lastTickEntities() {
+    return lastTickEntities;
+  }
+
+  /**
+   * @return Most entities spawned by all tasks in a single tick since the server started
+   */
+  public static long peakTickEntities() {
+    return peakTickEntities;
+  }
+
+  /**
+   * Sets how much work all tasks together may do in a single tick.
+   *
+   * @param millis Maximum milliseconds per tick
+   * @param blocks Maximum blocks placed per tick
+   */
+  public static void setBudget(long millis, long blocks) {
+    setBudget(millis, blocks, entitiesPerTick);
+  }
+
+  /**
+   * Sets how much work all tasks together may do in a single tick.
+   *
+   * @param millis Maximum milliseconds per tick
+   * @param blocks Maximum blocks placed per tick
+   * @param entities Maximum entities spawned per tick
+   */
+  public static void setBudget(long millis, long blocks, long entities) {
+    if (millis <= 0 || blocks <= 0 || entities <= 0) {
+      throw new IllegalArgumentException("Budget must be positive");
+    }
+    millisPerTick = millis;
+    blocksPerTick = blocks;
+    entitiesPerTick = entities;
+  }
+
+  /** Should be called at the end of each server tick. */
+  public static void tick(MinecraftServer server) {
+    if (ENTRIES.isEmpty()) {
+      lastTickEntities = 0;
+      return;
+    }
+
+    var budget =
+        ParcelLoadTask.Budget.of(millisPerTick * 1_000_000L, blocksPerTick, entitiesPerTick);
+
+    // Futures are completed after the loop, so callbacks may safely submit or cancel tasks
+    List<Runnable> completions = new ArrayList<>();
+
+    for (var it = ENTRIES.iterator(); it.hasNext(); ) {
+      if (budget.isExhausted()) {
+        break;
+      }
+
+      var entry = it.next();
+      if (entry.level.getServer() != server) {
+        it.remove();
+        entry.task.release();
+        completions.add(() -> entry.future.cancel(false));
+        continue;
+      }
+
+      try {
+        if (entry.task.tick(budget)) {
+          it.remove();
+          completions.add(() -> entry.future.complete(null));
+        }
+      } catch (Exception e) {
+        ParcelStorage.LOGGER.error("Load task #{} failed: {}", entry.id, entry.description, e);
+        it.remove();
+        entry.task.release();
+        completions.add(() -> entry.future.completeExceptionally(e));
+      }
+    }
+
+    lastTickEntities = budget.spawnedEntities();
+    peakTickEntities = Math.max(peakTickEntities, lastTickEntities);
+
+    completions.forEach(Runnable::run);
+  }
+
+  /** Should be called when the server is stopping. */
+  public static void onServerStopping(MinecraftServer server) {
+    cancelAll();
+    lastTickEntities = 0;
+    peakTickEntities = 0;
+  }
+}
@@ -3,13 +3,23 @@ package io.github.leawind.gitparcel.common.minecraft.logic.storage;
 import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelFormat;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelFormatConfig;
+import io.github.leawind.gitparcel.common.api.parcel.ParcelLoadTask;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelMeta;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelTransform;
 import io.github.leawind.gitparcel.common.api.world.Parcel;
+import io.github.leawind.gitparcel.common.minecraft.logic.world.GitParcelLevelSavedData;
+import io.github.leawind.gitparcel.server.minecraft.logic.storage.StorageUtils;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import net.minecraft.core.Vec3i;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.Block;
@@ -28,6 +38,9 @@ public class ParcelStorage {
   private static final String CONFIG_FILE_NAME = "config.json";
   private static final String DATA_DIR_NAME = "data";
 
+  /** Holds the {@link ParcelFormatConfig.Environment#cacheDir} of each parcel */
+  private static final String PARCEL_CACHE_DIR_NAME = "parcels";
+
   private static Path getMetaFile(Path parcelDir) {
     return parcelDir.resolve(META_FILE_NAME);
   }
@@ -45,11 +58,35 @@ public class ParcelStorage {
    *
    * @param parcelDir The parcel directory, which contains the {@value #META_FILE_NAME} file and
    *     {@value #DATA_DIR_NAME} directory. Will be created if not exists.
+   * @param repoDir Root directory of the repository containing the parcel, or {@code null} if it is
+   *     not in a repository
    * @throws IOException If an I/O error occurs while saving the parcel
    * @throws ParcelException If other error occurs while saving the parcel
    * @throws ParcelException.UnsupportedFormat If the format is not supported
    */
-  @SuppressWarnings("unchecked")
+  public static <C extends ParcelFormatConfig<C>> void save(
+      Level level,
+      ParcelTransform transform,
+      ParcelMeta meta,
+      @Nullable C config,
+      Path parcelDir,
+      @Nullable Path repoDir,
+      boolean ignoreEntities)
+      throws IOException, ParcelException {
+    ParcelFormat.Saver<C> format = getSaver(meta);
+    C actualConfig = prepareSave(level, format, transform, meta, config, parcelDir, repoDir);
+
+    format.save(
+        level,
+        meta.size(),
+        meta.anchor(),
+        transform,
+        getDataDir(parcelDir),
+        ignoreEntities && meta.getExcludeEntities(),
+        actualConfig);
+  }
+
+  /** Saves a parcel that is not in a repository. */
   public static <C extends ParcelFormatConfig<C>> void save(
       Level level,
       ParcelTransform transform,
@@ -58,11 +95,78 @@ public class ParcelStorage {
       Path parcelDir,
       boolean ignoreEntities)
       throws IOException, ParcelException {
+    save(level, transform, meta, config, parcelDir, null, ignoreEntities);
+  }
+
+  /**
+   * Same as {@link #save(Level, ParcelTransform, ParcelMeta, ParcelFormatConfig, Path, Path,
+   * boolean)}, but only the world capture runs on the calling thread.
+   *
+   * <p>Must be called on the server thread. Meta and config files are written before this method
+   * returns, encoding and writing the parcel data happens on the given executor.
+   *
+   * @param executor Executor to run encoding and file I/O on, usually {@link ParcelWorkers#io()}
+   * @return A future that completes when the parcel is saved. If saving fails, it completes
+   *     exceptionally with an {@link UncheckedIOException} wrapping the {@link IOException}, or
+   *     with {@link ParcelException}. Dependent stages see these wrapped in {@link
+   *     CompletionException}.
+   * @see ParcelFormat.Saver#saveAsync
+   */
+  public static <C extends ParcelFormatConfig<C>> CompletableFuture<Void> saveAsync(
+      Level level,
+      ParcelTransform transform,
+      ParcelMeta meta,
+      @Nullable C config,
+      Path parcelDir,
+      @Nullable Path repoDir,
+      boolean ignoreEntities,
+      Executor executor) {
+    ParcelFormat.Saver<C> format;
+    C actualConfig;
+    try {
+      format = getSaver(meta);
+      actualConfig = prepareSave(level, format, transform, meta, config, parcelDir, repoDir);
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(new UncheckedIOException(e));
+    } catch (ParcelException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    return format.saveAsync(
+        level,
+        meta.size(),
+        meta.anchor(),
+        transform,
+        getDataDir(parcelDir),
+        ignoreEntities && meta.getExcludeEntities(),
+        actualConfig,
+        executor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <C extends ParcelFormatConfig<C>> ParcelFormat.Saver<C> getSaver(ParcelMeta meta)
+      throws ParcelException.UnsupportedFormat {
     ParcelFormat.Saver<C> format = (ParcelFormat.Saver<C>) meta.getFormatSaver();
     if (format == null) {
       throw new ParcelException.UnsupportedFormat(meta.formatSpec());
     }
+    return format;
+  }
 
+  /**
+   * Checks that the format supports the transform, writes the meta file, and resolves the config.
+   *
+   * @return The config to pass to the saver
+   */
+  private static <C extends ParcelFormatConfig<C>> @Nullable C prepareSave(
+      Level level,
+      ParcelFormat.Saver<C> format,
+      ParcelTransform transform,
+      ParcelMeta meta,
+      @Nullable C config,
+      Path parcelDir,
+      @Nullable Path repoDir)
+      throws IOException, ParcelException {
     if (transform.rotation() != Rotation.NONE
         && !format.features().contains(ParcelFormat.Feature.ROTATE)) {
       throw new ParcelException.UnsupportedFeature(meta.formatSpec(), ParcelFormat.Feature.ROTATE);
@@ -93,16 +197,28 @@ public class ParcelStorage {
       } else {
         actualConfig.save(configFile);
       }
+      actualConfig.setEnvironment(getEnvironment(level, parcelDir, repoDir));
     }
+    return actualConfig;
+  }
 
-    format.save(
-        level,
-        meta.size(),
-        meta.anchor(),
-        transform,
-        getDataDir(parcelDir),
-        ignoreEntities && meta.getExcludeEntities(),
-        actualConfig);
+  /**
+   * @return Environment of the parcel in the given directory. The cache dir is only known if the
+   *     level belongs to a server.
+   */
+  private static ParcelFormatConfig.Environment getEnvironment(
+      Level level, Path parcelDir, @Nullable Path repoDir) {
+    var server = level.getServer();
+    if (server == null) {
+      return new ParcelFormatConfig.Environment(repoDir, null);
+    }
+    // Keyed by the absolute path, so parcels in different repos never share a cache dir
+    String key =
+        UUID.nameUUIDFromBytes(
+                parcelDir.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8))
+            .toString();
+    return new ParcelFormatConfig.Environment(
+        repoDir, StorageUtils.getCacheDir(server).resolve(PARCEL_CACHE_DIR_NAME).resolve(key));
   }
 
   public static <C extends ParcelFormatConfig<C>> void save(
@@ -113,6 +229,7 @@ public class ParcelStorage {
       Mirror mirror,
       @Nullable C config,
       Path parcelDir,
+      @Nullable Path repoDir,
       boolean ignoreEntities)
       throws IOException, ParcelException {
 
@@ -124,7 +241,7 @@ public class ParcelStorage {
     Vec3i sizeParcelSpace = ParcelTransform.rotateSize(rotation, sizeWorldSpace);
     ParcelMeta meta = new ParcelMeta(saver.spec(), sizeParcelSpace, Vec3i.ZERO);
 
-    ParcelStorage.save(level, transform, meta, config, parcelDir, ignoreEntities);
+    ParcelStorage.save(level, transform, meta, config, parcelDir, repoDir, ignoreEntities);
   }
 
   /**
@@ -134,6 +251,8 @@ public class ParcelStorage {
    * @param transform Parcel transformation, indicating the position and orientation of the parcel
    * @param parcelDir The parcel directory, which contains the {@value #META_FILE_NAME} file and
    *     {@value #DATA_DIR_NAME} directory
+   * @param repoDir Root directory of the repository containing the parcel, or {@code null} if it is
+   *     not in a repository
    * @param ignoreBlocks Whether to ignore blocks when loading the parcel
    * @param ignoreEntities Whether to ignore entities when loading the parcel
    * @param flags Flags to pass to {@link Level#setBlock} when loading blocks
@@ -141,21 +260,89 @@ public class ParcelStorage {
    * @throws ParcelException.CorruptedParcelException If the parcel is invalid and cannot be loaded
    * @throws ParcelException.UnsupportedFormat If the format is not supported
    */
-  @SuppressWarnings("unchecked")
   public static <C extends ParcelFormatConfig<C>> void load(
       ServerLevel level,
       ParcelTransform transform,
       Path parcelDir,
+      @Nullable Path repoDir,
       boolean ignoreBlocks,
       boolean ignoreEntities,
       @Block.UpdateFlags int flags)
       throws IOException, ParcelException {
     var meta = ParcelMeta.load(parcelDir.resolve(META_FILE_NAME));
+    ParcelFormat.Loader<C> loader = getLoader(meta);
+    C config = loadConfig(level, loader, parcelDir, repoDir);
+
+    loader.load(
+        level,
+        meta.size(),
+        meta.anchor(),
+        transform,
+        getDataDir(parcelDir),
+        ignoreBlocks,
+        ignoreEntities,
+        flags,
+        config);
+  }
+
+  /** Loads a parcel that is not in a repository. */
+  public static void load(
+      ServerLevel level,
+      ParcelTransform transform,
+      Path parcelDir,
+      boolean ignoreBlocks,
+      boolean ignoreEntities,
+      @Block.UpdateFlags int flags)
+      throws IOException, ParcelException {
+    load(level, transform, parcelDir, null, ignoreBlocks, ignoreEntities, flags);
+  }
+
+  /**
+   * Same as {@link #load(ServerLevel, ParcelTransform, Path, Path, boolean, boolean, int)}, but
+   * returns a task that places the parcel over multiple ticks. Submit it to {@link
+   * ParcelLoadScheduler}.
+   *
+   * <p>Only meta and config files are read by this method.
+   *
+   * @see ParcelFormat.Loader#loadSliced
+   */
+  public static <C extends ParcelFormatConfig<C>> ParcelLoadTask loadSliced(
+      ServerLevel level,
+      ParcelTransform transform,
+      Path parcelDir,
+      @Nullable Path repoDir,
+      boolean ignoreBlocks,
+      boolean ignoreEntities,
+      @Block.UpdateFlags int flags)
+      throws IOException, ParcelException {
+    var meta = ParcelMeta.load(parcelDir.resolve(META_FILE_NAME));
+    ParcelFormat.Loader<C> loader = getLoader(meta);
+    C config = loadConfig(level, loader, parcelDir, repoDir);
+
+    return loader.loadSliced(
+        level,
+        meta.size(),
+        meta.anchor(),
+        transform,
+        getDataDir(parcelDir),
+        ignoreBlocks,
+        ignoreEntities,
+        flags,
+        config);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <C extends ParcelFormatConfig<C>> ParcelFormat.Loader<C> getLoader(
+      ParcelMeta meta) throws ParcelException.UnsupportedFormat {
     ParcelFormat.Loader<C> loader = (ParcelFormat.Loader<C>) meta.getFormatLoader();
     if (loader == null) {
       throw new ParcelException.UnsupportedFormat(meta.formatSpec());
     }
+    return loader;
+  }
 
+  private static <C extends ParcelFormatConfig<C>> @Nullable C loadConfig(
+      Level level, ParcelFormat.Loader<C> loader, Path parcelDir, @Nullable Path repoDir) {
     Path configFile = getConfigFile(parcelDir);
     C config = loader.getDefaultConfig();
     if (config != null && Files.exists(configFile)) {
@@ -166,18 +353,10 @@ public class ParcelStorage {
             "Failed to load format config, use default and continue: {}", e.getMessage(), e);
       }
     }
-
-    Path dataDir = parcelDir.resolve(DATA_DIR_NAME);
-    loader.load(
-        level,
-        meta.size(),
-        meta.anchor(),
-        transform,
-        dataDir,
-        ignoreBlocks,
-        ignoreEntities,
-        flags,
-        config);
+    if (config != null) {
+      config.setEnvironment(getEnvironment(level, parcelDir, repoDir));
+    }
+    return config;
   }
 
   public static void load(
@@ -186,12 +365,31 @@ public class ParcelStorage {
       Rotation rotation,
       Mirror mirror,
       Path parcelDir,
+      @Nullable Path repoDir,
       boolean ignoreBlocks,
       boolean ignoreEntities,
       @Block.UpdateFlags int flags)
       throws IOException, ParcelException {
     var pivot = Parcel.getPivotBlockPos(mirror, rotation, boundingBox);
     ParcelTransform transform = new ParcelTransform(mirror, rotation, pivot);
-    load(level, transform, parcelDir, ignoreBlocks, ignoreEntities, flags);
+    load(level, transform, parcelDir, repoDir, ignoreBlocks, ignoreEntities, flags);
+  }
+
+  /**
+   * Finds the repository of the parcel stored in the given directory, among the parcels of all
+   * levels of the server.
+   *
+   * @return Root directory of the repository, or {@code null} if no parcel is stored there
+   */
+  public static @Nullable Path findRepoDirectory(MinecraftServer server, Path parcelDir) {
+    Path target = parcelDir.toAbsolutePath().normalize();
+    for (var level : server.getAllLevels()) {
+      for (var parcel : GitParcelLevelSavedData.get(level).parcels().values()) {
+        if (parcel.getParcelDirectory().toAbsolutePath().normalize().equals(target)) {
+          return parcel.getRepoDirectory();
+        }
+      }
+    }
+    return null;
   }
 }
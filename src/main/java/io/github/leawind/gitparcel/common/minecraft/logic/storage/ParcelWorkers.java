@@ -0,0 +1,35 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.storage;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Background threads used by parcel storage. */
+public final class ParcelWorkers {
+  private ParcelWorkers() {}
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  /**
+   * Single threaded executor for parcel file I/O.
+   *
+   * <p>Tasks run one at a time in submission order, so two saves to the same parcel directory never
+   * interleave.
+   */
+  private static final ExecutorService IO =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            var thread = new Thread(runnable, "GitParcel-IO-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setUncaughtExceptionHandler(
+                (t, e) -> ParcelStorage.LOGGER.error("Uncaught exception in {}", t.getName(), e));
+            return thread;
+          });
+
+  /**
+   * @return Executor for parcel file I/O
+   */
+  public static ExecutorService io() {
+    return IO;
+  }
+}
@@ -0,0 +1,150 @@
+package io.github.leawind.gitparcel.common.utils;
+
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.util.Arrays;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * An {@link IntIdPalette} for small, mostly contiguous IDs, such as block palettes.
+ *
+ * <p>IDs in {@code [0, MAX_DENSE_ID)} are also kept in an array indexed by ID, so {@link
+ * #get(int)} and {@link #isIdInUse(int)} are a single array load instead of a tree lookup followed
+ * by a hash lookup. Larger or negative IDs fall back to the maps of {@link IntIdPalette}.
+ *
+ * <p>The sorted ID-to-data map is still maintained, since it is only touched when a mapping is
+ * inserted or removed, and provides iteration in ID order.
+ *
+ * <p>If {@code identity} is set, the data-to-ID map compares data by reference. This is only
+ * correct for data that is canonical, such as block states.
+ *
+ * @param <T> the type of data stored in the palette
+ */
+public class DenseIntIdPalette<T> extends IntIdPalette<T> {
+  /** IDs at or above this are not stored in the array. */
+  public static final int MAX_DENSE_ID = 1 << 20;
+
+  private static final Hash.Strategy<Object> IDENTITY_STRATEGY =
+      new Hash.Strategy<>() {
+        @Override
+        public int hashCode(@Nullable Object o) {
+          return System.identityHashCode(o);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object a, @Nullable Object b) {
+          return a == b;
+        }
+      };
+
+  /** Same as the ID-to-data map, for IDs below {@link #MAX_DENSE_ID}. */
+  private @Nullable Object[] dense = new Object[16];
+
+  /**
+   * Whether some data was inserted under more than one ID. Removing such data from the data-to-ID
+   * map leaves its other IDs in the ID-to-data map, so lookups must check the data-to-ID map as
+   * {@link IntIdPalette} does. This only happens with malformed input.
+   */
+  private boolean hasAliases = false;
+
+  /** Constructs a palette with the default ID range [0, Integer.MAX_VALUE). */
+  public DenseIntIdPalette() {
+    this(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Constructs a palette with the ID range [0, idRangeEnd).
+   *
+   * @param idRangeEnd the exclusive upper bound of the ID range
+   */
+  public DenseIntIdPalette(int idRangeEnd) {
+    this(0, idRangeEnd, false);
+  }
+
+  /**
+   * Constructs a palette with the specified ID range [idRangeStart, idRangeEnd).
+   *
+   * @param idRangeStart the inclusive lower bound of the ID range
+   * @param idRangeEnd the exclusive upper bound of the ID range
+   * @param identity whether data is compared by reference instead of {@link Object#equals}
+   * @throws IllegalArgumentException if the range is invalid
+   */
+  public DenseIntIdPalette(int idRangeStart, int idRangeEnd, boolean identity)
+      throws IllegalArgumentException {
+    super(
+        idRangeStart,
+        idRangeEnd,
+        new Int2ObjectRBTreeMap<>(),
+        identity
+            ? new Object2IntOpenCustomHashMap<>(IDENTITY_STRATEGY)
+            : new Object2IntOpenHashMap<>());
+  }
+
+  private static boolean isDense(int id) {
+    return id >= 0 && id < MAX_DENSE_ID;
+  }
+
+  @Override
+  public boolean isIdInUse(int id) {
+    if (isDense(id)) {
+      return get(id) != null;
+    }
+    return super.isIdInUse(id);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public @Nullable T get(int id) {
+    if (isDense(id)) {
+      var data = id < dense.length ? (T) dense[id] : null;
+      if (hasAliases && data != null && !byData.containsKey(data)) {
+        return null;
+      }
+      return data;
+    }
+    return super.get(id);
+  }
+
+  @Override
+  protected void insert(int id, @Nullable T data) throws IllegalArgumentException {
+    if (data != null) {
+      int previousId = byData.getInt(data);
+      if (previousId != VOID_ID && previousId != id) {
+        hasAliases = true;
+      }
+    }
+    if (isDense(id)) {
+      if (id >= dense.length) {
+        dense = Arrays.copyOf(dense, Math.min(Math.max(id + 1, dense.length * 2), MAX_DENSE_ID));
+      }
+      dense[id] = data;
+    }
+    super.insert(id, data);
+  }
+
+  @Override
+  public @Nullable T removeById(int id) {
+    if (isDense(id) && id < dense.length) {
+      dense[id] = null;
+    }
+    return super.removeById(id);
+  }
+
+  @Override
+  public int removeByData(T data) {
+    int id = super.removeByData(data);
+    if (isDense(id) && id < dense.length) {
+      dense[id] = null;
+    }
+    return id;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    Arrays.fill(dense, null);
+    hasAliases = false;
+  }
+}
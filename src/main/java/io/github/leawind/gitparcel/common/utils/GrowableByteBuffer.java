@@ -0,0 +1,276 @@
+package io.github.leawind.gitparcel.common.utils;
+
+import io.github.leawind.gitparcel.common.utils.numbase.VarIntUtils;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A direct byte buffer that grows as needed, for building files in memory before writing them in a
+ * single call, or for reading whole files without copying them onto the heap.
+ *
+ * <p>Meant to be reused: call {@link #clear()} before building the next file, and the capacity
+ * reached so far is kept. Not thread safe, see {@link #perThread}.
+ */
+public final class GrowableByteBuffer {
+  private ByteBuffer buffer;
+
+  public GrowableByteBuffer(int initialCapacity) {
+    buffer = ByteBuffer.allocateDirect(initialCapacity);
+  }
+
+  /**
+   * @return A thread local supplier of buffers, each thread reuses its own buffer
+   */
+  public static ThreadLocal<GrowableByteBuffer> perThread(int initialCapacity) {
+    return ThreadLocal.withInitial(() -> new GrowableByteBuffer(initialCapacity));
+  }
+
+  /** Discards the content, keeping the capacity. */
+  public GrowableByteBuffer clear() {
+    buffer.clear();
+    return this;
+  }
+
+  /**
+   * @return Number of bytes written since the last {@link #clear()}
+   */
+  public int size() {
+    return buffer.position();
+  }
+
+  /** Makes sure at least the given number of bytes can be written without growing. */
+  public void ensureRemaining(int bytes) {
+    if (buffer.remaining() >= bytes) {
+      return;
+    }
+    int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+    var grown = ByteBuffer.allocateDirect(capacity);
+    grown.put(buffer.flip());
+    buffer = grown;
+  }
+
+  public GrowableByteBuffer put(byte b) {
+    ensureRemaining(1);
+    buffer.put(b);
+    return this;
+  }
+
+  public GrowableByteBuffer put(byte[] bytes) {
+    ensureRemaining(bytes.length);
+    buffer.put(bytes);
+    return this;
+  }
+
+  public GrowableByteBuffer put(byte[] bytes, int offset, int length) {
+    ensureRemaining(length);
+    buffer.put(bytes, offset, length);
+    return this;
+  }
+
+  /** Puts the characters encoded as UTF-8, without building a string or byte array first. */
+  public GrowableByteBuffer putUtf8(CharSequence chars) {
+    int length = chars.length();
+    // Enough for any character, so the buffer grows at most once
+    ensureRemaining(length * 3);
+    for (int i = 0; i < length; i++) {
+      char c = chars.charAt(i);
+      if (c < 0x80) {
+        buffer.put((byte) c);
+      } else if (c < 0x800) {
+        buffer.put((byte) (0xC0 | c >> 6));
+        buffer.put((byte) (0x80 | c & 0x3F));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < length
+          && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+        buffer.put((byte) (0xF0 | codePoint >> 18));
+        buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+        buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+        buffer.put((byte) (0x80 | codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // Unpaired surrogate, replaced like String#getBytes does
+        buffer.put((byte) '?');
+      } else {
+        buffer.put((byte) (0xE0 | c >> 12));
+        buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+        buffer.put((byte) (0x80 | c & 0x3F));
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Puts a character that is known to be ASCII, such as one from a lookup table.
+   *
+   * @param c ASCII character
+   */
+  public GrowableByteBuffer putAscii(char c) {
+    ensureRemaining(1);
+    buffer.put((byte) c);
+    return this;
+  }
+
+  /** Puts 4 bytes, big-endian. */
+  public GrowableByteBuffer putInt(int value) {
+    ensureRemaining(Integer.BYTES);
+    buffer.putInt(value);
+    return this;
+  }
+
+  /**
+   * @see VarIntUtils
+   */
+  public GrowableByteBuffer putVarInt(int value) {
+    ensureRemaining(VarIntUtils.MAX_BYTES);
+    VarIntUtils.write(buffer, value);
+    return this;
+  }
+
+  /**
+   * @return A stream that puts everything written to it into this buffer
+   */
+  public OutputStream outputStream() {
+    return new OutputStream() {
+      @Override
+      public void write(int b) {
+        put((byte) b);
+      }
+
+      @Override
+      public void write(byte[] bytes, int offset, int length) {
+        put(bytes, offset, length);
+      }
+    };
+  }
+
+  /**
+   * @return CRC32 of everything written so far
+   */
+  public int crc32() {
+    var crc = new CRC32();
+    crc.update(buffer.duplicate().flip());
+    return (int) crc.getValue();
+  }
+
+  /**
+   * @return A copy of everything written so far
+   */
+  public byte[] toByteArray() {
+    byte[] bytes = new byte[buffer.position()];
+    buffer.duplicate().flip().get(bytes);
+    return bytes;
+  }
+
+  /**
+   * @return A view of everything written so far, only valid until this buffer is modified
+   */
+  public ByteBuffer view() {
+    return buffer.duplicate().flip();
+  }
+
+  /**
+   * Replaces the content with the given range of the channel, using positional reads, so the
+   * channel may be shared by several threads.
+   *
+   * @return A view of the content, only valid until this buffer is modified
+   * @throws EOFException If the channel ends before the range
+   * @throws IOException If an I/O error occurs
+   */
+  public ByteBuffer readFrom(FileChannel channel, long position, int length) throws IOException {
+    clear();
+    ensureRemaining(length);
+    var target = buffer.duplicate().limit(length);
+    while (target.hasRemaining()) {
+      int read = channel.read(target, position + target.position());
+      if (read < 0) {
+        throw new EOFException("Unexpected end of channel at " + (position + target.position()));
+      }
+    }
+    buffer.position(length);
+    return view();
+  }
+
+  /**
+   * Replaces the content with everything remaining in the channel.
+   *
+   * @return A view of the content, only valid until this buffer is modified
+   * @throws IOException If an I/O error occurs
+   */
+  public ByteBuffer readFrom(FileChannel channel) throws IOException {
+    clear();
+    // One extra byte, so the end of the channel is reached without growing
+    ensureRemaining((int) Math.min(channel.size() - channel.position() + 1, Integer.MAX_VALUE));
+    while (channel.read(buffer) >= 0) {
+      if (!buffer.hasRemaining()) {
+        ensureRemaining(buffer.capacity());
+      }
+    }
+    return view();
+  }
+
+  /**
+   * Replaces the content of the file with everything written so far.
+   *
+   * @throws IOException If an I/O error occurs
+   */
+  public void writeTo(Path file) throws IOException {
+    var content = view();
+    try (var channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+    }
+  }
+
+  /**
+   * Replaces the content of the file with everything written so far, unless it already has exactly
+   * that content. The new content is written to a temporary file next to it first, then moved over
+   * the file, so the file is never left partly written.
+   *
+   * @return Whether the file was written
+   * @throws IOException If an I/O error occurs
+   */
+  public boolean writeToIfChanged(Path file) throws IOException {
+    if (contentEquals(file)) {
+      return false;
+    }
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    writeTo(tmp);
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return true;
+  }
+
+  /**
+   * @return Whether the file exists and its content is everything written so far
+   */
+  private boolean contentEquals(Path file) throws IOException {
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() != size()) {
+        return false;
+      }
+      var existing = ByteBuffer.allocate(size());
+      while (existing.hasRemaining()) {
+        if (channel.read(existing) < 0) {
+          return false;
+        }
+      }
+      return existing.flip().equals(view());
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+  }
+}
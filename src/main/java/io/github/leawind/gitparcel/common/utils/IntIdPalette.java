@@ -274,6 +274,15 @@ public class IntIdPalette<T> {
     return byId.size();
   }
 
+  /**
+   * Returns the highest ID that is mapped, or {@link #VOID_ID} if the palette is empty.
+   *
+   * @return the highest mapped ID
+   */
+  public int maxId() {
+    return byId.isEmpty() ? VOID_ID : byId.lastIntKey();
+  }
+
   /**
    * Returns the data associated with the given ID, or {@code null} if no valid mapping exists.
    *
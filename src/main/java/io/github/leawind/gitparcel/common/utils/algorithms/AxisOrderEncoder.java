@@ -0,0 +1,156 @@
+package io.github.leawind.gitparcel.common.utils.algorithms;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Greedy box growing encoder that grows each box along the given axis orders, reusing thread local
+ * scratch arrays across calls.
+ *
+ * <p>Runs are built as {@link PackedRuns}, so no object is allocated per run unless {@link #encode}
+ * is used.
+ *
+ * <p>Boxes are seeded in Y, X, Z order. Each seed is grown as far as possible along the first axis
+ * of an order, then the second, then the third. If several orders are given, each one encodes the
+ * whole volume, and the result with the fewest runs is kept, preferring earlier orders.
+ */
+final class AxisOrderEncoder implements VolumetricRLE.Encoder {
+  static final int X = 0;
+  static final int Y = 1;
+  static final int Z = 2;
+
+  /** All 6 axis orders, starting with Y, X, Z which is the order of {@link VolumetricRLE#IMPL} */
+  static final int[][] ALL_ORDERS = {
+    {Y, X, Z}, {Y, Z, X}, {X, Y, Z}, {X, Z, Y}, {Z, Y, X}, {Z, X, Y},
+  };
+
+  private static final class Scratch {
+    /** Values in Y, X, Z order */
+    int[] values = new int[0];
+
+    /** A cell is visited in the current pass if it holds the current epoch */
+    int[] visited = new int[0];
+
+    int epoch = 0;
+
+    void ensureCapacity(int totalSize) {
+      if (values.length < totalSize) {
+        values = new int[totalSize];
+        visited = new int[totalSize];
+        epoch = 0;
+      }
+    }
+
+    int nextEpoch() {
+      if (++epoch == Integer.MAX_VALUE) {
+        Arrays.fill(visited, 0);
+        epoch = 1;
+      }
+      return epoch;
+    }
+  }
+
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  private final int[][] orders;
+
+  AxisOrderEncoder(int[]... orders) {
+    this.orders = orders;
+  }
+
+  @Override
+  public List<VolumetricRLE.Run> encode(
+      int sizeX, int sizeY, int sizeZ, VolumetricRLE.ValueGetter values) {
+    return encodePacked(sizeX, sizeY, sizeZ, values).toList();
+  }
+
+  @Override
+  public PackedRuns encodePacked(
+      int sizeX, int sizeY, int sizeZ, VolumetricRLE.ValueGetter values) {
+    final int sizeXZ = sizeX * sizeZ;
+    final int totalSize = sizeY * sizeXZ;
+
+    var scratch = SCRATCH.get();
+    scratch.ensureCapacity(totalSize);
+    final int[] valueGrid = scratch.values;
+
+    for (int y = 0; y < sizeY; y++) {
+      final int yOffset = y * sizeXZ;
+      for (int x = 0; x < sizeX; x++) {
+        final int xOffset = yOffset + x * sizeZ;
+        for (int z = 0; z < sizeZ; z++) {
+          valueGrid[xOffset + z] = values.get(x, y, z);
+        }
+      }
+    }
+
+    PackedRuns best = null;
+    for (int[] order : orders) {
+      var result = encode(sizeX, sizeY, sizeZ, scratch, order);
+      if (best == null || result.size() < best.size()) {
+        best = result;
+      }
+    }
+    return best;
+  }
+
+  private static PackedRuns encode(
+      int sizeX, int sizeY, int sizeZ, Scratch scratch, int[] order) {
+    final int sizeXZ = sizeX * sizeZ;
+    final int[] valueGrid = scratch.values;
+    final int[] visited = scratch.visited;
+    final int epoch = scratch.nextEpoch();
+
+    final int[] sizes = {sizeX, sizeY, sizeZ};
+    final int[] strides = {sizeZ, sizeXZ, 1};
+    final int[] min = new int[3];
+    final int[] max = new int[3];
+
+    var result = new PackedRuns();
+
+    for (int y = 0; y < sizeY; y++) {
+      for (int x = 0; x < sizeX; x++) {
+        for (int z = 0; z < sizeZ; z++) {
+          final int idx = y * sizeXZ + x * sizeZ + z;
+          if (visited[idx] == epoch) continue;
+
+          final int value = valueGrid[idx];
+          min[X] = max[X] = x;
+          min[Y] = max[Y] = y;
+          min[Z] = max[Z] = z;
+
+          for (int axis : order) {
+            // The other two axes
+            final int u = axis == X ? Y : X;
+            final int v = axis == Z ? Y : Z;
+            final int strideU = strides[u];
+            final int strideV = strides[v];
+
+            extend:
+            while (max[axis] + 1 < sizes[axis]) {
+              final int faceOffset = (max[axis] + 1) * strides[axis];
+              for (int iu = min[u]; iu <= max[u]; iu++) {
+                for (int iv = min[v]; iv <= max[v]; iv++) {
+                  final int tryIdx = faceOffset + iu * strideU + iv * strideV;
+                  if (visited[tryIdx] == epoch || valueGrid[tryIdx] != value) break extend;
+                }
+              }
+              max[axis]++;
+            }
+          }
+
+          for (int iy = y; iy <= max[Y]; iy++) {
+            for (int ix = x; ix <= max[X]; ix++) {
+              final int offset = iy * sizeXZ + ix * sizeZ;
+              for (int iz = z; iz <= max[Z]; iz++) {
+                visited[offset + iz] = epoch;
+              }
+            }
+          }
+          result.add(value, x, y, z, max[X], max[Y], max[Z]);
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,219 @@
+package io.github.leawind.gitparcel.common.utils.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs of {@link VolumetricRLE}, packed one per {@code long} instead of one object per run.
+ *
+ * <p>Bits of each run, from the lowest: {@code minX, minY, minZ, maxX, maxY, maxZ} in {@value
+ * #COORD_BITS} bits each, then the value in the remaining {@value #VALUE_BITS} bits.
+ *
+ * <p>Read with a {@link Cursor}:
+ *
+ * <pre>{@code
+ * var cursor = runs.cursor();
+ * while (cursor.next()) {
+ *   use(cursor.minX(), cursor.value());
+ * }
+ * }</pre>
+ */
+public final class PackedRuns {
+  public static final int COORD_BITS = 6;
+  public static final int VALUE_BITS = Long.SIZE - 6 * COORD_BITS;
+
+  /** Coordinates must be below this */
+  public static final int MAX_COORD_EXCLUSIVE = 1 << COORD_BITS;
+
+  /** Values must be below this */
+  public static final int MAX_VALUE_EXCLUSIVE = 1 << VALUE_BITS;
+
+  private static final int COORD_MASK = MAX_COORD_EXCLUSIVE - 1;
+
+  private long[] data;
+  private int size = 0;
+
+  public PackedRuns() {
+    this(64);
+  }
+
+  public PackedRuns(int initialCapacity) {
+    data = new long[Math.max(initialCapacity, 1)];
+  }
+
+  public static PackedRuns of(Iterable<VolumetricRLE.Run> runs) {
+    var packed = new PackedRuns();
+    for (var run : runs) {
+      packed.add(
+          run.value(), run.minX(), run.minY(), run.minZ(), run.maxX(), run.maxY(), run.maxZ());
+    }
+    return packed;
+  }
+
+  /**
+   * @throws IllegalArgumentException If a coordinate or the value is out of range
+   */
+  public void add(int value, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+    if (((minX | minY | minZ | maxX | maxY | maxZ) & ~COORD_MASK) != 0
+        || (value >>> VALUE_BITS) != 0) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Run out of range: value=%d, min=(%d, %d, %d), max=(%d, %d, %d)",
+              value, minX, minY, minZ, maxX, maxY, maxZ));
+    }
+    if (size == data.length) {
+      data = Arrays.copyOf(data, size * 2);
+    }
+    data[size++] =
+        minX
+            | (long) minY << COORD_BITS
+            | (long) minZ << (2 * COORD_BITS)
+            | (long) maxX << (3 * COORD_BITS)
+            | (long) maxY << (4 * COORD_BITS)
+            | (long) maxZ << (5 * COORD_BITS)
+            | (long) value << (6 * COORD_BITS);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return Packed run at the given index
+   */
+  public long getPacked(int index) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return data[index];
+  }
+
+  public VolumetricRLE.Run get(int index) {
+    long run = getPacked(index);
+    return new VolumetricRLE.Run(
+        value(run), minX(run), minY(run), minZ(run), maxX(run), maxY(run), maxZ(run));
+  }
+
+  public List<VolumetricRLE.Run> toList() {
+    List<VolumetricRLE.Run> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(get(i));
+    }
+    return list;
+  }
+
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  public static int minX(long run) {
+    return (int) run & COORD_MASK;
+  }
+
+  public static int minY(long run) {
+    return (int) (run >>> COORD_BITS) & COORD_MASK;
+  }
+
+  public static int minZ(long run) {
+    return (int) (run >>> (2 * COORD_BITS)) & COORD_MASK;
+  }
+
+  public static int maxX(long run) {
+    return (int) (run >>> (3 * COORD_BITS)) & COORD_MASK;
+  }
+
+  public static int maxY(long run) {
+    return (int) (run >>> (4 * COORD_BITS)) & COORD_MASK;
+  }
+
+  public static int maxZ(long run) {
+    return (int) (run >>> (5 * COORD_BITS)) & COORD_MASK;
+  }
+
+  public static int value(long run) {
+    return (int) (run >>> (6 * COORD_BITS));
+  }
+
+  /** Whether min and max coordinates of the run are equal */
+  public static boolean isSingleBlock(long run) {
+    long coords = run & ((1L << (6 * COORD_BITS)) - 1);
+    return (coords >>> (3 * COORD_BITS)) == (coords & ((1L << (3 * COORD_BITS)) - 1));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof PackedRuns other
+        && Arrays.equals(data, 0, size, other.data, 0, other.size);
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 1;
+    for (int i = 0; i < size; i++) {
+      hash = 31 * hash + Long.hashCode(data[i]);
+    }
+    return hash;
+  }
+
+  /** Iterates over runs in the order they were added, without allocating per run. */
+  public final class Cursor {
+    private int index = -1;
+    private long run;
+
+    private Cursor() {}
+
+    /**
+     * Moves to the next run.
+     *
+     * @return {@code false} if there are no more runs
+     */
+    public boolean next() {
+      if (index + 1 >= size) {
+        index = size;
+        return false;
+      }
+      run = data[++index];
+      return true;
+    }
+
+    /**
+     * @return Packed form of the current run
+     */
+    public long packed() {
+      return run;
+    }
+
+    public int minX() {
+      return PackedRuns.minX(run);
+    }
+
+    public int minY() {
+      return PackedRuns.minY(run);
+    }
+
+    public int minZ() {
+      return PackedRuns.minZ(run);
+    }
+
+    public int maxX() {
+      return PackedRuns.maxX(run);
+    }
+
+    public int maxY() {
+      return PackedRuns.maxY(run);
+    }
+
+    public int maxZ() {
+      return PackedRuns.maxZ(run);
+    }
+
+    public int value() {
+      return PackedRuns.value(run);
+    }
+
+    public boolean isSingleBlock() {
+      return PackedRuns.isSingleBlock(run);
+    }
+  }
+}
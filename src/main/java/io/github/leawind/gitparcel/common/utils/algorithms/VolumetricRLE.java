@@ -2,11 +2,23 @@ package io.github.leawind.gitparcel.common.utils.algorithms;
 
 import java.util.ArrayList;
 import java.util.List;
+import org.slf4j.LoggerFactory;
 
 public interface VolumetricRLE {
   @FunctionalInterface
   interface Encoder {
     List<Run> encode(int sizeX, int sizeY, int sizeZ, ValueGetter values);
+
+    /**
+     * Same runs as {@link #encode}, packed.
+     *
+     * <p>The default implementation packs the result of {@link #encode}.
+     *
+     * @throws IllegalArgumentException If a size is above {@link PackedRuns#MAX_COORD_EXCLUSIVE}
+     */
+    default PackedRuns encodePacked(int sizeX, int sizeY, int sizeZ, ValueGetter values) {
+      return PackedRuns.of(encode(sizeX, sizeY, sizeZ, values));
+    }
   }
 
   record Run(int value, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
@@ -118,4 +130,70 @@ public interface VolumetricRLE {
 
         return result;
       };
+
+  /**
+   * Same output as {@link #IMPL}, but reuses thread local scratch arrays instead of allocating them
+   * on every call. Sizes must not exceed {@link PackedRuns#MAX_COORD_EXCLUSIVE}.
+   */
+  Encoder POOLED = new AxisOrderEncoder(AxisOrderEncoder.ALL_ORDERS[0]);
+
+  /**
+   * Tries every axis order to grow boxes in, and keeps the one that yields the fewest runs. About 6
+   * times slower than {@link #POOLED}.
+   */
+  Encoder BEST_AXIS_ORDER = new AxisOrderEncoder(AxisOrderEncoder.ALL_ORDERS);
+
+  /**
+   * Same output as {@link #IMPL}, comparing whole Z rows at once with the Vector API.
+   *
+   * <p>The JVM must be started with {@code --add-modules jdk.incubator.vector}, otherwise this is
+   * {@link #POOLED}.
+   */
+  Encoder VECTORIZED = loadVectorizedEncoder();
+
+  /** Encoders that can be selected by name, for example in a config. */
+  enum Strategy implements Encoder {
+    GREEDY(IMPL),
+    POOLED(VolumetricRLE.POOLED),
+    BEST_AXIS_ORDER(VolumetricRLE.BEST_AXIS_ORDER),
+    VECTORIZED(VolumetricRLE.VECTORIZED);
+
+    private final Encoder encoder;
+
+    Strategy(Encoder encoder) {
+      this.encoder = encoder;
+    }
+
+    @Override
+    public List<Run> encode(int sizeX, int sizeY, int sizeZ, ValueGetter values) {
+      return encoder.encode(sizeX, sizeY, sizeZ, values);
+    }
+
+    @Override
+    public PackedRuns encodePacked(int sizeX, int sizeY, int sizeZ, ValueGetter values) {
+      return encoder.encodePacked(sizeX, sizeY, sizeZ, values);
+    }
+  }
+
+  private static Encoder loadVectorizedEncoder() {
+    var logger = LoggerFactory.getLogger(VolumetricRLE.class);
+    if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+      logger.info(
+          "Module jdk.incubator.vector is not present, VolumetricRLE.VECTORIZED is the same as"
+              + " POOLED");
+      return POOLED;
+    }
+    try {
+      // Loaded by name, since it is compiled in a separate source set against the incubator module
+      return (Encoder)
+          Class.forName(VolumetricRLE.class.getPackageName() + ".VectorizedEncoder")
+              .getDeclaredConstructor()
+              .newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      logger.warn(
+          "Failed to load the Vector API encoder, VolumetricRLE.VECTORIZED is the same as POOLED",
+          e);
+      return POOLED;
+    }
+  }
 }
@@ -0,0 +1,78 @@
+package io.github.leawind.gitparcel.common.utils.numbase;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Utility class for variable-length integer encoding.
+ *
+ * <p>Integers are written 7 bits at a time, least significant group first. The highest bit of each
+ * byte tells whether more bytes follow. Values below 128 take a single byte, and any {@code int}
+ * takes at most 5 bytes.
+ */
+public final class VarIntUtils {
+  /** Maximum number of bytes of an encoded {@code int}. */
+  public static final int MAX_BYTES = 5;
+
+  private VarIntUtils() {}
+
+  /**
+   * @param value Value to encode, treated as unsigned
+   * @return Number of bytes needed to encode the value
+   */
+  public static int size(int value) {
+    int size = 1;
+    while ((value & ~0x7F) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * Writes a value to the output.
+   *
+   * @param value Value to encode, treated as unsigned
+   */
+  public static void write(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /**
+   * Writes a value to the buffer, advancing its position.
+   *
+   * @param value Value to encode, treated as unsigned
+   * @throws java.nio.BufferOverflowException If the buffer is full
+   */
+  public static void write(ByteBuffer buffer, int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  /**
+   * Reads a value from the buffer, advancing its position.
+   *
+   * @return Decoded value
+   * @throws BufferUnderflowException If the buffer ends in the middle of a value
+   * @throws IllegalArgumentException If the value is longer than {@link #MAX_BYTES}
+   */
+  public static int read(ByteBuffer buffer) {
+    int value = 0;
+    for (int i = 0; i < MAX_BYTES; i++) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << (7 * i);
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("VarInt is too long");
+  }
+}
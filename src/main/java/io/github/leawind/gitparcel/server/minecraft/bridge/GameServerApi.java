@@ -2,6 +2,7 @@ package io.github.leawind.gitparcel.server.minecraft.bridge;
 
 import io.github.leawind.inventory.event.SimpleEventEmitter;
 import net.minecraft.network.Connection;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.server.network.CommonListenerCookie;
 
@@ -11,4 +12,16 @@ public final class GameServerApi {
 
   public static final SimpleEventEmitter<PlayerJoinEvent> ON_PLAYER_JOIN =
       new SimpleEventEmitter<>();
+
+  /** Emitted on the server thread at the end of each server tick. */
+  public record ServerTickEvent(MinecraftServer server) {}
+
+  public static final SimpleEventEmitter<ServerTickEvent> ON_SERVER_TICK =
+      new SimpleEventEmitter<>();
+
+  /** Emitted on the server thread when the server starts stopping, before levels are saved. */
+  public record ServerStoppingEvent(MinecraftServer server) {}
+
+  public static final SimpleEventEmitter<ServerStoppingEvent> ON_SERVER_STOPPING =
+      new SimpleEventEmitter<>();
 }
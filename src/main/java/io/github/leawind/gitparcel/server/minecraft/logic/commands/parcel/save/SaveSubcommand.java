@@ -6,9 +6,13 @@ import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
 import io.github.leawind.gitparcel.common.minecraft.logic.commands.arguments.ParcelArgument;
+import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelStorage;
 import io.github.leawind.gitparcel.common.utils.Translations;
 import io.github.leawind.gitparcel.server.minecraft.logic.commands.parcel.ParcelCommand;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 
@@ -31,28 +35,60 @@ public class SaveSubcommand {
     return save(ctx, BoolArgumentType.getBool(ctx, "ignore_entities"));
   }
 
+  /**
+   * Captures each parcel on the server thread, then writes it in the background. The result of each
+   * save is reported to the source when it finishes.
+   *
+   * @return Number of parcels whose save was started
+   */
   private static int save(CommandContext<CommandSourceStack> ctx, boolean ignoreEntities)
       throws CommandSyntaxException {
     var source = ctx.getSource();
+    var server = source.getServer();
 
+    int started = 0;
     for (var parcel : ParcelArgument.getParcels(ctx, ParcelCommand.ARG_PARCELS)) {
+      CompletableFuture<Void> future;
       try {
-        parcel.save(ignoreEntities);
-        source.sendSystemMessage(
-            Translations.of("command.gitparcel.parcel.save.success", parcel.uuid().toString()));
-
-      } catch (IOException | ParcelException e) {
-        source.sendFailure(
-            Translations.of(
-                "command.gitparcel.parcel.save.failure",
-                e.getClass().getSimpleName() + ": " + e.getMessage()));
-        return 0;
+        future = parcel.saveAsync(ignoreEntities);
       } catch (Exception e) {
         source.sendFailure(
             Translations.of("command.gitparcel.parcel.unexpected_error", e.getMessage()));
-        return 0;
+        return started;
       }
+      started++;
+
+      future.whenCompleteAsync(
+          (result, throwable) -> {
+            if (throwable == null) {
+              source.sendSystemMessage(
+                  Translations.of(
+                      "command.gitparcel.parcel.save.success", parcel.uuid().toString()));
+              return;
+            }
+
+            Throwable cause = unwrap(throwable);
+            if (cause instanceof IOException || cause instanceof ParcelException) {
+              source.sendFailure(
+                  Translations.of(
+                      "command.gitparcel.parcel.save.failure",
+                      cause.getClass().getSimpleName() + ": " + cause.getMessage()));
+            } else {
+              ParcelStorage.LOGGER.error("Unexpected error while saving parcel", cause);
+              source.sendFailure(
+                  Translations.of("command.gitparcel.parcel.unexpected_error", cause.getMessage()));
+            }
+          },
+          server);
+    }
+    return started;
+  }
+
+  private static Throwable unwrap(Throwable throwable) {
+    while ((throwable instanceof CompletionException || throwable instanceof UncheckedIOException)
+        && throwable.getCause() != null) {
+      throwable = throwable.getCause();
     }
-    return 1;
+    return throwable;
   }
 }
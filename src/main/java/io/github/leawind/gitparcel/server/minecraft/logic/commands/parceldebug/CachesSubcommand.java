@@ -0,0 +1,50 @@
+package io.github.leawind.gitparcel.server.minecraft.logic.commands.parceldebug;
+
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockStateStringCache;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.SharedBlockPalette;
+import io.github.leawind.gitparcel.common.utils.Translations;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+
+/**
+ * {@code caches}, shows and clears caches shared by parcel loads and saves.
+ *
+ * <ul>
+ *   <li>{@code caches}
+ *   <li>{@code caches clear}
+ * </ul>
+ */
+public class CachesSubcommand {
+  public static ArgumentBuilder<CommandSourceStack, ?> build() {
+    return Commands.literal("caches")
+        .executes(CachesSubcommand::show)
+        .then(Commands.literal("clear").executes(CachesSubcommand::clear));
+  }
+
+  private static int show(CommandContext<CommandSourceStack> context) {
+    var source = context.getSource();
+
+    var stats = BlockStateStringCache.INSTANCE.getStats();
+    source.sendSystemMessage(
+        Translations.of(
+            "command.gitparcel.parcel_debug.caches.block_state_strings",
+            stats.parseHits(),
+            stats.parseMisses(),
+            stats.stringifyHits(),
+            stats.stringifyMisses()));
+    source.sendSystemMessage(
+        Translations.of(
+            "command.gitparcel.parcel_debug.caches.shared_block_palettes",
+            SharedBlockPalette.loadedCount()));
+
+    return 1;
+  }
+
+  private static int clear(CommandContext<CommandSourceStack> context) {
+    BlockStateStringCache.INSTANCE.clear();
+    SharedBlockPalette.unloadAll();
+    return show(context);
+  }
+}
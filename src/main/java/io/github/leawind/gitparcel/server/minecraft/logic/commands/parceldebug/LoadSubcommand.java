@@ -6,10 +6,12 @@ import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import io.github.leawind.gitparcel.common.api.parcel.ParcelTransform;
 import io.github.leawind.gitparcel.common.api.exceptions.ParcelException;
 import io.github.leawind.gitparcel.common.minecraft.logic.commands.arguments.FilePathArgument;
+import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelLoadScheduler;
 import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelStorage;
 import io.github.leawind.gitparcel.common.utils.Translations;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.commands.arguments.TemplateMirrorArgument;
@@ -21,77 +23,142 @@ import net.minecraft.world.level.block.Mirror;
 import net.minecraft.world.level.block.Rotation;
 
 public class LoadSubcommand {
+  private static final int LOAD_FLAGS =
+      Block.UPDATE_CLIENTS
+          | Block.UPDATE_IMMEDIATE
+          | Block.UPDATE_KNOWN_SHAPE
+          | Block.UPDATE_SKIP_ALL_SIDEEFFECTS;
+
+  /** {@code load <from> <path> [mirror] [rotation]}, loads the whole parcel in this tick. */
   public static ArgumentBuilder<CommandSourceStack, ?> build() {
+    return build("load", false);
+  }
+
+  /**
+   * {@code load_sliced <from> <path> [mirror] [rotation]}, loads the parcel over multiple ticks.
+   *
+   * @see ParcelLoadScheduler
+   */
+  public static ArgumentBuilder<CommandSourceStack, ?> buildSliced() {
+    return build("load_sliced", true);
+  }
+
+  private static ArgumentBuilder<CommandSourceStack, ?> build(String literal, boolean sliced) {
 
     var load_rotation =
         Commands.argument("rotation", TemplateRotationArgument.templateRotation())
-            .executes(LoadSubcommand::load3);
+            .executes(ctx -> load3(ctx, sliced));
 
     var load_mirror =
         Commands.argument("mirror", TemplateMirrorArgument.templateMirror())
-            .executes(LoadSubcommand::load2)
+            .executes(ctx -> load2(ctx, sliced))
             .then(load_rotation);
 
     var load_path =
-        FilePathArgument.argOfDir("path", false).executes(LoadSubcommand::load1).then(load_mirror);
+        FilePathArgument.argOfDir("path", false)
+            .executes(ctx -> load1(ctx, sliced))
+            .then(load_mirror);
 
     var load_from = Commands.argument("from", BlockPosArgument.blockPos()).then(load_path);
 
-    return Commands.literal("load").then(load_from);
+    return Commands.literal(literal).then(load_from);
   }
 
-  private static int load1(CommandContext<CommandSourceStack> ctx) throws CommandSyntaxException {
+  private static int load1(CommandContext<CommandSourceStack> ctx, boolean sliced)
+      throws CommandSyntaxException {
     return load(
         ctx.getSource(),
         BlockPosArgument.getLoadedBlockPos(ctx, "from"),
         FilePathArgument.getPath(ctx, "path"),
         Mirror.NONE,
-        Rotation.NONE);
+        Rotation.NONE,
+        sliced);
   }
 
-  private static int load2(CommandContext<CommandSourceStack> ctx) throws CommandSyntaxException {
+  private static int load2(CommandContext<CommandSourceStack> ctx, boolean sliced)
+      throws CommandSyntaxException {
     return load(
         ctx.getSource(),
         BlockPosArgument.getLoadedBlockPos(ctx, "from"),
         FilePathArgument.getPath(ctx, "path"),
         TemplateMirrorArgument.getMirror(ctx, "mirror"),
-        Rotation.NONE);
+        Rotation.NONE,
+        sliced);
   }
 
-  private static int load3(CommandContext<CommandSourceStack> ctx) throws CommandSyntaxException {
+  private static int load3(CommandContext<CommandSourceStack> ctx, boolean sliced)
+      throws CommandSyntaxException {
     return load(
         ctx.getSource(),
         BlockPosArgument.getLoadedBlockPos(ctx, "from"),
         FilePathArgument.getPath(ctx, "path"),
         TemplateMirrorArgument.getMirror(ctx, "mirror"),
-        TemplateRotationArgument.getRotation(ctx, "rotation"));
+        TemplateRotationArgument.getRotation(ctx, "rotation"),
+        sliced);
   }
 
   private static int load(
-      CommandSourceStack source, BlockPos pos, Path path, Mirror mirror, Rotation rotation) {
-    return load(source, new ParcelTransform(mirror, rotation, pos), path);
+      CommandSourceStack source,
+      BlockPos pos,
+      Path path,
+      Mirror mirror,
+      Rotation rotation,
+      boolean sliced) {
+    var transform = new ParcelTransform(mirror, rotation, pos);
+    return sliced ? loadSliced(source, transform, path) : load(source, transform, path);
   }
 
   private static int load(CommandSourceStack source, ParcelTransform transform, Path path) {
-    final int loadFlags =
-        Block.UPDATE_CLIENTS
-            | Block.UPDATE_IMMEDIATE
-            | Block.UPDATE_KNOWN_SHAPE
-            | Block.UPDATE_SKIP_ALL_SIDEEFFECTS;
-
     try {
+      var level = source.getLevel();
+      Path repoDir = ParcelStorage.findRepoDirectory(level.getServer(), path);
       // Entities are loaded by the format loader when ignoreEntities is false
-      ParcelStorage.load(source.getLevel(), transform, path, false, false, loadFlags);
+      ParcelStorage.load(level, transform, path, repoDir, false, false, LOAD_FLAGS);
 
       source.sendSuccess(
           () -> Translations.of("command.gitparcel.parcel_debug.load.success"), true);
       return 1;
     } catch (IOException | ParcelException e) {
       ParcelDebugCommand.LOGGER.error("Error while loading parcel", e);
+      sendLoadFailure(source, e);
+      return 0;
+    } catch (Exception e) {
+      ParcelDebugCommand.LOGGER.error("Unexpected error while loading parcel", e);
       source.sendFailure(
-          Translations.of(
-              "command.gitparcel.parcel_debug.load.failure",
-              e.getClass().getSimpleName() + ": " + e.getMessage()));
+          Translations.of("command.gitparcel.parcel_debug.unexpected_error", e.getMessage()));
+      return 0;
+    }
+  }
+
+  private static int loadSliced(CommandSourceStack source, ParcelTransform transform, Path path) {
+    try {
+      var level = source.getLevel();
+      Path repoDir = ParcelStorage.findRepoDirectory(level.getServer(), path);
+      var task =
+          ParcelStorage.loadSliced(level, transform, path, repoDir, false, false, LOAD_FLAGS);
+      var entry = ParcelLoadScheduler.submit(level, path.toString(), task);
+
+      source.sendSuccess(
+          () -> Translations.of("command.gitparcel.parcel_debug.load.started", entry.id()), true);
+
+      entry
+          .future()
+          .whenComplete(
+              (result, throwable) -> {
+                if (throwable == null) {
+                  source.sendSuccess(
+                      () -> Translations.of("command.gitparcel.parcel_debug.load.success"), true);
+                } else if (throwable instanceof CancellationException) {
+                  source.sendSystemMessage(
+                      Translations.of("command.gitparcel.parcel_debug.load.cancelled", entry.id()));
+                } else {
+                  sendLoadFailure(source, throwable);
+                }
+              });
+      return entry.id();
+    } catch (IOException | ParcelException e) {
+      ParcelDebugCommand.LOGGER.error("Error while loading parcel", e);
+      sendLoadFailure(source, e);
       return 0;
     } catch (Exception e) {
       ParcelDebugCommand.LOGGER.error("Unexpected error while loading parcel", e);
@@ -100,4 +167,11 @@ public class LoadSubcommand {
       return 0;
     }
   }
+
+  private static void sendLoadFailure(CommandSourceStack source, Throwable e) {
+    source.sendFailure(
+        Translations.of(
+            "command.gitparcel.parcel_debug.load.failure",
+            e.getClass().getSimpleName() + ": " + e.getMessage()));
+  }
 }
@@ -19,7 +19,10 @@ public class ParcelDebugCommand {
             .then(ClearDataSubcommand.build())
             .then(SaveSubcommand.build())
             .then(StorageSubcommand.build())
-            .then(LoadSubcommand.build());
+            .then(LoadSubcommand.build())
+            .then(LoadSubcommand.buildSliced())
+            .then(TasksSubcommand.build())
+            .then(CachesSubcommand.build());
 
     dispatcher.register(parcel_debug);
   }
@@ -139,7 +139,9 @@ public class SaveSubcommand {
 
       ParcelMeta meta = new ParcelMeta(format.spec(), sizeParcelSpace, Vec3i.ZERO);
 
-      ParcelStorage.save(source.getLevel(), transform, meta, null, parcelDir, ignoreEntities);
+      var level = source.getLevel();
+      Path repoDir = ParcelStorage.findRepoDirectory(level.getServer(), parcelDir);
+      ParcelStorage.save(level, transform, meta, null, parcelDir, repoDir, ignoreEntities);
 
       source.sendSuccess(
           () -> Translations.of("command.gitparcel.parcel_debug.save.success"), ignoreEntities);
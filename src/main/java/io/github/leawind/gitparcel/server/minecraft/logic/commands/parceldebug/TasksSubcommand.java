@@ -0,0 +1,113 @@
+package io.github.leawind.gitparcel.server.minecraft.logic.commands.parceldebug;
+
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import io.github.leawind.gitparcel.common.minecraft.logic.storage.ParcelLoadScheduler;
+import io.github.leawind.gitparcel.common.utils.Translations;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+
+/**
+ * {@code tasks}, lists and controls parcel load tasks in {@link ParcelLoadScheduler}.
+ *
+ * <ul>
+ *   <li>{@code tasks}
+ *   <li>{@code tasks cancel (<id>|all)}
+ *   <li>{@code tasks budget <millis> <blocks> [<entities>]}
+ * </ul>
+ */
+public class TasksSubcommand {
+  public static ArgumentBuilder<CommandSourceStack, ?> build() {
+    var cancel_id =
+        Commands.argument("id", IntegerArgumentType.integer(1)).executes(TasksSubcommand::cancel);
+
+    var cancel_all = Commands.literal("all").executes(TasksSubcommand::cancelAll);
+
+    var cancel = Commands.literal("cancel").then(cancel_all).then(cancel_id);
+
+    var budget_entities =
+        Commands.argument("entities", IntegerArgumentType.integer(1))
+            .executes(ctx -> budget(ctx, IntegerArgumentType.getInteger(ctx, "entities")));
+
+    var budget_blocks =
+        Commands.argument("blocks", IntegerArgumentType.integer(1))
+            .executes(ctx -> budget(ctx, ParcelLoadScheduler.entitiesPerTick()))
+            .then(budget_entities);
+
+    var budget =
+        Commands.literal("budget")
+            .then(Commands.argument("millis", IntegerArgumentType.integer(1)).then(budget_blocks));
+
+    return Commands.literal("tasks").executes(TasksSubcommand::list).then(cancel).then(budget);
+  }
+
+  private static int list(CommandContext<CommandSourceStack> ctx) {
+    var source = ctx.getSource();
+    var entries = ParcelLoadScheduler.entries();
+
+    source.sendSystemMessage(
+        Translations.of(
+            "command.gitparcel.parcel_debug.tasks.header",
+            entries.size(),
+            ParcelLoadScheduler.millisPerTick(),
+            ParcelLoadScheduler.blocksPerTick(),
+            ParcelLoadScheduler.entitiesPerTick()));
+    source.sendSystemMessage(
+        Translations.of(
+            "command.gitparcel.parcel_debug.tasks.entities",
+            ParcelLoadScheduler.lastTickEntities(),
+            ParcelLoadScheduler.peakTickEntities()));
+
+    for (var entry : entries) {
+      source.sendSystemMessage(
+          Translations.of(
+              "command.gitparcel.parcel_debug.tasks.entry",
+              entry.id(),
+              entry.description(),
+              String.format("%.1f", entry.progress() * 100),
+              entry.completedWork(),
+              entry.totalWork()));
+    }
+    return entries.size();
+  }
+
+  private static int cancel(CommandContext<CommandSourceStack> ctx) {
+    var source = ctx.getSource();
+    int id = IntegerArgumentType.getInteger(ctx, "id");
+
+    if (!ParcelLoadScheduler.cancel(id)) {
+      source.sendFailure(Translations.of("command.gitparcel.parcel_debug.tasks.cancel.failure", id));
+      return 0;
+    }
+    source.sendSuccess(
+        () -> Translations.of("command.gitparcel.parcel_debug.tasks.cancel.success", 1), true);
+    return 1;
+  }
+
+  private static int cancelAll(CommandContext<CommandSourceStack> ctx) {
+    int count = ParcelLoadScheduler.cancelAll();
+    ctx.getSource()
+        .sendSuccess(
+            () -> Translations.of("command.gitparcel.parcel_debug.tasks.cancel.success", count),
+            true);
+    return count;
+  }
+
+  private static int budget(CommandContext<CommandSourceStack> ctx, long entities) {
+    int millis = IntegerArgumentType.getInteger(ctx, "millis");
+    int blocks = IntegerArgumentType.getInteger(ctx, "blocks");
+
+    ParcelLoadScheduler.setBudget(millis, blocks, entities);
+    ctx.getSource()
+        .sendSuccess(
+            () ->
+                Translations.of(
+                    "command.gitparcel.parcel_debug.tasks.budget.success",
+                    millis,
+                    blocks,
+                    entities),
+            true);
+    return 1;
+  }
+}
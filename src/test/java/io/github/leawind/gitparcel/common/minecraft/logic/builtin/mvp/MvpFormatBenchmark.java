@@ -0,0 +1,72 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.mvp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.DetectedVersion;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Vec3i;
+import net.minecraft.server.Bootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Saves a cube of mixed blocks with the streaming saver and with the previous three pass one. */
+@SuppressWarnings("unused")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 2)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 3)
+public class MvpFormatBenchmark {
+
+  @Param({"32", "64"})
+  private int size;
+
+  private final BlockPos origin = new BlockPos(-40, -64, 24);
+  private Vec3i parcelSize;
+  private MvpFormatTest.ArrayBlockSource source;
+  private Path dir;
+
+  @Setup
+  public void setup() throws IOException {
+    SharedConstants.setVersion(DetectedVersion.BUILT_IN);
+    Bootstrap.bootStrap();
+
+    parcelSize = new Vec3i(size, size, size);
+    source = new MvpFormatTest.ArrayBlockSource(origin, parcelSize, 12138);
+    dir = Files.createTempDirectory("gitparcel-mvp-benchmark");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try (var paths = Files.walk(dir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Benchmark
+  public void benchmarkThreePass() throws IOException {
+    MvpFormatTest.writeThreePass(source, origin, parcelSize, dir.resolve("three_pass"));
+  }
+
+  @Benchmark
+  public void benchmarkStreaming() throws IOException {
+    MvpFormat.write(source, origin, parcelSize, dir.resolve("streaming"));
+  }
+}
@@ -0,0 +1,231 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.mvp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockSource;
+import io.github.leawind.gitparcel.common.testutils.AbstractMinecraftTest;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Vec3i;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MvpFormatTest extends AbstractMinecraftTest {
+
+  /** Block states and block entities of a box, the whole box is filled. */
+  static final class ArrayBlockSource implements BlockSource {
+    private final BlockPos origin;
+    private final Vec3i size;
+    private final BlockState[] states;
+    private final Map<BlockPos, CompoundTag> blockEntities = new HashMap<>();
+
+    ArrayBlockSource(BlockPos origin, Vec3i size, long seed) {
+      this.origin = origin;
+      this.size = size;
+      states = new BlockState[size.getX() * size.getY() * size.getZ()];
+
+      BlockState[] choices = {
+        Blocks.STONE.defaultBlockState(),
+        Blocks.DIRT.defaultBlockState(),
+        Blocks.GLASS.defaultBlockState(),
+        Blocks.CHEST.defaultBlockState(),
+        Blocks.BARREL.defaultBlockState(),
+      };
+      var random = new Random(seed);
+      for (int i = 0; i < states.length; i++) {
+        // Mostly air, so that the palette order depends on where states first occur
+        states[i] =
+            random.nextInt(4) == 0
+                ? choices[random.nextInt(choices.length)]
+                : Blocks.AIR.defaultBlockState();
+      }
+
+      for (int x = 0; x < size.getX(); x++) {
+        for (int y = 0; y < size.getY(); y++) {
+          for (int z = 0; z < size.getZ(); z++) {
+            BlockState state = states[index(x, y, z)];
+            if (state.hasBlockEntity()) {
+              var data = new CompoundTag();
+              data.putString("id", BuiltInRegistries.BLOCK.getKey(state.getBlock()).toString());
+              data.putInt("index", index(x, y, z));
+              blockEntities.put(origin.offset(x, y, z), data);
+            }
+          }
+        }
+      }
+    }
+
+    private int index(int x, int y, int z) {
+      return (x * size.getY() + y) * size.getZ() + z;
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos worldPos) {
+      return states[
+          index(
+              worldPos.getX() - origin.getX(),
+              worldPos.getY() - origin.getY(),
+              worldPos.getZ() - origin.getZ())];
+    }
+
+    @Override
+    public @Nullable CompoundTag getBlockEntityData(BlockPos worldPos) {
+      return blockEntities.get(worldPos);
+    }
+  }
+
+  /** The previous implementation, which scans the box once for each kind of output. */
+  static void writeThreePass(BlockSource source, BlockPos origin, Vec3i parcelSize, Path dataDir)
+      throws IOException {
+    int sizeX = parcelSize.getX();
+    int sizeY = parcelSize.getY();
+    int sizeZ = parcelSize.getZ();
+
+    Files.createDirectories(dataDir);
+    Path blocksDir = dataDir.resolve("blocks");
+    Path paletteFile = blocksDir.resolve("palette.txt");
+    Path nbtDir = blocksDir.resolve("nbt");
+    Path subParcelsDir = blocksDir.resolve("subparcels");
+
+    Map<BlockState, Integer> palette = new HashMap<>();
+    List<BlockState> paletteList = new ArrayList<>();
+    for (int x = 0; x < sizeX; x++) {
+      for (int y = 0; y < sizeY; y++) {
+        for (int z = 0; z < sizeZ; z++) {
+          BlockState blockState = source.getBlockState(origin.offset(x, y, z));
+          if (!palette.containsKey(blockState)) {
+            palette.put(blockState, paletteList.size());
+            paletteList.add(blockState);
+          }
+        }
+      }
+    }
+
+    Files.createDirectories(paletteFile.getParent());
+    try (BufferedWriter writer = Files.newBufferedWriter(paletteFile, StandardCharsets.UTF_8)) {
+      for (int i = 0; i < paletteList.size(); i++) {
+        String blockStateString =
+            BuiltInRegistries.BLOCK
+                .wrapAsHolder(paletteList.get(i).getBlock())
+                .getRegisteredName();
+        writer.write(Integer.toHexString(i) + "=" + blockStateString);
+        writer.newLine();
+      }
+    }
+
+    int subSize = 16;
+    int subParcelCountX = (sizeX + subSize - 1) / subSize;
+    int subParcelCountY = (sizeY + subSize - 1) / subSize;
+    int subParcelCountZ = (sizeZ + subSize - 1) / subSize;
+    int maxIndex = subParcelCountX * subParcelCountY * subParcelCountZ - 1;
+    int totalDigitsNeeded =
+        (maxIndex == 0) ? 1 : (int) Math.ceil(Math.log(maxIndex + 1) / Math.log(16));
+    if (totalDigitsNeeded % 2 == 1) {
+      totalDigitsNeeded++;
+    }
+
+    for (int sx = 0; sx < subParcelCountX; sx++) {
+      for (int sy = 0; sy < subParcelCountY; sy++) {
+        for (int sz = 0; sz < subParcelCountZ; sz++) {
+          int startX = sx * subSize;
+          int startY = sy * subSize;
+          int startZ = sz * subSize;
+          int currentIndex = sx * subParcelCountY * subParcelCountZ + sy * subParcelCountZ + sz;
+          String hexIndex = String.format("%0" + totalDigitsNeeded + "X", currentIndex);
+
+          Path subParcelPath = subParcelsDir;
+          for (int i = 0; i < hexIndex.length() - 2; i += 2) {
+            subParcelPath = subParcelPath.resolve(hexIndex.substring(i, i + 2));
+          }
+          Path subParcelFile = subParcelPath.resolve(hexIndex + ".txt");
+          Files.createDirectories(subParcelFile.getParent());
+
+          try (BufferedWriter writer =
+              Files.newBufferedWriter(subParcelFile, StandardCharsets.UTF_8)) {
+            for (int x = startX; x < Math.min(startX + subSize, sizeX); x++) {
+              for (int y = startY; y < Math.min(startY + subSize, sizeY); y++) {
+                for (int z = startZ; z < Math.min(startZ + subSize, sizeZ); z++) {
+                  BlockState blockState = source.getBlockState(origin.offset(x, y, z));
+                  writer.write(Integer.toHexString(palette.get(blockState)));
+                  writer.newLine();
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+
+    Files.createDirectories(nbtDir);
+    for (int x = 0; x < sizeX; x++) {
+      for (int y = 0; y < sizeY; y++) {
+        for (int z = 0; z < sizeZ; z++) {
+          BlockPos pos = origin.offset(x, y, z);
+          CompoundTag tag = source.getBlockEntityData(pos);
+          if (tag != null) {
+            Path nbtFile = nbtDir.resolve(palette.get(source.getBlockState(pos)) + ".snbt");
+            if (!Files.exists(nbtFile)) {
+              Files.writeString(nbtFile, tag.toString(), StandardCharsets.UTF_8);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static Map<String, String> readTree(Path dir) throws IOException {
+    Map<String, String> files = new HashMap<>();
+    try (var paths = Files.walk(dir)) {
+      for (Path path : paths.filter(Files::isRegularFile).toList()) {
+        files.put(dir.relativize(path).toString(), Files.readString(path));
+      }
+    }
+    return files;
+  }
+
+  @Test
+  void testSameAsThreePass(@TempDir Path dir) throws IOException {
+    var origin = new BlockPos(-21, -64, 7);
+    var size = new Vec3i(37, 20, 18);
+    var source = new ArrayBlockSource(origin, size, 12138);
+
+    writeThreePass(source, origin, size, dir.resolve("expected"));
+    MvpFormat.write(source, origin, size, dir.resolve("actual"));
+
+    var expected = readTree(dir.resolve("expected"));
+    var actual = readTree(dir.resolve("actual"));
+    assertEquals(expected.keySet(), actual.keySet());
+    for (var entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), actual.get(entry.getKey()), entry.getKey());
+    }
+  }
+
+  @Test
+  void testToPaddedHex() {
+    int[] values = {0, 1, 0xF, 0x10, 0xAB, 0x1234, Integer.MAX_VALUE};
+    for (int digits = 1; digits <= 10; digits++) {
+      String[] expected = new String[values.length];
+      String[] actual = new String[values.length];
+      for (int i = 0; i < values.length; i++) {
+        expected[i] = String.format("%0" + digits + "X", values[i]);
+        actual[i] = MvpFormat.toPaddedHex(values[i], digits);
+      }
+      assertArrayEquals(expected, actual);
+    }
+  }
+}
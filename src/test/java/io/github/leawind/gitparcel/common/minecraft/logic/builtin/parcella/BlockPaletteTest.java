@@ -99,4 +99,25 @@ class BlockPaletteTest extends AbstractMinecraftTest {
     assertInstanceOf(Result.Ok.class, parsed);
     assertEquals(original, ((Result.Ok<BlockState, String>) parsed).value());
   }
+
+  @Test
+  void statesByIdFollowsPalette() {
+    var palette = new BlockPalette();
+    int air = palette.collect(Blocks.AIR.defaultBlockState());
+    int stone = palette.collect(Blocks.STONE.defaultBlockState());
+
+    var states = palette.getStatesById();
+    assertSame(states, palette.getStatesById());
+    assertSame(Blocks.AIR.defaultBlockState(), palette.get(states, air));
+    assertSame(Blocks.STONE.defaultBlockState(), palette.get(states, stone));
+    assertNull(palette.get(states, -1));
+    assertNull(palette.get(states, 1000));
+
+    palette.removeById(air);
+    int dirt = palette.collect(Blocks.DIRT.defaultBlockState());
+
+    states = palette.getStatesById();
+    assertNull(palette.get(states, air));
+    assertSame(Blocks.DIRT.defaultBlockState(), palette.get(states, dirt));
+  }
 }
@@ -0,0 +1,75 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.leawind.gitparcel.common.testutils.AbstractMinecraftTest;
+import io.github.leawind.inventory.just.Result;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import org.junit.jupiter.api.Test;
+
+class BlockStateStringCacheTest extends AbstractMinecraftTest {
+
+  @Test
+  void parseCallsParserOnce() {
+    var cache = new BlockStateStringCache();
+    var calls = new AtomicInteger();
+
+    for (int i = 0; i < 3; i++) {
+      var result =
+          cache.parse(
+              "minecraft:stone",
+              s -> {
+                calls.incrementAndGet();
+                return BlockPalette.parseBlockStateUncached(s);
+              });
+      assertEquals(Result.ok(Blocks.STONE.defaultBlockState()), result);
+    }
+
+    assertEquals(1, calls.get());
+    assertEquals(new BlockStateStringCache.Stats(2, 1, 0, 0), cache.getStats());
+  }
+
+  @Test
+  void parseCachesErrors() {
+    var cache = new BlockStateStringCache();
+    var calls = new AtomicInteger();
+
+    for (int i = 0; i < 2; i++) {
+      var result =
+          cache.parse(
+              "nonexistent_block",
+              s -> {
+                calls.incrementAndGet();
+                return BlockPalette.parseBlockStateUncached(s);
+              });
+      assertInstanceOf(Result.Err.class, result);
+    }
+
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  void stringifyAlsoCachesParse() {
+    var cache = new BlockStateStringCache();
+    BlockState state = Blocks.OAK_FENCE.defaultBlockState();
+
+    String string = cache.stringify(state, BlockPalette::stringifyBlockStateUncached);
+    assertEquals(BlockPalette.stringifyBlockStateUncached(state), string);
+    assertSame(string, cache.stringify(state, BlockPalette::stringifyBlockStateUncached));
+
+    var result = cache.parse(string, s -> fail("Should be cached"));
+    assertEquals(Result.ok(state), result);
+    assertEquals(new BlockStateStringCache.Stats(1, 0, 1, 1), cache.getStats());
+  }
+
+  @Test
+  void clearResetsStats() {
+    var cache = new BlockStateStringCache();
+    cache.parse("stone", BlockPalette::parseBlockStateUncached);
+    cache.clear();
+
+    assertEquals(new BlockStateStringCache.Stats(0, 0, 0, 0), cache.getStats());
+  }
+}
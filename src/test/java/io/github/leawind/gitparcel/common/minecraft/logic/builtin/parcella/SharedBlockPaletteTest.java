@@ -0,0 +1,124 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.leawind.gitparcel.common.testutils.AbstractMinecraftTest;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import net.minecraft.world.level.block.Blocks;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SharedBlockPaletteTest extends AbstractMinecraftTest {
+  @TempDir Path repoDir;
+
+  @AfterEach
+  void unload() {
+    SharedBlockPalette.unloadAll();
+  }
+
+  @Test
+  void getFile() {
+    assertEquals(
+        repoDir.resolve(SharedBlockPalette.FILE_NAME), SharedBlockPalette.getFile(repoDir));
+  }
+
+  @Test
+  void appendsOnlyNewEntries() throws Exception {
+    Path file = repoDir.resolve(SharedBlockPalette.FILE_NAME);
+    Files.writeString(file, "1=minecraft:stone\n0=minecraft:air", StandardCharsets.UTF_8);
+
+    var shared = SharedBlockPalette.get(file);
+    assertSame(shared, SharedBlockPalette.get(file));
+    assertEquals(1, shared.collect(Blocks.STONE.defaultBlockState()));
+
+    int dirt = shared.collect(Blocks.DIRT.defaultBlockState());
+    assertEquals(2, dirt);
+    shared.save();
+
+    assertEquals(
+        "1=minecraft:stone\n0=minecraft:air\n2=minecraft:dirt\n",
+        Files.readString(file, StandardCharsets.UTF_8));
+    assertSame(shared, SharedBlockPalette.get(file));
+
+    // Nothing new to append
+    shared.save();
+    assertEquals(3, Files.readAllLines(file).size());
+  }
+
+  @Test
+  void reloadsWhenFileChanges() throws Exception {
+    Path file = repoDir.resolve(SharedBlockPalette.FILE_NAME);
+    Files.writeString(file, "0=minecraft:air\n", StandardCharsets.UTF_8);
+    var shared = SharedBlockPalette.get(file);
+
+    Files.writeString(file, "0=minecraft:air\n1=minecraft:stone\n", StandardCharsets.UTF_8);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+
+    var reloaded = SharedBlockPalette.get(file);
+    assertNotSame(shared, reloaded);
+    assertSame(Blocks.STONE.defaultBlockState(), reloaded.palette().get(1));
+  }
+
+  @Test
+  void mergesWhenFileChangedBeforeSave() throws Exception {
+    Path file = repoDir.resolve(SharedBlockPalette.FILE_NAME);
+    Files.writeString(file, "0=minecraft:air\n", StandardCharsets.UTF_8);
+    var shared = SharedBlockPalette.get(file);
+    assertEquals(1, shared.collect(Blocks.DIRT.defaultBlockState()));
+
+    // Saved by another server meanwhile
+    Files.writeString(file, "0=minecraft:air\n2=minecraft:stone\n", StandardCharsets.UTF_8);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+
+    shared.save();
+    assertEquals(
+        "0=minecraft:air\n2=minecraft:stone\n1=minecraft:dirt\n",
+        Files.readString(file, StandardCharsets.UTF_8));
+    assertEquals(2, shared.collect(Blocks.STONE.defaultBlockState()));
+    assertEquals(3, shared.collect(Blocks.COBBLESTONE.defaultBlockState()));
+  }
+
+  @Test
+  void failsWhenFileConflictsBeforeSave() throws Exception {
+    Path file = repoDir.resolve(SharedBlockPalette.FILE_NAME);
+    Files.writeString(file, "0=minecraft:air\n", StandardCharsets.UTF_8);
+    var shared = SharedBlockPalette.get(file);
+    assertEquals(1, shared.collect(Blocks.DIRT.defaultBlockState()));
+
+    // ID 1 was taken by another block state, e.g. after a pull
+    String pulled = "0=minecraft:air\n1=minecraft:stone\n";
+    Files.writeString(file, pulled, StandardCharsets.UTF_8);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+
+    assertThrows(IOException.class, shared::save);
+    assertEquals(pulled, Files.readString(file, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void beginSaveMergesFileBeforeAssigningIds() throws Exception {
+    Path file = repoDir.resolve(SharedBlockPalette.FILE_NAME);
+    Files.writeString(file, "0=minecraft:air\n", StandardCharsets.UTF_8);
+    var shared = SharedBlockPalette.get(file);
+
+    // ID 1 was taken after the palette was loaded, e.g. after a pull
+    Files.writeString(file, "0=minecraft:air\n1=minecraft:stone\n", StandardCharsets.UTF_8);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+
+    shared.beginSave();
+    try {
+      assertEquals(2, shared.collect(Blocks.DIRT.defaultBlockState()));
+      assertEquals(1, shared.collect(Blocks.STONE.defaultBlockState()));
+      shared.save();
+    } finally {
+      shared.endSave();
+    }
+    assertEquals(
+        "0=minecraft:air\n1=minecraft:stone\n2=minecraft:dirt\n",
+        Files.readString(file, StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,92 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.SnbtPrinterTagVisitor;
+import net.minecraft.nbt.TagParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Writes and reads a block entity file with the given number of chest-like block entities. */
+@SuppressWarnings("unused")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 2)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 3)
+public class SnbtBenchmark {
+
+  @Param({"1", "64"})
+  private int count;
+
+  private CompoundTag tag;
+  private String snbt;
+  private ByteBuffer bytes;
+  private final StringBuilder out = new StringBuilder();
+
+  @Setup
+  public void setup() {
+    var list = new ListTag();
+    for (int i = 0; i < count; i++) {
+      var items = new ListTag();
+      for (int slot = 0; slot < 27; slot++) {
+        var item = new CompoundTag();
+        item.putString("id", "minecraft:stone");
+        item.putInt("count", 64);
+        item.putByte("Slot", (byte) slot);
+        items.add(item);
+      }
+      var data = new CompoundTag();
+      data.putString("id", "minecraft:chest");
+      data.put("Items", items);
+      data.putString("CustomName", "\"Chest " + i + "\"");
+
+      var entry = new CompoundTag();
+      entry.putIntArray("pos", new int[] {i & 31, i >> 5, 0});
+      entry.put("data", data);
+      list.add(entry);
+    }
+    tag = new CompoundTag();
+    tag.put("blockEntities", list);
+
+    snbt = SnbtWriter.toString(tag);
+    bytes = ByteBuffer.wrap(snbt.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Benchmark
+  public String benchmarkPrinterWrite() {
+    return new SnbtPrinterTagVisitor("\t", 0, new ArrayList<>()).visit(tag);
+  }
+
+  @Benchmark
+  public StringBuilder benchmarkWriterWrite() {
+    out.setLength(0);
+    SnbtWriter.write(tag, out);
+    return out;
+  }
+
+  @Benchmark
+  public CompoundTag benchmarkTagParserRead() throws CommandSyntaxException {
+    return TagParser.parseCompoundFully(snbt);
+  }
+
+  @Benchmark
+  public CompoundTag benchmarkReaderRead() throws CommandSyntaxException {
+    return SnbtReader.readCompound(bytes);
+  }
+}
@@ -0,0 +1,60 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import io.github.leawind.gitparcel.common.testutils.AbstractMinecraftTest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.TagParser;
+import org.junit.jupiter.api.Test;
+
+class SnbtReaderTest extends AbstractMinecraftTest {
+
+  @Test
+  void testReadsWriterOutput() throws CommandSyntaxException {
+    CompoundTag tag = SnbtWriterTest.sampleTag();
+    assertEquals(tag, SnbtReader.readCompound(SnbtWriter.toString(tag)));
+  }
+
+  @Test
+  void testReadsCompactOutput() throws CommandSyntaxException {
+    CompoundTag tag = SnbtWriterTest.sampleTag();
+    assertEquals(tag, SnbtReader.readCompound(tag.toString()));
+  }
+
+  @Test
+  void testSameAsTagParser() throws CommandSyntaxException {
+    String[] inputs = {
+      "{}",
+      " { a : 1 , b : [ ] } ",
+      "{a: 1b, b: 2s, c: 3L, d: 4.5f, e: 6.0d, f: 7F, g: -8}",
+      "{'single': 'it\\'s', \"double\": \"say \\\"hi\\\"\"}",
+      "{list: [{a: 1}, {}], ints: [I;], bytes: [B; 1B, -2B], longs: [L; 3L]}",
+      "{text: \"é中\"}",
+      // Forms left to TagParser
+      "{a: true, b: unquoted, c: 1.5, d: [1, 2b], e: \"a\\nb\"}",
+    };
+    for (String input : inputs) {
+      assertEquals(TagParser.parseCompoundFully(input), SnbtReader.readCompound(input), input);
+    }
+  }
+
+  @Test
+  void testKeepsPosition() throws CommandSyntaxException {
+    var buffer = ByteBuffer.wrap("xx{a: 1}".getBytes(StandardCharsets.UTF_8)).position(2);
+    var tag = new CompoundTag();
+    tag.putInt("a", 1);
+    assertEquals(tag, SnbtReader.readCompound(buffer));
+    assertEquals(2, buffer.position());
+  }
+
+  @Test
+  void testInvalid() {
+    assertThrows(CommandSyntaxException.class, () -> SnbtReader.readCompound("{a: 1"));
+    assertThrows(CommandSyntaxException.class, () -> SnbtReader.readCompound("{a: 1} b"));
+    assertThrows(CommandSyntaxException.class, () -> SnbtReader.readCompound("[1]"));
+  }
+}
@@ -0,0 +1,112 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.github.leawind.gitparcel.common.testutils.AbstractMinecraftTest;
+import java.util.ArrayList;
+import net.minecraft.nbt.ByteArrayTag;
+import net.minecraft.nbt.ByteTag;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.DoubleTag;
+import net.minecraft.nbt.FloatTag;
+import net.minecraft.nbt.IntArrayTag;
+import net.minecraft.nbt.IntTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.LongArrayTag;
+import net.minecraft.nbt.LongTag;
+import net.minecraft.nbt.ShortTag;
+import net.minecraft.nbt.SnbtPrinterTagVisitor;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import org.junit.jupiter.api.Test;
+
+class SnbtWriterTest extends AbstractMinecraftTest {
+
+  /** A tag with every type and the paths formatted specially by {@link SnbtPrinterTagVisitor} */
+  static CompoundTag sampleTag() {
+    var numbers = new CompoundTag();
+    numbers.put("byte", ByteTag.valueOf((byte) -128));
+    numbers.put("short", ShortTag.valueOf((short) 12345));
+    numbers.put("int", IntTag.valueOf(Integer.MIN_VALUE));
+    numbers.put("long", LongTag.valueOf(Long.MAX_VALUE));
+    numbers.put("float", FloatTag.valueOf(0.1f));
+    numbers.put("float2", FloatTag.valueOf(-1.0E10f));
+    numbers.put("double", DoubleTag.valueOf(-0.0));
+    numbers.put("double2", DoubleTag.valueOf(1.0E-300));
+
+    var arrays = new CompoundTag();
+    arrays.put("bytes", new ByteArrayTag(new byte[] {0, -1, 127}));
+    arrays.put("ints", new IntArrayTag(new int[] {1, -2, 3}));
+    arrays.put("longs", new LongArrayTag(new long[] {Long.MIN_VALUE, 0}));
+    arrays.put("emptyInts", new IntArrayTag(new int[0]));
+
+    var strings = new CompoundTag();
+    strings.putString("plain", "minecraft:chest");
+    strings.putString("quotes", "say \"hi\" it's");
+    strings.putString("backslash", "a\\b");
+    strings.putString("unicode", "é中");
+    strings.putString("newline", "a\nb");
+    strings.putString("needs quotes", "");
+    strings.putString("", "empty key");
+
+    var list = new ListTag();
+    list.add(numbers.copy());
+    list.add(new CompoundTag());
+    var nested = new ListTag();
+    nested.add(StringTag.valueOf("x"));
+    nested.add(StringTag.valueOf("y"));
+
+    var size = new ListTag();
+    size.add(IntTag.valueOf(1));
+    size.add(IntTag.valueOf(2));
+
+    var block = new CompoundTag();
+    block.put("nbt", strings.copy());
+    block.putInt("state", 0);
+    block.put("pos", size.copy());
+    var data = new ListTag();
+    data.add(block);
+
+    var tag = new CompoundTag();
+    tag.put("numbers", numbers);
+    tag.put("arrays", arrays);
+    tag.put("strings", strings);
+    tag.put("list", list);
+    tag.put("nested", nested);
+    tag.put("emptyList", new ListTag());
+    tag.put("emptyCompound", new CompoundTag());
+    tag.put("size", size);
+    tag.put("data", data);
+    tag.putInt("DataVersion", 4000);
+    return tag;
+  }
+
+  private static String expected(Tag tag) {
+    return new SnbtPrinterTagVisitor("\t", 0, new ArrayList<>()).visit(tag);
+  }
+
+  @Test
+  void testSameAsPrinter() {
+    var tag = sampleTag();
+    assertEquals(expected(tag), SnbtWriter.toString(tag));
+  }
+
+  @Test
+  void testNested() {
+    var tag = new CompoundTag();
+    tag.put("blockEntities", sampleTag().get("list"));
+    var outer = new CompoundTag();
+    outer.put("inner", tag);
+    outer.put("data", sampleTag());
+    assertEquals(expected(outer), SnbtWriter.toString(outer));
+  }
+
+  @Test
+  void testAppends() {
+    var out = new StringBuilder("prefix");
+    var tag = new CompoundTag();
+    tag.putInt("a", 1);
+    SnbtWriter.write(tag, out);
+    assertEquals("prefix" + expected(tag), out.toString());
+  }
+}
@@ -0,0 +1,59 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32.ParcellaD32Format.BlockEntities;
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32.ParcellaD32Format.BlockEntityEntry;
+import io.github.leawind.gitparcel.common.testutils.AbstractMinecraftTest;
+import java.util.List;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.IntTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtOps;
+import org.junit.jupiter.api.Test;
+
+class BlockEntitiesTest extends AbstractMinecraftTest {
+  private static BlockEntities sample() {
+    var chest = new CompoundTag();
+    chest.putString("id", "minecraft:chest");
+    var sign = new CompoundTag();
+    sign.putString("id", "minecraft:sign");
+    sign.putByte("is_waxed", (byte) 1);
+    return new BlockEntities(
+        List.of(
+            new BlockEntityEntry(new BlockPos(1, -2, 3), chest),
+            new BlockEntityEntry(new BlockPos(0, 31, 0), sign)));
+  }
+
+  @Test
+  void testToTagSameAsCodec() {
+    var blockEntities = sample();
+    assertEquals(
+        BlockEntities.CODEC.encodeStart(NbtOps.INSTANCE, blockEntities).getOrThrow(),
+        blockEntities.toTag());
+  }
+
+  @Test
+  void testFromTag() {
+    var blockEntities = sample();
+    assertEquals(blockEntities, BlockEntities.fromTag(blockEntities.toTag()));
+  }
+
+  @Test
+  void testFromTagOtherForms() {
+    var blockEntities = sample();
+    var tag = blockEntities.toTag();
+
+    // A list of ints is read by the codec
+    var pos = new ListTag();
+    pos.add(IntTag.valueOf(1));
+    pos.add(IntTag.valueOf(-2));
+    pos.add(IntTag.valueOf(3));
+    tag.getListOrEmpty("blockEntities").getCompoundOrEmpty(0).put("pos", pos);
+    assertEquals(blockEntities, BlockEntities.fromTag(tag));
+
+    assertNull(BlockEntities.fromTag(new CompoundTag()));
+  }
+}
@@ -1,22 +1,41 @@
 package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32;
 
+import static io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32.ParcellaD32Format.PACKED_ENTITIES_KEY;
 import static org.junit.jupiter.api.Assertions.*;
 
+import io.github.leawind.gitparcel.common.api.parcel.ParcelFormatConfig;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.BlockPalette;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.Subparcel;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.SubparcelFormat;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32.ParcellaD32Format;
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32.ParcellaD32Loader;
 import io.github.leawind.gitparcel.common.testutils.AbstractMinecraftTest;
+import io.github.leawind.gitparcel.common.utils.GrowableByteBuffer;
+import io.github.leawind.gitparcel.common.utils.algorithms.PackedRuns;
+import io.github.leawind.gitparcel.common.utils.algorithms.VolumetricRLE;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.DoubleTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.resources.Identifier;
 import net.minecraft.util.ProblemReporter;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,22 +64,26 @@ public class ParcellaTest extends AbstractMinecraftTest {
   void detectSubparcelFormat() {
     byte[] rle3dPaletteData = "000~000\n1\n".getBytes();
     Assertions.assertEquals(
-        SubparcelFormat.RLE3D, ParcellaD32Loader.detectSubparcelFormat(rle3dPaletteData));
+        SubparcelFormat.RLE3D,
+        ParcellaD32Loader.detectSubparcelFormat(ByteBuffer.wrap(rle3dPaletteData)));
 
     byte[] rle3dInlineData = "000=minecraft:stone\n1\n".getBytes();
     Assertions.assertEquals(
-        SubparcelFormat.RLE3D, ParcellaD32Loader.detectSubparcelFormat(rle3dInlineData));
+        SubparcelFormat.RLE3D,
+        ParcellaD32Loader.detectSubparcelFormat(ByteBuffer.wrap(rle3dInlineData)));
 
     byte[] flatData = "1\n2\n3\n4\n5\n6\n7\n8\n".getBytes();
-    assertEquals(SubparcelFormat.FLAT, ParcellaD32Loader.detectSubparcelFormat(flatData));
+    assertEquals(
+        SubparcelFormat.FLAT, ParcellaD32Loader.detectSubparcelFormat(ByteBuffer.wrap(flatData)));
 
     byte[] shortData = "123".getBytes();
-    assertEquals(SubparcelFormat.FLAT, ParcellaD32Loader.detectSubparcelFormat(shortData));
+    assertEquals(
+        SubparcelFormat.FLAT, ParcellaD32Loader.detectSubparcelFormat(ByteBuffer.wrap(shortData)));
   }
 
   @Test
   void loadSubparcelRLE3DWithPalette() {
-    byte[] data = "000~0\n001~1\n".getBytes();
+    ByteBuffer data = ByteBuffer.wrap("000~0\n001~1\n".getBytes());
 
     List<int[]> positions = new ArrayList<>();
     List<BlockState> blockStates = new ArrayList<>();
@@ -83,7 +106,7 @@ public class ParcellaTest extends AbstractMinecraftTest {
 
   @Test
   void loadSubparcelRLE3DInline() {
-    byte[] data = "000=minecraft:air\n001=minecraft:stone\n".getBytes();
+    ByteBuffer data = ByteBuffer.wrap("000=minecraft:air\n001=minecraft:stone\n".getBytes());
 
     var noPaletteConfig = new ParcellaD32Format.Config();
     noPaletteConfig.usePalette.set(false);
@@ -112,7 +135,7 @@ public class ParcellaTest extends AbstractMinecraftTest {
 
   @Test
   void loadSubparcelRLE3DRange() {
-    byte[] data = "000111~3\n".getBytes();
+    ByteBuffer data = ByteBuffer.wrap("000111~3\n".getBytes());
 
     List<BlockState> blockStates = new ArrayList<>();
     new ParcellaD32Loader()
@@ -127,7 +150,7 @@ public class ParcellaTest extends AbstractMinecraftTest {
 
   @Test
   void loadSubparcelFLAT() {
-    byte[] data = "0\n1\n2\n3\n0\n1\n2\n3\n".getBytes();
+    ByteBuffer data = ByteBuffer.wrap("0\n1\n2\n3\n0\n1\n2\n3\n".getBytes());
 
     List<BlockState> blockStates = new ArrayList<>();
     new ParcellaD32Loader()
@@ -151,7 +174,7 @@ public class ParcellaTest extends AbstractMinecraftTest {
 
   @Test
   void loadSubparcelRLE3DPaletteIdWithoutPalette() {
-    byte[] data = "000~0\n".getBytes();
+    ByteBuffer data = ByteBuffer.wrap("000~0\n".getBytes());
 
     var noPaletteConfig = new ParcellaD32Format.Config();
     noPaletteConfig.usePalette.set(false);
@@ -172,7 +195,7 @@ public class ParcellaTest extends AbstractMinecraftTest {
 
   @Test
   void loadSubparcelRLE3DInvalid() {
-    byte[] data = "000~000\ninvalid\n".getBytes();
+    ByteBuffer data = ByteBuffer.wrap("000~000\ninvalid\n".getBytes());
 
     List<BlockState> blockStates = new ArrayList<>();
     new ParcellaD32Loader()
@@ -183,7 +206,7 @@ public class ParcellaTest extends AbstractMinecraftTest {
 
   @Test
   void loadSubparcelFLATInvalid() {
-    byte[] data = "0\ninvalid\n2\n".getBytes();
+    ByteBuffer data = ByteBuffer.wrap("0\ninvalid\n2\n".getBytes());
 
     List<BlockState> blockStates = new ArrayList<>();
     new ParcellaD32Loader()
@@ -195,4 +218,286 @@ public class ParcellaTest extends AbstractMinecraftTest {
             DUMMY_REPORTER);
     // Should not crash
   }
+
+  @Test
+  void loadSubparcelRLE3DFromDirectBufferSlice() {
+    byte[] bytes = "junk000111~3\n".getBytes();
+    ByteBuffer data = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip().position(4);
+
+    List<BlockState> blockStates = new ArrayList<>();
+    new ParcellaD32Loader()
+        .loadSubparcelBlockStatesRLE3D(
+            paletteCtx, data, (x, y, z, blockState) -> blockStates.add(blockState), DUMMY_REPORTER);
+
+    assertEquals(8, blockStates.size());
+    assertEquals(4, data.position());
+  }
+
+  @Test
+  void readBlockStateFile(@TempDir Path dir) throws IOException {
+    byte[] small = "000~0\n".getBytes();
+    byte[] large = new byte[ParcellaD32Loader.MAP_SUBPARCEL_FILE_THRESHOLD * 2];
+    Arrays.fill(large, (byte) '0');
+    Path smallFile = Files.write(dir.resolve("small.txt"), small);
+    Path largeFile = Files.write(dir.resolve("large.txt"), large);
+
+    var loader = new ParcellaD32Loader();
+    for (boolean map : new boolean[] {false, true}) {
+      paletteCtx.config.mapSubparcelFiles.set(map);
+      assertEquals(ByteBuffer.wrap(small), loader.readBlockStateFile(paletteCtx, smallFile));
+      assertEquals(ByteBuffer.wrap(large), loader.readBlockStateFile(paletteCtx, largeFile));
+    }
+  }
+
+  @Test
+  void detectSubparcelFormatBinary() {
+    byte[] binaryData = {(byte) 0x89, 'P', 'C', 'B', 1, 0, 0};
+    assertEquals(
+        SubparcelFormat.BINARY,
+        ParcellaD32Loader.detectSubparcelFormat(ByteBuffer.wrap(binaryData)));
+  }
+
+  private static ParcellaD32Saver.EncodedSubparcel createEncodedSubparcel(boolean usePalette) {
+    return createEncodedSubparcel(usePalette, Path.of(""), Path.of(""));
+  }
+
+  private static ParcellaD32Saver.EncodedSubparcel createEncodedSubparcel(
+      boolean usePalette, Path blockStateFile, Path blockEntityFile) {
+    var encoded =
+        new ParcellaD32Saver.EncodedSubparcel(TEST_SUBPARCEL, 0, blockStateFile, blockEntityFile);
+    encoded.localStates.add(Blocks.STONE.defaultBlockState());
+    encoded.localStates.add(Blocks.COBBLESTONE.defaultBlockState());
+    encoded.localStates.add(Blocks.DIRT.defaultBlockState());
+    encoded.runs =
+        PackedRuns.of(
+            List.of(
+                new VolumetricRLE.Run(0, 0, 0, 0, 1, 0, 1),
+                new VolumetricRLE.Run(1, 0, 1, 0, 0, 1, 1),
+                new VolumetricRLE.Run(2, 1, 1, 0, 1, 1, 0),
+                new VolumetricRLE.Run(0, 1, 1, 1, 1, 1, 1)));
+    if (usePalette) {
+      encoded.paletteIds = new int[] {1, 3, 2};
+    }
+    return encoded;
+  }
+
+  /**
+   * @return Loaded blocks as {@code "x,y,z=state"}
+   */
+  private static List<String> loadBlocks(
+      ParcellaD32Loader.Context ctx, byte[] data, boolean binary) {
+    List<String> blocks = new ArrayList<>();
+    ParcellaD32Loader.BlockStateLoader loader =
+        (x, y, z, blockState) -> blocks.add(x + "," + y + "," + z + "=" + blockState);
+    var buffer = ByteBuffer.wrap(data);
+    if (binary) {
+      new ParcellaD32Loader().loadSubparcelBlockStatesBINARY(ctx, buffer, loader, DUMMY_REPORTER);
+    } else {
+      new ParcellaD32Loader().loadSubparcelBlockStatesRLE3D(ctx, buffer, loader, DUMMY_REPORTER);
+    }
+    return blocks;
+  }
+
+  private static byte[] encodeRLE3D(
+      ParcellaD32Saver saver, ParcellaD32Saver.EncodedSubparcel encoded) {
+    var out = new GrowableByteBuffer(16);
+    saver.encodeSubparcelRLE3D(encoded, out);
+    return out.toByteArray();
+  }
+
+  private static byte[] encodeBINARY(
+      ParcellaD32Saver saver, ParcellaD32Saver.EncodedSubparcel encoded, boolean checksum) {
+    var out = new GrowableByteBuffer(16);
+    saver.encodeSubparcelBINARY(encoded, checksum, out);
+    return out.toByteArray();
+  }
+
+  @Test
+  void binaryRoundTripWithPalette() {
+    var saver = new ParcellaD32Saver();
+    var encoded = createEncodedSubparcel(true);
+
+    byte[] text = encodeRLE3D(saver, encoded);
+    List<String> expected = loadBlocks(paletteCtx, text, false);
+    assertEquals(8, expected.size());
+
+    for (boolean checksum : new boolean[] {false, true}) {
+      byte[] binary = encodeBINARY(saver, encoded, checksum);
+      assertEquals(
+          SubparcelFormat.BINARY, ParcellaD32Loader.detectSubparcelFormat(ByteBuffer.wrap(binary)));
+      assertEquals(expected, loadBlocks(paletteCtx, binary, true));
+      assertTrue(binary.length < text.length);
+    }
+  }
+
+  @Test
+  void binaryRoundTripInline() {
+    var noPaletteConfig = new ParcellaD32Format.Config();
+    noPaletteConfig.usePalette.set(false);
+    var noPaletteCtx =
+        new ParcellaD32Loader.Context(
+            null, null, null, null, Path.of(""), false, false, 0, noPaletteConfig);
+
+    var saver = new ParcellaD32Saver();
+    var encoded = createEncodedSubparcel(false);
+
+    byte[] text = encodeRLE3D(saver, encoded);
+    List<String> expected = loadBlocks(noPaletteCtx, text, false);
+    assertEquals(8, expected.size());
+
+    byte[] binary = encodeBINARY(saver, encoded, true);
+    assertEquals(expected, loadBlocks(noPaletteCtx, binary, true));
+  }
+
+  @Test
+  void binaryChecksumMismatch() {
+    byte[] binary = encodeBINARY(new ParcellaD32Saver(), createEncodedSubparcel(true), true);
+    binary[binary.length - 6] ^= 1;
+
+    assertTrue(loadBlocks(paletteCtx, binary, true).isEmpty());
+  }
+
+  @Test
+  void binaryTruncated() {
+    byte[] binary = encodeBINARY(new ParcellaD32Saver(), createEncodedSubparcel(true), false);
+    byte[] truncated = Arrays.copyOf(binary, binary.length - 2);
+
+    // Should not crash
+    loadBlocks(paletteCtx, truncated, true);
+  }
+
+  @Test
+  void skipUnchangedSubparcel(@TempDir Path dir) throws IOException {
+    var saver = new ParcellaD32Saver();
+    var ctx =
+        new ParcellaD32Saver.Context(
+            null, null, null, null, dir, true, new ParcellaD32Format.Config());
+    ctx.previousHashes = new SubparcelHashIndex();
+    Path blockStateFile = dir.resolve("0.txt");
+    Path blockEntityFile = dir.resolve("0.be.snbt");
+
+    var first = createEncodedSubparcel(true, blockStateFile, blockEntityFile);
+    saver.writeSubparcel(ctx, first);
+    byte[] written = Files.readAllBytes(blockStateFile);
+    var entry = Objects.requireNonNull(first.hashEntry);
+    ctx.previousHashes.put(0, entry);
+
+    // Same content, files untouched
+    var same = createEncodedSubparcel(true, blockStateFile, blockEntityFile);
+    saver.writeSubparcel(ctx, same);
+    assertSame(entry, same.hashEntry);
+
+    // Same content, file modified outside the saver
+    Files.writeString(blockStateFile, "modified");
+    var restored = createEncodedSubparcel(true, blockStateFile, blockEntityFile);
+    saver.writeSubparcel(ctx, restored);
+    assertArrayEquals(written, Files.readAllBytes(blockStateFile));
+    assertEquals(entry.contentHash(), Objects.requireNonNull(restored.hashEntry).contentHash());
+    ctx.previousHashes.put(0, restored.hashEntry);
+
+    // Changed content
+    var changed = createEncodedSubparcel(true, blockStateFile, blockEntityFile);
+    changed.paletteIds = new int[] {1, 3, 4};
+    saver.writeSubparcel(ctx, changed);
+    assertNotEquals(entry.contentHash(), Objects.requireNonNull(changed.hashEntry).contentHash());
+    assertFalse(Arrays.equals(written, Files.readAllBytes(blockStateFile)));
+  }
+
+  @Test
+  void skipUnchangedSubparcelBlockEntityChanged(@TempDir Path dir) throws IOException {
+    var saver = new ParcellaD32Saver();
+    var ctx =
+        new ParcellaD32Saver.Context(
+            null, null, null, null, dir, true, new ParcellaD32Format.Config());
+    ctx.previousHashes = new SubparcelHashIndex();
+    Path blockStateFile = dir.resolve("0.txt");
+    Path blockEntityFile = dir.resolve("0.be.snbt");
+
+    // Same String.hashCode, so the tags have the same hashCode too
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+
+    var first = createEncodedSubparcel(true, blockStateFile, blockEntityFile);
+    first.blockEntities.add(createSignEntry("Aa"));
+    saver.writeSubparcel(ctx, first);
+    ctx.previousHashes.put(0, Objects.requireNonNull(first.hashEntry));
+    String written = Files.readString(blockEntityFile);
+
+    var changed = createEncodedSubparcel(true, blockStateFile, blockEntityFile);
+    changed.blockEntities.add(createSignEntry("BB"));
+    saver.writeSubparcel(ctx, changed);
+    assertNotEquals(
+        first.hashEntry.contentHash(), Objects.requireNonNull(changed.hashEntry).contentHash());
+    assertNotEquals(written, Files.readString(blockEntityFile));
+    assertTrue(Files.readString(blockEntityFile).contains("BB"));
+  }
+
+  @Test
+  void subparcelHashesFileInCacheDir(@TempDir Path dir) {
+    var config = new ParcellaD32Format.Config();
+    Path dataDir = dir.resolve("data");
+    var ctx = new ParcellaD32Saver.Context(null, null, null, null, dataDir, true, config);
+    assertNull(ctx.subparcelHashesFile);
+
+    Path cacheDir = dir.resolve("cache");
+    config.setEnvironment(new ParcelFormatConfig.Environment(null, cacheDir));
+    ctx = new ParcellaD32Saver.Context(null, null, null, null, dataDir, true, config);
+    assertEquals(
+        cacheDir.resolve(ParcellaD32Format.SUBPARCEL_HASHES_FILE_NAME), ctx.subparcelHashesFile);
+  }
+
+  private static ParcellaD32Format.BlockEntityEntry createSignEntry(String text) {
+    var data = new CompoundTag();
+    data.putString("id", "minecraft:sign");
+    data.putString("text", text);
+    return new ParcellaD32Format.BlockEntityEntry(new BlockPos(1, 0, 1), data);
+  }
+
+  private static CompoundTag createEntityTag(double y, int uuid) {
+    var pos = new ListTag();
+    pos.add(DoubleTag.valueOf(0.5));
+    pos.add(DoubleTag.valueOf(y));
+    pos.add(DoubleTag.valueOf(0.5));
+    var nbt = new CompoundTag();
+    nbt.putIntArray("UUID", new int[] {0, 0, 0, uuid});
+    var tag = new CompoundTag();
+    tag.put("pos", pos);
+    tag.put("nbt", nbt);
+    return tag;
+  }
+
+  @Test
+  void writePackedEntities(@TempDir Path dir) throws IOException {
+    var saver = new ParcellaD32Saver();
+    var config = new ParcellaD32Format.Config();
+    config.packEntities.set(true);
+    var ctx = new ParcellaD32Saver.Context(null, null, null, null, dir, false, config);
+
+    // Left from a save with one file per entity
+    Path legacyFile = ctx.entitiesDir.resolve("minecraft/pig/0.snbt");
+    Files.createDirectories(legacyFile.getParent());
+    Files.writeString(legacyFile, "{}");
+
+    var a = createEntityTag(2, 1);
+    var b = createEntityTag(1, 2);
+    var c = createEntityTag(1, 1);
+    Map<Identifier, List<CompoundTag>> entities = new LinkedHashMap<>();
+    entities.put(Identifier.fromNamespaceAndPath("minecraft", "item_frame"), List.of(a, b, c));
+    saver.writeEntities(ctx, entities);
+
+    Path file = ctx.entitiesDir.resolve("minecraft/item_frame.snbt");
+    assertFalse(Files.exists(legacyFile.getParent()));
+    var list =
+        config.entityDataFormat.get().read(file).unwrap().getListOrEmpty(PACKED_ENTITIES_KEY);
+    assertEquals(List.of(c, b, a), List.copyOf(list));
+
+    // Unchanged content is not written again
+    var time = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(file, time);
+    entities.put(Identifier.fromNamespaceAndPath("minecraft", "item_frame"), List.of(b, c, a));
+    saver.writeEntities(ctx, entities);
+    assertEquals(time, Files.getLastModifiedTime(file));
+
+    saver.writeEntities(ctx, Map.of());
+    assertFalse(Files.exists(file));
+  }
 }
@@ -0,0 +1,90 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils.RadixTreePathGenerator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SubparcelFileIndexTest {
+  private static final long[] INDICES = {
+    0, 0x01, 0xFF, 0x0100, 0x1234, 0x31240F, 0x0102030405060708L,
+  };
+
+  private static Path createFile(Path dir, long index, String suffix) throws IOException {
+    Path file = RadixTreePathGenerator.toPath(dir, index, suffix);
+    Files.createDirectories(file.getParent());
+    return Files.writeString(file, "");
+  }
+
+  @Test
+  void testScan(@TempDir Path dir) throws IOException {
+    for (long index : INDICES) {
+      createFile(dir, index, ParcellaD32Format.SUBPARCEL_BLOCK_STATE_SUFFIX);
+    }
+    Path blockEntityFile = createFile(dir, 0x1234, ParcellaD32Format.SUBPARCEL_BLOCK_ENTITY_SUFFIX);
+
+    var files = SubparcelFileIndex.scan(dir);
+
+    assertEquals(INDICES.length, files.blockStateFileCount());
+    for (long index : INDICES) {
+      assertEquals(
+          RadixTreePathGenerator.toPath(dir, index, ParcellaD32Format.SUBPARCEL_BLOCK_STATE_SUFFIX),
+          files.getBlockStateFile(index));
+    }
+    assertNull(files.getBlockStateFile(2));
+
+    assertEquals(1, files.blockEntityFileCount());
+    assertEquals(blockEntityFile, files.getBlockEntityFile(0x1234));
+    assertNull(files.getBlockEntityFile(0));
+
+    assertTrue(files.hasDirectory(dir));
+    assertTrue(files.hasDirectory(blockEntityFile.getParent()));
+    assertFalse(files.hasDirectory(dir.resolve("AB")));
+  }
+
+  @Test
+  void testScanBinary(@TempDir Path dir) throws IOException {
+    Path binaryFile =
+        createFile(dir, 0x0100, ParcellaD32Format.SUBPARCEL_BINARY_BLOCK_STATE_SUFFIX);
+    Path textFile = createFile(dir, 0x01, ParcellaD32Format.SUBPARCEL_BLOCK_STATE_SUFFIX);
+
+    var files = SubparcelFileIndex.scan(dir);
+
+    assertEquals(2, files.blockStateFileCount());
+    assertEquals(binaryFile, files.getBlockStateFile(0x0100));
+    assertEquals(textFile, files.getBlockStateFile(0x01));
+  }
+
+  @Test
+  void testIgnoresOtherEntries(@TempDir Path dir) throws IOException {
+    Files.writeString(dir.resolve("ab.txt"), "");
+    Files.writeString(dir.resolve("0G.txt"), "");
+    Files.writeString(dir.resolve("012.txt"), "");
+    Files.writeString(dir.resolve("01.dat"), "");
+    Files.writeString(dir.resolve("02"), "");
+    // Not generated for any index, would shadow 05.txt
+    Files.createDirectories(dir.resolve("05"));
+    Files.writeString(dir.resolve("05").resolve("00.txt"), "");
+
+    var files = SubparcelFileIndex.scan(dir);
+
+    assertEquals(0, files.blockStateFileCount());
+    assertEquals(0, files.blockEntityFileCount());
+    assertTrue(files.hasDirectory(dir.resolve("05")));
+  }
+
+  @Test
+  void testScanMissing(@TempDir Path dir) throws IOException {
+    var files = SubparcelFileIndex.scan(dir.resolve("missing"));
+
+    assertEquals(0, files.blockStateFileCount());
+    assertFalse(files.hasDirectory(dir.resolve("missing")));
+  }
+}
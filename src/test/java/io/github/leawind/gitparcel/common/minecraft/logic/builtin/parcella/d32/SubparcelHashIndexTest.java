@@ -0,0 +1,67 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SubparcelHashIndexTest {
+  @Test
+  void testSaveLoad(@TempDir Path dir) throws IOException {
+    var index = new SubparcelHashIndex();
+    index.put(0, new SubparcelHashIndex.Entry(1, 2));
+    index.put(-1, new SubparcelHashIndex.Entry(Long.MIN_VALUE, -1));
+    index.put(0x1234, new SubparcelHashIndex.Entry(0xABCDEF, 0));
+
+    Path file = dir.resolve("hashes.txt");
+    index.save(file);
+    var loaded = SubparcelHashIndex.load(file);
+
+    assertEquals(3, loaded.size());
+    assertEquals(new SubparcelHashIndex.Entry(1, 2), loaded.get(0));
+    assertEquals(new SubparcelHashIndex.Entry(Long.MIN_VALUE, -1), loaded.get(-1));
+    assertEquals(new SubparcelHashIndex.Entry(0xABCDEF, 0), loaded.get(0x1234));
+    assertNull(loaded.get(1));
+  }
+
+  @Test
+  void testLoadInvalid(@TempDir Path dir) throws IOException {
+    assertEquals(0, SubparcelHashIndex.load(dir.resolve("missing.txt")).size());
+
+    Path file = Files.writeString(dir.resolve("hashes.txt"), "0=1,2\ninvalid\n");
+    assertEquals(0, SubparcelHashIndex.load(file).size());
+  }
+
+  @Test
+  void testFileStamp(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("file");
+    long missing = SubparcelHashIndex.getFileStamp(file);
+
+    Files.writeString(file, "a");
+    long created = SubparcelHashIndex.getFileStamp(file);
+    assertNotEquals(missing, created);
+    assertEquals(created, SubparcelHashIndex.getFileStamp(file));
+
+    Files.writeString(file, "ab");
+    assertNotEquals(created, SubparcelHashIndex.getFileStamp(file));
+  }
+
+  @Test
+  void testHashBytes() {
+    var aa = ByteBuffer.wrap("{text:\"Aa\"}".getBytes(StandardCharsets.UTF_8));
+    var bb = ByteBuffer.wrap("{text:\"BB\"}".getBytes(StandardCharsets.UTF_8));
+    long hash = SubparcelHashIndex.hashBytes(0, aa);
+    assertEquals(hash, SubparcelHashIndex.hashBytes(0, aa.duplicate()));
+    assertNotEquals(hash, SubparcelHashIndex.hashBytes(0, bb));
+    assertNotEquals(hash, SubparcelHashIndex.hashBytes(1, aa));
+    // Not consumed
+    assertEquals(11, aa.remaining());
+  }
+}
@@ -0,0 +1,146 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.d32.SubparcelPack.Kind;
+import io.github.leawind.gitparcel.common.utils.GrowableByteBuffer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SubparcelPackTest {
+  private static ByteBuffer bytes(String s) {
+    return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String read(SubparcelPack pack, Kind kind, long index) throws IOException {
+    var entry = Objects.requireNonNull(pack.get(kind, index));
+    return StandardCharsets.UTF_8.decode(pack.read(entry, new GrowableByteBuffer(4))).toString();
+  }
+
+  @Test
+  void testWriteRead(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("subparcels.pack");
+
+    var writer = SubparcelPack.Writer.open(file);
+    writer.put(Kind.BLOCK_STATES, 0, bytes("states 0"));
+    writer.put(Kind.BLOCK_STATES, 0x1234, bytes("states 1234"));
+    writer.put(Kind.BLOCK_ENTITIES, 0x1234, bytes("entities 1234"));
+    writer.finish();
+
+    try (var pack = SubparcelPack.open(file)) {
+      assertEquals(2, pack.size(Kind.BLOCK_STATES));
+      assertEquals(1, pack.size(Kind.BLOCK_ENTITIES));
+      assertEquals("states 0", read(pack, Kind.BLOCK_STATES, 0));
+      assertEquals("states 1234", read(pack, Kind.BLOCK_STATES, 0x1234));
+      assertEquals("entities 1234", read(pack, Kind.BLOCK_ENTITIES, 0x1234));
+      assertNull(pack.get(Kind.BLOCK_ENTITIES, 0));
+    }
+  }
+
+  @Test
+  void testKeepReplaceDrop(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("subparcels.pack");
+
+    var writer = SubparcelPack.Writer.open(file);
+    writer.put(Kind.BLOCK_STATES, 1, bytes("a"));
+    writer.put(Kind.BLOCK_ENTITIES, 1, bytes("a entities"));
+    writer.put(Kind.BLOCK_STATES, 2, bytes("b"));
+    writer.put(Kind.BLOCK_STATES, 3, bytes("c"));
+    writer.finish();
+
+    writer = SubparcelPack.Writer.open(file);
+    writer.keep(1);
+    writer.put(Kind.BLOCK_STATES, 2, bytes("b2"));
+    writer.finish();
+
+    try (var pack = SubparcelPack.open(file)) {
+      assertEquals("a", read(pack, Kind.BLOCK_STATES, 1));
+      assertEquals("a entities", read(pack, Kind.BLOCK_ENTITIES, 1));
+      assertEquals("b2", read(pack, Kind.BLOCK_STATES, 2));
+      assertNull(pack.get(Kind.BLOCK_STATES, 3));
+    }
+  }
+
+  @Test
+  void testUnfinishedSaveKeepsPreviousTable(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("subparcels.pack");
+
+    var writer = SubparcelPack.Writer.open(file);
+    writer.put(Kind.BLOCK_STATES, 1, bytes("a"));
+    writer.finish();
+
+    try (var unfinished = SubparcelPack.Writer.open(file)) {
+      unfinished.put(Kind.BLOCK_STATES, 1, bytes("changed"));
+    }
+
+    try (var pack = SubparcelPack.open(file)) {
+      assertEquals("a", read(pack, Kind.BLOCK_STATES, 1));
+    }
+  }
+
+  @Test
+  void testCompact(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("subparcels.pack");
+    byte[] large = new byte[512 * 1024];
+
+    for (int i = 0; i < 8; i++) {
+      large[0] = (byte) i;
+      var writer = SubparcelPack.Writer.open(file);
+      writer.put(Kind.BLOCK_STATES, 1, ByteBuffer.wrap(large));
+      writer.put(Kind.BLOCK_STATES, 2, bytes("small " + i));
+      writer.finish();
+    }
+
+    // Each save replaces everything, so at most one save worth of garbage is kept
+    assertTrue(Files.size(file) < 3 * large.length);
+    try (var pack = SubparcelPack.open(file)) {
+      var entry = Objects.requireNonNull(pack.get(Kind.BLOCK_STATES, 1));
+      var data = pack.read(entry, new GrowableByteBuffer(4));
+      assertEquals(large.length, data.remaining());
+      assertEquals(7, data.get(0));
+      assertEquals("small 7", read(pack, Kind.BLOCK_STATES, 2));
+    }
+  }
+
+  @Test
+  void testChecksum(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("subparcels.pack");
+
+    var writer = SubparcelPack.Writer.open(file);
+    writer.put(Kind.BLOCK_STATES, 1, bytes("content"));
+    writer.finish();
+
+    try (var pack = SubparcelPack.open(file)) {
+      var entry = Objects.requireNonNull(pack.get(Kind.BLOCK_STATES, 1));
+      try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        channel.write(bytes("X"), entry.offset());
+      }
+      assertThrows(IOException.class, () -> pack.read(entry, new GrowableByteBuffer(4)));
+    }
+  }
+
+  @Test
+  void testInvalid(@TempDir Path dir) throws Exception {
+    Path file = Files.writeString(dir.resolve("subparcels.pack"), "not a pack");
+    assertThrows(SubparcelPack.InvalidPackException.class, () -> SubparcelPack.open(file));
+
+    // Writing replaces an invalid pack
+    var writer = SubparcelPack.Writer.open(file);
+    writer.put(Kind.BLOCK_STATES, 1, bytes("a"));
+    writer.finish();
+    try (var pack = SubparcelPack.open(file)) {
+      assertEquals("a", read(pack, Kind.BLOCK_STATES, 1));
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Encodes and decodes every coordinate of a grid centered at the origin. */
+@SuppressWarnings("unused")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 2)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 3)
+public class ZOrder3DBenchmark {
+
+  @Param({"8", "64"})
+  private int size;
+
+  private int min;
+  private long[] indices;
+  private int[] coords;
+
+  @Setup
+  public void setup() {
+    min = -size / 2;
+    indices = new long[size * size * size];
+    coords = new int[indices.length * 3];
+    ZOrder3D.coordToIndexSigned(min, min, min, size, size, size, indices);
+  }
+
+  @Benchmark
+  public void benchmarkEncodeEach(Blackhole bh) {
+    for (int x = min; x < min + size; x++) {
+      for (int y = min; y < min + size; y++) {
+        for (int z = min; z < min + size; z++) {
+          bh.consume(ZOrder3D.coordToIndexSigned(x, y, z));
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public long[] benchmarkEncodeGrid() {
+    ZOrder3D.coordToIndexSigned(min, min, min, size, size, size, indices);
+    return indices;
+  }
+
+  @Benchmark
+  public void benchmarkDecodeEach(Blackhole bh) {
+    int[] coord = new int[3];
+    for (long index : indices) {
+      ZOrder3D.indexToCoordSigned(index, coord);
+      bh.consume(coord[0] + coord[1] + coord[2]);
+    }
+  }
+
+  @Benchmark
+  public int[] benchmarkDecodeBulk() {
+    ZOrder3D.indexToCoordSigned(indices, coords);
+    return coords;
+  }
+}
@@ -1,10 +1,14 @@
 package io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 
 import io.github.leawind.gitparcel.common.minecraft.logic.builtin.parcella.utils.ZOrder3D;
@@ -83,4 +87,52 @@ class ZOrder3DTest {
       }
     }
   }
+
+  /** Tests that decoding into an array gives the same coordinates as decoding to a Vector3i. */
+  @Test
+  void testSignedDecodeIntoArray() {
+    var random = new Random(12138);
+    int[] out = new int[3];
+    for (int i = 0; i < 100000; i++) {
+      int bound = 1 << random.nextInt(21);
+      int x = random.nextInt(-bound, bound);
+      int y = random.nextInt(-bound, bound);
+      int z = random.nextInt(-bound, bound);
+
+      long index = ZOrder3D.coordToIndexSigned(x, y, z);
+      ZOrder3D.indexToCoordSigned(index, out);
+      assertArrayEquals(new int[] {x, y, z}, out);
+      assertEquals(new Vector3i(x, y, z), ZOrder3D.indexToCoordSigned(index));
+    }
+  }
+
+  /** Tests that returned coordinates are not shared between calls. */
+  @Test
+  void testSignedDecodeReturnsNewInstance() {
+    Vector3i coord = ZOrder3D.indexToCoordSigned(1);
+    coord.add(100, 100, 100);
+    assertEquals(ZOrder3D.indexToCoordSigned(1).add(100, 100, 100), coord);
+    assertNotSame(ZOrder3D.indexToCoordSigned(1), ZOrder3D.indexToCoordSigned(1));
+  }
+
+  /** Tests that grid encoding matches encoding each coordinate, in X, Y, Z order. */
+  @Test
+  void testSignedGridEncode() {
+    int sizeX = 5, sizeY = 3, sizeZ = 4;
+    long[] indices = new long[sizeX * sizeY * sizeZ];
+    ZOrder3D.coordToIndexSigned(-2, -1, 7, sizeX, sizeY, sizeZ, indices);
+
+    int i = 0;
+    for (int x = -2; x < -2 + sizeX; x++) {
+      for (int y = -1; y < -1 + sizeY; y++) {
+        for (int z = 7; z < 7 + sizeZ; z++) {
+          assertEquals(ZOrder3D.coordToIndexSigned(x, y, z), indices[i++]);
+        }
+      }
+    }
+
+    int[] coords = new int[indices.length * 3];
+    ZOrder3D.indexToCoordSigned(indices, coords);
+    assertArrayEquals(new int[] {-2, -1, 7, -2, -1, 8}, Arrays.copyOf(coords, 6));
+  }
 }
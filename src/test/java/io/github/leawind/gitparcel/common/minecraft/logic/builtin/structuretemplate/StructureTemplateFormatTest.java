@@ -0,0 +1,56 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.structuretemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StructureTemplateFormatTest {
+
+  @Test
+  void restoresPreviousFilesIfCommitStoppedBeforeMovingNewOnes(@TempDir Path dataDir)
+      throws IOException {
+    // Previous regions moved aside, new ones still in the temporary directory
+    Path regionsBackup = dataDir.resolve(StructureTemplateFormat.REGIONS_DIR_NAME + ".old");
+    Files.createDirectories(regionsBackup);
+    Files.writeString(regionsBackup.resolve("0.0.0.nbt"), "previous");
+    Files.createDirectories(dataDir.resolve(StructureTemplateFormat.REGIONS_DIR_NAME + ".tmp"));
+
+    StructureTemplateFormat.recoverInterruptedCommit(dataDir);
+
+    Path regionsDir = dataDir.resolve(StructureTemplateFormat.REGIONS_DIR_NAME);
+    assertEquals("previous", Files.readString(regionsDir.resolve("0.0.0.nbt")));
+    assertFalse(Files.exists(regionsBackup));
+  }
+
+  @Test
+  void deletesPreviousFilesIfNewOnesAreInPlace(@TempDir Path dataDir) throws IOException {
+    Path nbtFile = dataDir.resolve(StructureTemplateFormat.NBT_FILE_NAME);
+    Files.writeString(nbtFile, "new");
+    Path regionsBackup = dataDir.resolve(StructureTemplateFormat.REGIONS_DIR_NAME + ".old");
+    Files.createDirectories(regionsBackup);
+    Files.writeString(regionsBackup.resolve("0.0.0.nbt"), "previous");
+
+    StructureTemplateFormat.recoverInterruptedCommit(dataDir);
+
+    assertEquals("new", Files.readString(nbtFile));
+    assertFalse(Files.exists(regionsBackup));
+    assertFalse(Files.exists(dataDir.resolve(StructureTemplateFormat.REGIONS_DIR_NAME)));
+  }
+
+  @Test
+  void keepsCompleteParcel(@TempDir Path dataDir) throws IOException {
+    Path nbtFile = dataDir.resolve(StructureTemplateFormat.NBT_FILE_NAME);
+    Files.writeString(nbtFile, "current");
+
+    StructureTemplateFormat.recoverInterruptedCommit(dataDir);
+
+    assertTrue(Files.exists(nbtFile));
+    assertEquals("current", Files.readString(nbtFile));
+  }
+}
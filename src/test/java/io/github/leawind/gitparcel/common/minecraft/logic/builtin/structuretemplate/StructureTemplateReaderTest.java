@@ -0,0 +1,117 @@
+package io.github.leawind.gitparcel.common.minecraft.logic.builtin.structuretemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import net.minecraft.core.Vec3i;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.IntTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StructureTemplateReaderTest {
+
+  private static ListTag intList(int... values) {
+    var list = new ListTag();
+    for (int value : values) {
+      list.add(IntTag.valueOf(value));
+    }
+    return list;
+  }
+
+  private static CompoundTag state(String name) {
+    var tag = new CompoundTag();
+    tag.putString("Name", name);
+    return tag;
+  }
+
+  private static CompoundTag block(int x, int y, int z, int state) {
+    var tag = new CompoundTag();
+    tag.put("pos", intList(x, y, z));
+    tag.putInt("state", state);
+    return tag;
+  }
+
+  private static StructureTemplateReader.Content write(Path dir, CompoundTag tag) throws Exception {
+    Path file = dir.resolve("structure.nbt");
+    try (var out = Files.newOutputStream(file)) {
+      NbtIo.writeCompressed(tag, out);
+    }
+    return StructureTemplateReader.read(file);
+  }
+
+  @Test
+  void testRead(@TempDir Path dir) throws Exception {
+    var chest = block(1, 0, 0, 1);
+    var chestData = new CompoundTag();
+    chestData.putString("id", "minecraft:chest");
+    chest.put("nbt", chestData);
+
+    var blocks = new ListTag();
+    blocks.add(block(0, 0, 0, 0));
+    blocks.add(chest);
+    blocks.add(block(0, 1, 2, 0));
+
+    var palette = new ListTag();
+    palette.add(state("minecraft:stone"));
+    palette.add(state("minecraft:chest"));
+
+    var entity = new CompoundTag();
+    entity.put("blockPos", intList(0, 1, 0));
+
+    var entities = new ListTag();
+    entities.add(entity);
+
+    var tag = new CompoundTag();
+    tag.putInt("DataVersion", 1);
+    tag.put("size", intList(2, 2, 3));
+    tag.put("blocks", blocks);
+    tag.put("palette", palette);
+    tag.put("entities", entities);
+    tag.put("unknown", new CompoundTag());
+
+    var content = write(dir, tag);
+    assertEquals(new Vec3i(2, 2, 3), content.size);
+    assertEquals(3, content.blockCount());
+    assertEquals(List.of(0, 0, 0, 0, 1, 0, 0, 1, 0, 1, 2, 0), List.copyOf(content.blocks));
+    assertEquals(1, content.blockEntities.size());
+    assertEquals(chestData, content.blockEntities.get(1));
+    assertEquals(2, content.palette.size());
+    assertEquals("minecraft:chest", content.palette.get(1).getStringOr("Name", ""));
+    assertEquals(List.of(entity), content.entities);
+  }
+
+  @Test
+  void testFirstOfPalettes(@TempDir Path dir) throws Exception {
+    var first = new ListTag();
+    first.add(state("minecraft:oak_log"));
+    var second = new ListTag();
+    second.add(state("minecraft:birch_log"));
+    var palettes = new ListTag();
+    palettes.add(first);
+    palettes.add(second);
+
+    var tag = new CompoundTag();
+    tag.put("palettes", palettes);
+    tag.put("blocks", new ListTag());
+
+    var content = write(dir, tag);
+    assertEquals(1, content.palette.size());
+    assertEquals("minecraft:oak_log", content.palette.getFirst().getStringOr("Name", ""));
+    assertEquals(0, content.blockCount());
+    assertTrue(content.entities.isEmpty());
+  }
+
+  @Test
+  void testEmpty(@TempDir Path dir) throws Exception {
+    var content = write(dir, new CompoundTag());
+    assertEquals(Vec3i.ZERO, content.size);
+    assertTrue(content.palette.isEmpty());
+    assertEquals(0, content.blockCount());
+  }
+}
@@ -0,0 +1,128 @@
+package io.github.leawind.gitparcel.common.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class DenseIntIdPaletteTest {
+
+  @Test
+  void testCollectAndGet() {
+    var palette = new DenseIntIdPalette<String>(10);
+
+    assertEquals(0, palette.collect("test0"));
+    assertEquals(1, palette.collect("test1"));
+    assertEquals(0, palette.collect("test0"));
+
+    assertEquals("test0", palette.get(0));
+    assertEquals("test1", palette.get(1));
+    assertNull(palette.get(2));
+    assertNull(palette.get(-1));
+    assertNull(palette.get(999));
+    assertTrue(palette.isIdInUse(1));
+    assertFalse(palette.isIdInUse(2));
+  }
+
+  @Test
+  void testEqualsVersusIdentity() {
+    var byEquals = new DenseIntIdPalette<String>(10);
+    var byIdentity = new DenseIntIdPalette<String>(0, 10, true);
+
+    String a = new String("test");
+    String b = new String("test");
+
+    assertEquals(byEquals.collect(a), byEquals.collect(b));
+    assertNotEquals(byIdentity.collect(a), byIdentity.collect(b));
+    assertSame(a, byIdentity.get(byIdentity.getId(a)));
+    assertSame(b, byIdentity.get(byIdentity.getId(b)));
+  }
+
+  @Test
+  void testIdsOutsideArray() {
+    var palette = new DenseIntIdPalette<String>(-10, Integer.MAX_VALUE, false);
+    int large = DenseIntIdPalette.MAX_DENSE_ID + 5;
+
+    palette.insert(-3, "negative");
+    palette.insert(large, "large");
+
+    assertEquals("negative", palette.get(-3));
+    assertEquals("large", palette.get(large));
+    assertTrue(palette.isIdInUse(large));
+
+    assertEquals("large", palette.removeById(large));
+    assertNull(palette.get(large));
+    assertEquals(-3, palette.removeByData("negative"));
+    assertFalse(palette.isIdInUse(-3));
+  }
+
+  @Test
+  void testRemovingAliasedData() {
+    var palette = new DenseIntIdPalette<String>(10);
+    palette.insert(2, "test");
+    palette.insert(5, "test");
+
+    assertEquals("test", palette.get(2));
+    assertEquals("test", palette.get(5));
+
+    palette.removeById(5);
+    assertNull(palette.get(2));
+    assertFalse(palette.isIdInUse(2));
+  }
+
+  @Test
+  void testClear() {
+    var palette = new DenseIntIdPalette<String>(10);
+    palette.collect("test0");
+    palette.collect("test1");
+
+    palette.clear();
+
+    assertEquals(0, palette.size());
+    assertNull(palette.get(0));
+    assertFalse(palette.isIdInUse(1));
+  }
+
+  /** Random operations should behave exactly as on {@link IntIdPalette}. */
+  @Test
+  void testSameBehaviorAsIntIdPalette() {
+    var random = new Random(12138);
+    var expected = new IntIdPalette<String>(0, 64);
+    var actual = new DenseIntIdPalette<String>(0, 64, false);
+
+    for (int i = 0; i < 20000; i++) {
+      String data = "data" + random.nextInt(80);
+      int id = random.nextInt(70);
+      switch (random.nextInt(6)) {
+        case 0, 1 -> {
+          int expectedId;
+          try {
+            expectedId = expected.collect(data);
+          } catch (IllegalStateException e) {
+            assertThrows(IllegalStateException.class, () -> actual.collect(data));
+            continue;
+          }
+          assertEquals(expectedId, actual.collect(data));
+        }
+        case 2 -> {
+          expected.insert(id, random.nextInt(8) == 0 ? null : data);
+          actual.insert(id, expected.byId.get(id));
+        }
+        case 3 -> assertEquals(expected.removeById(id), actual.removeById(id));
+        case 4 -> assertEquals(expected.removeByData(data), actual.removeByData(data));
+        default -> {
+          if (random.nextInt(200) == 0) {
+            expected.clear();
+            actual.clear();
+          }
+        }
+      }
+
+      assertEquals(expected.size(), actual.size());
+      for (int j = 0; j < 70; j++) {
+        assertEquals(expected.get(j), actual.get(j));
+        assertEquals(expected.isIdInUse(j), actual.isIdInUse(j));
+      }
+    }
+  }
+}
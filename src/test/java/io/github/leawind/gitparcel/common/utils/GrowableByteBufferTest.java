@@ -0,0 +1,117 @@
+package io.github.leawind.gitparcel.common.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GrowableByteBufferTest {
+  private static final byte[] BYTES = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+
+  @Test
+  void testGrow() {
+    var buffer = new GrowableByteBuffer(2);
+    buffer.put(BYTES).putAscii('a').put((byte) -1).putInt(0x01020304).putVarInt(300);
+
+    byte[] expected = {1, 2, 3, 4, 5, 6, 7, 8, 9, 'a', -1, 1, 2, 3, 4, (byte) 0xAC, 0x02};
+    assertArrayEquals(expected, buffer.toByteArray());
+    assertEquals(expected.length, buffer.size());
+  }
+
+  @Test
+  void testClear() {
+    var buffer = new GrowableByteBuffer(4);
+    buffer.put(BYTES);
+    buffer.clear().putAscii('x');
+    assertArrayEquals(new byte[] {'x'}, buffer.toByteArray());
+  }
+
+  @Test
+  void testPutUtf8() {
+    String text = "a\u00e9\u4e2d\ud83d\ude00z";
+    var buffer = new GrowableByteBuffer(1);
+    buffer.putUtf8(text);
+    assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+
+    buffer.clear().putUtf8("\ud83d");
+    assertArrayEquals("\ud83d".getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+  }
+
+  @Test
+  void testOutputStream() throws IOException {
+    var buffer = new GrowableByteBuffer(2);
+    try (var out = buffer.outputStream()) {
+      out.write(BYTES, 1, 3);
+      out.write(0xFF);
+    }
+    assertArrayEquals(new byte[] {2, 3, 4, -1}, buffer.toByteArray());
+  }
+
+  @Test
+  void testCrc32() {
+    var crc = new CRC32();
+    crc.update(BYTES);
+    assertEquals((int) crc.getValue(), new GrowableByteBuffer(4).put(BYTES).crc32());
+  }
+
+  @Test
+  void testWriteTo(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("file");
+    Files.write(file, new byte[64]);
+
+    var buffer = new GrowableByteBuffer(4).put(BYTES);
+    buffer.writeTo(file);
+    assertArrayEquals(BYTES, Files.readAllBytes(file));
+
+    // Content is kept after writing
+    buffer.writeTo(file);
+    assertArrayEquals(BYTES, Files.readAllBytes(file));
+  }
+
+  @Test
+  void testWriteToIfChanged(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("file");
+
+    var buffer = new GrowableByteBuffer(4).put(BYTES);
+    assertTrue(buffer.writeToIfChanged(file));
+    assertArrayEquals(BYTES, Files.readAllBytes(file));
+    assertFalse(buffer.writeToIfChanged(file));
+
+    buffer.clear().put(BYTES).put((byte) 0);
+    assertTrue(buffer.writeToIfChanged(file));
+    buffer.clear().put(new byte[BYTES.length + 1]);
+    assertTrue(buffer.writeToIfChanged(file));
+    assertArrayEquals(new byte[BYTES.length + 1], Files.readAllBytes(file));
+    assertFalse(Files.exists(dir.resolve("file.tmp")));
+  }
+
+  @Test
+  void testReadRange(@TempDir Path dir) throws IOException {
+    Path file = Files.write(dir.resolve("file"), BYTES);
+
+    var buffer = new GrowableByteBuffer(2);
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      var data = buffer.readFrom(channel, 2, 5);
+      byte[] bytes = new byte[data.remaining()];
+      data.get(bytes);
+      assertArrayEquals(new byte[] {3, 4, 5, 6, 7}, bytes);
+      assertEquals(5, buffer.size());
+      // Positional reads do not move the channel
+      assertEquals(0, channel.position());
+
+      assertThrows(EOFException.class, () -> buffer.readFrom(channel, 6, 4));
+    }
+  }
+}
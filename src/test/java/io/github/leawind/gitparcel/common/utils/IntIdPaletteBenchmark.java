@@ -0,0 +1,82 @@
+package io.github.leawind.gitparcel.common.utils;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Per block palette operations, as done by the Parcella savers and loaders. */
+@SuppressWarnings("unused")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 2)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 3)
+public class IntIdPaletteBenchmark {
+  /** Number of lookups per invocation, the volume of a 32x32x32 subparcel */
+  private static final int LOOKUPS = 32 * 32 * 32;
+
+  @Param({"16", "256", "4096"})
+  private int distinct;
+
+  @Param({"SPARSE", "DENSE", "DENSE_IDENTITY"})
+  private Kind kind;
+
+  public enum Kind {
+    SPARSE,
+    DENSE,
+    DENSE_IDENTITY,
+  }
+
+  private IntIdPalette<Object> palette;
+  private Object[] data;
+  private int[] ids;
+
+  @Setup
+  public void setup() {
+    palette =
+        switch (kind) {
+          case SPARSE -> new IntIdPalette<>();
+          case DENSE -> new DenseIntIdPalette<>();
+          case DENSE_IDENTITY -> new DenseIntIdPalette<>(0, Integer.MAX_VALUE, true);
+        };
+
+    var values = new Object[distinct];
+    for (int i = 0; i < distinct; i++) {
+      values[i] = "state" + i;
+    }
+
+    var random = new Random(12138);
+    data = new Object[LOOKUPS];
+    ids = new int[LOOKUPS];
+    for (int i = 0; i < LOOKUPS; i++) {
+      data[i] = values[random.nextInt(distinct)];
+      ids[i] = palette.collect(data[i]);
+    }
+  }
+
+  @Benchmark
+  public void benchmarkCollect(Blackhole bh) {
+    for (var d : data) {
+      bh.consume(palette.collect(d));
+    }
+  }
+
+  @Benchmark
+  public void benchmarkGet(Blackhole bh) {
+    for (int id : ids) {
+      bh.consume(palette.get(id));
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package io.github.leawind.gitparcel.common.utils.algorithms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class PackedRunsTest {
+  private static final List<VolumetricRLE.Run> RUNS =
+      List.of(
+          new VolumetricRLE.Run(0, 0, 0, 0, 0, 0, 0),
+          new VolumetricRLE.Run(7, 1, 2, 3, 4, 5, 6),
+          new VolumetricRLE.Run(PackedRuns.MAX_VALUE_EXCLUSIVE - 1, 63, 63, 63, 63, 63, 63),
+          new VolumetricRLE.Run(123456, 0, 31, 0, 31, 31, 31));
+
+  @Test
+  void testRoundTrip() {
+    var packed = new PackedRuns(1);
+    for (var run : RUNS) {
+      packed.add(
+          run.value(), run.minX(), run.minY(), run.minZ(), run.maxX(), run.maxY(), run.maxZ());
+    }
+    assertEquals(RUNS.size(), packed.size());
+    assertEquals(RUNS, packed.toList());
+    assertEquals(packed, PackedRuns.of(RUNS));
+  }
+
+  @Test
+  void testCursor() {
+    var cursor = PackedRuns.of(RUNS).cursor();
+    List<VolumetricRLE.Run> runs = new ArrayList<>();
+    while (cursor.next()) {
+      runs.add(
+          new VolumetricRLE.Run(
+              cursor.value(),
+              cursor.minX(),
+              cursor.minY(),
+              cursor.minZ(),
+              cursor.maxX(),
+              cursor.maxY(),
+              cursor.maxZ()));
+      assertEquals(
+          cursor.minX() == cursor.maxX()
+              && cursor.minY() == cursor.maxY()
+              && cursor.minZ() == cursor.maxZ(),
+          cursor.isSingleBlock());
+    }
+    assertFalse(cursor.next());
+    assertEquals(RUNS, runs);
+  }
+
+  @Test
+  void testSingleBlock() {
+    var packed = PackedRuns.of(RUNS);
+    assertTrue(PackedRuns.isSingleBlock(packed.getPacked(0)));
+    assertFalse(PackedRuns.isSingleBlock(packed.getPacked(1)));
+    assertTrue(PackedRuns.isSingleBlock(packed.getPacked(2)));
+  }
+
+  @Test
+  void testOutOfRange() {
+    var packed = new PackedRuns();
+    assertThrows(IllegalArgumentException.class, () -> packed.add(0, 64, 0, 0, 0, 0, 0));
+    assertThrows(IllegalArgumentException.class, () -> packed.add(-1, 0, 0, 0, 0, 0, 0));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> packed.add(PackedRuns.MAX_VALUE_EXCLUSIVE, 0, 0, 0, 0, 0, 0));
+    assertEquals(0, packed.size());
+  }
+}
@@ -5,6 +5,7 @@ import java.util.concurrent.TimeUnit;
 
 import io.github.leawind.gitparcel.common.utils.algorithms.VolumetricRLE;
 import net.minecraft.core.Vec3i;
+import org.openjdk.jmh.annotations.AuxCounters;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -33,8 +34,18 @@ public class VolumetricRLEBenchmark {
   @Param({"16", "32", "64"})
   private int size;
 
+  @Param({"GREEDY", "POOLED", "BEST_AXIS_ORDER", "VECTORIZED"})
+  private VolumetricRLE.Strategy strategy;
+
   private VolumetricRLE.ValueGetter values;
 
+  /** Output size of the encoder, reported next to the timings. It does not change between calls. */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class OutputSize {
+    public double runsPerBlock;
+  }
+
   @Setup
   public void setup() {
     var random = new GitParcelRandom(12138);
@@ -42,8 +53,16 @@ public class VolumetricRLEBenchmark {
   }
 
   @Benchmark
-  public void benchmarkV2(Blackhole bh) {
-    var result = VolumetricRLE.IMPL.encode(size, size, size, values);
+  public void benchmarkEncode(Blackhole bh, OutputSize output) {
+    var result = strategy.encode(size, size, size, values);
+    output.runsPerBlock = (double) result.size() / (size * size * size);
+    bh.consume(result);
+  }
+
+  @Benchmark
+  public void benchmarkEncodePacked(Blackhole bh, OutputSize output) {
+    var result = strategy.encodePacked(size, size, size, values);
+    output.runsPerBlock = (double) result.size() / (size * size * size);
     bh.consume(result);
   }
 }
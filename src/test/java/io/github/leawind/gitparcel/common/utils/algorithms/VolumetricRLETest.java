@@ -56,6 +56,7 @@ public class VolumetricRLETest {
 
         var runs = algo.encode(values.size.getX(), values.size.getY(), values.size.getZ(), values);
         assertRunsEqual(values.size, runs);
+        assertRunValues(values, runs);
 
         int volume = values.size.getX() * values.size.getY() * values.size.getZ();
         var countRatio = (double) runs.size() / volume;
@@ -70,7 +71,7 @@ public class VolumetricRLETest {
   @Test
   void testEncode() {
     for (var field : VolumetricRLE.class.getDeclaredFields()) {
-      if (field.getType() == VolumetricRLE.class && field.canAccess(null)) {
+      if (field.getType() == VolumetricRLE.Encoder.class && field.canAccess(null)) {
         String name = field.getName();
         if (name.startsWith("_")) continue;
         try {
@@ -82,6 +83,60 @@ public class VolumetricRLETest {
     }
   }
 
+  @Test
+  void testPooledMatchesImpl() {
+    var random = new GitParcelRandom(12138);
+    for (int i = 0; i < 32768; i += 97) {
+      var size = ZOrder3D.indexToCoord(i).add(1, 1, 1);
+      var values = new TestedValues(new Vec3i(size.x, size.y, size.z), 1 + i % 4, random);
+
+      var expected = VolumetricRLE.IMPL.encode(size.x, size.y, size.z, values);
+      assertEquals(expected, VolumetricRLE.POOLED.encode(size.x, size.y, size.z, values));
+      assertEquals(
+          PackedRuns.of(expected),
+          VolumetricRLE.POOLED.encodePacked(size.x, size.y, size.z, values));
+    }
+  }
+
+  @Test
+  void testVectorizedMatchesImpl() {
+    var random = new GitParcelRandom(12138);
+    for (int i = 0; i < 32768; i += 97) {
+      var size = ZOrder3D.indexToCoord(i).add(1, 1, 1);
+      var values = new TestedValues(new Vec3i(size.x, size.y, size.z), 1 + i % 4, random);
+
+      assertEquals(
+          VolumetricRLE.IMPL.encode(size.x, size.y, size.z, values),
+          VolumetricRLE.VECTORIZED.encode(size.x, size.y, size.z, values));
+    }
+  }
+
+  @Test
+  void testBestAxisOrderIsNotWorse() {
+    var random = new GitParcelRandom(12138);
+    for (int i = 0; i < 32768; i += 97) {
+      var size = ZOrder3D.indexToCoord(i).add(1, 1, 1);
+      var values = new TestedValues(new Vec3i(size.x, size.y, size.z), 1 + i % 4, random);
+
+      assertTrue(
+          VolumetricRLE.BEST_AXIS_ORDER.encode(size.x, size.y, size.z, values).size()
+              <= VolumetricRLE.IMPL.encode(size.x, size.y, size.z, values).size());
+    }
+  }
+
+  public static void assertRunValues(
+      VolumetricRLE.ValueGetter values, Iterable<VolumetricRLE.Run> runs) {
+    for (var run : runs) {
+      for (int x = run.minX(); x < run.endX(); x++) {
+        for (int y = run.minY(); y < run.endY(); y++) {
+          for (int z = run.minZ(); z < run.endZ(); z++) {
+            assertEquals(run.value(), values.get(x, y, z));
+          }
+        }
+      }
+    }
+  }
+
   public static void assertRunsEqual(Vec3i size, Iterable<VolumetricRLE.Run> runs) {
     Set<BlockPos> blocks = new HashSet<>();
 
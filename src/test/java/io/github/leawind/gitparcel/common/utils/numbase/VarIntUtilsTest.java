@@ -0,0 +1,66 @@
+package io.github.leawind.gitparcel.common.utils.numbase;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+public class VarIntUtilsTest {
+  private static final int[] VALUES = {
+    0, 1, 127, 128, 255, 300, 16383, 16384, 2097151, 2097152, Integer.MAX_VALUE, -1,
+    Integer.MIN_VALUE
+  };
+
+  @Test
+  void testRoundTrip() {
+    var out = new ByteArrayOutputStream();
+    for (int value : VALUES) {
+      VarIntUtils.write(out, value);
+    }
+
+    var buffer = ByteBuffer.wrap(out.toByteArray());
+    for (int value : VALUES) {
+      assertEquals(value, VarIntUtils.read(buffer));
+    }
+    assertFalse(buffer.hasRemaining());
+  }
+
+  @Test
+  void testByteBuffer() {
+    var buffer = ByteBuffer.allocate(VALUES.length * VarIntUtils.MAX_BYTES);
+    for (int value : VALUES) {
+      VarIntUtils.write(buffer, value);
+    }
+
+    buffer.flip();
+    for (int value : VALUES) {
+      assertEquals(value, VarIntUtils.read(buffer));
+    }
+    assertFalse(buffer.hasRemaining());
+  }
+
+  @Test
+  void testSize() {
+    for (int value : VALUES) {
+      var out = new ByteArrayOutputStream();
+      VarIntUtils.write(out, value);
+      assertEquals(out.size(), VarIntUtils.size(value));
+    }
+    assertEquals(1, VarIntUtils.size(127));
+    assertEquals(2, VarIntUtils.size(128));
+    assertEquals(VarIntUtils.MAX_BYTES, VarIntUtils.size(-1));
+  }
+
+  @Test
+  void testInvalid() {
+    assertThrows(
+        BufferUnderflowException.class, () -> VarIntUtils.read(ByteBuffer.wrap(new byte[] {-1})));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> VarIntUtils.read(ByteBuffer.wrap(new byte[] {-1, -1, -1, -1, -1, 1})));
+  }
+}
@@ -0,0 +1,195 @@
+package io.github.leawind.gitparcel.common.utils.algorithms;
+
+import java.util.Arrays;
+import java.util.List;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Same output as {@link VolumetricRLE#IMPL}, with Z extension done by comparing whole Z rows of the
+ * value grid at once using the Vector API, and visited cells kept in a bitmap.
+ *
+ * <p>Requires the {@code jdk.incubator.vector} module. Do not reference this class directly, use
+ * {@link VolumetricRLE#VECTORIZED}, which falls back to a scalar encoder if the module is missing.
+ */
+final class VectorizedEncoder implements VolumetricRLE.Encoder {
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+  private static final class Scratch {
+    /** Values in Y, X, Z order */
+    int[] values = new int[0];
+
+    /** Visited bit of each cell, in the same order as values */
+    long[] visited = new long[0];
+
+    void ensureCapacity(int totalSize) {
+      if (values.length < totalSize) {
+        values = new int[totalSize];
+        visited = new long[(totalSize + 63) >>> 6];
+      }
+    }
+  }
+
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  @Override
+  public List<VolumetricRLE.Run> encode(
+      int sizeX, int sizeY, int sizeZ, VolumetricRLE.ValueGetter values) {
+    return encodePacked(sizeX, sizeY, sizeZ, values).toList();
+  }
+
+  @Override
+  public PackedRuns encodePacked(
+      int sizeX, int sizeY, int sizeZ, VolumetricRLE.ValueGetter values) {
+    final int sizeXZ = sizeX * sizeZ;
+    final int totalSize = sizeY * sizeXZ;
+
+    var scratch = SCRATCH.get();
+    scratch.ensureCapacity(totalSize);
+    final int[] valueGrid = scratch.values;
+    final long[] visited = scratch.visited;
+    Arrays.fill(visited, 0, (totalSize + 63) >>> 6, 0L);
+
+    for (int y = 0; y < sizeY; y++) {
+      final int yOffset = y * sizeXZ;
+      for (int x = 0; x < sizeX; x++) {
+        final int xOffset = yOffset + x * sizeZ;
+        for (int z = 0; z < sizeZ; z++) {
+          valueGrid[xOffset + z] = values.get(x, y, z);
+        }
+      }
+    }
+
+    var result = new PackedRuns();
+
+    for (int y = 0; y < sizeY; y++) {
+      final int yOffset = y * sizeXZ;
+
+      for (int x = 0; x < sizeX; x++) {
+        final int xSizeZ = x * sizeZ;
+        final int xOffset = yOffset + xSizeZ;
+
+        for (int z = 0; z < sizeZ; z++) {
+          final int idx = xOffset + z;
+          if (isSet(visited, idx)) continue;
+
+          final int value = valueGrid[idx];
+
+          // Y
+          int boundY = y + 1;
+          while (boundY < sizeY) {
+            final int tryIdx = boundY * sizeXZ + xSizeZ + z;
+            if (isSet(visited, tryIdx) || valueGrid[tryIdx] != value) break;
+            boundY++;
+          }
+
+          // X
+          int boundX = x + 1;
+          extendX:
+          while (boundX < sizeX) {
+            for (int tryY = y; tryY < boundY; tryY++) {
+              final int tryIdx = tryY * sizeXZ + boundX * sizeZ + z;
+              if (isSet(visited, tryIdx) || valueGrid[tryIdx] != value) break extendX;
+            }
+            boundX++;
+          }
+
+          // Z: as far as every row of the box matches
+          int boundZ = sizeZ;
+          for (int tryY = y; tryY < boundY && boundZ > z + 1; tryY++) {
+            for (int tryX = x; tryX < boundX && boundZ > z + 1; tryX++) {
+              final int rowOffset = tryY * sizeXZ + tryX * sizeZ;
+              boundZ =
+                  z
+                      + 1
+                      + matchLength(
+                          valueGrid, visited, value, rowOffset + z + 1, rowOffset + boundZ);
+            }
+          }
+
+          for (int tryY = y; tryY < boundY; tryY++) {
+            for (int tryX = x; tryX < boundX; tryX++) {
+              final int rowOffset = tryY * sizeXZ + tryX * sizeZ;
+              setRange(visited, rowOffset + z, rowOffset + boundZ);
+            }
+          }
+          result.add(value, x, y, z, boundX - 1, boundY - 1, boundZ - 1);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * @return Number of leading cells in {@code [from, to)} that are not visited and hold the value
+   */
+  private static int matchLength(int[] valueGrid, long[] visited, int value, int from, int to) {
+    final int limit = nextSetBit(visited, from, to);
+    final int upper = from + SPECIES.loopBound(limit - from);
+
+    int i = from;
+    for (; i < upper; i += SPECIES.length()) {
+      VectorMask<Integer> ne =
+          IntVector.fromArray(SPECIES, valueGrid, i).compare(VectorOperators.NE, value);
+      if (ne.anyTrue()) {
+        return i + ne.firstTrue() - from;
+      }
+    }
+    if (i < limit) {
+      VectorMask<Integer> inRange = SPECIES.indexInRange(i, limit);
+      VectorMask<Integer> ne =
+          IntVector.fromArray(SPECIES, valueGrid, i, inRange)
+              .compare(VectorOperators.NE, value, inRange);
+      if (ne.anyTrue()) {
+        return i + ne.firstTrue() - from;
+      }
+    }
+    return limit - from;
+  }
+
+  private static boolean isSet(long[] bits, int index) {
+    return (bits[index >>> 6] & (1L << index)) != 0;
+  }
+
+  /**
+   * @return Index of the first set bit in {@code [from, to)}, or {@code to} if there is none
+   */
+  private static int nextSetBit(long[] bits, int from, int to) {
+    if (from >= to) {
+      return to;
+    }
+    int word = from >>> 6;
+    long current = bits[word] & (-1L << from);
+    while (current == 0) {
+      word++;
+      if (word << 6 >= to) {
+        return to;
+      }
+      current = bits[word];
+    }
+    return Math.min((word << 6) + Long.numberOfTrailingZeros(current), to);
+  }
+
+  /** Sets bits in {@code [from, to)}. */
+  private static void setRange(long[] bits, int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    int firstWord = from >>> 6;
+    int lastWord = (to - 1) >>> 6;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (firstWord == lastWord) {
+      bits[firstWord] |= firstMask & lastMask;
+      return;
+    }
+    bits[firstWord] |= firstMask;
+    for (int word = firstWord + 1; word < lastWord; word++) {
+      bits[word] = -1L;
+    }
+    bits[lastWord] |= lastMask;
+  }
+}